@@ -0,0 +1,46 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz;
+
+import com.jensfendler.ninjaquartz.job.NinjaQuartzJobStatus;
+
+import org.quartz.Scheduler;
+import org.quartz.TriggerKey;
+
+/**
+ * Holds details of a cron trigger whose schedule has been read from
+ * application.conf, to allow reloading the schedule later on.
+ */
+class ConfiguredCronSchedule
+{
+	public final Scheduler scheduler;
+	public final TriggerKey triggerKey;
+	public final NinjaQuartzJobStatus status;
+
+	/**
+	 * The cron expression last applied to the trigger
+	 */
+	public String cronSchedule;
+
+	ConfiguredCronSchedule(Scheduler scheduler, TriggerKey triggerKey, NinjaQuartzJobStatus status,
+			String cronSchedule)
+	{
+		this.scheduler = scheduler;
+		this.triggerKey = triggerKey;
+		this.status = status;
+		this.cronSchedule = cronSchedule;
+	}
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.jensfendler.ninjaquartz.job.NinjaQuartzJobStatus;
+
+import org.quartz.CronTrigger;
+import org.quartz.Scheduler;
+import org.quartz.SchedulerException;
+import org.quartz.Trigger;
+import org.quartz.Trigger.TriggerState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ninja.utils.NinjaProperties;
+
+/**
+ * Keeps track of the cron triggers whose schedule has been read from a
+ * property in application.conf, to allow reloading their schedules later on.
+ *
+ * @author Jens Fendler
+ */
+@Singleton
+class ConfiguredSchedules
+{
+
+	protected static final Logger logger = LoggerFactory.getLogger(NinjaQuartzModule.class);
+
+	@Inject
+	protected NinjaProperties ninjaProperties;
+
+	/**
+	 * All cron triggers using a schedule from application.conf, by the name of
+	 * the property
+	 */
+	private final Map<String, List<ConfiguredCronSchedule>> configuredSchedules = new HashMap<>();
+
+	/**
+	 * Remember where the schedule of a trigger which has just been scheduled
+	 * came from, if it has been read from application.conf.
+	 *
+	 * @param scheduler   the scheduler of the trigger
+	 * @param options     the scheduling options, naming the property
+	 * @param cronTrigger the trigger
+	 * @param status      the status of the job, to update on reloads
+	 */
+	void add(Scheduler scheduler, ScheduleOptions options, CronTrigger cronTrigger, NinjaQuartzJobStatus status)
+	{
+		if (ninjaProperties.get(options.getCronSchedule()) == null)
+		{
+			return;
+		}
+		synchronized (configuredSchedules)
+		{
+			configuredSchedules.computeIfAbsent(options.getCronSchedule(), k -> new ArrayList<>())
+					.add(new ConfiguredCronSchedule(scheduler, cronTrigger.getKey(), status,
+							cronTrigger.getCronExpression()));
+		}
+	}
+
+	/**
+	 * Reschedules all cron triggers whose schedule has been read from a
+	 * property in application.conf, and whose property has a different value
+	 * in the given {@link NinjaProperties}. Triggers with unchanged schedules
+	 * are not touched, so the Quartz job store is only accessed for changed
+	 * triggers.
+	 *
+	 * @param properties the (re-read) properties to take the schedules from
+	 * @return the number of rescheduled triggers
+	 */
+	int reload(NinjaProperties properties)
+	{
+		int rescheduled = 0;
+		synchronized (configuredSchedules)
+		{
+			for (Map.Entry<String, List<ConfiguredCronSchedule>> entry : configuredSchedules.entrySet())
+			{
+				String cronSchedule = properties.get(entry.getKey());
+				if (cronSchedule == null)
+				{
+					// the property has been removed. keep the current schedule.
+					continue;
+				}
+
+				for (ConfiguredCronSchedule configured : entry.getValue())
+				{
+					if (!cronSchedule.equals(configured.cronSchedule)
+							&& reschedule(configured, entry.getKey(), cronSchedule))
+					{
+						rescheduled++;
+					}
+				}
+			}
+		}
+
+		logger.info("Reloaded cron schedules from application.conf. {} trigger(s) rescheduled.", rescheduled);
+		return rescheduled;
+	}
+
+	private boolean reschedule(ConfiguredCronSchedule configured, String confKey, String cronSchedule)
+	{
+		try
+		{
+			Trigger trigger = configured.scheduler.getTrigger(configured.triggerKey);
+			if (!(trigger instanceof CronTrigger))
+			{
+				logger.warn("Not rescheduling {}: the trigger does not exist anymore.", configured.triggerKey);
+				return false;
+			}
+
+			// also paused through the Quartz API, not only through JMX
+			boolean paused = configured.scheduler.getTriggerState(configured.triggerKey) == TriggerState.PAUSED;
+			Date nextFireTime = configured.scheduler.rescheduleJob(configured.triggerKey,
+					JobDefinitions.withCronSchedule((CronTrigger) trigger, cronSchedule));
+			if (paused)
+			{
+				// replacing the trigger resumes it, but the job should stay
+				// paused
+				configured.scheduler.pauseTrigger(configured.triggerKey);
+			}
+			configured.cronSchedule = cronSchedule;
+			configured.status.setCronSchedule(cronSchedule);
+			configured.status.setNextFireTime(nextFireTime);
+			logger.info("Rescheduled {} with cron schedule '{}' from application.conf property '{}'.",
+					configured.triggerKey, cronSchedule, confKey);
+			return true;
+		}
+		catch (ParseException e)
+		{
+			logger.error("Invalid cron schedule '{}' in application.conf property '{}'. Keeping the schedule of {}.",
+					cronSchedule, confKey, configured.triggerKey);
+		}
+		catch (SchedulerException e)
+		{
+			logger.error("Failed to reschedule " + configured.triggerKey, e);
+		}
+		return false;
+	}
+}
@@ -1,6 +1,9 @@
 package com.jensfendler.ninjaquartz;
 
 import com.jensfendler.ninjaquartz.annotations.QuartzSchedule;
+import com.jensfendler.ninjaquartz.job.NinjaQuartzTask;
+
+import org.quartz.Job;
 
 import java.lang.reflect.Method;
 
@@ -13,10 +16,50 @@ class FutureRegistration
 	public final Method method;
 	public final QuartzSchedule annotation;
 
+	/**
+	 * Task, options and source for jobs scheduled at run time (null for
+	 * annotated methods)
+	 */
+	public final NinjaQuartzTask task;
+	public final ScheduleOptions options;
+	public final String source;
+
+	/**
+	 * The Job class for jobs declared in the {@link NinjaQuartzModule} (null
+	 * otherwise)
+	 */
+	public final Class<? extends Job> jobClass;
+
 	FutureRegistration(Object instance, Method method, QuartzSchedule annotation)
 	{
 		this.instance = instance;
 		this.method = method;
 		this.annotation = annotation;
+		this.task = null;
+		this.options = null;
+		this.source = null;
+		this.jobClass = null;
+	}
+
+	FutureRegistration(NinjaQuartzTask task, ScheduleOptions options, String source)
+	{
+		this.instance = null;
+		this.method = null;
+		this.annotation = null;
+		this.task = task;
+		this.options = options;
+		this.source = source;
+		this.jobClass = null;
+	}
+
+	FutureRegistration(Class<? extends Job> jobClass, ScheduleOptions options)
+	{
+		this.instance = null;
+		this.method = null;
+		this.annotation = null;
+		this.task = null;
+		this.options = options;
+		this.source = jobClass.getName();
+		this.jobClass = jobClass;
 	}
 }
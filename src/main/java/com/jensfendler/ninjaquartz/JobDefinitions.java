@@ -0,0 +1,301 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.jensfendler.ninjaquartz.annotations.QuartzSchedule;
+import com.jensfendler.ninjaquartz.job.AbstractNinjaQuartzJob;
+import com.jensfendler.ninjaquartz.job.ConcurrentNinjaQuartzJob;
+import com.jensfendler.ninjaquartz.job.ConcurrentStatefulNinjaQuartzJob;
+import com.jensfendler.ninjaquartz.job.NinjaQuartzTask;
+import com.jensfendler.ninjaquartz.job.NonConcurrentNinjaQuartzJob;
+import com.jensfendler.ninjaquartz.job.NonConcurrentStatefulNinjaQuartzJob;
+
+import org.quartz.CronScheduleBuilder;
+import org.quartz.CronTrigger;
+import org.quartz.Job;
+import org.quartz.JobBuilder;
+import org.quartz.JobDetail;
+import org.quartz.Scheduler;
+import org.quartz.SchedulerException;
+import org.quartz.Trigger;
+import org.quartz.TriggerBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.text.ParseException;
+import java.util.Date;
+
+import ninja.utils.NinjaProperties;
+
+/**
+ * Builds the {@link JobDetail}s and {@link CronTrigger}s of scheduled jobs
+ * from their {@link ScheduleOptions}.
+ *
+ * @author Jens Fendler
+ */
+@Singleton
+class JobDefinitions
+{
+
+	protected static final Logger logger = LoggerFactory.getLogger(NinjaQuartzModule.class);
+
+	@Inject
+	protected NinjaProperties ninjaProperties;
+
+	/**
+	 * Create the job of a Quartz {@link Job} class.
+	 *
+	 * @param jobClass the job class
+	 * @param options  the scheduling options, with all names set
+	 * @return the job
+	 */
+	JobDetail createJobDetail(Class<? extends Job> jobClass, ScheduleOptions options)
+	{
+		return newJob(jobClass, options).build();
+	}
+
+	/**
+	 * Create the job of a task, using the NinjaQuartz job wrapper class which
+	 * supports the concurrency and persistence requested by the options.
+	 *
+	 * @param task    the task to execute
+	 * @param options the scheduling options, with all names set
+	 * @return the job
+	 */
+	JobDetail createJobDetail(NinjaQuartzTask task, ScheduleOptions options)
+	{
+		String jobName = options.getJobName();
+		String jobGroup = options.getJobGroup();
+		boolean allowParallelInvocations = options.isAllowConcurrent();
+		// with write-behind, the job data is persisted by the
+		// WriteBehindJobDataListener instead of Quartz
+		boolean writeBehind = options.isPersistent() && options.isWriteBehind();
+		boolean persistent = options.isPersistent() && !writeBehind;
+
+		// determine the job wrapper class to use (the classes provide different
+		// annotations to support the requested Quartz functionality)
+		Class<? extends AbstractNinjaQuartzJob> jobClass;
+		if (allowParallelInvocations)
+		{
+			// concurrent jobs
+			if (persistent)
+			{
+				// concurrent, and persistent
+				jobClass = ConcurrentStatefulNinjaQuartzJob.class;
+			}
+			else
+			{
+				// concurrent, not not persistent
+				jobClass = ConcurrentNinjaQuartzJob.class;
+			}
+		}
+		else
+		{
+			// non-concurrent jobs
+			if (persistent)
+			{
+				// non-concurrent, and persistent
+				jobClass = NonConcurrentStatefulNinjaQuartzJob.class;
+			}
+			else
+			{
+				// non-concurrent, and not persistent
+				jobClass = NonConcurrentNinjaQuartzJob.class;
+			}
+		}
+
+		JobDetail jobDetail = newJob(jobClass, options).build();
+		// let the NinjaQuartzJob know which task (wrapping our scheduled
+		// method) we want to execute
+		jobDetail.getJobDataMap().put(AbstractNinjaQuartzJob.JOB_TASK_KEY, task);
+
+		// store other properties from the annotation in the job's context.
+		jobDetail.getJobDataMap().put(AbstractNinjaQuartzJob.JOB_REMOVE_ON_RUNTIME_ERROR, options.isRemoveOnError());
+		jobDetail.getJobDataMap().put(AbstractNinjaQuartzJob.JOB_FORCE_KEEP, options.isForceKeep());
+		if (writeBehind)
+		{
+			jobDetail.getJobDataMap().put(AbstractNinjaQuartzJob.JOB_WRITE_BEHIND, true);
+		}
+		if (options.isRunOnce())
+		{
+			jobDetail.getJobDataMap().put(AbstractNinjaQuartzJob.JOB_RUN_ONCE, true);
+		}
+		if (options.getCpuWeight() > 0)
+		{
+			jobDetail.getJobDataMap().put(AbstractNinjaQuartzJob.JOB_CPU_WEIGHT, options.getCpuWeight());
+		}
+		if (options.getMemoryWeight() > 0)
+		{
+			jobDetail.getJobDataMap().put(AbstractNinjaQuartzJob.JOB_MEMORY_WEIGHT, options.getMemoryWeight());
+		}
+		if (options.isRateLimited())
+		{
+			jobDetail.getJobDataMap().put(AbstractNinjaQuartzJob.JOB_RATE_LIMITED, true);
+		}
+
+		logger.debug("Created new job {} in group: {}.", jobName, jobGroup);
+		return jobDetail;
+	}
+
+	private static JobBuilder newJob(Class<? extends Job> jobClass, ScheduleOptions options)
+	{
+		JobBuilder jobBuilder = JobBuilder.newJob(jobClass).withIdentity(options.getJobName(), options.getJobGroup())
+				.requestRecovery(options.isJobRecovery()).storeDurably(options.isJobDurability());
+		if (options.getJobDescription() != null)
+		{
+			jobBuilder = jobBuilder.withDescription(options.getJobDescription());
+		}
+		return jobBuilder;
+	}
+
+	/**
+	 * Resolve the cron schedule of the given options: either the value of the
+	 * application.conf property named by the options, or the cron expression
+	 * given directly.
+	 */
+	private String resolveCronSchedule(ScheduleOptions options)
+	{
+		// check for an application.conf key name specified instead of a
+		// directly specified schedule string
+		String appConfCronSchedule = ninjaProperties.get(options.getCronSchedule());
+		// if we have a non-null value from application.conf, we use that.
+		// otherwise assume a schedule was directly given in the annotation
+		if (appConfCronSchedule != null)
+		{
+			logger.debug("Using cronSchedule from application.conf property '{}': {}", options.getCronSchedule(),
+					appConfCronSchedule);
+			return appConfCronSchedule;
+		}
+
+		logger.debug("Using cronSchedule as provided in annotation: {}", options.getCronSchedule());
+		return options.getCronSchedule();
+	}
+
+	/**
+	 * Create the cron trigger of a job.
+	 *
+	 * @param options the scheduling options, with all names set
+	 * @param source  a description of the job's source, for error messages
+	 * @return the trigger
+	 * @throws SchedulerException if the cron schedule or start time is invalid
+	 */
+	CronTrigger createCronTrigger(ScheduleOptions options, String source) throws SchedulerException
+	{
+		Date startAt = options.getTriggerStartAt();
+		Date endAt = options.getTriggerEndAt();
+		int triggerPriority = options.getTriggerPriority();
+		int misfirePolicy = options.getCronScheduleMisfirePolicy();
+		String cronSchedule = resolveCronSchedule(options);
+
+		// build the cron schedule
+		CronScheduleBuilder csb;
+		try
+		{
+			csb = CronScheduleBuilder.cronScheduleNonvalidatedExpression(cronSchedule);
+		}
+		catch (ParseException e)
+		{
+			throw new SchedulerException("Invalid cron schedule '" + cronSchedule + "' for " + source, e);
+		}
+		switch (misfirePolicy)
+		{
+			case QuartzSchedule.MISFIRE_POLICY_FIRE_AND_PROCEED:
+				csb = csb.withMisfireHandlingInstructionFireAndProceed();
+				break;
+			case QuartzSchedule.MISFIRE_POLICY_IGNORE:
+				csb = csb.withMisfireHandlingInstructionIgnoreMisfires();
+				break;
+			default:
+				csb = csb.withMisfireHandlingInstructionDoNothing();
+				break;
+		}
+
+		// build the trigger
+		TriggerBuilder<CronTrigger> triggerBuilder = TriggerBuilder.newTrigger()
+				.withIdentity(options.getTriggerName(), options.getTriggerGroup()).withPriority(triggerPriority)
+				.withSchedule(csb);
+		if (options.getSchedulerDelay() > 0)
+		{
+			if (startAt != null)
+			{
+				throw new SchedulerException("startAt and schedulerDelay can't be used at the same time (" + source
+						+ ")");
+			}
+
+			startAt = new Date(System.currentTimeMillis() + options.getSchedulerDelay() * 1000);
+		}
+
+		if (startAt != null)
+		{
+			triggerBuilder = triggerBuilder.startAt(startAt);
+		}
+		if (endAt != null)
+		{
+			triggerBuilder = triggerBuilder.endAt(endAt);
+		}
+
+		CronTrigger trigger = triggerBuilder.build();
+
+		logger.debug("Created new cron trigger with priority {} and schedule {}", triggerPriority, cronSchedule);
+		return trigger;
+	}
+
+	/**
+	 * Create a copy of the given {@link CronTrigger} using a different cron
+	 * expression. The copy keeps the identity, job, priority, calendar, misfire
+	 * instruction and end time of the original trigger. It starts now, or at
+	 * the original start time if that is still in the future.
+	 *
+	 * @param trigger      the trigger to copy
+	 * @param cronSchedule the new cron expression
+	 * @return the new trigger, ready to be passed to
+	 * {@link Scheduler#rescheduleJob(org.quartz.TriggerKey, Trigger)}
+	 * @throws ParseException if the cron expression is invalid
+	 */
+	static CronTrigger withCronSchedule(CronTrigger trigger, String cronSchedule) throws ParseException
+	{
+		CronScheduleBuilder csb = CronScheduleBuilder.cronScheduleNonvalidatedExpression(cronSchedule)
+				.inTimeZone(trigger.getTimeZone());
+		switch (trigger.getMisfireInstruction())
+		{
+			case CronTrigger.MISFIRE_INSTRUCTION_FIRE_ONCE_NOW:
+				csb = csb.withMisfireHandlingInstructionFireAndProceed();
+				break;
+			case Trigger.MISFIRE_INSTRUCTION_IGNORE_MISFIRE_POLICY:
+				csb = csb.withMisfireHandlingInstructionIgnoreMisfires();
+				break;
+			case CronTrigger.MISFIRE_INSTRUCTION_DO_NOTHING:
+				csb = csb.withMisfireHandlingInstructionDoNothing();
+				break;
+			default:
+				// keep Quartz' smart policy
+				break;
+		}
+
+		Date startAt = new Date();
+		if (trigger.getStartTime() != null && trigger.getStartTime().after(startAt))
+		{
+			startAt = trigger.getStartTime();
+		}
+
+		return TriggerBuilder.newTrigger().withIdentity(trigger.getKey()).forJob(trigger.getJobKey())
+				.withDescription(trigger.getDescription()).withPriority(trigger.getPriority())
+				.modifiedByCalendar(trigger.getCalendarName()).usingJobData(trigger.getJobDataMap())
+				.startAt(startAt).endAt(trigger.getEndTime()).withSchedule(csb).build();
+	}
+}
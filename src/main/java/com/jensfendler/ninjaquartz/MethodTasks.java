@@ -0,0 +1,167 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz;
+
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.Singleton;
+import com.jensfendler.ninjaquartz.annotations.QuartzBatch;
+import com.jensfendler.ninjaquartz.batch.BatchBuffer;
+import com.jensfendler.ninjaquartz.batch.BatchBuffers;
+import com.jensfendler.ninjaquartz.jmx.NinjaQuartzJmx;
+import com.jensfendler.ninjaquartz.job.BatchTask;
+import com.jensfendler.ninjaquartz.job.NinjaQuartzTask;
+import com.jensfendler.ninjaquartz.job.PublishingTask;
+import com.jensfendler.ninjaquartz.job.ScheduledMethodTask;
+import com.jensfendler.ninjaquartz.value.ScheduledValues;
+
+import org.quartz.JobKey;
+import org.quartz.Scheduler;
+import org.quartz.SchedulerException;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Creates the tasks of scheduled methods, including the tasks of methods
+ * consuming a {@link BatchBuffer} (see {@link QuartzBatch}) and of methods
+ * publishing their return values (see
+ * {@link com.jensfendler.ninjaquartz.annotations.QuartzSchedule#publishAs()}).
+ *
+ * @author Jens Fendler
+ */
+@Singleton
+class MethodTasks
+{
+
+	@Inject
+	protected Injector injector;
+
+	@Inject
+	protected NinjaQuartzJmx jmx;
+
+	@Inject
+	protected BatchBuffers batchBuffers;
+
+	@Inject
+	protected ScheduledValues scheduledValues;
+
+	/**
+	 * Create the task of a scheduled method.
+	 *
+	 * @param target  the instance to invoke the method on
+	 * @param method  the method to schedule
+	 * @param options the scheduling options, with all names set
+	 * @param buffer  the buffer consumed by the method, or null
+	 * @return the task to schedule
+	 * @throws SchedulerException if the method cannot publish values
+	 * @throws com.google.inject.ConfigurationException if a parameter of the
+	 *                                                  method cannot be
+	 *                                                  provided
+	 */
+	NinjaQuartzTask create(Object target, Method method, ScheduleOptions options, BatchBuffer<?> buffer)
+			throws SchedulerException
+	{
+		NinjaQuartzTask task = new ScheduledMethodTask(options.getJobName() + "/" + options.getJobGroup(), target,
+				method, injector, options.isRemoveOnError(), options.isForceKeep());
+		if (buffer != null)
+		{
+			task = new BatchTask(task, buffer);
+		}
+		return published(task, method, options);
+	}
+
+	/**
+	 * Get and configure the buffer consumed by a method annotated with
+	 * {@link QuartzBatch}.
+	 *
+	 * @param method the scheduled method
+	 * @return the buffer, or null if the method is not annotated with
+	 *         {@link QuartzBatch}
+	 * @throws SchedulerException if the annotation or method is invalid
+	 */
+	BatchBuffer<?> batchBuffer(Method method) throws SchedulerException
+	{
+		QuartzBatch quartzBatch = method.getAnnotation(QuartzBatch.class);
+		if (quartzBatch == null)
+		{
+			return null;
+		}
+		if (!Arrays.asList(method.getParameterTypes()).contains(List.class))
+		{
+			throw new SchedulerException("Batch method " + method + " has no List parameter");
+		}
+		if (quartzBatch.maxBatchSize() < 1 || quartzBatch.capacity() < quartzBatch.maxBatchSize())
+		{
+			throw new SchedulerException("Invalid batch size " + quartzBatch.maxBatchSize() + " or capacity "
+					+ quartzBatch.capacity() + " of batch buffer " + quartzBatch.name());
+		}
+		if (!QuartzBatch.OVERFLOW_BLOCK.equals(quartzBatch.overflow())
+				&& !QuartzBatch.OVERFLOW_DROP_OLDEST.equals(quartzBatch.overflow())
+				&& !QuartzBatch.OVERFLOW_REJECT.equals(quartzBatch.overflow()))
+		{
+			throw new SchedulerException("Invalid overflow of batch buffer " + quartzBatch.name() + ": "
+					+ quartzBatch.overflow());
+		}
+		BatchBuffer<?> buffer = batchBuffers.get(quartzBatch.name());
+		buffer.configure(quartzBatch);
+		jmx.register(buffer);
+		return buffer;
+	}
+
+	/**
+	 * Wrap the task of a scheduled method in a {@link PublishingTask} if the
+	 * options name a value to publish its return values as.
+	 *
+	 * @throws SchedulerException if the method cannot publish values
+	 */
+	private NinjaQuartzTask published(NinjaQuartzTask task, Method method, ScheduleOptions options)
+			throws SchedulerException
+	{
+		if (options.getPublishAs() == null)
+		{
+			return task;
+		}
+		if (method.getReturnType() == void.class)
+		{
+			throw new SchedulerException("Method " + method + " must return an object to publish it as "
+					+ options.getPublishAs());
+		}
+		if (options.getPartitions() > 1)
+		{
+			throw new SchedulerException("Partitioned method " + method + " cannot publish its results");
+		}
+		return new PublishingTask(task, scheduledValues.get(options.getPublishAs()));
+	}
+
+	/**
+	 * Let a batch buffer fire its consumer when a full batch is waiting.
+	 */
+	static void flushOnSize(BatchBuffer<?> buffer, Scheduler scheduler, JobKey jobKey)
+	{
+		buffer.setFlusher(() -> {
+			try
+			{
+				scheduler.triggerJob(jobKey);
+			}
+			catch (SchedulerException e)
+			{
+				throw new IllegalStateException(e.getMessage(), e);
+			}
+		});
+	}
+}
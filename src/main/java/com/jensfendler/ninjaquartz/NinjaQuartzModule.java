@@ -20,13 +20,32 @@ import com.google.inject.Singleton;
 import com.google.inject.matcher.Matchers;
 import com.jensfendler.ninjaquartz.provider.QuartzSchedulerFactoryProvider;
 
+import org.quartz.Job;
 import org.quartz.SchedulerFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import ninja.lifecycle.Start;
 
 /**
+ * The Guice module of NinjaQuartz.
+ * <p>
+ * Besides scheduling methods annotated with
+ * {@link com.jensfendler.ninjaquartz.annotations.QuartzSchedule}, plain Quartz
+ * {@link Job} classes can be declared with their schedule when installing the
+ * module, e.g.
+ *
+ * <code>
+ * install(new NinjaQuartzModule().job(CleanupJob.class, ScheduleOptions.cron("0 0 3 * * ?")));
+ * </code>
+ * <p>
+ * Instances of these job classes are created by Guice. Their bindings are
+ * validated when the injector is created, so a missing binding fails the
+ * application start instead of the first fire.
+ *
  * @author Jens Fendler
  */
 public class NinjaQuartzModule extends AbstractModule
@@ -34,6 +53,27 @@ public class NinjaQuartzModule extends AbstractModule
 
 	private static final Logger logger = LoggerFactory.getLogger(NinjaQuartzModule.class);
 
+	/**
+	 * The job classes declared through {@link #job(Class, ScheduleOptions)}
+	 */
+	private final Map<Class<? extends Job>, ScheduleOptions> jobs = new LinkedHashMap<>();
+
+	/**
+	 * Declare a Quartz {@link Job} class to be scheduled when Ninja starts.
+	 * Instances of the job class are created by Guice, honouring its scope.
+	 *
+	 * @param jobClass the job class
+	 * @param options  the scheduling options. Concurrency and persistence are
+	 *                 determined by the Quartz annotations of the job class
+	 *                 (e.g. {@link org.quartz.DisallowConcurrentExecution}).
+	 * @return this module
+	 */
+	public NinjaQuartzModule job(Class<? extends Job> jobClass, ScheduleOptions options)
+	{
+		jobs.put(jobClass, options.copy());
+		return this;
+	}
+
 	/**
 	 * @see com.google.inject.AbstractModule#configure()
 	 */
@@ -50,6 +90,14 @@ public class NinjaQuartzModule extends AbstractModule
 		NinjaQuartzSchedulerRegistration schedulerRegistration = new NinjaQuartzSchedulerRegistration();
 		requestInjection(schedulerRegistration);
 
+		for (Map.Entry<Class<? extends Job>, ScheduleOptions> job : jobs.entrySet())
+		{
+			// requesting the provider makes Guice validate the job's bindings
+			// when the injector is created
+			getProvider(job.getKey());
+			schedulerRegistration.addJobClass(job.getKey(), job.getValue());
+		}
+
 		bindListener(Matchers.any(), new NinjaQuartzTypeListener(schedulerRegistration));
 		bind(NinjaQuartzSchedulerRegistration.class).toInstance(schedulerRegistration);
 
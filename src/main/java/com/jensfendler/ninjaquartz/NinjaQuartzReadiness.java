@@ -0,0 +1,168 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import org.quartz.JobKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import ninja.utils.NinjaProperties;
+
+/**
+ * Tells if the warm-up jobs (see
+ * {@link com.jensfendler.ninjaquartz.annotations.QuartzSchedule#warmup()})
+ * have finished their first runs after Ninja has started, e.g. for a
+ * readiness check keeping traffic away until caches have been filled. The
+ * application is ready when all warm-up runs have finished (successfully or
+ * not), or when <code>quartz.warmup.timeout</code> milliseconds (default:
+ * 60000) have passed since the schedulers have been built.
+ * <p>
+ * Each scheduler keeps the instance in its {@link org.quartz.SchedulerContext}
+ * under {@link #SCHEDULER_CONTEXT_KEY}, so that warm-up runs can report their
+ * end.
+ *
+ * @author Jens Fendler
+ */
+@Singleton
+public class NinjaQuartzReadiness
+{
+
+	protected static final Logger logger = LoggerFactory.getLogger(NinjaQuartzModule.class);
+
+	/**
+	 * The key of this instance in the context of each scheduler.
+	 */
+	public static final String SCHEDULER_CONTEXT_KEY = "nqReadiness";
+
+	public static final String CONF_WARMUP_TIMEOUT = "quartz.warmup.timeout";
+
+	public static final int DEFAULT_WARMUP_TIMEOUT = 60000;
+
+	private final long timeoutMillis;
+
+	private final Set<JobKey> pending = new LinkedHashSet<>();
+
+	/**
+	 * The end of the warm-up timeout, or 0 before the schedulers have been
+	 * built
+	 */
+	private long deadline;
+
+	private volatile boolean ready;
+
+	@Inject
+	public NinjaQuartzReadiness(NinjaProperties ninjaProperties)
+	{
+		this.timeoutMillis = ninjaProperties.getIntegerWithDefault(CONF_WARMUP_TIMEOUT, DEFAULT_WARMUP_TIMEOUT);
+	}
+
+	/**
+	 * Start waiting for the first runs of the given warm-up jobs.
+	 *
+	 * @param warmupJobs the keys of the warm-up jobs
+	 */
+	synchronized void start(Set<JobKey> warmupJobs)
+	{
+		pending.addAll(warmupJobs);
+		deadline = System.currentTimeMillis() + timeoutMillis;
+		if (pending.isEmpty())
+		{
+			ready = true;
+		}
+		else
+		{
+			logger.info("Waiting up to {}ms for {} warm-up jobs", timeoutMillis, pending.size());
+		}
+	}
+
+	/**
+	 * Record the end of the first run of a job fired on start.
+	 *
+	 * @param jobKey the key of the job
+	 */
+	public synchronized void finished(JobKey jobKey)
+	{
+		if (pending.remove(jobKey) && pending.isEmpty() && !ready)
+		{
+			logger.info("All warm-up jobs have finished");
+			ready = true;
+			notifyAll();
+		}
+	}
+
+	/**
+	 * @return true if all warm-up jobs have finished their first runs, or the
+	 * warm-up timeout has passed
+	 */
+	public boolean isReady()
+	{
+		if (ready)
+		{
+			return true;
+		}
+		synchronized (this)
+		{
+			if (deadline > 0 && System.currentTimeMillis() >= deadline)
+			{
+				logger.warn("Warm-up timeout passed before warm-up jobs {} finished", pending);
+				ready = true;
+			}
+			return ready;
+		}
+	}
+
+	/**
+	 * Wait until the application is ready.
+	 *
+	 * @param timeout the maximum time to wait
+	 * @param unit    the time unit of the timeout
+	 * @return true if the application is ready
+	 * @throws InterruptedException if the thread is interrupted while waiting
+	 */
+	public synchronized boolean awaitReady(long timeout, TimeUnit unit) throws InterruptedException
+	{
+		long end = System.currentTimeMillis() + unit.toMillis(timeout);
+		while (!isReady())
+		{
+			long now = System.currentTimeMillis();
+			if (now >= end)
+			{
+				return false;
+			}
+			// wake up for the warm-up timeout, too
+			wait(Math.max(1, Math.min(end, deadline > 0 ? deadline : end) - now));
+		}
+		return true;
+	}
+
+	/**
+	 * @return the keys of the warm-up jobs which have not finished their first
+	 * runs yet
+	 */
+	public synchronized Set<JobKey> getPending()
+	{
+		return Collections.unmodifiableSet(new LinkedHashSet<>(pending));
+	}
+
+}
@@ -15,43 +15,54 @@
  */
 package com.jensfendler.ninjaquartz;
 
+import com.google.inject.ConfigurationException;
 import com.google.inject.Inject;
 import com.google.inject.Injector;
 import com.google.inject.Provider;
 import com.google.inject.Singleton;
+import com.google.inject.util.Providers;
 import com.jensfendler.ninjaquartz.annotations.QuartzSchedule;
-import com.jensfendler.ninjaquartz.job.AbstractNinjaQuartzJob;
-import com.jensfendler.ninjaquartz.job.AbstractNinjaQuartzTaskImpl;
-import com.jensfendler.ninjaquartz.job.ConcurrentNinjaQuartzJob;
-import com.jensfendler.ninjaquartz.job.ConcurrentStatefulNinjaQuartzJob;
+import com.jensfendler.ninjaquartz.batch.BatchBuffer;
+import com.jensfendler.ninjaquartz.jmx.NinjaQuartzJmx;
+import com.jensfendler.ninjaquartz.job.AttachedTasks;
+import com.jensfendler.ninjaquartz.job.LazySingletonProvider;
+import com.jensfendler.ninjaquartz.job.NinjaQuartzJobFactory;
+import com.jensfendler.ninjaquartz.job.NinjaQuartzJobStatus;
 import com.jensfendler.ninjaquartz.job.NinjaQuartzTask;
-import com.jensfendler.ninjaquartz.job.NonConcurrentNinjaQuartzJob;
-import com.jensfendler.ninjaquartz.job.NonConcurrentStatefulNinjaQuartzJob;
+import com.jensfendler.ninjaquartz.job.RunnableTask;
 
-import org.quartz.CronScheduleBuilder;
 import org.quartz.CronTrigger;
-import org.quartz.JobBuilder;
+import org.quartz.Job;
 import org.quartz.JobDetail;
-import org.quartz.JobExecutionContext;
+import org.quartz.JobKey;
 import org.quartz.ObjectAlreadyExistsException;
 import org.quartz.Scheduler;
 import org.quartz.SchedulerException;
-import org.quartz.SchedulerFactory;
-import org.quartz.TriggerBuilder;
+import org.quartz.Trigger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
+import ninja.utils.NinjaMode;
 import ninja.utils.NinjaProperties;
+import ninja.utils.NinjaPropertiesImpl;
 
 /**
+ * Schedules annotated methods, {@link Job} classes and tasks. The features
+ * of scheduled jobs are implemented by the components this class delegates
+ * to: {@link SchedulerSetup}, {@link JobDefinitions}, {@link MethodTasks},
+ * {@link WrapperOptions}, {@link StartupFires} and
+ * {@link ConfiguredSchedules}.
+ *
  * @author Jens Fendler
  */
 @Singleton
@@ -88,14 +99,14 @@ public class NinjaQuartzSchedulerRegistration
 	protected static final String JOB_GROUP_PREFIX = "nqJG-";
 
 	/**
-	 * The key name of the property in application.conf which may contain the
-	 * file name of the quartz.properties file to use for initialising the
-	 * Quartz library.
+	 * Name prefix for jobs scheduled at run time without a job name.
 	 */
-	protected static final String CONF_KEY_QUARTZ_PROPERTIES = "quartz.properties";
+	protected static final String RUNTIME_JOB_NAME = "runnable-";
 
-	@Inject
-	protected Provider<SchedulerFactory> schedulerFactoryProvider;
+	/**
+	 * Group name for jobs scheduled at run time without a job group.
+	 */
+	protected static final String RUNTIME_GROUP = "runtime";
 
 	@Inject
 	protected NinjaProperties ninjaProperties;
@@ -103,11 +114,29 @@ public class NinjaQuartzSchedulerRegistration
 	@Inject
 	protected Injector injector;
 
-	/**
-	 * If false, {@link #initialise()} will be called exactly once to read a
-	 * user-provided quartz.properties file.
-	 */
-	protected boolean initialised;
+	@Inject
+	protected NinjaQuartzJmx jmx;
+
+	@Inject
+	protected NinjaQuartzJobFactory jobFactory;
+
+	@Inject
+	protected SchedulerSetup schedulerSetup;
+
+	@Inject
+	protected JobDefinitions jobDefinitions;
+
+	@Inject
+	protected MethodTasks methodTasks;
+
+	@Inject
+	protected WrapperOptions wrapperOptions;
+
+	@Inject
+	protected StartupFires startupFires;
+
+	@Inject
+	protected ConfiguredSchedules configuredSchedules;
 
 	/**
 	 * Indicates if schedulers are allowed to be created directly
@@ -121,11 +150,15 @@ public class NinjaQuartzSchedulerRegistration
 	private final List<FutureRegistration> futureRegistrations = new ArrayList<>();
 
 	/**
-	 * Instantiate the helper class, and require initialisation.
+	 * Counter for the generated names of jobs scheduled at run time
+	 */
+	private final AtomicLong runtimeJobs = new AtomicLong();
+
+	/**
+	 * Instantiate the helper class.
 	 */
 	public NinjaQuartzSchedulerRegistration()
 	{
-		initialised = false;
 	}
 
 	/**
@@ -136,16 +169,116 @@ public class NinjaQuartzSchedulerRegistration
 		synchronized (futureRegistrations)
 		{
 			allowSchedulerCreation = true;
+			// let tuning profiles size the thread pool
+			schedulerSetup.beginStartup(futureRegistrations.size());
 
 			// Now create the schedulers for any collected methods
 			for (FutureRegistration futureRegistration : futureRegistrations)
 			{
-				scheduleMethod(futureRegistration.instance, futureRegistration.method, futureRegistration.annotation);
+				if (futureRegistration.jobClass != null)
+				{
+					scheduleFutureJobClass(futureRegistration);
+				}
+				else if (futureRegistration.task != null)
+				{
+					scheduleFutureTask(futureRegistration);
+				}
+				else
+				{
+					scheduleMethod(futureRegistration.instance, futureRegistration.method,
+							futureRegistration.annotation);
+				}
 			}
 			futureRegistrations.clear();
+
+			schedulerSetup.finishStartup();
+			startupFires.fireAll();
+		}
+	}
+
+	private void scheduleFutureTask(FutureRegistration futureRegistration)
+	{
+		try
+		{
+			scheduleTask(futureRegistration.task, futureRegistration.options, futureRegistration.source);
+		}
+		catch (SchedulerException e)
+		{
+			logger.error("Failed to schedule " + futureRegistration.source, e);
+		}
+	}
+
+	private void scheduleFutureJobClass(FutureRegistration futureRegistration)
+	{
+		try
+		{
+			scheduleJobClass(futureRegistration.jobClass, futureRegistration.options);
+		}
+		catch (SchedulerException e)
+		{
+			// the job class was declared in the module, so a failure is fatal
+			throw new IllegalStateException("Failed to schedule " + futureRegistration.source, e);
 		}
 	}
 
+	/**
+	 * Register a Quartz {@link Job} class declared in the
+	 * {@link NinjaQuartzModule}, to be scheduled when Ninja starts.
+	 *
+	 * @param jobClass the job class. Instances are created by Guice.
+	 * @param options  the scheduling options
+	 */
+	void addJobClass(Class<? extends Job> jobClass, ScheduleOptions options)
+	{
+		synchronized (futureRegistrations)
+		{
+			futureRegistrations.add(new FutureRegistration(jobClass, options));
+		}
+	}
+
+	/**
+	 * Schedule a Quartz {@link Job} class. Instances of the class are created
+	 * by Guice, through a provider which is resolved here (i.e. not when the
+	 * job is fired).
+	 *
+	 * @param jobClass the job class
+	 * @param options  the scheduling options. The concurrency and persistence
+	 *                 of the job are determined by the Quartz annotations of
+	 *                 the job class, not by the options. Options which only
+	 *                 apply to scheduled methods and tasks (e.g.
+	 *                 <code>dependsOn</code> or <code>rateLimit</code>) are
+	 *                 rejected.
+	 * @return the key of the scheduled job
+	 * @throws SchedulerException if the options are not supported for job
+	 *                            classes, the job class cannot be provided, or
+	 *                            the job cannot be scheduled
+	 */
+	public JobKey scheduleJobClass(Class<? extends Job> jobClass, ScheduleOptions options) throws SchedulerException
+	{
+		WrapperOptions.checkJobClassOptions(jobClass, options);
+		jobFactory.prepare(jobClass);
+
+		ScheduleOptions resolved = withDefaultNames(options, jobClass.getSimpleName(), jobClass.getName());
+		JobDetail jobDetail = jobDefinitions.createJobDetail(jobClass, resolved);
+		CronTrigger cronTrigger = jobDefinitions.createCronTrigger(resolved, jobClass.getName());
+
+		Scheduler scheduler = schedulerSetup.getScheduler(resolved.getScheduler());
+		scheduleJob(scheduler, jobDetail, cronTrigger);
+
+		NinjaQuartzJobStatus status = new NinjaQuartzJobStatus();
+		schedulerSetup.registerStatus(jobDetail.getKey(), status);
+		registerScheduledJob(scheduler, status, resolved, jobDetail, cronTrigger);
+
+		if (resolved.isFireOnStart() || resolved.isWarmup())
+		{
+			logger.warn("Job class {} is not fired on start. Only scheduled methods and tasks are.", jobClass.getName());
+		}
+
+		logger.info("Scheduled job class {} with cron schedule '{}'", jobClass.getName(),
+				cronTrigger.getCronExpression());
+		return jobDetail.getKey();
+	}
+
 	/**
 	 * Scans all methods of the given object's class for NinjaQuartz scheduler
 	 * annotations, and schedules these for execution using the given object.
@@ -155,11 +288,6 @@ public class NinjaQuartzSchedulerRegistration
 	 */
 	public void scheduleTarget(Object target)
 	{
-		if (!initialised)
-		{
-			initialise();
-		}
-
 		logger.debug("Scheduling target object of type {}", target.getClass().getName());
 
 		Class<?> clazz = target.getClass();
@@ -174,24 +302,32 @@ public class NinjaQuartzSchedulerRegistration
 	}
 
 	/**
-	 * Initialise the Quartz library before its first use
+	 * Re-reads application.conf (for the current Ninja mode) and applies
+	 * changed cron schedules.
+	 *
+	 * @return the number of rescheduled triggers
+	 * @see #reloadSchedules(NinjaProperties)
 	 */
-	private void initialise()
+	public int reloadSchedules()
 	{
-		String quartzPropertiesFileName = ninjaProperties.get(CONF_KEY_QUARTZ_PROPERTIES);
-		if (quartzPropertiesFileName != null)
-		{
-			logger.info("Initialising Quartz library using {}", quartzPropertiesFileName);
-			System.setProperty("org.quartz.properties", quartzPropertiesFileName);
-		}
-		else
-		{
-			// Initialise with default values
-			logger.info("Initialising Quartz library with default properties. Set '{}' in application.conf for custom properties.", CONF_KEY_QUARTZ_PROPERTIES);
-			System.setProperty("org.quartz.scheduler.instanceName", "NinjaQuartz");
-		}
+		NinjaMode mode = ninjaProperties.isProd() ? NinjaMode.prod
+				: ninjaProperties.isDev() ? NinjaMode.dev : NinjaMode.test;
+		return reloadSchedules(new NinjaPropertiesImpl(mode));
+	}
 
-		initialised = true;
+	/**
+	 * Reschedules all cron triggers whose schedule has been read from a
+	 * property in application.conf, and whose property has a different value
+	 * in the given {@link NinjaProperties}. Triggers with unchanged schedules
+	 * are not touched, so the Quartz job store is only accessed for changed
+	 * triggers.
+	 *
+	 * @param properties the (re-read) properties to take the schedules from
+	 * @return the number of rescheduled triggers
+	 */
+	public int reloadSchedules(NinjaProperties properties)
+	{
+		return configuredSchedules.reload(properties);
 	}
 
 	/**
@@ -216,293 +352,406 @@ public class NinjaQuartzSchedulerRegistration
 
 		logger.debug("Scheduling method {} from class {}...", method.getName(), target.getClass().getName());
 
-		JobDetail jobDetail = createJobDetailToSchedule(target, method, quartzSchedule);
-		CronTrigger cronTrigger = createCronTrigger(method, quartzSchedule);
-		if (cronTrigger == null)
+		String source = method.getDeclaringClass().getName() + "::" + method.getName();
+		try
 		{
-			logger.error("Could not create Quartz trigger. Not scheduling {}.{}.", method.getDeclaringClass().getName(),
-					method.getName());
-			return;
+			ScheduleOptions options = withDefaultNames(ScheduleOptions.of(quartzSchedule), method.getName(),
+					method.getDeclaringClass().getName());
+			BatchBuffer<?> buffer = methodTasks.batchBuffer(method);
+			NinjaQuartzTask task = methodTasks.create(target, method, options, buffer);
+			JobKey jobKey = scheduleTask(task, options, source);
+			if (buffer != null)
+			{
+				MethodTasks.flushOnSize(buffer, schedulerSetup.getScheduler(options.getScheduler()), jobKey);
+			}
 		}
-
-		try
+		catch (ObjectAlreadyExistsException e)
 		{
-			Scheduler scheduler = createScheduler();
-			scheduler.scheduleJob(jobDetail, cronTrigger);
-			logger.info("Scheduled {}::{} with cron schedule '{}'", method.getDeclaringClass().getName(),
-					method.getName(), cronTrigger.getCronExpression());
+			// for some reason we're trying to schedule the same method
+			// multiple times. not to worry - unless the task name/group is
+			// the same
+			logger.debug("Not scheduling {} twice: {}", source, e.getMessage());
 		}
 		catch (SchedulerException e)
 		{
-			if (e instanceof ObjectAlreadyExistsException)
-			{
-				// for some reason we're trying to schedule the same method
-				// multiple times. not to worry - unless the task name/group is
-				// the same
-				logger.debug("Not scheduling " + method.getDeclaringClass().getName() + "." + method.getName()
-						+ " twice: {}", e.getMessage());
-			}
-			else
-			{
-				logger.error("Failed to schedule " + method.getDeclaringClass().getName() + "." + method.getName(), e);
-			}
+			logger.error("Failed to schedule " + source, e);
+		}
+		catch (ConfigurationException e)
+		{
+			// a parameter without a binding must not keep the other methods
+			// from being scheduled
+			logger.error("Failed to schedule " + source + ": a parameter cannot be provided", e);
 		}
 	}
 
-	private JobDetail createJobDetailToSchedule(final Object target, final Method method, QuartzSchedule quartzSchedule)
+	/**
+	 * Schedules execution of a method at run time.
+	 *
+	 * @param target  the instance to invoke the method on
+	 * @param method  the method to schedule. Parameters are provided like for
+	 *                methods annotated with {@link QuartzSchedule}.
+	 * @param options the scheduling options
+	 * @return the key of the scheduled job
+	 * @throws SchedulerException if the job cannot be scheduled
+	 */
+	public JobKey scheduleMethod(Object target, Method method, ScheduleOptions options) throws SchedulerException
 	{
-		// get job parameters from the annotation
-		String jobName = quartzSchedule.jobName();
-		if (QuartzSchedule.DEFAULT_JOB_NAME.equals(jobName))
+		ScheduleOptions resolved = withDefaultNames(options,
+				options.getJobName() != null ? options.getJobName() : method.getName(),
+				method.getDeclaringClass().getName());
+		NinjaQuartzTask task;
+		try
 		{
-			// by default, use a unique job name for all scheduled methods
-			jobName = JOB_NAME_PREFIX + method.getName();
+			task = methodTasks.create(target, method, resolved, null);
 		}
-
-		String jobGroup = quartzSchedule.jobGroup();
-		if (QuartzSchedule.DEFAULT_JOB_GROUP.equals(jobGroup))
+		catch (ConfigurationException e)
 		{
-			// by default, use the same group name for all scheduled methods
-			// within the same declaring class
-			jobGroup = JOB_GROUP_PREFIX + method.getDeclaringClass().getName();
+			throw new SchedulerException("A parameter of " + method + " cannot be provided", e);
 		}
+		return scheduleAtRuntime(task, resolved, method.getDeclaringClass().getName() + "::" + method.getName());
+	}
+
+	/**
+	 * Schedules a {@link Runnable} at run time.
+	 *
+	 * @param runnable the runnable to run
+	 * @param options  the scheduling options
+	 * @return the key of the scheduled job
+	 * @throws SchedulerException if the job cannot be scheduled
+	 */
+	public JobKey scheduleRunnable(Runnable runnable, ScheduleOptions options) throws SchedulerException
+	{
+		return scheduleRunnable(Providers.of(runnable), options);
+	}
 
-		String jobDescription = quartzSchedule.jobDescription();
-		if (QuartzSchedule.DEFAULT_JOB_DESCRIPTION.equals(jobDescription))
+	/**
+	 * Schedules a Guice-bound {@link Runnable} at run time. The provider of the
+	 * runnable is resolved right here, so a missing binding fails immediately.
+	 *
+	 * @param runnableType the type of the runnable to run
+	 * @param options      the scheduling options
+	 * @return the key of the scheduled job
+	 * @throws SchedulerException if the job cannot be scheduled
+	 */
+	public JobKey scheduleRunnable(Class<? extends Runnable> runnableType, ScheduleOptions options)
+			throws SchedulerException
+	{
+		Provider<? extends Runnable> provider;
+		try
+		{
+			provider = singletonOrProvider(runnableType);
+		}
+		catch (ConfigurationException e)
 		{
-			jobDescription = null;
+			throw new SchedulerException("No binding for " + runnableType.getName(), e);
 		}
+		return scheduleRunnable(provider, options);
+	}
 
-		boolean jobRecovery = quartzSchedule.jobRecovery();
-		boolean jobDurability = quartzSchedule.jobDurability();
-		boolean allowParallelInvocations = quartzSchedule.allowConcurrent();
-		boolean persistent = quartzSchedule.persistent();
+	private JobKey scheduleRunnable(Provider<? extends Runnable> provider, ScheduleOptions options)
+			throws SchedulerException
+	{
+		ScheduleOptions resolved = withDefaultNames(options,
+				options.getJobName() != null ? options.getJobName() : RUNTIME_JOB_NAME + runtimeJobs.incrementAndGet(),
+				RUNTIME_GROUP);
+		NinjaQuartzTask task = new RunnableTask(resolved.getJobName() + "/" + resolved.getJobGroup(), provider,
+				resolved.isRemoveOnError(), resolved.isForceKeep());
+		return scheduleAtRuntime(task, resolved, task.getTaskName());
+	}
 
-		// create the job to execute
-		NinjaQuartzTask task = new AbstractNinjaQuartzTaskImpl(jobName + "/" + jobGroup)
+	/**
+	 * Schedules many {@link Runnable}s with the same options at run time, using
+	 * a single call to {@link Scheduler#scheduleJobs(Map, boolean)} (i.e. a
+	 * single transaction with a JDBC job store).
+	 *
+	 * @param runnablesByJobName the runnables to schedule, by job name
+	 * @param options            the scheduling options for all runnables. The job
+	 *                           and trigger names are taken from the map keys.
+	 * @return the keys of all scheduled jobs
+	 * @throws SchedulerException if the jobs cannot be scheduled
+	 */
+	public List<JobKey> scheduleRunnables(Map<String, ? extends Runnable> runnablesByJobName,
+			ScheduleOptions options) throws SchedulerException
+	{
+		List<ScheduledJob> jobs = new ArrayList<>(runnablesByJobName.size());
+		for (Map.Entry<String, ? extends Runnable> entry : runnablesByJobName.entrySet())
 		{
-			@Override
-			public void execute(JobExecutionContext context)
-					throws IllegalAccessException, IllegalArgumentException, InvocationTargetException
-			{
-				if (method.getParameterTypes().length == 0)
-				{
-					// no arguments
-					method.invoke(target);
+			ScheduleOptions resolved = withDefaultNames(options.copy().jobName(entry.getKey()).triggerName(null),
+					entry.getKey(), RUNTIME_GROUP);
+			NinjaQuartzTask task = new RunnableTask(resolved.getJobName() + "/" + resolved.getJobGroup(),
+					Providers.of(entry.getValue()), resolved.isRemoveOnError(), resolved.isForceKeep());
+			jobs.add(prepareJob(task, resolved, task.getTaskName()));
+		}
 
-				}
-				else
+		List<JobKey> jobKeys = new ArrayList<>(jobs.size());
+		synchronized (futureRegistrations)
+		{
+			if (!allowSchedulerCreation)
+			{
+				// Ninja has not been started yet
+				for (ScheduledJob job : jobs)
 				{
-					// multiple arguments. try to inject parameters through
-					// guice
-					Object[] parameters = new Object[method.getParameterTypes().length];
-					int i = 0;
-					for (Class<?> type : method.getParameterTypes())
-					{
-						Object obj;
-						if (JobExecutionContext.class.isAssignableFrom(method.getParameterTypes()[i]))
-						{
-							// support mix of JobExecutionContext and other
-							// (injected) arguments
-							obj = context;
-						}
-						else
-						{
-							obj = injector.getInstance(type);
-						}
-						if (obj == null)
-						{
-							// guice did not provide an object
-							logger.warn("Using null value for parameter of type {} in call to scheduled method {}",
-									type.getName(), method.getName());
-						}
-						parameters[i++] = obj;
-					}
-					method.invoke(target, parameters);
+					futureRegistrations.add(new FutureRegistration(job.task, job.options, job.task.getTaskName()));
+					jobKeys.add(job.jobDetail.getKey());
 				}
+				return jobKeys;
 			}
-		};
+		}
 
-		// determine the job wrapper class to use (the classes provide different
-		// annotations to support the requested Quartz functionality)
-		Class<? extends AbstractNinjaQuartzJob> jobClass;
-		if (allowParallelInvocations)
+		Scheduler scheduler = schedulerSetup.getScheduler(options.getScheduler());
+		Map<JobDetail, Set<? extends Trigger>> triggersAndJobs = new LinkedHashMap<>();
+		for (ScheduledJob job : jobs)
 		{
-			// concurrent jobs
-			if (persistent)
-			{
-				// concurrent, and persistent
-				jobClass = ConcurrentStatefulNinjaQuartzJob.class;
-			}
-			else
-			{
-				// concurrent, not not persistent
-				jobClass = ConcurrentNinjaQuartzJob.class;
-			}
+			wrapperOptions.checkDependencies(scheduler, job.jobDetail.getKey(), job.options);
+			// jobs fired by their dependencies only are durable
+			triggersAndJobs.put(job.jobDetail,
+					job.trigger == null ? Collections.<Trigger>emptySet() : Collections.singleton(job.trigger));
 		}
-		else
+
+		AttachedTasks attachedTasks = AttachedTasks.of(scheduler);
+		for (ScheduledJob job : jobs)
 		{
-			// non-concurrent jobs
-			if (persistent)
-			{
-				// non-concurrent, and persistent
-				jobClass = NonConcurrentStatefulNinjaQuartzJob.class;
-			}
-			else
+			attachedTasks.attach(job.task);
+		}
+		try
+		{
+			// jobs in persistent job stores may exist from a previous run
+			scheduler.scheduleJobs(triggersAndJobs, scheduler.getMetaData().isJobStoreSupportsPersistence());
+		}
+		catch (SchedulerException e)
+		{
+			for (ScheduledJob job : jobs)
 			{
-				// non-concurrent, and not persistent
-				jobClass = NonConcurrentNinjaQuartzJob.class;
+				attachedTasks.detach(job.task);
 			}
+			throw e;
 		}
 
-		JobBuilder jobBuilder = JobBuilder.newJob(jobClass).withIdentity(jobName, jobGroup).requestRecovery(jobRecovery)
-				.storeDurably(jobDurability);
-		if (jobDescription != null)
+		for (ScheduledJob job : jobs)
 		{
-			jobBuilder = jobBuilder.withDescription(jobDescription);
+			wrapperOptions.register(scheduler, job.jobDetail.getKey(), job.options);
+			jobScheduled(scheduler, job);
+			jobKeys.add(job.jobDetail.getKey());
 		}
-		JobDetail jobDetail = jobBuilder.build();
-		// let the NinjaQuartzJob know which task (wrapping our scheduled
-		// method) we want to execute
-		jobDetail.getJobDataMap().put(AbstractNinjaQuartzJob.JOB_TASK_KEY, task);
-
-		// store other properties from the annotation in the job's context.
-		jobDetail.getJobDataMap().put(AbstractNinjaQuartzJob.JOB_REMOVE_ON_RUNTIME_ERROR,
-				quartzSchedule.removeOnError());
-		jobDetail.getJobDataMap().put(AbstractNinjaQuartzJob.JOB_FORCE_KEEP, quartzSchedule.forceKeep());
-
-		logger.debug("Created new job {} in group: {}.", jobName, jobGroup);
-		return jobDetail;
+		logger.info("Scheduled {} runnables with cron schedule '{}'", jobs.size(), options.getCronSchedule());
+		return jobKeys;
 	}
 
-	private CronTrigger createCronTrigger(Method method, QuartzSchedule quartzSchedule)
+	private JobKey scheduleAtRuntime(NinjaQuartzTask task, ScheduleOptions options, String source)
+			throws SchedulerException
 	{
-		// get trigger parameters from the annotation
-
-		String triggerName = quartzSchedule.triggerName();
-		if (QuartzSchedule.DEFAULT_TRIGGER_NAME.equals(triggerName))
+		synchronized (futureRegistrations)
 		{
-			// by default, use a unique trigger name for each scheduled method
-			triggerName = CRON_TRIGGER_NAME_PREFIX + method.getName();
+			if (!allowSchedulerCreation)
+			{
+				// Ninja has not been started yet
+				futureRegistrations.add(new FutureRegistration(task, options, source));
+				return JobKey.jobKey(options.getJobName(), options.getJobGroup());
+			}
 		}
+		return scheduleTask(task, options, source);
+	}
 
-		String triggerGroup = quartzSchedule.triggerGroup();
-		if (QuartzSchedule.DEFAULT_TRIGGER_GROUP.equals(triggerGroup))
+	/**
+	 * Schedule a job with a cron trigger. A job existing in a persistent job
+	 * store (i.e. recovered from a previous run) is replaced, and keeps its
+	 * trigger (and fire times) unless the cron expression has changed.
+	 *
+	 * @param scheduler   the scheduler
+	 * @param jobDetail   the job
+	 * @param cronTrigger the trigger of the job
+	 * @throws SchedulerException if the job cannot be scheduled
+	 */
+	private static void scheduleJob(Scheduler scheduler, JobDetail jobDetail, CronTrigger cronTrigger)
+			throws SchedulerException
+	{
+		if (!scheduler.getMetaData().isJobStoreSupportsPersistence() || !scheduler.checkExists(jobDetail.getKey()))
 		{
-			// by default, use the same trigger group name for all methods
-			// within the same declaring class.
-			triggerGroup = CRON_TRIGGER_GROUP_PREFIX + method.getDeclaringClass().getName();
+			scheduler.scheduleJob(jobDetail, cronTrigger);
+			return;
 		}
 
-		Date startAt = parseTriggerDatetime(quartzSchedule.triggerStartAt(), method);
-		Date endAt = parseTriggerDatetime(quartzSchedule.triggerEndAt(), method);
-		int triggerPriority = quartzSchedule.triggerPriority();
-		int misfirePolicy = quartzSchedule.cronScheduleMisfirePolicy();
-
-		// check for an application.conf key name specified instead of a
-		// directly specified schedule string
-		String appConfCronSchedule = ninjaProperties.get(quartzSchedule.cronSchedule());
-		// if we have a non-null value from application.conf, we use that.
-		// otherwise assume a schedule was directly given in the annotation
-		String cronSchedule;
-		if (appConfCronSchedule != null)
+		scheduler.addJob(jobDetail, true, true);
+		Trigger existing = scheduler.getTrigger(cronTrigger.getKey());
+		if (existing == null)
+		{
+			scheduler.scheduleJob(cronTrigger);
+		}
+		else if (!(existing instanceof CronTrigger)
+				|| !((CronTrigger) existing).getCronExpression().equals(cronTrigger.getCronExpression()))
 		{
-			cronSchedule = appConfCronSchedule;
-			logger.debug("Using cronSchedule from application.conf property '{}': {}", quartzSchedule.cronSchedule(),
-					cronSchedule);
+			scheduler.rescheduleJob(cronTrigger.getKey(), cronTrigger);
 		}
 		else
 		{
-			cronSchedule = quartzSchedule.cronSchedule();
-			logger.debug("Using cronSchedule as provided in annotation: {}", cronSchedule);
+			logger.debug("Keeping recovered trigger {} of job {}", existing.getKey(), jobDetail.getKey());
 		}
+	}
 
-		// build the cron schedule
-		CronScheduleBuilder csb;
-		try
+	/**
+	 * Fill in the default job and trigger names (and groups) for all names not
+	 * set in the given options.
+	 *
+	 * @param options the options to take the names from
+	 * @param name    the name to derive default job and trigger names from
+	 * @param group   the name to derive default job and trigger groups from
+	 * @return a copy of the options, with all names set
+	 */
+	private static ScheduleOptions withDefaultNames(ScheduleOptions options, String name, String group)
+	{
+		ScheduleOptions resolved = options.copy();
+		if (resolved.getJobName() == null)
 		{
-			csb = CronScheduleBuilder.cronScheduleNonvalidatedExpression(cronSchedule);
+			// by default, use a unique job name for all scheduled methods
+			resolved.jobName(JOB_NAME_PREFIX + name);
 		}
-		catch (ParseException e)
+		if (resolved.getJobGroup() == null)
 		{
-			logger.error("Invalid cron schedule '" + cronSchedule + "' for method "
-					+ method.getDeclaringClass().getName() + "." + method.getName(), e);
-			return null;
+			// by default, use the same group name for all scheduled methods
+			// within the same declaring class
+			resolved.jobGroup(JOB_GROUP_PREFIX + group);
 		}
-		switch (misfirePolicy)
+		if (resolved.getTriggerName() == null)
 		{
-			case QuartzSchedule.MISFIRE_POLICY_FIRE_AND_PROCEED:
-				csb = csb.withMisfireHandlingInstructionFireAndProceed();
-				break;
-			case QuartzSchedule.MISFIRE_POLICY_IGNORE:
-				csb = csb.withMisfireHandlingInstructionIgnoreMisfires();
-				break;
-			default:
-				csb = csb.withMisfireHandlingInstructionDoNothing();
-				break;
+			// by default, use a unique trigger name for each scheduled method
+			resolved.triggerName(CRON_TRIGGER_NAME_PREFIX + name);
 		}
+		if (resolved.getTriggerGroup() == null)
+		{
+			// by default, use the same trigger group name for all methods
+			// within the same declaring class.
+			resolved.triggerGroup(CRON_TRIGGER_GROUP_PREFIX + group);
+		}
+		return resolved;
+	}
 
-		// build the trigger
-		TriggerBuilder<CronTrigger> triggerBuilder = TriggerBuilder.newTrigger().withIdentity(triggerName, triggerGroup)
-				.withPriority(triggerPriority).withSchedule(csb);
-		if (quartzSchedule.schedulerDelay() > 0)
+	/**
+	 * Schedule a task with a cron trigger.
+	 *
+	 * @param task    the task to schedule
+	 * @param options the scheduling options, with all names set
+	 * @param source  a description of the task's source, for log messages
+	 * @return the key of the scheduled job
+	 * @throws SchedulerException if the job or trigger cannot be created or
+	 *                            scheduled
+	 */
+	private JobKey scheduleTask(NinjaQuartzTask task, ScheduleOptions options, String source)
+			throws SchedulerException
+	{
+		ScheduledJob job = prepareJob(task, options, source);
+		JobKey jobKey = job.jobDetail.getKey();
+
+		Scheduler scheduler = schedulerSetup.getScheduler(options.getScheduler());
+		wrapperOptions.checkDependencies(scheduler, jobKey, job.options);
+		AttachedTasks attachedTasks = AttachedTasks.of(scheduler);
+		attachedTasks.attach(job.task);
+		try
 		{
-			if (startAt != null)
+			if (job.trigger == null)
 			{
-				logger.error("startAt and schedulerDelay can't be used at the same time");
-				return null;
+				scheduler.addJob(job.jobDetail, true);
+			}
+			else
+			{
+				scheduleJob(scheduler, job.jobDetail, job.trigger);
 			}
-
-			startAt = new Date(System.currentTimeMillis() + quartzSchedule.schedulerDelay() * 1000);
 		}
-
-		if (startAt != null)
+		catch (SchedulerException e)
 		{
-			triggerBuilder = triggerBuilder.startAt(startAt);
+			attachedTasks.detach(job.task);
+			throw e;
 		}
-		if (endAt != null)
+		// the task is attached before the job is stored, so that it is found
+		// even when the job fires right away
+		wrapperOptions.register(scheduler, jobKey, job.options);
+		if (job.trigger == null)
 		{
-			triggerBuilder = triggerBuilder.endAt(endAt);
+			logger.info("Scheduled {} to run after {}", source, wrapperOptions.getUpstream(scheduler, jobKey));
 		}
-
-		CronTrigger trigger = triggerBuilder.build();
-
-		logger.debug("Created new cron trigger with priority {} and schedule {}", triggerPriority, cronSchedule);
-		return trigger;
+		else
+		{
+			logger.info("Scheduled {} with cron schedule '{}'", source, job.trigger.getCronExpression());
+		}
+		jobScheduled(scheduler, job);
+		return jobKey;
 	}
 
-	private Scheduler createScheduler() throws SchedulerException
+	/**
+	 * Create the job (and trigger) for a task. A job with no cron schedule
+	 * which depends on other jobs gets no trigger, and is stored durably, as it
+	 * is only fired by the jobs it depends on.
+	 *
+	 * @param task    the task to schedule
+	 * @param options the scheduling options, with all names set
+	 * @param source  a description of the task's source, for log messages
+	 * @return the job to schedule, with a <code>null</code> trigger for jobs
+	 *         fired by their dependencies only
+	 * @throws SchedulerException if the options are invalid
+	 */
+	private ScheduledJob prepareJob(NinjaQuartzTask task, ScheduleOptions options, String source)
+			throws SchedulerException
 	{
-		SchedulerFactory sf = schedulerFactoryProvider.get();
-		Scheduler scheduler = sf.getScheduler();
-		if (!scheduler.isStarted())
+		task = wrapperOptions.prepare(task, options);
+		JobDetail jobDetail = jobDefinitions.createJobDetail(task, options);
+		if (QuartzSchedule.NO_CRON_SCHEDULE.equals(options.getCronSchedule()) && options.getDependsOn().length > 0)
 		{
-			scheduler.start();
-			logger.debug("Started new scheduler of type {}", scheduler.getClass().getName());
+			return new ScheduledJob(task, options, jobDetail.getJobBuilder().storeDurably().build(), null);
 		}
+		return new ScheduledJob(task, options, jobDetail, jobDefinitions.createCronTrigger(options, source));
+	}
 
-		return scheduler;
+	/**
+	 * Keep track of a job that has just been stored in its scheduler, and fire
+	 * it on start if requested.
+	 */
+	private void jobScheduled(Scheduler scheduler, ScheduledJob job)
+	{
+		registerScheduledJob(scheduler, job.task.getStatus(), job.options, job.jobDetail, job.trigger);
+		startupFires.add(scheduler, job.jobDetail.getKey(), job.options);
 	}
 
-	private Date parseTriggerDatetime(String datetime, Method method)
+	/**
+	 * Keep track of a job that has just been scheduled. Jobs fired by the jobs
+	 * they depend on only have no cron trigger.
+	 */
+	private void registerScheduledJob(Scheduler scheduler, NinjaQuartzJobStatus status, ScheduleOptions options,
+			JobDetail jobDetail, CronTrigger cronTrigger)
 	{
-		if (datetime == null)
+		if (cronTrigger == null)
 		{
-			return null;
+			jmx.register(scheduler, jobDetail.getKey(), null, status);
+			return;
 		}
 
-		SimpleDateFormat sdf = new SimpleDateFormat(TRIGGER_DATETIME_FORMAT);
-		try
-		{
-			return sdf.parse(datetime);
-		}
-		catch (ParseException e)
-		{
-			// this is not necessarily an error. default values are empty.
-			logger.debug("Invalid datetime format for parameter value '{}' on {}.{}. Expected format is '{}'. "
-							+ "Affected Start/End constraint will NOT be used.",
-					datetime, method.getDeclaringClass().getName(), method.getName(), TRIGGER_DATETIME_FORMAT);
-			return null;
-		}
+		status.setCronSchedule(cronTrigger.getCronExpression());
+		status.setNextFireTime(cronTrigger.getNextFireTime());
+		jmx.register(scheduler, jobDetail.getKey(), cronTrigger.getKey(), status);
+		configuredSchedules.add(scheduler, options, cronTrigger, status);
+	}
+
+	/**
+	 * Get a provider for the given type. Singletons are looked up once, on
+	 * first use.
+	 */
+	private <T> Provider<T> singletonOrProvider(Class<T> type)
+	{
+		return LazySingletonProvider.of(injector.getBinding(type));
+	}
+
+	/**
+	 * Create a copy of the given {@link CronTrigger} using a different cron
+	 * expression. The copy keeps the identity, job, priority, calendar, misfire
+	 * instruction and end time of the original trigger. It starts now, or at
+	 * the original start time if that is still in the future.
+	 *
+	 * @param trigger      the trigger to copy
+	 * @param cronSchedule the new cron expression
+	 * @return the new trigger, ready to be passed to
+	 * {@link Scheduler#rescheduleJob(org.quartz.TriggerKey, Trigger)}
+	 * @throws ParseException if the cron expression is invalid
+	 */
+	public static CronTrigger withCronSchedule(CronTrigger trigger, String cronSchedule) throws ParseException
+	{
+		return JobDefinitions.withCronSchedule(trigger, cronSchedule);
 	}
 }
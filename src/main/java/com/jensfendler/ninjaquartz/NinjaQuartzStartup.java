@@ -2,7 +2,13 @@ package com.jensfendler.ninjaquartz;
 
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import com.jensfendler.ninjaquartz.delay.NinjaQuartzDelays;
+import com.jensfendler.ninjaquartz.jmx.NinjaQuartzJmx;
+import com.jensfendler.ninjaquartz.job.WriteBehindJobDataListener;
+import com.jensfendler.ninjaquartz.lock.RunOnceLocks;
+import com.jensfendler.ninjaquartz.provider.NinjaQuartzSchedulers;
 
+import ninja.lifecycle.Dispose;
 import ninja.lifecycle.Start;
 
 @Singleton
@@ -11,6 +17,21 @@ public class NinjaQuartzStartup
 	@Inject
 	private NinjaQuartzSchedulerRegistration schedulerRegistration;
 
+	@Inject
+	private NinjaQuartzJmx jmx;
+
+	@Inject
+	private NinjaQuartzDelays delays;
+
+	@Inject
+	private NinjaQuartzSchedulers schedulers;
+
+	@Inject
+	private WriteBehindJobDataListener writeBehindListener;
+
+	@Inject
+	private RunOnceLocks runOnceLocks;
+
 	/**
 	 * As one of the last steps of the ninja startup the actual schedulers are registered.
 	 * Before this call the annotated methods just have been collected.
@@ -20,4 +41,51 @@ public class NinjaQuartzStartup
 	{
 		schedulerRegistration.buildSchedulers();
 	}
+
+	/**
+	 * Writes the changed job data of write-behind jobs when ninja shuts down,
+	 * before the schedulers are shut down.
+	 */
+	@Dispose(order = 90)
+	public void flushWriteBehind()
+	{
+		writeBehindListener.shutdown();
+	}
+
+	/**
+	 * Removes the MBeans of all scheduled jobs when ninja shuts down.
+	 */
+	@Dispose
+	public void unregisterMBeans()
+	{
+		jmx.unregisterAll();
+	}
+
+	/**
+	 * Stops the timing wheel of delayed tasks when ninja shuts down.
+	 */
+	@Dispose
+	public void stopDelays()
+	{
+		delays.shutdown();
+	}
+
+	/**
+	 * Shuts down the named schedulers when ninja shuts down.
+	 */
+	@Dispose
+	public void shutdownSchedulers()
+	{
+		schedulers.shutdown();
+	}
+
+	/**
+	 * Releases the resources of the lock provider of jobs running once, after
+	 * the schedulers have been shut down.
+	 */
+	@Dispose(order = 10)
+	public void shutdownRunOnceLocks()
+	{
+		runOnceLocks.shutdown();
+	}
 }
@@ -60,7 +60,9 @@ public class NinjaQuartzTypeListener implements TypeListener
 			}
 
 			logger.debug("Scheduling methods in class {}.", type.getRawType().getName());
+			// the listener schedules all annotated methods of the instance
 			encounter.register(new QuartzScheduleInjectionListener<>(scheduleHelper));
+			break;
 		}
 	}
 
@@ -15,13 +15,20 @@
  */
 package com.jensfendler.ninjaquartz;
 
+import com.jensfendler.ninjaquartz.delay.Timeout;
+
 import org.quartz.Job;
 import org.quartz.JobDetail;
+import org.quartz.JobKey;
 import org.quartz.Scheduler;
 import org.quartz.SchedulerException;
 import org.quartz.Trigger;
 
+import java.lang.reflect.Method;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Utility methods which allow users to interact with Quartz objects (i.e.
@@ -37,7 +44,7 @@ import java.util.Collection;
  *
  * @author Jens Fendler
  */
-interface NinjaQuartzUtil
+public interface NinjaQuartzUtil
 {
 
 	/**
@@ -83,4 +90,111 @@ interface NinjaQuartzUtil
 	 * @throws SchedulerException as thrown by the Scheduler
 	 */
 	JobDetail getJobDetail(String jobName, String jobGroup) throws SchedulerException;
-}
\ No newline at end of file
+
+	/**
+	 * Re-reads application.conf and reschedules all jobs whose
+	 * {@link com.jensfendler.ninjaquartz.annotations.QuartzSchedule#cronSchedule()}
+	 * refers to a property with a changed value. Jobs with unchanged schedules
+	 * are not touched.
+	 * <p>
+	 * This can e.g. be called from an admin controller to change the cadence
+	 * of jobs without a restart.
+	 *
+	 * @return the number of rescheduled triggers
+	 */
+	int reloadSchedules();
+
+	/**
+	 * Schedules a {@link Runnable} (e.g. a lambda) at run time. Jobs scheduled
+	 * before Ninja has started are scheduled on start.
+	 *
+	 * @param runnable the runnable to run
+	 * @param options  the scheduling options. Without a job name, a unique job
+	 *                 name is generated.
+	 * @return the key of the scheduled job
+	 * @throws SchedulerException if the job cannot be scheduled, e.g. for an
+	 *                            invalid cron schedule
+	 */
+	JobKey schedule(Runnable runnable, ScheduleOptions options) throws SchedulerException;
+
+	/**
+	 * Schedules a Guice-bound {@link Runnable} at run time. Singletons are
+	 * looked up once, all other runnables are provided by Guice for every
+	 * execution.
+	 *
+	 * @param runnableType the type of the runnable to run
+	 * @param options      the scheduling options
+	 * @return the key of the scheduled job
+	 * @throws SchedulerException if the job cannot be scheduled
+	 */
+	JobKey schedule(Class<? extends Runnable> runnableType, ScheduleOptions options) throws SchedulerException;
+
+	/**
+	 * Schedules a method at run time. The method's parameters are provided
+	 * like for methods annotated with
+	 * {@link com.jensfendler.ninjaquartz.annotations.QuartzSchedule}.
+	 *
+	 * @param target  the instance to invoke the method on
+	 * @param method  the method to run
+	 * @param options the scheduling options
+	 * @return the key of the scheduled job
+	 * @throws SchedulerException if the job cannot be scheduled
+	 */
+	JobKey schedule(Object target, Method method, ScheduleOptions options) throws SchedulerException;
+
+	/**
+	 * Schedules many {@link Runnable}s with the same options in a single call
+	 * to the job store.
+	 *
+	 * @param runnablesByJobName the runnables to run, by job name
+	 * @param options            the scheduling options for all runnables
+	 * @return the keys of the scheduled jobs
+	 * @throws SchedulerException if the jobs cannot be scheduled. No job is
+	 *                            scheduled in this case.
+	 */
+	List<JobKey> scheduleAll(Map<String, ? extends Runnable> runnablesByJobName, ScheduleOptions options)
+			throws SchedulerException;
+
+	/**
+	 * Runs the given task once after the given delay, without creating a
+	 * Quartz job. Delayed tasks are kept in memory only (i.e. they are lost on
+	 * shutdown), and are meant for large numbers of short-lived callbacks like
+	 * expiry or retry timers.
+	 *
+	 * @param task  the task to run
+	 * @param delay the delay
+	 * @param unit  the time unit of the delay
+	 * @return the handle to cancel the task
+	 */
+	Timeout delay(Runnable task, long delay, TimeUnit unit);
+
+	/**
+	 * Fires an existing job once the given delay has passed without another
+	 * call for the same job and key, e.g. to recompute something once after a
+	 * burst of changes. However many calls arrive, each key fires the job
+	 * once. The key is passed to the job in the trigger's job data, under
+	 * {@link com.jensfendler.ninjaquartz.delay.CoalescingTriggers#DATA_KEY}.
+	 * Pending fires are kept in memory only.
+	 *
+	 * @param jobKey  the key of the job to fire
+	 * @param dataKey the key calls are coalesced by
+	 * @param delay   the quiet period before the job fires
+	 * @param unit    the time unit of the delay
+	 * @throws SchedulerException if the job does not exist
+	 */
+	void debounce(JobKey jobKey, String dataKey, long delay, TimeUnit unit) throws SchedulerException;
+
+	/**
+	 * Fires an existing job at once, and at most once per window for the same
+	 * job and key after that. Calls within a window fire the job once more at
+	 * the end of the window. The key is passed to the job like for
+	 * {@link #debounce(JobKey, String, long, TimeUnit)}.
+	 *
+	 * @param jobKey  the key of the job to fire
+	 * @param dataKey the key calls are coalesced by
+	 * @param window  the minimum time between two fires for the key
+	 * @param unit    the time unit of the window
+	 * @throws SchedulerException if the job does not exist
+	 */
+	void throttle(JobKey jobKey, String dataKey, long window, TimeUnit unit) throws SchedulerException;
+}
@@ -17,6 +17,9 @@ package com.jensfendler.ninjaquartz;
 
 import com.google.inject.Inject;
 import com.google.inject.Provider;
+import com.jensfendler.ninjaquartz.delay.CoalescingTriggers;
+import com.jensfendler.ninjaquartz.delay.NinjaQuartzDelays;
+import com.jensfendler.ninjaquartz.delay.Timeout;
 
 import org.quartz.JobDetail;
 import org.quartz.JobKey;
@@ -28,9 +31,13 @@ import org.quartz.impl.matchers.GroupMatcher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.lang.reflect.Method;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author Jens Fendler
@@ -44,13 +51,37 @@ public class NinjaQuartzUtilImpl implements NinjaQuartzUtil
 	 */
 	protected Provider<SchedulerFactory> schedulerFactoryProvider;
 
+	/**
+	 * The {@link NinjaQuartzSchedulerRegistration} as injected to the
+	 * constructor.
+	 */
+	protected NinjaQuartzSchedulerRegistration schedulerRegistration;
+
+	/**
+	 * The {@link NinjaQuartzDelays} as injected to the constructor.
+	 */
+	protected NinjaQuartzDelays delays;
+
+	/**
+	 * The {@link CoalescingTriggers} as injected to the constructor.
+	 */
+	protected CoalescingTriggers coalescingTriggers;
+
 	/**
 	 * @param schedulerFactoryProvider the {@link SchedulerFactory} provider to be injected.
+	 * @param schedulerRegistration    the {@link NinjaQuartzSchedulerRegistration} to be injected.
+	 * @param delays                   the {@link NinjaQuartzDelays} to be injected.
+	 * @param coalescingTriggers       the {@link CoalescingTriggers} to be injected.
 	 */
 	@Inject
-	public NinjaQuartzUtilImpl(Provider<SchedulerFactory> schedulerFactoryProvider)
+	public NinjaQuartzUtilImpl(Provider<SchedulerFactory> schedulerFactoryProvider,
+			NinjaQuartzSchedulerRegistration schedulerRegistration, NinjaQuartzDelays delays,
+			CoalescingTriggers coalescingTriggers)
 	{
 		this.schedulerFactoryProvider = schedulerFactoryProvider;
+		this.schedulerRegistration = schedulerRegistration;
+		this.delays = delays;
+		this.coalescingTriggers = coalescingTriggers;
 	}
 
 	/**
@@ -132,4 +163,77 @@ public class NinjaQuartzUtilImpl implements NinjaQuartzUtil
 		return null;
 	}
 
+	/**
+	 * @see com.jensfendler.ninjaquartz.NinjaQuartzUtil#reloadSchedules()
+	 */
+	public int reloadSchedules()
+	{
+		return schedulerRegistration.reloadSchedules();
+	}
+
+	/**
+	 * @see com.jensfendler.ninjaquartz.NinjaQuartzUtil#schedule(java.lang.Runnable,
+	 * com.jensfendler.ninjaquartz.ScheduleOptions)
+	 */
+	public JobKey schedule(Runnable runnable, ScheduleOptions options) throws SchedulerException
+	{
+		return schedulerRegistration.scheduleRunnable(runnable, options);
+	}
+
+	/**
+	 * @see com.jensfendler.ninjaquartz.NinjaQuartzUtil#schedule(java.lang.Class,
+	 * com.jensfendler.ninjaquartz.ScheduleOptions)
+	 */
+	public JobKey schedule(Class<? extends Runnable> runnableType, ScheduleOptions options)
+			throws SchedulerException
+	{
+		return schedulerRegistration.scheduleRunnable(runnableType, options);
+	}
+
+	/**
+	 * @see com.jensfendler.ninjaquartz.NinjaQuartzUtil#schedule(java.lang.Object,
+	 * java.lang.reflect.Method, com.jensfendler.ninjaquartz.ScheduleOptions)
+	 */
+	public JobKey schedule(Object target, Method method, ScheduleOptions options) throws SchedulerException
+	{
+		return schedulerRegistration.scheduleMethod(target, method, options);
+	}
+
+	/**
+	 * @see com.jensfendler.ninjaquartz.NinjaQuartzUtil#scheduleAll(java.util.Map,
+	 * com.jensfendler.ninjaquartz.ScheduleOptions)
+	 */
+	public List<JobKey> scheduleAll(Map<String, ? extends Runnable> runnablesByJobName, ScheduleOptions options)
+			throws SchedulerException
+	{
+		return schedulerRegistration.scheduleRunnables(runnablesByJobName, options);
+	}
+
+	/**
+	 * @see com.jensfendler.ninjaquartz.NinjaQuartzUtil#delay(java.lang.Runnable, long,
+	 * java.util.concurrent.TimeUnit)
+	 */
+	public Timeout delay(Runnable task, long delay, TimeUnit unit)
+	{
+		return delays.delay(task, delay, unit);
+	}
+
+	/**
+	 * @see com.jensfendler.ninjaquartz.NinjaQuartzUtil#debounce(org.quartz.JobKey, java.lang.String, long,
+	 * java.util.concurrent.TimeUnit)
+	 */
+	public void debounce(JobKey jobKey, String dataKey, long delay, TimeUnit unit) throws SchedulerException
+	{
+		coalescingTriggers.debounce(jobKey, dataKey, delay, unit);
+	}
+
+	/**
+	 * @see com.jensfendler.ninjaquartz.NinjaQuartzUtil#throttle(org.quartz.JobKey, java.lang.String, long,
+	 * java.util.concurrent.TimeUnit)
+	 */
+	public void throttle(JobKey jobKey, String dataKey, long window, TimeUnit unit) throws SchedulerException
+	{
+		coalescingTriggers.throttle(jobKey, dataKey, window, unit);
+	}
+
 }
@@ -0,0 +1,723 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz;
+
+import com.jensfendler.ninjaquartz.annotations.QuartzSchedule;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * The scheduling options of a job, i.e. the run-time equivalent of the
+ * {@link QuartzSchedule} annotation. All options have the same meaning and
+ * defaults as the corresponding annotation parameters.
+ * <p>
+ * Example:
+ *
+ * <code>
+ * quartzUtil.schedule(() -&gt; refresh(tenant),
+ * ScheduleOptions.cron("0 0/5 * * * ?").jobName("refresh-" + tenant).forceKeep(true));
+ * </code>
+ *
+ * @author Jens Fendler
+ */
+public class ScheduleOptions
+{
+
+	protected static final Logger logger = LoggerFactory.getLogger(NinjaQuartzModule.class);
+
+	private String cronSchedule;
+
+	private String jobName;
+
+	private String jobGroup;
+
+	private String jobDescription;
+
+	private boolean jobRecovery = QuartzSchedule.DEFAULT_JOB_RECOVERY;
+
+	private boolean jobDurability = QuartzSchedule.DEFAULT_JOB_DURABILITY;
+
+	private String triggerName;
+
+	private String triggerGroup;
+
+	private Date triggerStartAt;
+
+	private Date triggerEndAt;
+
+	private int triggerPriority = org.quartz.Trigger.DEFAULT_PRIORITY;
+
+	private int schedulerDelay = QuartzSchedule.DEFAULT_SCHEDULER_DELAY;
+
+	private int cronScheduleMisfirePolicy = QuartzSchedule.DEFAULT_MISFIRE_POLICY;
+
+	private boolean allowConcurrent = QuartzSchedule.DEFAULT_ALLOW_PARALLEL_INVOCATIONS;
+
+	private boolean persistent = QuartzSchedule.DEFAULT_PERSISTENT;
+
+	private boolean writeBehind = QuartzSchedule.DEFAULT_WRITE_BEHIND;
+
+	private boolean removeOnError = QuartzSchedule.DEFAULT_REMOVE_ON_ERROR;
+
+	private boolean forceKeep = QuartzSchedule.DEFAULT_FORCE_KEEP;
+
+	private String scheduler;
+
+	private boolean runOnce = QuartzSchedule.DEFAULT_RUN_ONCE;
+
+	private int partitions = QuartzSchedule.DEFAULT_PARTITIONS;
+
+	private String partitionOn = QuartzSchedule.DEFAULT_PARTITION_ON;
+
+	private String[] dependsOn = new String[0];
+
+	private String publishAs;
+
+	private boolean fireOnStart = QuartzSchedule.DEFAULT_FIRE_ON_START;
+
+	private boolean warmup = QuartzSchedule.DEFAULT_WARMUP;
+
+	private int cpuWeight = QuartzSchedule.DEFAULT_CPU_WEIGHT;
+
+	private int memoryWeight = QuartzSchedule.DEFAULT_MEMORY_WEIGHT;
+
+	private double rateLimit = QuartzSchedule.DEFAULT_RATE_LIMIT;
+
+	private int rateBurst = QuartzSchedule.DEFAULT_RATE_BURST;
+
+	private String rateLimitGroup;
+
+	private String rateLimitAction = QuartzSchedule.DEFAULT_RATE_LIMIT_ACTION;
+
+	/**
+	 * Create new options with the given cron schedule, and defaults for all
+	 * other options.
+	 *
+	 * @param cronSchedule the cron expression, or the name of a property in
+	 *                     application.conf containing the cron expression
+	 * @return the new options
+	 * @see QuartzSchedule#cronSchedule()
+	 */
+	public static ScheduleOptions cron(String cronSchedule)
+	{
+		return new ScheduleOptions().cronSchedule(cronSchedule);
+	}
+
+	/**
+	 * Create new options for a job without a cron schedule, which runs after
+	 * the given jobs have completed, with defaults for all other options.
+	 *
+	 * @param jobKeys the keys of the jobs the job depends on
+	 * @return the new options
+	 * @see QuartzSchedule#dependsOn()
+	 */
+	public static ScheduleOptions after(String... jobKeys)
+	{
+		return new ScheduleOptions().cronSchedule(QuartzSchedule.NO_CRON_SCHEDULE).dependsOn(jobKeys);
+	}
+
+	/**
+	 * Create new options from a {@link QuartzSchedule} annotation.
+	 *
+	 * @param quartzSchedule the annotation
+	 * @return the options set in the annotation
+	 */
+	public static ScheduleOptions of(QuartzSchedule quartzSchedule)
+	{
+		ScheduleOptions options = new ScheduleOptions();
+		options.cronSchedule = quartzSchedule.cronSchedule();
+		options.jobName = valueOrNull(quartzSchedule.jobName(), QuartzSchedule.DEFAULT_JOB_NAME);
+		options.jobGroup = valueOrNull(quartzSchedule.jobGroup(), QuartzSchedule.DEFAULT_JOB_GROUP);
+		options.jobDescription = valueOrNull(quartzSchedule.jobDescription(),
+				QuartzSchedule.DEFAULT_JOB_DESCRIPTION);
+		options.jobRecovery = quartzSchedule.jobRecovery();
+		options.jobDurability = quartzSchedule.jobDurability();
+		options.triggerName = valueOrNull(quartzSchedule.triggerName(), QuartzSchedule.DEFAULT_TRIGGER_NAME);
+		options.triggerGroup = valueOrNull(quartzSchedule.triggerGroup(), QuartzSchedule.DEFAULT_TRIGGER_GROUP);
+		options.triggerStartAt = parseTriggerDatetime(quartzSchedule.triggerStartAt());
+		options.triggerEndAt = parseTriggerDatetime(quartzSchedule.triggerEndAt());
+		options.triggerPriority = quartzSchedule.triggerPriority();
+		options.schedulerDelay = quartzSchedule.schedulerDelay();
+		options.cronScheduleMisfirePolicy = quartzSchedule.cronScheduleMisfirePolicy();
+		options.allowConcurrent = quartzSchedule.allowConcurrent();
+		options.persistent = quartzSchedule.persistent();
+		options.writeBehind = quartzSchedule.writeBehind();
+		options.removeOnError = quartzSchedule.removeOnError();
+		options.forceKeep = quartzSchedule.forceKeep();
+		options.scheduler = valueOrNull(quartzSchedule.scheduler(), QuartzSchedule.DEFAULT_SCHEDULER);
+		options.runOnce = quartzSchedule.runOnce();
+		options.partitions = quartzSchedule.partitions();
+		options.partitionOn = quartzSchedule.partitionOn();
+		options.dependsOn = quartzSchedule.dependsOn();
+		options.publishAs = valueOrNull(quartzSchedule.publishAs(), QuartzSchedule.DEFAULT_PUBLISH_AS);
+		options.fireOnStart = quartzSchedule.fireOnStart();
+		options.warmup = quartzSchedule.warmup();
+		options.cpuWeight = quartzSchedule.cpuWeight();
+		options.memoryWeight = quartzSchedule.memoryWeight();
+		options.rateLimit = quartzSchedule.rateLimit();
+		options.rateBurst = quartzSchedule.rateBurst();
+		options.rateLimitGroup = valueOrNull(quartzSchedule.rateLimitGroup(), QuartzSchedule.DEFAULT_RATE_LIMIT_GROUP);
+		options.rateLimitAction = quartzSchedule.rateLimitAction();
+		return options;
+	}
+
+	/**
+	 * @return a copy of these options
+	 */
+	public ScheduleOptions copy()
+	{
+		ScheduleOptions options = new ScheduleOptions();
+		options.cronSchedule = cronSchedule;
+		options.jobName = jobName;
+		options.jobGroup = jobGroup;
+		options.jobDescription = jobDescription;
+		options.jobRecovery = jobRecovery;
+		options.jobDurability = jobDurability;
+		options.triggerName = triggerName;
+		options.triggerGroup = triggerGroup;
+		options.triggerStartAt = triggerStartAt;
+		options.triggerEndAt = triggerEndAt;
+		options.triggerPriority = triggerPriority;
+		options.schedulerDelay = schedulerDelay;
+		options.cronScheduleMisfirePolicy = cronScheduleMisfirePolicy;
+		options.allowConcurrent = allowConcurrent;
+		options.persistent = persistent;
+		options.writeBehind = writeBehind;
+		options.removeOnError = removeOnError;
+		options.forceKeep = forceKeep;
+		options.scheduler = scheduler;
+		options.runOnce = runOnce;
+		options.partitions = partitions;
+		options.partitionOn = partitionOn;
+		options.dependsOn = dependsOn;
+		options.publishAs = publishAs;
+		options.fireOnStart = fireOnStart;
+		options.warmup = warmup;
+		options.cpuWeight = cpuWeight;
+		options.memoryWeight = memoryWeight;
+		options.rateLimit = rateLimit;
+		options.rateBurst = rateBurst;
+		options.rateLimitGroup = rateLimitGroup;
+		options.rateLimitAction = rateLimitAction;
+		return options;
+	}
+
+	private static String valueOrNull(String value, String defaultValue)
+	{
+		return defaultValue.equals(value) ? null : value;
+	}
+
+	private static Date parseTriggerDatetime(String datetime)
+	{
+		if (datetime == null)
+		{
+			return null;
+		}
+
+		SimpleDateFormat sdf = new SimpleDateFormat(NinjaQuartzSchedulerRegistration.TRIGGER_DATETIME_FORMAT);
+		try
+		{
+			return sdf.parse(datetime);
+		}
+		catch (ParseException e)
+		{
+			// this is not necessarily an error. default values are empty.
+			logger.debug("Invalid datetime format for parameter value '{}'. Expected format is '{}'. "
+					+ "Affected Start/End constraint will NOT be used.", datetime,
+					NinjaQuartzSchedulerRegistration.TRIGGER_DATETIME_FORMAT);
+			return null;
+		}
+	}
+
+	/**
+	 * @see QuartzSchedule#cronSchedule()
+	 */
+	public ScheduleOptions cronSchedule(String cronSchedule)
+	{
+		this.cronSchedule = cronSchedule;
+		return this;
+	}
+
+	/**
+	 * @see QuartzSchedule#jobName()
+	 */
+	public ScheduleOptions jobName(String jobName)
+	{
+		this.jobName = jobName;
+		return this;
+	}
+
+	/**
+	 * @see QuartzSchedule#jobGroup()
+	 */
+	public ScheduleOptions jobGroup(String jobGroup)
+	{
+		this.jobGroup = jobGroup;
+		return this;
+	}
+
+	/**
+	 * @see QuartzSchedule#jobDescription()
+	 */
+	public ScheduleOptions jobDescription(String jobDescription)
+	{
+		this.jobDescription = jobDescription;
+		return this;
+	}
+
+	/**
+	 * @see QuartzSchedule#jobRecovery()
+	 */
+	public ScheduleOptions jobRecovery(boolean jobRecovery)
+	{
+		this.jobRecovery = jobRecovery;
+		return this;
+	}
+
+	/**
+	 * @see QuartzSchedule#jobDurability()
+	 */
+	public ScheduleOptions jobDurability(boolean jobDurability)
+	{
+		this.jobDurability = jobDurability;
+		return this;
+	}
+
+	/**
+	 * @see QuartzSchedule#triggerName()
+	 */
+	public ScheduleOptions triggerName(String triggerName)
+	{
+		this.triggerName = triggerName;
+		return this;
+	}
+
+	/**
+	 * @see QuartzSchedule#triggerGroup()
+	 */
+	public ScheduleOptions triggerGroup(String triggerGroup)
+	{
+		this.triggerGroup = triggerGroup;
+		return this;
+	}
+
+	/**
+	 * @see QuartzSchedule#triggerStartAt()
+	 */
+	public ScheduleOptions triggerStartAt(Date triggerStartAt)
+	{
+		this.triggerStartAt = triggerStartAt;
+		return this;
+	}
+
+	/**
+	 * @see QuartzSchedule#triggerEndAt()
+	 */
+	public ScheduleOptions triggerEndAt(Date triggerEndAt)
+	{
+		this.triggerEndAt = triggerEndAt;
+		return this;
+	}
+
+	/**
+	 * @see QuartzSchedule#triggerPriority()
+	 */
+	public ScheduleOptions triggerPriority(int triggerPriority)
+	{
+		this.triggerPriority = triggerPriority;
+		return this;
+	}
+
+	/**
+	 * @see QuartzSchedule#schedulerDelay()
+	 */
+	public ScheduleOptions schedulerDelay(int schedulerDelay)
+	{
+		this.schedulerDelay = schedulerDelay;
+		return this;
+	}
+
+	/**
+	 * @see QuartzSchedule#cronScheduleMisfirePolicy()
+	 */
+	public ScheduleOptions cronScheduleMisfirePolicy(int cronScheduleMisfirePolicy)
+	{
+		this.cronScheduleMisfirePolicy = cronScheduleMisfirePolicy;
+		return this;
+	}
+
+	/**
+	 * @see QuartzSchedule#allowConcurrent()
+	 */
+	public ScheduleOptions allowConcurrent(boolean allowConcurrent)
+	{
+		this.allowConcurrent = allowConcurrent;
+		return this;
+	}
+
+	/**
+	 * @see QuartzSchedule#persistent()
+	 */
+	public ScheduleOptions persistent(boolean persistent)
+	{
+		this.persistent = persistent;
+		return this;
+	}
+
+	/**
+	 * @see QuartzSchedule#writeBehind()
+	 */
+	public ScheduleOptions writeBehind(boolean writeBehind)
+	{
+		this.writeBehind = writeBehind;
+		return this;
+	}
+
+	/**
+	 * @see QuartzSchedule#removeOnError()
+	 */
+	public ScheduleOptions removeOnError(boolean removeOnError)
+	{
+		this.removeOnError = removeOnError;
+		return this;
+	}
+
+	/**
+	 * @see QuartzSchedule#forceKeep()
+	 */
+	public ScheduleOptions forceKeep(boolean forceKeep)
+	{
+		this.forceKeep = forceKeep;
+		return this;
+	}
+
+	/**
+	 * @see QuartzSchedule#scheduler()
+	 */
+	public ScheduleOptions scheduler(String scheduler)
+	{
+		this.scheduler = scheduler;
+		return this;
+	}
+
+	/**
+	 * @see QuartzSchedule#runOnce()
+	 */
+	public ScheduleOptions runOnce(boolean runOnce)
+	{
+		this.runOnce = runOnce;
+		return this;
+	}
+
+	/**
+	 * @see QuartzSchedule#partitions()
+	 */
+	public ScheduleOptions partitions(int partitions)
+	{
+		this.partitions = partitions;
+		return this;
+	}
+
+	/**
+	 * @see QuartzSchedule#partitionOn()
+	 */
+	public ScheduleOptions partitionOn(String partitionOn)
+	{
+		this.partitionOn = partitionOn;
+		return this;
+	}
+
+	/**
+	 * @see QuartzSchedule#dependsOn()
+	 */
+	public ScheduleOptions dependsOn(String... dependsOn)
+	{
+		this.dependsOn = dependsOn.clone();
+		return this;
+	}
+
+	/**
+	 * @see QuartzSchedule#publishAs()
+	 */
+	public ScheduleOptions publishAs(String publishAs)
+	{
+		this.publishAs = publishAs;
+		return this;
+	}
+
+	/**
+	 * @see QuartzSchedule#fireOnStart()
+	 */
+	public ScheduleOptions fireOnStart(boolean fireOnStart)
+	{
+		this.fireOnStart = fireOnStart;
+		return this;
+	}
+
+	/**
+	 * @see QuartzSchedule#warmup()
+	 */
+	public ScheduleOptions warmup(boolean warmup)
+	{
+		this.warmup = warmup;
+		return this;
+	}
+
+	/**
+	 * @see QuartzSchedule#cpuWeight()
+	 */
+	public ScheduleOptions cpuWeight(int cpuWeight)
+	{
+		this.cpuWeight = cpuWeight;
+		return this;
+	}
+
+	/**
+	 * @see QuartzSchedule#memoryWeight()
+	 */
+	public ScheduleOptions memoryWeight(int memoryWeight)
+	{
+		this.memoryWeight = memoryWeight;
+		return this;
+	}
+
+	/**
+	 * @see QuartzSchedule#rateLimit()
+	 * @see QuartzSchedule#rateBurst()
+	 */
+	public ScheduleOptions rateLimit(double rateLimit, int rateBurst)
+	{
+		this.rateLimit = rateLimit;
+		this.rateBurst = rateBurst;
+		return this;
+	}
+
+	/**
+	 * @see QuartzSchedule#rateLimitGroup()
+	 */
+	public ScheduleOptions rateLimitGroup(String rateLimitGroup)
+	{
+		this.rateLimitGroup = rateLimitGroup;
+		return this;
+	}
+
+	/**
+	 * @see QuartzSchedule#rateLimitAction()
+	 */
+	public ScheduleOptions rateLimitAction(String rateLimitAction)
+	{
+		this.rateLimitAction = rateLimitAction;
+		return this;
+	}
+
+	public String getCronSchedule()
+	{
+		return cronSchedule;
+	}
+
+	/**
+	 * @return the job name, or null to use a generated name
+	 */
+	public String getJobName()
+	{
+		return jobName;
+	}
+
+	/**
+	 * @return the job group, or null to use a generated group name
+	 */
+	public String getJobGroup()
+	{
+		return jobGroup;
+	}
+
+	/**
+	 * @return the job description, or null for no description
+	 */
+	public String getJobDescription()
+	{
+		return jobDescription;
+	}
+
+	public boolean isJobRecovery()
+	{
+		return jobRecovery;
+	}
+
+	public boolean isJobDurability()
+	{
+		return jobDurability;
+	}
+
+	/**
+	 * @return the trigger name, or null to use a generated name
+	 */
+	public String getTriggerName()
+	{
+		return triggerName;
+	}
+
+	/**
+	 * @return the trigger group, or null to use a generated group name
+	 */
+	public String getTriggerGroup()
+	{
+		return triggerGroup;
+	}
+
+	public Date getTriggerStartAt()
+	{
+		return triggerStartAt;
+	}
+
+	public Date getTriggerEndAt()
+	{
+		return triggerEndAt;
+	}
+
+	public int getTriggerPriority()
+	{
+		return triggerPriority;
+	}
+
+	public int getSchedulerDelay()
+	{
+		return schedulerDelay;
+	}
+
+	public int getCronScheduleMisfirePolicy()
+	{
+		return cronScheduleMisfirePolicy;
+	}
+
+	public boolean isAllowConcurrent()
+	{
+		return allowConcurrent;
+	}
+
+	public boolean isPersistent()
+	{
+		return persistent;
+	}
+
+	public boolean isWriteBehind()
+	{
+		return writeBehind;
+	}
+
+	public boolean isRemoveOnError()
+	{
+		return removeOnError;
+	}
+
+	public boolean isForceKeep()
+	{
+		return forceKeep;
+	}
+
+	/**
+	 * @return the name of the scheduler, or null for the default scheduler
+	 */
+	public String getScheduler()
+	{
+		return scheduler;
+	}
+
+	public boolean isRunOnce()
+	{
+		return runOnce;
+	}
+
+	public int getPartitions()
+	{
+		return partitions;
+	}
+
+	public String getPartitionOn()
+	{
+		return partitionOn;
+	}
+
+	public String[] getDependsOn()
+	{
+		return dependsOn.clone();
+	}
+
+	/**
+	 * @return the name to publish return values as, or null
+	 */
+	public String getPublishAs()
+	{
+		return publishAs;
+	}
+
+	public boolean isFireOnStart()
+	{
+		return fireOnStart;
+	}
+
+	public boolean isWarmup()
+	{
+		return warmup;
+	}
+
+	public int getCpuWeight()
+	{
+		return cpuWeight;
+	}
+
+	public int getMemoryWeight()
+	{
+		return memoryWeight;
+	}
+
+	public double getRateLimit()
+	{
+		return rateLimit;
+	}
+
+	public int getRateBurst()
+	{
+		return rateBurst;
+	}
+
+	/**
+	 * @return the name of the rate limit group, or null
+	 */
+	public String getRateLimitGroup()
+	{
+		return rateLimitGroup;
+	}
+
+	public String getRateLimitAction()
+	{
+		return rateLimitAction;
+	}
+
+	/**
+	 * @return true if the fires of the job are rate limited
+	 */
+	public boolean isRateLimited()
+	{
+		return rateLimit > 0 || rateLimitGroup != null;
+	}
+
+}
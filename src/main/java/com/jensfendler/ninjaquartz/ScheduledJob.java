@@ -0,0 +1,41 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz;
+
+import com.jensfendler.ninjaquartz.job.NinjaQuartzTask;
+
+import org.quartz.CronTrigger;
+import org.quartz.JobDetail;
+
+/**
+ * Holds a job and its trigger while it is being scheduled. Jobs fired by
+ * the jobs they depend on only have no trigger.
+ */
+class ScheduledJob
+{
+	public final NinjaQuartzTask task;
+	public final ScheduleOptions options;
+	public final JobDetail jobDetail;
+	public final CronTrigger trigger;
+
+	ScheduledJob(NinjaQuartzTask task, ScheduleOptions options, JobDetail jobDetail, CronTrigger trigger)
+	{
+		this.task = task;
+		this.options = options;
+		this.jobDetail = jobDetail;
+		this.trigger = trigger;
+	}
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.jensfendler.ninjaquartz.admission.AdmissionController;
+import com.jensfendler.ninjaquartz.admission.RateLimits;
+import com.jensfendler.ninjaquartz.admission.ResourceBudget;
+import com.jensfendler.ninjaquartz.dependency.JobDependencies;
+import com.jensfendler.ninjaquartz.jfr.MisfireEventListener;
+import com.jensfendler.ninjaquartz.jfr.NinjaQuartzEventRecorder;
+import com.jensfendler.ninjaquartz.jmx.NinjaQuartzJmx;
+import com.jensfendler.ninjaquartz.job.AttachedTasks;
+import com.jensfendler.ninjaquartz.job.JobStatusListener;
+import com.jensfendler.ninjaquartz.job.NinjaQuartzJobFactory;
+import com.jensfendler.ninjaquartz.job.NinjaQuartzJobStatus;
+import com.jensfendler.ninjaquartz.job.WriteBehindJobDataListener;
+import com.jensfendler.ninjaquartz.lock.RunOnceLocks;
+import com.jensfendler.ninjaquartz.provider.NinjaQuartzSchedulers;
+import com.jensfendler.ninjaquartz.provider.QuartzSchedulerFactoryProvider;
+
+import org.quartz.JobKey;
+import org.quartz.Scheduler;
+import org.quartz.SchedulerException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Prepares the schedulers used by the {@link NinjaQuartzSchedulerRegistration}
+ * before their first use: sets the job factory and listeners, and puts the
+ * services shared by all jobs into their {@link org.quartz.SchedulerContext}.
+ * While Ninja is starting up, the schedulers are only started once all
+ * collected jobs have been scheduled.
+ *
+ * @author Jens Fendler
+ */
+@Singleton
+class SchedulerSetup
+{
+
+	protected static final Logger logger = LoggerFactory.getLogger(NinjaQuartzModule.class);
+
+	@Inject
+	protected NinjaQuartzSchedulers schedulers;
+
+	@Inject
+	protected QuartzSchedulerFactoryProvider schedulerFactoryProvider;
+
+	@Inject
+	protected NinjaQuartzJobFactory jobFactory;
+
+	@Inject
+	protected NinjaQuartzJmx jmx;
+
+	@Inject
+	protected WriteBehindJobDataListener writeBehindListener;
+
+	@Inject
+	protected RunOnceLocks runOnceLocks;
+
+	@Inject
+	protected NinjaQuartzReadiness readiness;
+
+	@Inject
+	protected AdmissionController admissionController;
+
+	@Inject
+	protected ResourceBudget resourceBudget;
+
+	@Inject
+	protected RateLimits rateLimits;
+
+	/**
+	 * Keeps the status of scheduled {@link org.quartz.Job} classes up to date
+	 */
+	private final JobStatusListener jobStatusListener = new JobStatusListener();
+
+	/**
+	 * The schedulers to start once all collected jobs have been scheduled, or
+	 * null if schedulers are started on first use
+	 */
+	private Set<Scheduler> deferredStarts;
+
+	/**
+	 * Defer the start of all schedulers used from now on, until
+	 * {@link #finishStartup()}. Persistent job stores may have recovered jobs,
+	 * whose tasks must be attached again before they fire.
+	 *
+	 * @param expectedJobCount the number of jobs to schedule on start-up, to
+	 *                         let tuning profiles size the thread pool
+	 */
+	void beginStartup(int expectedJobCount)
+	{
+		schedulerFactoryProvider.setExpectedJobCount(expectedJobCount);
+		deferredStarts = new LinkedHashSet<>();
+		if (admissionController.isEnabled())
+		{
+			jmx.register(admissionController);
+		}
+		if (resourceBudget.isEnabled())
+		{
+			jmx.register(resourceBudget);
+		}
+	}
+
+	/**
+	 * Start the schedulers used since {@link #beginStartup(int)}. Schedulers
+	 * used from now on are started on first use.
+	 */
+	void finishStartup()
+	{
+		Set<Scheduler> schedulersToStart = deferredStarts;
+		deferredStarts = null;
+		for (Scheduler scheduler : schedulersToStart)
+		{
+			try
+			{
+				scheduler.start();
+				logger.debug("Started new scheduler of type {}", scheduler.getClass().getName());
+			}
+			catch (SchedulerException e)
+			{
+				logger.error("Failed to start scheduler " + scheduler, e);
+			}
+		}
+	}
+
+	/**
+	 * @return true while the start of schedulers is deferred
+	 */
+	boolean isStarting()
+	{
+		return deferredStarts != null;
+	}
+
+	/**
+	 * Keep the status of a scheduled {@link org.quartz.Job} class up to date.
+	 *
+	 * @param jobKey the key of the job
+	 * @param status the status to update
+	 */
+	void registerStatus(JobKey jobKey, NinjaQuartzJobStatus status)
+	{
+		jobStatusListener.register(jobKey, status);
+	}
+
+	/**
+	 * Get the scheduler with the given name, and start it if necessary. While
+	 * the collected jobs are scheduled on start-up, new schedulers are only
+	 * started afterwards.
+	 *
+	 * @param schedulerName the name of the scheduler, or null for the default
+	 *                      scheduler
+	 * @return the scheduler
+	 * @throws SchedulerException if the scheduler cannot be created or started
+	 */
+	Scheduler getScheduler(String schedulerName) throws SchedulerException
+	{
+		Scheduler scheduler = schedulers.getScheduler(schedulerName);
+		if (!scheduler.isStarted())
+		{
+			// re-use job wrappers, and create other jobs through Guice
+			scheduler.setJobFactory(jobFactory);
+			if (scheduler.getListenerManager().getJobListener(JobStatusListener.NAME) == null)
+			{
+				scheduler.getListenerManager().addJobListener(jobStatusListener);
+			}
+			if (scheduler.getListenerManager().getJobListener(WriteBehindJobDataListener.NAME) == null)
+			{
+				// keep the job data of write-behind jobs in memory
+				scheduler.getListenerManager().addJobListener(writeBehindListener);
+			}
+			// let jobs running once take their locks
+			scheduler.getContext().put(RunOnceLocks.SCHEDULER_CONTEXT_KEY, runOnceLocks);
+			if (scheduler.getContext().get(AttachedTasks.SCHEDULER_CONTEXT_KEY) == null)
+			{
+				// let jobs read from persistent job stores find their tasks
+				scheduler.getContext().put(AttachedTasks.SCHEDULER_CONTEXT_KEY, new AttachedTasks());
+			}
+			if (scheduler.getContext().get(JobDependencies.SCHEDULER_CONTEXT_KEY) == null)
+			{
+				// let completed jobs fire the jobs depending on them
+				scheduler.getContext().put(JobDependencies.SCHEDULER_CONTEXT_KEY, new JobDependencies());
+			}
+			// let runs fired on start report their end
+			scheduler.getContext().put(NinjaQuartzReadiness.SCHEDULER_CONTEXT_KEY, readiness);
+			if (admissionController.isEnabled())
+			{
+				scheduler.getContext().put(AdmissionController.SCHEDULER_CONTEXT_KEY, admissionController);
+			}
+			if (resourceBudget.isEnabled())
+			{
+				scheduler.getContext().put(ResourceBudget.SCHEDULER_CONTEXT_KEY, resourceBudget);
+			}
+			scheduler.getContext().put(RateLimits.SCHEDULER_CONTEXT_KEY, rateLimits);
+			if (NinjaQuartzEventRecorder.INSTANCE.isAvailable()
+					&& scheduler.getListenerManager().getTriggerListener(MisfireEventListener.NAME) == null)
+			{
+				// report misfires to the flight recorder
+				scheduler.getListenerManager()
+						.addTriggerListener(new MisfireEventListener(NinjaQuartzEventRecorder.INSTANCE));
+			}
+			if (deferredStarts != null)
+			{
+				deferredStarts.add(scheduler);
+			}
+			else
+			{
+				scheduler.start();
+				logger.debug("Started new scheduler of type {}", scheduler.getClass().getName());
+			}
+		}
+
+		return scheduler;
+	}
+}
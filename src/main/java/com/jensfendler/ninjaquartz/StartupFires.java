@@ -0,0 +1,126 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.jensfendler.ninjaquartz.annotations.QuartzSchedule;
+import com.jensfendler.ninjaquartz.job.AbstractNinjaQuartzJob;
+
+import org.quartz.JobDataMap;
+import org.quartz.JobKey;
+import org.quartz.Scheduler;
+import org.quartz.SchedulerException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Fires the jobs with {@link QuartzSchedule#fireOnStart()} (or
+ * {@link QuartzSchedule#warmup()}) once, outside of their schedules. Jobs
+ * scheduled on start-up are fired once their schedulers have been started,
+ * and their warm-up runs are reported to the {@link NinjaQuartzReadiness}.
+ *
+ * @author Jens Fendler
+ */
+@Singleton
+class StartupFires
+{
+
+	protected static final Logger logger = LoggerFactory.getLogger(NinjaQuartzModule.class);
+
+	@Inject
+	protected SchedulerSetup schedulerSetup;
+
+	@Inject
+	protected NinjaQuartzReadiness readiness;
+
+	/**
+	 * The jobs to fire once the schedulers have been started, with their
+	 * schedulers
+	 */
+	private final Map<JobKey, Scheduler> startupFires = new LinkedHashMap<>();
+
+	/**
+	 * The jobs the application is not ready without
+	 */
+	private final Set<JobKey> warmupJobs = new LinkedHashSet<>();
+
+	/**
+	 * Fire a job which has just been scheduled once its scheduler has been
+	 * started, or at once for jobs scheduled after Ninja has started. Jobs
+	 * without {@link QuartzSchedule#fireOnStart()} or
+	 * {@link QuartzSchedule#warmup()} are not fired.
+	 *
+	 * @param scheduler the scheduler of the job
+	 * @param jobKey    the key of the job
+	 * @param options   the scheduling options
+	 */
+	void add(Scheduler scheduler, JobKey jobKey, ScheduleOptions options)
+	{
+		if (!options.isFireOnStart() && !options.isWarmup())
+		{
+			return;
+		}
+		if (!schedulerSetup.isStarting())
+		{
+			fire(scheduler, jobKey);
+			return;
+		}
+		startupFires.put(jobKey, scheduler);
+		if (options.isWarmup())
+		{
+			warmupJobs.add(jobKey);
+		}
+	}
+
+	/**
+	 * Fire all jobs collected on start-up, and start waiting for the warm-up
+	 * jobs. To be called once the schedulers have been started.
+	 */
+	void fireAll()
+	{
+		readiness.start(warmupJobs);
+		for (Map.Entry<JobKey, Scheduler> startupFire : startupFires.entrySet())
+		{
+			fire(startupFire.getValue(), startupFire.getKey());
+		}
+		startupFires.clear();
+		warmupJobs.clear();
+	}
+
+	/**
+	 * Fire a job once, outside of its schedule.
+	 */
+	private void fire(Scheduler scheduler, JobKey jobKey)
+	{
+		JobDataMap data = new JobDataMap();
+		data.put(AbstractNinjaQuartzJob.FIRE_ON_START_KEY, true);
+		try
+		{
+			scheduler.triggerJob(jobKey, data);
+		}
+		catch (SchedulerException e)
+		{
+			logger.error("Failed to fire job {} on start", jobKey, e);
+			readiness.finished(jobKey);
+		}
+	}
+}
@@ -0,0 +1,274 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.jensfendler.ninjaquartz.admission.RateLimits;
+import com.jensfendler.ninjaquartz.admission.ResourceBudget;
+import com.jensfendler.ninjaquartz.annotations.QuartzSchedule;
+import com.jensfendler.ninjaquartz.dependency.JobDependencies;
+import com.jensfendler.ninjaquartz.job.NinjaQuartzTask;
+import com.jensfendler.ninjaquartz.job.PartitionedTask;
+import com.jensfendler.ninjaquartz.lock.RunOnceLocks;
+
+import org.quartz.Job;
+import org.quartz.JobKey;
+import org.quartz.Scheduler;
+import org.quartz.SchedulerException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Checks and registers the scheduling options which are implemented by the
+ * NinjaQuartz job wrappers of scheduled methods and tasks: partitions,
+ * running once, weights, rate limits and dependencies. The options are
+ * checked before a job is stored in its scheduler, so that a stored job can
+ * always be registered.
+ *
+ * @author Jens Fendler
+ */
+@Singleton
+class WrapperOptions
+{
+
+	protected static final Logger logger = LoggerFactory.getLogger(NinjaQuartzModule.class);
+
+	@Inject
+	protected RunOnceLocks runOnceLocks;
+
+	@Inject
+	protected ResourceBudget resourceBudget;
+
+	@Inject
+	protected RateLimits rateLimits;
+
+	/**
+	 * Check the options of a task, and wrap the task in a
+	 * {@link PartitionedTask} if the options request more than one partition.
+	 *
+	 * @param task    the task
+	 * @param options the scheduling options, with all names set
+	 * @return the task to schedule
+	 * @throws SchedulerException if the options are invalid
+	 */
+	NinjaQuartzTask prepare(NinjaQuartzTask task, ScheduleOptions options) throws SchedulerException
+	{
+		task = partitioned(task, options);
+		checkRunOnce(options);
+		checkWeights(options);
+		if (options.isRateLimited())
+		{
+			rateLimits.check(JobKey.jobKey(options.getJobName(), options.getJobGroup()), options.getRateLimit(),
+					options.getRateBurst(), options.getRateLimitGroup(), options.getRateLimitAction());
+		}
+		return task;
+	}
+
+	/**
+	 * Make sure that the dependencies of a job can be registered, before the
+	 * job is stored in its scheduler.
+	 *
+	 * @param scheduler the scheduler of the job
+	 * @param jobKey    the key of the job
+	 * @param options   the scheduling options
+	 * @throws SchedulerException if the dependencies form a cycle
+	 */
+	void checkDependencies(Scheduler scheduler, JobKey jobKey, ScheduleOptions options) throws SchedulerException
+	{
+		jobDependencies(scheduler).check(jobKey, upstreamKeys(jobKey, options));
+	}
+
+	/**
+	 * Register the dependencies and rate limit of a job which has been stored
+	 * in its scheduler.
+	 *
+	 * @param scheduler the scheduler of the job
+	 * @param jobKey    the key of the job
+	 * @param options   the scheduling options
+	 * @throws SchedulerException if the dependencies or rate limit are invalid
+	 */
+	void register(Scheduler scheduler, JobKey jobKey, ScheduleOptions options) throws SchedulerException
+	{
+		jobDependencies(scheduler).register(scheduler, jobKey, upstreamKeys(jobKey, options));
+		if (options.isRateLimited())
+		{
+			rateLimits.register(jobKey, options.getRateLimit(), options.getRateBurst(), options.getRateLimitGroup(),
+					options.getRateLimitAction());
+		}
+		else
+		{
+			rateLimits.unregister(jobKey);
+		}
+	}
+
+	/**
+	 * @param scheduler the scheduler of the job
+	 * @param jobKey    the key of the job
+	 * @return the keys of the jobs the job depends on
+	 * @throws SchedulerException if the context of the scheduler cannot be
+	 *                            read
+	 */
+	Set<JobKey> getUpstream(Scheduler scheduler, JobKey jobKey) throws SchedulerException
+	{
+		return jobDependencies(scheduler).getUpstream(jobKey);
+	}
+
+	/**
+	 * Make sure that the options of a job class only use settings which apply
+	 * to job classes. All other settings are implemented by the NinjaQuartz
+	 * job wrappers of scheduled methods and tasks.
+	 *
+	 * @param jobClass the job class
+	 * @param options  the scheduling options
+	 * @throws SchedulerException if any setting does not apply to job classes
+	 */
+	static void checkJobClassOptions(Class<? extends Job> jobClass, ScheduleOptions options)
+			throws SchedulerException
+	{
+		List<String> unsupported = new ArrayList<>();
+		if (options.getDependsOn().length > 0)
+		{
+			unsupported.add("dependsOn");
+		}
+		if (options.isRunOnce())
+		{
+			unsupported.add("runOnce");
+		}
+		if (options.getCpuWeight() != QuartzSchedule.DEFAULT_CPU_WEIGHT
+				|| options.getMemoryWeight() != QuartzSchedule.DEFAULT_MEMORY_WEIGHT)
+		{
+			unsupported.add("cpuWeight/memoryWeight");
+		}
+		if (options.isRateLimited())
+		{
+			unsupported.add("rateLimit/rateLimitGroup");
+		}
+		if (options.getPartitions() != QuartzSchedule.DEFAULT_PARTITIONS)
+		{
+			unsupported.add("partitions");
+		}
+		if (options.isWriteBehind())
+		{
+			unsupported.add("writeBehind");
+		}
+		if (options.getPublishAs() != null)
+		{
+			unsupported.add("publishAs");
+		}
+		if (!unsupported.isEmpty())
+		{
+			throw new SchedulerException("Options " + unsupported + " are not supported for job class "
+					+ jobClass.getName() + ". They only apply to scheduled methods and tasks.");
+		}
+	}
+
+	/**
+	 * Wrap the given task in a {@link PartitionedTask} if the options request
+	 * more than one partition.
+	 *
+	 * @param task    the task
+	 * @param options the scheduling options
+	 * @return the task to schedule
+	 * @throws SchedulerException if the partition options are invalid
+	 */
+	private static NinjaQuartzTask partitioned(NinjaQuartzTask task, ScheduleOptions options)
+			throws SchedulerException
+	{
+		if (options.getPartitions() < 1)
+		{
+			throw new SchedulerException("Invalid number of partitions for " + task.getTaskName() + ": "
+					+ options.getPartitions());
+		}
+		boolean forkJoinPool = QuartzSchedule.PARTITION_ON_FORK_JOIN_POOL.equals(options.getPartitionOn());
+		if (!forkJoinPool && !QuartzSchedule.PARTITION_ON_SCHEDULER.equals(options.getPartitionOn()))
+		{
+			throw new SchedulerException("Invalid partitionOn for " + task.getTaskName() + ": "
+					+ options.getPartitionOn());
+		}
+		if (options.getPartitions() == 1 || task instanceof PartitionedTask)
+		{
+			return task;
+		}
+		return new PartitionedTask(task, options.getPartitions(), forkJoinPool);
+	}
+
+	/**
+	 * Make sure that a lock provider is configured for jobs running once.
+	 *
+	 * @param options the scheduling options
+	 * @throws SchedulerException if no lock provider is configured
+	 */
+	private void checkRunOnce(ScheduleOptions options) throws SchedulerException
+	{
+		if (options.isRunOnce())
+		{
+			runOnceLocks.getLockProvider();
+		}
+	}
+
+	/**
+	 * Make sure that the weights of a job are valid.
+	 *
+	 * @param options the scheduling options
+	 * @throws SchedulerException if a weight is negative
+	 */
+	private void checkWeights(ScheduleOptions options) throws SchedulerException
+	{
+		if (options.getCpuWeight() < 0 || options.getMemoryWeight() < 0)
+		{
+			throw new SchedulerException("Invalid weights of job " + options.getJobName() + ": cpu "
+					+ options.getCpuWeight() + ", memory " + options.getMemoryWeight());
+		}
+		if ((options.getCpuWeight() > 0 || options.getMemoryWeight() > 0) && !resourceBudget.isEnabled())
+		{
+			logger.warn("Job {} has weights, but no resource budget is configured in application.conf",
+					options.getJobName());
+		}
+	}
+
+	/**
+	 * Get the keys of the jobs a job depends on. Job keys without a group
+	 * refer to jobs in the group of the dependent job.
+	 */
+	private static Set<JobKey> upstreamKeys(JobKey jobKey, ScheduleOptions options)
+	{
+		Set<JobKey> upstream = new LinkedHashSet<>();
+		for (String dependsOn : options.getDependsOn())
+		{
+			int dot = dependsOn.lastIndexOf('.');
+			upstream.add(dot < 0 ? JobKey.jobKey(dependsOn, jobKey.getGroup())
+					: JobKey.jobKey(dependsOn.substring(dot + 1), dependsOn.substring(0, dot)));
+		}
+		return upstream;
+	}
+
+	/**
+	 * @param scheduler a scheduler created by {@link SchedulerSetup#getScheduler(String)}
+	 * @return the dependencies between the jobs of the scheduler
+	 * @throws SchedulerException if the context of the scheduler cannot be
+	 *                            read
+	 */
+	private static JobDependencies jobDependencies(Scheduler scheduler) throws SchedulerException
+	{
+		return (JobDependencies) scheduler.getContext().get(JobDependencies.SCHEDULER_CONTEXT_KEY);
+	}
+}
@@ -0,0 +1,387 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.admission;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.jensfendler.ninjaquartz.NinjaQuartzModule;
+import com.jensfendler.ninjaquartz.job.AbstractNinjaQuartzJob;
+import com.jensfendler.ninjaquartz.job.NinjaQuartzJobStatus;
+
+import org.quartz.JobDataMap;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobKey;
+import org.quartz.SchedulerException;
+import org.quartz.TriggerBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ninja.utils.NinjaProperties;
+
+/**
+ * Holds back jobs of low priority while the application is under load, so
+ * that heavy jobs do not slow down HTTP requests at peak times. Each
+ * scheduler keeps the instance in its {@link org.quartz.SchedulerContext},
+ * under {@link #SCHEDULER_CONTEXT_KEY}.
+ * <p>
+ * The load is sampled when a job fires, at most once per
+ * <code>quartz.admission.sampleInterval</code> milliseconds: a percentile of
+ * the latencies of the requests recorded by the {@link RequestLatencyFilter}
+ * since the last sample, and the CPU load of the system. The application is
+ * under pressure as soon as one of them reaches its threshold, and until both
+ * have fallen below <code>quartz.admission.resume</code> percent of their
+ * thresholds (so that jobs are not switched on and off with every sample).
+ * While under pressure, fires of jobs whose trigger priority is below
+ * <code>quartz.admission.priorityThreshold</code> are skipped, or deferred by
+ * <code>quartz.admission.deferDelay</code> milliseconds (and held back again
+ * if the pressure has not dropped by then). Runs fired on start are always
+ * admitted.
+ * <p>
+ * Configuration in application.conf:
+ *
+ * <pre>
+ * quartz.admission.enabled=true
+ * quartz.admission.priorityThreshold=5       # optional, jobs below this trigger priority are held back
+ * quartz.admission.latency.percentile=99     # optional
+ * quartz.admission.latency.threshold=500     # optional, milliseconds (0: ignore latency)
+ * quartz.admission.cpu.threshold=85          # optional, percent (0: ignore CPU load)
+ * quartz.admission.resume=80                 # optional, percent of the thresholds
+ * quartz.admission.sampleInterval=1000       # optional, milliseconds
+ * quartz.admission.action=skip               # optional, skip or defer
+ * quartz.admission.deferDelay=10000          # optional, milliseconds
+ * </pre>
+ *
+ * @author Jens Fendler
+ */
+@Singleton
+public class AdmissionController implements AdmissionControllerMXBean
+{
+
+	protected static final Logger logger = LoggerFactory.getLogger(NinjaQuartzModule.class);
+
+	/**
+	 * The key of this instance in the context of each scheduler.
+	 */
+	public static final String SCHEDULER_CONTEXT_KEY = "nqAdmissionController";
+
+	/**
+	 * The key of the boolean property in the {@link JobDataMap} of the
+	 * triggers of deferred fires.
+	 */
+	public static final String DEFERRED_KEY = "nqDeferred";
+
+	public static final String CONF_ENABLED = "quartz.admission.enabled";
+
+	public static final String CONF_PRIORITY_THRESHOLD = "quartz.admission.priorityThreshold";
+
+	public static final String CONF_LATENCY_PERCENTILE = "quartz.admission.latency.percentile";
+
+	public static final String CONF_LATENCY_THRESHOLD = "quartz.admission.latency.threshold";
+
+	public static final String CONF_CPU_THRESHOLD = "quartz.admission.cpu.threshold";
+
+	public static final String CONF_RESUME = "quartz.admission.resume";
+
+	public static final String CONF_SAMPLE_INTERVAL = "quartz.admission.sampleInterval";
+
+	public static final String CONF_ACTION = "quartz.admission.action";
+
+	public static final String CONF_DEFER_DELAY = "quartz.admission.deferDelay";
+
+	public static final String ACTION_SKIP = "skip";
+
+	public static final String ACTION_DEFER = "defer";
+
+	public static final int DEFAULT_PRIORITY_THRESHOLD = org.quartz.Trigger.DEFAULT_PRIORITY;
+
+	public static final String DEFAULT_LATENCY_PERCENTILE = "99";
+
+	public static final int DEFAULT_LATENCY_THRESHOLD = 500;
+
+	public static final int DEFAULT_CPU_THRESHOLD = 85;
+
+	public static final int DEFAULT_RESUME = 80;
+
+	public static final int DEFAULT_SAMPLE_INTERVAL = 1000;
+
+	public static final int DEFAULT_DEFER_DELAY = 10000;
+
+	private final boolean enabled;
+
+	private final int priorityThreshold;
+
+	private final double latencyPercentile;
+
+	private final long latencyThreshold;
+
+	private final double cpuThreshold;
+
+	private final int resume;
+
+	private final long sampleInterval;
+
+	private final boolean defer;
+
+	private final long deferDelay;
+
+	private final OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+
+	private final LatencyHistogram latencies = new LatencyHistogram();
+
+	/**
+	 * The jobs with a deferred fire pending
+	 */
+	private final Set<JobKey> deferredJobs = ConcurrentHashMap.newKeySet();
+
+	private final AtomicLong nextSample = new AtomicLong();
+
+	private final AtomicLong admittedCount = new AtomicLong();
+
+	private final AtomicLong skippedCount = new AtomicLong();
+
+	private final AtomicLong deferredCount = new AtomicLong();
+
+	private final AtomicLong pressureCount = new AtomicLong();
+
+	private volatile boolean underPressure;
+
+	private volatile long latencyMillis;
+
+	private volatile double cpuLoad = -1;
+
+	@Inject
+	public AdmissionController(NinjaProperties ninjaProperties)
+	{
+		this.enabled = ninjaProperties.getBooleanWithDefault(CONF_ENABLED, false);
+		this.priorityThreshold = ninjaProperties.getIntegerWithDefault(CONF_PRIORITY_THRESHOLD,
+				DEFAULT_PRIORITY_THRESHOLD);
+		this.latencyPercentile = Double
+				.parseDouble(ninjaProperties.getWithDefault(CONF_LATENCY_PERCENTILE, DEFAULT_LATENCY_PERCENTILE));
+		this.latencyThreshold = ninjaProperties.getIntegerWithDefault(CONF_LATENCY_THRESHOLD,
+				DEFAULT_LATENCY_THRESHOLD);
+		this.cpuThreshold = ninjaProperties.getIntegerWithDefault(CONF_CPU_THRESHOLD, DEFAULT_CPU_THRESHOLD);
+		this.resume = ninjaProperties.getIntegerWithDefault(CONF_RESUME, DEFAULT_RESUME);
+		this.sampleInterval = ninjaProperties.getIntegerWithDefault(CONF_SAMPLE_INTERVAL, DEFAULT_SAMPLE_INTERVAL);
+		String action = ninjaProperties.getWithDefault(CONF_ACTION, ACTION_SKIP);
+		if (!ACTION_SKIP.equals(action) && !ACTION_DEFER.equals(action))
+		{
+			logger.warn("Invalid {} '{}'. Skipping the jobs held back instead.", CONF_ACTION, action);
+		}
+		this.defer = ACTION_DEFER.equals(action);
+		this.deferDelay = ninjaProperties.getIntegerWithDefault(CONF_DEFER_DELAY, DEFAULT_DEFER_DELAY);
+		if (enabled)
+		{
+			logger.info("Holding back jobs below priority {} at {}ms request latency (p{}) or {}% CPU load",
+					priorityThreshold, latencyThreshold, latencyPercentile, cpuThreshold);
+		}
+	}
+
+	/**
+	 * Record the latency of a request.
+	 *
+	 * @param nanos the latency in nanoseconds
+	 */
+	public void recordLatency(long nanos)
+	{
+		if (enabled)
+		{
+			latencies.record(TimeUnit.NANOSECONDS.toMillis(nanos));
+		}
+	}
+
+	/**
+	 * Decide if a fire of a job may run. Fires held back are skipped, or
+	 * deferred with a new trigger.
+	 *
+	 * @param context the execution context of the fire
+	 * @param status  the status of the job, counting the fires held back
+	 * @return true if the job may run
+	 */
+	public boolean admit(JobExecutionContext context, NinjaQuartzJobStatus status)
+	{
+		if (!enabled)
+		{
+			return true;
+		}
+		JobKey jobKey = context.getJobDetail().getKey();
+		if (context.getTrigger().getJobDataMap().containsKey(DEFERRED_KEY))
+		{
+			deferredJobs.remove(jobKey);
+		}
+		sampleIfDue();
+		if (!underPressure || context.getTrigger().getPriority() >= priorityThreshold)
+		{
+			admittedCount.incrementAndGet();
+			return true;
+		}
+
+		if (defer && deferredJobs.add(jobKey) && defer(context, jobKey))
+		{
+			deferredCount.incrementAndGet();
+			status.admissionDeferred();
+		}
+		else
+		{
+			// a deferred fire of the job is already pending
+			skippedCount.incrementAndGet();
+			status.admissionSkipped();
+		}
+		return false;
+	}
+
+	private boolean defer(JobExecutionContext context, JobKey jobKey)
+	{
+		JobDataMap data = new JobDataMap(context.getTrigger().getJobDataMap());
+		data.put(DEFERRED_KEY, true);
+		try
+		{
+			context.getScheduler().scheduleJob(TriggerBuilder.newTrigger().forJob(jobKey)
+					.withPriority(context.getTrigger().getPriority()).usingJobData(data)
+					.startAt(new Date(System.currentTimeMillis() + deferDelay)).build());
+			if (logger.isDebugEnabled())
+			{
+				logger.debug("Deferred fire of job {} by {}ms under load.", jobKey, deferDelay);
+			}
+			context.put(AbstractNinjaQuartzJob.FIRE_DELAYED_KEY, true);
+			return true;
+		}
+		catch (SchedulerException e)
+		{
+			logger.warn("Failed to defer fire of job {}. Skipping it.", jobKey, e);
+			deferredJobs.remove(jobKey);
+			return false;
+		}
+	}
+
+	private void sampleIfDue()
+	{
+		long now = System.currentTimeMillis();
+		long next = nextSample.get();
+		if (now >= next && nextSample.compareAndSet(next, now + sampleInterval))
+		{
+			sample();
+		}
+	}
+
+	private synchronized void sample()
+	{
+		latencyMillis = latencies.percentileAndReset(latencyPercentile);
+		cpuLoad = sampleCpuLoad();
+		boolean latencyHigh = latencyThreshold > 0 && latencyMillis >= latencyThreshold;
+		boolean cpuHigh = cpuThreshold > 0 && cpuLoad >= cpuThreshold;
+		if (!underPressure && (latencyHigh || cpuHigh))
+		{
+			underPressure = true;
+			pressureCount.incrementAndGet();
+			logger.info("Holding back jobs below priority {}: request latency {}ms, CPU load {}%", priorityThreshold,
+					latencyMillis, Math.round(cpuLoad));
+		}
+		else if (underPressure && (latencyThreshold <= 0 || latencyMillis * 100 < latencyThreshold * resume)
+				&& (cpuThreshold <= 0 || cpuLoad * 100 < cpuThreshold * resume))
+		{
+			underPressure = false;
+			logger.info("Admitting all jobs again: request latency {}ms, CPU load {}%", latencyMillis,
+					Math.round(cpuLoad));
+		}
+	}
+
+	/**
+	 * @return the current CPU load of the system in percent, or -1 if not
+	 * available
+	 */
+	protected double sampleCpuLoad()
+	{
+		if (os instanceof com.sun.management.OperatingSystemMXBean)
+		{
+			double load = ((com.sun.management.OperatingSystemMXBean) os).getSystemCpuLoad();
+			if (load >= 0)
+			{
+				return load * 100;
+			}
+		}
+		double average = os.getSystemLoadAverage();
+		return average < 0 ? -1 : average * 100 / os.getAvailableProcessors();
+	}
+
+	@Override
+	public boolean isEnabled()
+	{
+		return enabled;
+	}
+
+	@Override
+	public boolean isUnderPressure()
+	{
+		return underPressure;
+	}
+
+	@Override
+	public long getLatencyMillis()
+	{
+		return latencyMillis;
+	}
+
+	@Override
+	public double getCpuLoad()
+	{
+		return cpuLoad;
+	}
+
+	@Override
+	public int getPriorityThreshold()
+	{
+		return priorityThreshold;
+	}
+
+	@Override
+	public String getAction()
+	{
+		return defer ? ACTION_DEFER : ACTION_SKIP;
+	}
+
+	@Override
+	public long getAdmittedCount()
+	{
+		return admittedCount.get();
+	}
+
+	@Override
+	public long getSkippedCount()
+	{
+		return skippedCount.get();
+	}
+
+	@Override
+	public long getDeferredCount()
+	{
+		return deferredCount.get();
+	}
+
+	@Override
+	public long getPressureCount()
+	{
+		return pressureCount.get();
+	}
+
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.admission;
+
+/**
+ * Management interface of the {@link AdmissionController}, registered with
+ * the platform MBean server under
+ * <code>com.jensfendler.ninjaquartz:type=AdmissionController</code>.
+ *
+ * @author Jens Fendler
+ */
+public interface AdmissionControllerMXBean
+{
+
+	boolean isEnabled();
+
+	/**
+	 * @return true while low-priority jobs are held back
+	 */
+	boolean isUnderPressure();
+
+	/**
+	 * @return the request latency percentile of the last sample (in
+	 * milliseconds)
+	 */
+	long getLatencyMillis();
+
+	/**
+	 * @return the CPU load of the last sample (in percent), or -1 if not
+	 * available
+	 */
+	double getCpuLoad();
+
+	int getPriorityThreshold();
+
+	String getAction();
+
+	long getAdmittedCount();
+
+	long getSkippedCount();
+
+	long getDeferredCount();
+
+	/**
+	 * @return the number of times the pressure was switched on
+	 */
+	long getPressureCount();
+
+}
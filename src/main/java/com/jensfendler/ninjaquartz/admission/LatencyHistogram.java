@@ -0,0 +1,109 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.admission;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of latencies (in milliseconds) recorded since it was
+ * last read. Latencies up to 15ms are counted exactly; longer latencies are
+ * counted in four buckets per power of two, i.e. with an error of less than
+ * 25%. Recording a latency neither locks nor allocates.
+ *
+ * @author Jens Fendler
+ */
+public class LatencyHistogram
+{
+
+	private static final int EXACT = 16;
+
+	private static final int SUB_BUCKETS = 4;
+
+	/**
+	 * Exact buckets, and 4 buckets for each power of two from 2^4 to 2^62
+	 */
+	private static final int BUCKETS = EXACT + (63 - 4) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+	/**
+	 * Record a latency.
+	 *
+	 * @param millis the latency in milliseconds
+	 */
+	public void record(long millis)
+	{
+		counts.incrementAndGet(bucket(Math.max(0, millis)));
+	}
+
+	/**
+	 * Compute a percentile of the latencies recorded since the last call, and
+	 * start over. Latencies recorded concurrently are counted in this or the
+	 * next interval.
+	 *
+	 * @param percentile the percentile (e.g. 99.0)
+	 * @return the upper bound of the bucket of the percentile (in
+	 * milliseconds), or 0 if no latencies were recorded
+	 */
+	public long percentileAndReset(double percentile)
+	{
+		long total = 0;
+		long[] snapshot = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++)
+		{
+			snapshot[i] = counts.getAndSet(i, 0);
+			total += snapshot[i];
+		}
+		if (total == 0)
+		{
+			return 0;
+		}
+		long rank = (long) Math.ceil(total * Math.min(100.0, Math.max(0.0, percentile)) / 100.0);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++)
+		{
+			seen += snapshot[i];
+			if (seen >= rank && snapshot[i] > 0)
+			{
+				return upperBound(i);
+			}
+		}
+		return upperBound(BUCKETS - 1);
+	}
+
+	static int bucket(long millis)
+	{
+		if (millis < EXACT)
+		{
+			return (int) millis;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(millis);
+		int sub = (int) (millis >>> (exponent - 2)) & (SUB_BUCKETS - 1);
+		return EXACT + (exponent - 4) * SUB_BUCKETS + sub;
+	}
+
+	static long upperBound(int bucket)
+	{
+		if (bucket < EXACT)
+		{
+			return bucket;
+		}
+		int exponent = (bucket - EXACT) / SUB_BUCKETS + 4;
+		int sub = (bucket - EXACT) % SUB_BUCKETS;
+		return ((long) (SUB_BUCKETS + sub + 1) << (exponent - 2)) - 1;
+	}
+
+}
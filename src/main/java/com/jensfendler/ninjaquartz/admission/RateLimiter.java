@@ -0,0 +1,143 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.admission;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock-free token bucket, implemented as a generic cell rate algorithm:
+ * instead of counting tokens, the bucket keeps the theoretical arrival time
+ * of the next permit in a single {@link AtomicLong}, and takes permits with a
+ * compare-and-set. Up to <code>burst</code> permits are available at once,
+ * refilled at <code>permitsPerSecond</code>.
+ *
+ * @author Jens Fendler
+ */
+public class RateLimiter
+{
+
+	private final double permitsPerSecond;
+
+	private final int burst;
+
+	/**
+	 * The time between two permits (in nanoseconds)
+	 */
+	private final long interval;
+
+	/**
+	 * How far the theoretical arrival time may be ahead of now
+	 */
+	private final long tolerance;
+
+	private final AtomicLong arrival;
+
+	/**
+	 * @param permitsPerSecond the rate of permits
+	 * @param burst            the number of permits available at once (at
+	 *                         least 1)
+	 */
+	public RateLimiter(double permitsPerSecond, int burst)
+	{
+		if (!(permitsPerSecond > 0))
+		{
+			throw new IllegalArgumentException("Invalid rate " + permitsPerSecond);
+		}
+		this.permitsPerSecond = permitsPerSecond;
+		this.burst = Math.max(1, burst);
+		this.interval = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+		this.tolerance = interval * (this.burst - 1);
+		// a full bucket
+		this.arrival = new AtomicLong(System.nanoTime() - tolerance);
+	}
+
+	/**
+	 * Take a permit if one is available.
+	 *
+	 * @return true if a permit was taken
+	 */
+	public boolean tryAcquire()
+	{
+		long now = System.nanoTime();
+		while (true)
+		{
+			long current = arrival.get();
+			long base = current - now > 0 ? current : now;
+			if (base - now > tolerance)
+			{
+				return false;
+			}
+			if (arrival.compareAndSet(current, base + interval))
+			{
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Reserve the next permit, available now or in the future.
+	 *
+	 * @return the time (in nanoseconds) until the permit is available, or 0
+	 * if it is available now
+	 */
+	public long reserve()
+	{
+		long now = System.nanoTime();
+		while (true)
+		{
+			long current = arrival.get();
+			long base = current - now > 0 ? current : now;
+			if (arrival.compareAndSet(current, base + interval))
+			{
+				return Math.max(0, base - now - tolerance);
+			}
+		}
+	}
+
+	/**
+	 * Return a permit taken but not used.
+	 */
+	public void refund()
+	{
+		long now = System.nanoTime();
+		while (true)
+		{
+			long current = arrival.get();
+			long refunded = current - interval;
+			// never more than a full bucket
+			if (refunded - (now - tolerance) < 0)
+			{
+				refunded = now - tolerance;
+			}
+			if (refunded - current >= 0 || arrival.compareAndSet(current, refunded))
+			{
+				return;
+			}
+		}
+	}
+
+	public double getPermitsPerSecond()
+	{
+		return permitsPerSecond;
+	}
+
+	public int getBurst()
+	{
+		return burst;
+	}
+
+}
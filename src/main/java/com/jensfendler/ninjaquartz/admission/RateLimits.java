@@ -0,0 +1,365 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.admission;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.jensfendler.ninjaquartz.NinjaQuartzModule;
+import com.jensfendler.ninjaquartz.annotations.QuartzSchedule;
+import com.jensfendler.ninjaquartz.job.AbstractNinjaQuartzJob;
+import com.jensfendler.ninjaquartz.job.NinjaQuartzJobStatus;
+
+import org.quartz.JobDataMap;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobKey;
+import org.quartz.SchedulerException;
+import org.quartz.TriggerBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import ninja.utils.NinjaProperties;
+
+/**
+ * Limits the rate of the fires of jobs (see
+ * {@link QuartzSchedule#rateLimit()}), e.g. of jobs calling third-party APIs
+ * with strict quotas, whatever fires them: their cron schedule, manual
+ * triggers, retries or misfires. Each job may have its own
+ * {@link RateLimiter}, and share the limiter of a group with other jobs (see
+ * {@link QuartzSchedule#rateLimitGroup()}). A fire runs only with a permit of
+ * both. Each scheduler keeps the instance in its
+ * {@link org.quartz.SchedulerContext}, under {@link #SCHEDULER_CONTEXT_KEY}.
+ * <p>
+ * The rates of groups are configured in application.conf:
+ *
+ * <pre>
+ * quartz.rateLimit.partnerApi.permitsPerSecond=2
+ * quartz.rateLimit.partnerApi.burst=5          # optional, default: 1
+ * </pre>
+ *
+ * @author Jens Fendler
+ */
+@Singleton
+public class RateLimits
+{
+
+	protected static final Logger logger = LoggerFactory.getLogger(NinjaQuartzModule.class);
+
+	/**
+	 * The key of this instance in the context of each scheduler.
+	 */
+	public static final String SCHEDULER_CONTEXT_KEY = "nqRateLimits";
+
+	/**
+	 * The key of the boolean property in the {@link JobDataMap} of the
+	 * triggers of delayed fires, whose permits have been reserved.
+	 */
+	public static final String RESERVED_KEY = "nqRateReserved";
+
+	public static final String CONF_PREFIX = "quartz.rateLimit.";
+
+	public static final String CONF_PERMITS_PER_SECOND = ".permitsPerSecond";
+
+	public static final String CONF_BURST = ".burst";
+
+	private final NinjaProperties ninjaProperties;
+
+	private final Map<String, RateLimiter> groups = new ConcurrentHashMap<>();
+
+	private final Map<JobKey, Limit> limits = new ConcurrentHashMap<>();
+
+	@Inject
+	public RateLimits(NinjaProperties ninjaProperties)
+	{
+		this.ninjaProperties = ninjaProperties;
+	}
+
+	/**
+	 * Limit the rate of a job.
+	 *
+	 * @param jobKey           the key of the job
+	 * @param permitsPerSecond the rate of the job, or 0 if only its group is
+	 *                         limited
+	 * @param burst            the number of fires of the job allowed at once
+	 * @param group            the name of the group of the job, or null
+	 * @param action           {@link QuartzSchedule#RATE_LIMIT_SKIP},
+	 *                         {@link QuartzSchedule#RATE_LIMIT_DELAY} or
+	 *                         {@link QuartzSchedule#RATE_LIMIT_COALESCE}
+	 * @throws SchedulerException if the limit is invalid, or the group is not
+	 *                            configured
+	 */
+	public void register(JobKey jobKey, double permitsPerSecond, int burst, String group, String action)
+			throws SchedulerException
+	{
+		check(jobKey, permitsPerSecond, burst, group, action);
+		RateLimiter jobLimiter = permitsPerSecond > 0 ? new RateLimiter(permitsPerSecond, burst) : null;
+		RateLimiter groupLimiter = group == null ? null : getGroup(group);
+		if (jobLimiter == null && groupLimiter == null)
+		{
+			limits.remove(jobKey);
+			return;
+		}
+		limits.put(jobKey, new Limit(jobLimiter, groupLimiter, action));
+		logger.debug("Limiting job {} to {} fires per second (burst {}), group {}", jobKey, permitsPerSecond, burst,
+				group);
+	}
+
+	/**
+	 * @param jobKey the key of the job
+	 */
+	public void unregister(JobKey jobKey)
+	{
+		limits.remove(jobKey);
+	}
+
+	/**
+	 * Make sure that a rate limit can be registered, without registering it.
+	 *
+	 * @param jobKey           the key of the job
+	 * @param permitsPerSecond the rate of the job, or 0 if only its group is
+	 *                         limited
+	 * @param burst            the number of fires of the job allowed at once
+	 * @param group            the name of the group of the job, or null
+	 * @param action           the action for fires without a permit
+	 * @throws SchedulerException if the limit is invalid, or the group is not
+	 *                            configured
+	 */
+	public void check(JobKey jobKey, double permitsPerSecond, int burst, String group, String action)
+			throws SchedulerException
+	{
+		if (permitsPerSecond < 0 || burst < 1)
+		{
+			throw new SchedulerException("Invalid rate limit of job " + jobKey + ": " + permitsPerSecond
+					+ " per second, burst " + burst);
+		}
+		if (!QuartzSchedule.RATE_LIMIT_SKIP.equals(action) && !QuartzSchedule.RATE_LIMIT_DELAY.equals(action)
+				&& !QuartzSchedule.RATE_LIMIT_COALESCE.equals(action))
+		{
+			throw new SchedulerException("Invalid rate limit action of job " + jobKey + ": " + action);
+		}
+		if (group != null)
+		{
+			getGroup(group);
+		}
+	}
+
+	/**
+	 * Get the limiter of a group, and create it on first use.
+	 *
+	 * @param name the name of the group
+	 * @return the limiter shared by the jobs of the group
+	 * @throws SchedulerException if the rate of the group is not configured
+	 */
+	public RateLimiter getGroup(String name) throws SchedulerException
+	{
+		RateLimiter limiter = groups.get(name);
+		if (limiter != null)
+		{
+			return limiter;
+		}
+		String rate = ninjaProperties.get(CONF_PREFIX + name + CONF_PERMITS_PER_SECOND);
+		if (rate == null)
+		{
+			throw new SchedulerException("Rate limit group " + name + " is not configured. Set " + CONF_PREFIX + name
+					+ CONF_PERMITS_PER_SECOND + " in application.conf.");
+		}
+		try
+		{
+			RateLimiter created = new RateLimiter(Double.parseDouble(rate),
+					ninjaProperties.getIntegerWithDefault(CONF_PREFIX + name + CONF_BURST, 1));
+			limiter = groups.putIfAbsent(name, created);
+			return limiter == null ? created : limiter;
+		}
+		catch (IllegalArgumentException e)
+		{
+			throw new SchedulerException("Invalid rate of rate limit group " + name + ": " + rate, e);
+		}
+	}
+
+	/**
+	 * Decide if a fire of a job may run. Fires without a permit are skipped,
+	 * or delayed with a new trigger until their permit is available. Runs
+	 * fired on start take their permits, but are never held back.
+	 *
+	 * @param context the execution context of the fire
+	 * @param status  the status of the job, counting the fires held back
+	 * @return true if the job may run
+	 */
+	public boolean admit(JobExecutionContext context, NinjaQuartzJobStatus status)
+	{
+		Limit limit = limits.get(context.getJobDetail().getKey());
+		if (limit == null)
+		{
+			return true;
+		}
+		JobDataMap triggerData = context.getTrigger().getJobDataMap();
+		if (triggerData.containsKey(RESERVED_KEY))
+		{
+			// delayed until its permits were available
+			limit.pending.set(false);
+			return true;
+		}
+		if (triggerData.containsKey(AbstractNinjaQuartzJob.FIRE_ON_START_KEY))
+		{
+			limit.reserve();
+			return true;
+		}
+
+		if (QuartzSchedule.RATE_LIMIT_SKIP.equals(limit.action))
+		{
+			if (limit.tryAcquire())
+			{
+				return true;
+			}
+			status.rateLimitSkipped();
+			if (logger.isDebugEnabled())
+			{
+				logger.debug("Skipping fire of job {}: rate limit exceeded.", context.getJobDetail().getKey());
+			}
+			return false;
+		}
+
+		boolean coalesce = QuartzSchedule.RATE_LIMIT_COALESCE.equals(limit.action);
+		if (coalesce && !limit.pending.compareAndSet(false, true))
+		{
+			// merged into the delayed fire
+			status.rateLimitSkipped();
+			return false;
+		}
+		long wait = limit.reserve();
+		if (wait == 0)
+		{
+			limit.pending.set(false);
+			return true;
+		}
+		if (delay(context, wait))
+		{
+			status.rateLimitDelayed();
+		}
+		else
+		{
+			limit.refund();
+			limit.pending.set(false);
+			status.rateLimitSkipped();
+		}
+		return false;
+	}
+
+	/**
+	 * Return the permits of an admitted fire which did not run after all (e.g.
+	 * because it did not fit the resource budget).
+	 *
+	 * @param context the execution context of the fire
+	 */
+	public void refund(JobExecutionContext context)
+	{
+		Limit limit = limits.get(context.getJobDetail().getKey());
+		if (limit != null)
+		{
+			limit.refund();
+		}
+	}
+
+	private static boolean delay(JobExecutionContext context, long waitNanos)
+	{
+		JobKey jobKey = context.getJobDetail().getKey();
+		JobDataMap data = new JobDataMap(context.getTrigger().getJobDataMap());
+		data.put(RESERVED_KEY, true);
+		long waitMillis = TimeUnit.NANOSECONDS.toMillis(waitNanos) + 1;
+		try
+		{
+			context.getScheduler().scheduleJob(TriggerBuilder.newTrigger().forJob(jobKey)
+					.withPriority(context.getTrigger().getPriority()).usingJobData(data)
+					.startAt(new Date(System.currentTimeMillis() + waitMillis)).build());
+			if (logger.isDebugEnabled())
+			{
+				logger.debug("Delayed fire of job {} by {}ms: rate limit exceeded.", jobKey, waitMillis);
+			}
+			context.put(AbstractNinjaQuartzJob.FIRE_DELAYED_KEY, true);
+			return true;
+		}
+		catch (SchedulerException e)
+		{
+			logger.warn("Failed to delay fire of job {}. Skipping it.", jobKey, e);
+			return false;
+		}
+	}
+
+	/**
+	 * The limiters of a job
+	 */
+	private static class Limit
+	{
+		private final RateLimiter job;
+
+		private final RateLimiter group;
+
+		private final String action;
+
+		/**
+		 * If a delayed fire is pending (for coalescing fires)
+		 */
+		private final AtomicBoolean pending = new AtomicBoolean();
+
+		Limit(RateLimiter job, RateLimiter group, String action)
+		{
+			this.job = job;
+			this.group = group;
+			this.action = action;
+		}
+
+		boolean tryAcquire()
+		{
+			if (job != null && !job.tryAcquire())
+			{
+				return false;
+			}
+			if (group != null && !group.tryAcquire())
+			{
+				if (job != null)
+				{
+					job.refund();
+				}
+				return false;
+			}
+			return true;
+		}
+
+		long reserve()
+		{
+			long wait = job == null ? 0 : job.reserve();
+			return group == null ? wait : Math.max(wait, group.reserve());
+		}
+
+		void refund()
+		{
+			if (job != null)
+			{
+				job.refund();
+			}
+			if (group != null)
+			{
+				group.refund();
+			}
+		}
+	}
+
+}
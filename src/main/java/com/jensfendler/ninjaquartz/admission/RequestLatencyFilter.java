@@ -0,0 +1,67 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.admission;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import ninja.Context;
+import ninja.Filter;
+import ninja.FilterChain;
+import ninja.Result;
+
+/**
+ * A Ninja {@link Filter} recording the latency of each request with the
+ * {@link AdmissionController}, so that low-priority jobs can be held back
+ * while requests are slow. Use it for all routes (e.g. in
+ * <code>conf.Filters</code>), or with <code>@FilterWith</code> on the
+ * controllers whose latency matters.
+ * <p>
+ * The latency measured is the time spent in the filter chain, i.e. it does
+ * not include the rendering of the result.
+ *
+ * @author Jens Fendler
+ */
+@Singleton
+public class RequestLatencyFilter implements Filter
+{
+
+	private final AdmissionController admissionController;
+
+	@Inject
+	public RequestLatencyFilter(AdmissionController admissionController)
+	{
+		this.admissionController = admissionController;
+	}
+
+	/**
+	 * @see ninja.Filter#filter(ninja.FilterChain, ninja.Context)
+	 */
+	@Override
+	public Result filter(FilterChain chain, Context context)
+	{
+		long start = System.nanoTime();
+		try
+		{
+			return chain.next(context);
+		}
+		finally
+		{
+			admissionController.recordLatency(System.nanoTime() - start);
+		}
+	}
+
+}
@@ -0,0 +1,365 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.admission;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.jensfendler.ninjaquartz.NinjaQuartzModule;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import ninja.utils.NinjaProperties;
+
+/**
+ * A weighted semaphore starting jobs only while their declared weights (see
+ * {@link com.jensfendler.ninjaquartz.annotations.QuartzSchedule#cpuWeight()}
+ * and
+ * {@link com.jensfendler.ninjaquartz.annotations.QuartzSchedule#memoryWeight()})
+ * fit the remaining budget, so that heavy jobs starting at once do not
+ * exhaust the CPUs or the heap even though the thread pool has free threads.
+ * Each scheduler keeps the instance in its {@link org.quartz.SchedulerContext},
+ * under {@link #SCHEDULER_CONTEXT_KEY}.
+ * <p>
+ * A fire whose weights do not fit waits (in its worker thread) until
+ * running jobs have returned enough of the budget. Waiting fires are served
+ * strictly by the priority of their triggers, and in the order of their
+ * arrival within the same priority. Fires behind the first one wait even if
+ * their weights would fit, so heavy jobs are not starved by light ones.
+ * Weights are in units of the budget (e.g. CPUs and MB of heap), and are
+ * capped at the budget, so each job can run at least on its own. Jobs
+ * without weights are not limited.
+ * <p>
+ * Configuration in application.conf:
+ *
+ * <pre>
+ * quartz.budget.cpu=8          # optional, 0 or unset: unlimited
+ * quartz.budget.memory=2048    # optional, 0 or unset: unlimited
+ * quartz.budget.maxWait=60000  # optional, milliseconds to wait before skipping the fire (0: no limit)
+ * </pre>
+ *
+ * @author Jens Fendler
+ */
+@Singleton
+public class ResourceBudget implements ResourceBudgetMXBean
+{
+
+	protected static final Logger logger = LoggerFactory.getLogger(NinjaQuartzModule.class);
+
+	/**
+	 * The key of this instance in the context of each scheduler.
+	 */
+	public static final String SCHEDULER_CONTEXT_KEY = "nqResourceBudget";
+
+	public static final String CONF_CPU = "quartz.budget.cpu";
+
+	public static final String CONF_MEMORY = "quartz.budget.memory";
+
+	public static final String CONF_MAX_WAIT = "quartz.budget.maxWait";
+
+	public static final int DEFAULT_MAX_WAIT = 0;
+
+	private final int cpuBudget;
+
+	private final int memoryBudget;
+
+	private final long maxWait;
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	/**
+	 * The waiting fires, the next one to start first
+	 */
+	private final PriorityQueue<Waiter> waiting = new PriorityQueue<>();
+
+	private long arrivals;
+
+	private volatile int cpuUsed;
+
+	private volatile int memoryUsed;
+
+	private final AtomicLong acquiredCount = new AtomicLong();
+
+	private final AtomicLong waitedCount = new AtomicLong();
+
+	private final AtomicLong timedOutCount = new AtomicLong();
+
+	private final AtomicLong waitNanos = new AtomicLong();
+
+	@Inject
+	public ResourceBudget(NinjaProperties ninjaProperties)
+	{
+		this(ninjaProperties.getIntegerWithDefault(CONF_CPU, 0),
+				ninjaProperties.getIntegerWithDefault(CONF_MEMORY, 0),
+				ninjaProperties.getIntegerWithDefault(CONF_MAX_WAIT, DEFAULT_MAX_WAIT));
+		if (isEnabled())
+		{
+			logger.info("Starting weighted jobs within a budget of {} CPU and {} memory", cpuBudget, memoryBudget);
+		}
+	}
+
+	/**
+	 * @param cpuBudget    the CPU budget, or 0 for no limit
+	 * @param memoryBudget the memory budget, or 0 for no limit
+	 * @param maxWait      the time (in milliseconds) to wait for the budget
+	 *                     before skipping a fire, or 0 for no limit
+	 */
+	public ResourceBudget(int cpuBudget, int memoryBudget, long maxWait)
+	{
+		this.cpuBudget = Math.max(0, cpuBudget);
+		this.memoryBudget = Math.max(0, memoryBudget);
+		this.maxWait = maxWait;
+	}
+
+	/**
+	 * @return true if a budget has been configured
+	 */
+	public boolean isEnabled()
+	{
+		return cpuBudget > 0 || memoryBudget > 0;
+	}
+
+	/**
+	 * Take the weights of a job from the budget, and wait until they fit if
+	 * necessary.
+	 *
+	 * @param cpuWeight    the CPU weight of the job
+	 * @param memoryWeight the memory weight of the job
+	 * @param priority     the priority of the fire
+	 * @return true if the job may start, or false if the weights did not fit
+	 * in time (or the thread was interrupted)
+	 */
+	public boolean acquire(int cpuWeight, int memoryWeight, int priority)
+	{
+		int cpu = cpuShare(cpuWeight);
+		int memory = memoryShare(memoryWeight);
+		if (cpu == 0 && memory == 0)
+		{
+			return true;
+		}
+
+		lock.lock();
+		try
+		{
+			if (waiting.isEmpty() && fits(cpu, memory))
+			{
+				take(cpu, memory);
+				return true;
+			}
+
+			Waiter waiter = new Waiter(priority, arrivals++, lock.newCondition());
+			waiting.add(waiter);
+			waitedCount.incrementAndGet();
+			long start = System.nanoTime();
+			long remaining = maxWait > 0 ? TimeUnit.MILLISECONDS.toNanos(maxWait) : Long.MAX_VALUE;
+			try
+			{
+				while (waiting.peek() != waiter || !fits(cpu, memory))
+				{
+					if (remaining <= 0)
+					{
+						timedOutCount.incrementAndGet();
+						return false;
+					}
+					remaining = maxWait > 0 ? waiter.condition.awaitNanos(remaining) : awaitForever(waiter);
+				}
+				take(cpu, memory);
+				return true;
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				return false;
+			}
+			finally
+			{
+				waiting.remove(waiter);
+				waitNanos.addAndGet(System.nanoTime() - start);
+				// the next fire may fit as well
+				signalNext();
+			}
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Return the weights of a finished job to the budget.
+	 *
+	 * @param cpuWeight    the CPU weight of the job
+	 * @param memoryWeight the memory weight of the job
+	 */
+	public void release(int cpuWeight, int memoryWeight)
+	{
+		int cpu = cpuShare(cpuWeight);
+		int memory = memoryShare(memoryWeight);
+		if (cpu == 0 && memory == 0)
+		{
+			return;
+		}
+
+		lock.lock();
+		try
+		{
+			cpuUsed -= cpu;
+			memoryUsed -= memory;
+			signalNext();
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	private static long awaitForever(Waiter waiter) throws InterruptedException
+	{
+		waiter.condition.await();
+		return Long.MAX_VALUE;
+	}
+
+	private int cpuShare(int cpuWeight)
+	{
+		return cpuBudget > 0 ? Math.min(Math.max(0, cpuWeight), cpuBudget) : 0;
+	}
+
+	private int memoryShare(int memoryWeight)
+	{
+		return memoryBudget > 0 ? Math.min(Math.max(0, memoryWeight), memoryBudget) : 0;
+	}
+
+	private boolean fits(int cpu, int memory)
+	{
+		// shares are 0 for unlimited resources, and never exceed the budget
+		return cpuUsed + cpu <= cpuBudget && memoryUsed + memory <= memoryBudget;
+	}
+
+	private void take(int cpu, int memory)
+	{
+		cpuUsed += cpu;
+		memoryUsed += memory;
+		acquiredCount.incrementAndGet();
+	}
+
+	private void signalNext()
+	{
+		Waiter next = waiting.peek();
+		if (next != null)
+		{
+			next.condition.signal();
+		}
+	}
+
+	@Override
+	public int getCpuBudget()
+	{
+		return cpuBudget;
+	}
+
+	@Override
+	public int getCpuUsed()
+	{
+		return cpuUsed;
+	}
+
+	@Override
+	public int getMemoryBudget()
+	{
+		return memoryBudget;
+	}
+
+	@Override
+	public int getMemoryUsed()
+	{
+		return memoryUsed;
+	}
+
+	@Override
+	public int getWaitingCount()
+	{
+		lock.lock();
+		try
+		{
+			return waiting.size();
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public long getAcquiredCount()
+	{
+		return acquiredCount.get();
+	}
+
+	@Override
+	public long getWaitedCount()
+	{
+		return waitedCount.get();
+	}
+
+	@Override
+	public long getTimedOutCount()
+	{
+		return timedOutCount.get();
+	}
+
+	@Override
+	public long getTotalWaitMillis()
+	{
+		return TimeUnit.NANOSECONDS.toMillis(waitNanos.get());
+	}
+
+	/**
+	 * A fire waiting for its weights to fit
+	 */
+	private static class Waiter implements Comparable<Waiter>
+	{
+		private final int priority;
+
+		private final long arrival;
+
+		private final Condition condition;
+
+		Waiter(int priority, long arrival, Condition condition)
+		{
+			this.priority = priority;
+			this.arrival = arrival;
+			this.condition = condition;
+		}
+
+		@Override
+		public int compareTo(Waiter other)
+		{
+			if (priority != other.priority)
+			{
+				// higher priorities first
+				return Integer.compare(other.priority, priority);
+			}
+			return Long.compare(arrival, other.arrival);
+		}
+	}
+
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.admission;
+
+/**
+ * Management interface of the {@link ResourceBudget}, registered with the
+ * platform MBean server under
+ * <code>com.jensfendler.ninjaquartz:type=ResourceBudget</code>.
+ *
+ * @author Jens Fendler
+ */
+public interface ResourceBudgetMXBean
+{
+
+	/**
+	 * @return the CPU budget, or 0 if unlimited
+	 */
+	int getCpuBudget();
+
+	/**
+	 * @return the CPU weight of the jobs running
+	 */
+	int getCpuUsed();
+
+	/**
+	 * @return the memory budget, or 0 if unlimited
+	 */
+	int getMemoryBudget();
+
+	/**
+	 * @return the memory weight of the jobs running
+	 */
+	int getMemoryUsed();
+
+	/**
+	 * @return the number of fires waiting for their weights to fit the budget
+	 */
+	int getWaitingCount();
+
+	long getAcquiredCount();
+
+	/**
+	 * @return the number of fires which had to wait
+	 */
+	long getWaitedCount();
+
+	/**
+	 * @return the number of fires skipped after waiting
+	 * <code>quartz.budget.maxWait</code> milliseconds
+	 */
+	long getTimedOutCount();
+
+	long getTotalWaitMillis();
+
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Turns a method annotated with {@link QuartzSchedule} into the consumer of a
+ * {@link com.jensfendler.ninjaquartz.batch.BatchBuffer}. Producers offer items
+ * to the buffer (see
+ * {@link com.jensfendler.ninjaquartz.batch.BatchBuffers#get(String)}), and the
+ * method receives them in batches through a {@link java.util.List} parameter.
+ * The method is called when its cron schedule fires, or as soon as
+ * {@link #maxBatchSize()} items are waiting, whichever comes first. Fires
+ * without waiting items do not call the method.
+ * <p>
+ * Example:
+ *
+ * <code>
+ * &#64;QuartzSchedule(cronSchedule = "0/10 * * * * ?")
+ * &#64;QuartzBatch(name = "auditEvents", maxBatchSize = 500)
+ * public void write(List&lt;AuditEvent&gt; events) {
+ * auditDao.insertAll(events);
+ * }
+ * </code>
+ *
+ * @author Jens Fendler
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface QuartzBatch
+{
+	int DEFAULT_MAX_BATCH_SIZE = 100;
+
+	int DEFAULT_CAPACITY = 10000;
+
+	String OVERFLOW_BLOCK = "block";
+
+	String OVERFLOW_DROP_OLDEST = "dropOldest";
+
+	String OVERFLOW_REJECT = "reject";
+
+	String DEFAULT_OVERFLOW = OVERFLOW_BLOCK;
+
+	long DEFAULT_OFFER_TIMEOUT = 1000;
+
+	/**
+	 * The name of the buffer, under which producers get it from
+	 * {@link com.jensfendler.ninjaquartz.batch.BatchBuffers}.
+	 *
+	 * @return the name of the buffer
+	 */
+	String name();
+
+	/**
+	 * The maximum number of items passed to a single call of the method. A
+	 * buffer holding this many items fires the job at once. Defaults to 100.
+	 *
+	 * @return the maximum size of a batch
+	 */
+	int maxBatchSize() default DEFAULT_MAX_BATCH_SIZE;
+
+	/**
+	 * The maximum number of items waiting in the buffer. Defaults to 10000.
+	 *
+	 * @return the capacity of the buffer
+	 * @see #overflow()
+	 */
+	int capacity() default DEFAULT_CAPACITY;
+
+	/**
+	 * What happens to items offered to a full buffer:
+	 * {@link #OVERFLOW_BLOCK} (the default) lets the producer wait up to
+	 * {@link #offerTimeout()} milliseconds for space,
+	 * {@link #OVERFLOW_DROP_OLDEST} drops the oldest waiting item, and
+	 * {@link #OVERFLOW_REJECT} rejects the new item.
+	 *
+	 * @return the overflow policy of the buffer
+	 */
+	String overflow() default DEFAULT_OVERFLOW;
+
+	/**
+	 * The time (in milliseconds) a producer waits for space in a full buffer
+	 * with the {@link #OVERFLOW_BLOCK} policy, before the item is rejected.
+	 * Defaults to 1000.
+	 *
+	 * @return the offer timeout
+	 */
+	long offerTimeout() default DEFAULT_OFFER_TIMEOUT;
+
+}
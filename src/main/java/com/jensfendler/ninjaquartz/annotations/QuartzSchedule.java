@@ -72,10 +72,50 @@ public @interface QuartzSchedule
 
 	boolean DEFAULT_PERSISTENT = false;
 
+	boolean DEFAULT_WRITE_BEHIND = false;
+
 	boolean DEFAULT_REMOVE_ON_ERROR = false;
 
 	boolean DEFAULT_FORCE_KEEP = false;
 
+	String DEFAULT_SCHEDULER = "";
+
+	boolean DEFAULT_RUN_ONCE = false;
+
+	int DEFAULT_PARTITIONS = 1;
+
+	String PARTITION_ON_SCHEDULER = "scheduler";
+
+	String PARTITION_ON_FORK_JOIN_POOL = "forkJoinPool";
+
+	String DEFAULT_PARTITION_ON = PARTITION_ON_SCHEDULER;
+
+	String NO_CRON_SCHEDULE = "";
+
+	String DEFAULT_PUBLISH_AS = "";
+
+	boolean DEFAULT_FIRE_ON_START = false;
+
+	boolean DEFAULT_WARMUP = false;
+
+	int DEFAULT_CPU_WEIGHT = 0;
+
+	int DEFAULT_MEMORY_WEIGHT = 0;
+
+	double DEFAULT_RATE_LIMIT = 0;
+
+	int DEFAULT_RATE_BURST = 1;
+
+	String DEFAULT_RATE_LIMIT_GROUP = "";
+
+	String RATE_LIMIT_SKIP = "skip";
+
+	String RATE_LIMIT_DELAY = "delay";
+
+	String RATE_LIMIT_COALESCE = "coalesce";
+
+	String DEFAULT_RATE_LIMIT_ACTION = RATE_LIMIT_SKIP;
+
 	/**
 	 * The group name of the trigger to use for the scheduled method.
 	 *
@@ -106,10 +146,12 @@ public @interface QuartzSchedule
 	 *
 	 * @return the cron expression defining the schedule, <em>or</em> the key
 	 * name of a Ninja property (from application.conf) that contains a
-	 * Cron Schedule string.
+	 * Cron Schedule string. Jobs which depend on other jobs (see
+	 * {@link #dependsOn()}) may have no cron schedule, and then only run when
+	 * the jobs they depend on have completed.
 	 * @see CronExpression
 	 */
-	String cronSchedule();
+	String cronSchedule() default NO_CRON_SCHEDULE;
 
 	/**
 	 * The name of the {@link Job} to run for the scheduled method.
@@ -206,6 +248,18 @@ public @interface QuartzSchedule
 	 */
 	boolean persistent() default DEFAULT_PERSISTENT;
 
+	/**
+	 * Only for {@link #persistent()} jobs: keep the {@link JobDataMap} in
+	 * memory between invocations, and write changed maps to the job store
+	 * periodically (every <code>quartz.writeBehind.flushInterval</code>
+	 * milliseconds) and on shutdown, instead of after every invocation.
+	 * Changes made since the last flush are lost if the application crashes.
+	 * Defaults to false.
+	 *
+	 * @return the writeBehind property of the job
+	 */
+	boolean writeBehind() default DEFAULT_WRITE_BEHIND;
+
 	/**
 	 * If this argument is set to <code>true</code>, the job will be immediately
 	 * removed from the scheduler after a {@link InvocationTargetException} is
@@ -231,4 +285,161 @@ public @interface QuartzSchedule
 	 */
 	boolean forceKeep() default DEFAULT_FORCE_KEEP;
 
+	/**
+	 * The name of the scheduler to run this job in. Named schedulers are
+	 * configured in application.conf through
+	 * <code>quartz.scheduler.&lt;name&gt;.*</code> properties, each with their own
+	 * thread pool and job store. By default, the job runs in the default
+	 * scheduler.
+	 *
+	 * @return the name of the scheduler of the job
+	 */
+	String scheduler() default DEFAULT_SCHEDULER;
+
+	/**
+	 * Run each fire of the job on one node only, when several nodes of the
+	 * application fire the same jobs (e.g. with non-clustered job stores). The
+	 * node taking the job's lock from the lock provider configured through
+	 * <code>quartz.runOnce.*</code> in application.conf runs the fire, all
+	 * other nodes skip it. Defaults to false.
+	 *
+	 * @return the runOnce property of the job
+	 * @see com.jensfendler.ninjaquartz.lock.RunOnceLocks
+	 */
+	boolean runOnce() default DEFAULT_RUN_ONCE;
+
+	/**
+	 * The number of partitions of the job. With more than one partition, every
+	 * fire of the job runs the scheduled method once for each partition, in
+	 * parallel. A {@link com.jensfendler.ninjaquartz.job.Partition} parameter
+	 * of the method receives the index and count of the partition to process.
+	 * The execution of the job has finished when all partitions have finished,
+	 * and it has failed if any partition has failed. Defaults to 1 (i.e. no
+	 * partitions).
+	 *
+	 * @return the number of partitions of the job
+	 * @see #partitionOn()
+	 */
+	int partitions() default DEFAULT_PARTITIONS;
+
+	/**
+	 * Where the partitions of a job with more than one {@link #partitions()}
+	 * run: {@link #PARTITION_ON_SCHEDULER} (the default) runs each partition as
+	 * a separate job in the scheduler's thread pool (i.e. on any node of a
+	 * clustered scheduler), {@link #PARTITION_ON_FORK_JOIN_POOL} runs all
+	 * partitions on a local {@link java.util.concurrent.ForkJoinPool}.
+	 *
+	 * @return where the partitions of the job run
+	 */
+	String partitionOn() default DEFAULT_PARTITION_ON;
+
+	/**
+	 * The keys of the jobs this job depends on, as <code>group.name</code>, or
+	 * just the name of a job in the same job group. When all of these jobs
+	 * have completed successfully, this job is fired, and an
+	 * {@link com.jensfendler.ninjaquartz.dependency.UpstreamResults} parameter
+	 * of the method receives their results (i.e. the return values of their
+	 * scheduled methods). The dependencies must not form a cycle. Defaults to
+	 * no dependencies.
+	 *
+	 * @return the keys of the jobs this job depends on
+	 * @see com.jensfendler.ninjaquartz.dependency.JobDependencies
+	 */
+	String[] dependsOn() default {};
+
+	/**
+	 * The name to publish the return value of the method as. Every successful
+	 * execution returning a non-null value replaces the
+	 * {@link com.jensfendler.ninjaquartz.value.ScheduledValue} of this name
+	 * atomically, e.g. for in-memory views read by controllers. By default,
+	 * return values are not published.
+	 *
+	 * @return the name of the published value
+	 * @see com.jensfendler.ninjaquartz.value.ScheduledValues
+	 */
+	String publishAs() default DEFAULT_PUBLISH_AS;
+
+	/**
+	 * Fire the job once as soon as the schedulers have been built when Ninja
+	 * starts, in parallel with the other jobs fired on start, regardless of
+	 * {@link #schedulerDelay()} and the cron schedule. Regular fires due
+	 * while this run is running are skipped, so the cron schedule continues
+	 * without a duplicate run. Defaults to false.
+	 *
+	 * @return the fireOnStart property of the job
+	 */
+	boolean fireOnStart() default DEFAULT_FIRE_ON_START;
+
+	/**
+	 * Fire the job on start (see {@link #fireOnStart()}), and keep
+	 * {@link com.jensfendler.ninjaquartz.NinjaQuartzReadiness} from reporting
+	 * the application as ready until this first run has finished, or the
+	 * warm-up timeout has passed. Defaults to false.
+	 *
+	 * @return the warmup property of the job
+	 */
+	boolean warmup() default DEFAULT_WARMUP;
+
+	/**
+	 * The share of the CPU budget (<code>quartz.budget.cpu</code> in
+	 * application.conf) taken by a run of the job, e.g. the number of CPUs it
+	 * keeps busy. A fire waits until its weights fit the remaining budget.
+	 * Defaults to 0, i.e. the job is not limited by the CPU budget.
+	 *
+	 * @return the cpuWeight property of the job
+	 * @see com.jensfendler.ninjaquartz.admission.ResourceBudget
+	 */
+	int cpuWeight() default DEFAULT_CPU_WEIGHT;
+
+	/**
+	 * The share of the memory budget (<code>quartz.budget.memory</code> in
+	 * application.conf) taken by a run of the job, e.g. the MB of heap it
+	 * needs. Defaults to 0, i.e. the job is not limited by the memory budget.
+	 *
+	 * @return the memoryWeight property of the job
+	 * @see com.jensfendler.ninjaquartz.admission.ResourceBudget
+	 */
+	int memoryWeight() default DEFAULT_MEMORY_WEIGHT;
+
+	/**
+	 * The maximum rate of fires of the job (in fires per second), whatever
+	 * fires it: the cron schedule, manual triggers, retries or misfires.
+	 * Defaults to 0, i.e. the job is not limited.
+	 *
+	 * @return the rateLimit property of the job
+	 * @see com.jensfendler.ninjaquartz.admission.RateLimits
+	 */
+	double rateLimit() default DEFAULT_RATE_LIMIT;
+
+	/**
+	 * The number of fires of the job allowed at once, before the
+	 * {@link #rateLimit()} applies. Defaults to 1.
+	 *
+	 * @return the rateBurst property of the job
+	 */
+	int rateBurst() default DEFAULT_RATE_BURST;
+
+	/**
+	 * The name of a rate limit shared with other jobs, e.g. of all jobs
+	 * calling the same API. The rate of the group is configured through
+	 * <code>quartz.rateLimit.&lt;name&gt;.permitsPerSecond</code> (and
+	 * <code>.burst</code>) in application.conf. A fire needs a permit of both
+	 * its job's limit and its group's limit. By default, the job is in no
+	 * group.
+	 *
+	 * @return the rateLimitGroup property of the job
+	 */
+	String rateLimitGroup() default DEFAULT_RATE_LIMIT_GROUP;
+
+	/**
+	 * What to do with a fire exceeding the rate limit:
+	 * {@link #RATE_LIMIT_SKIP} (the default) skips it,
+	 * {@link #RATE_LIMIT_DELAY} fires it again as soon as its permit is
+	 * available, and {@link #RATE_LIMIT_COALESCE} delays it unless a delayed
+	 * fire is already pending, which it is merged into.
+	 *
+	 * @return the rateLimitAction property of the job
+	 */
+	String rateLimitAction() default DEFAULT_RATE_LIMIT_ACTION;
+
 }
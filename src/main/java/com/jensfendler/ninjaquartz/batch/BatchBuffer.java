@@ -0,0 +1,290 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.batch;
+
+import com.jensfendler.ninjaquartz.NinjaQuartzModule;
+import com.jensfendler.ninjaquartz.annotations.QuartzBatch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded buffer of items consumed in batches by a method annotated with
+ * {@link QuartzBatch}. Offering and draining items is lock-free: the items are
+ * kept in a {@link ConcurrentLinkedQueue}, and the capacity is enforced by
+ * reserving space with compare-and-set on the size.
+ * <p>
+ * A buffer can be obtained (and filled) before its consumer has been
+ * scheduled. It then has the default capacity and overflow policy until the
+ * consumer is scheduled.
+ *
+ * @param <T> the type of the items
+ * @author Jens Fendler
+ */
+public class BatchBuffer<T> implements BatchBufferMXBean
+{
+
+	protected static final Logger logger = LoggerFactory.getLogger(NinjaQuartzModule.class);
+
+	/**
+	 * The longest time a blocked producer sleeps before checking for space
+	 * again
+	 */
+	private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private final String name;
+
+	private final ConcurrentLinkedQueue<T> items = new ConcurrentLinkedQueue<>();
+
+	private final AtomicInteger size = new AtomicInteger();
+
+	private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+	private final AtomicLong offered = new AtomicLong();
+
+	private final AtomicLong dropped = new AtomicLong();
+
+	private final AtomicLong rejected = new AtomicLong();
+
+	private final AtomicLong batches = new AtomicLong();
+
+	private volatile int capacity = QuartzBatch.DEFAULT_CAPACITY;
+
+	private volatile int maxBatchSize = QuartzBatch.DEFAULT_MAX_BATCH_SIZE;
+
+	private volatile String overflow = QuartzBatch.DEFAULT_OVERFLOW;
+
+	private volatile long offerTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(QuartzBatch.DEFAULT_OFFER_TIMEOUT);
+
+	/**
+	 * Fires the consumer, once set
+	 */
+	private volatile Runnable flusher;
+
+	/**
+	 * @param name the name of the buffer
+	 */
+	public BatchBuffer(String name)
+	{
+		this.name = name;
+	}
+
+	/**
+	 * Apply the settings of the consumer's {@link QuartzBatch} annotation.
+	 *
+	 * @param quartzBatch the annotation of the consumer
+	 */
+	public void configure(QuartzBatch quartzBatch)
+	{
+		this.capacity = quartzBatch.capacity();
+		this.maxBatchSize = quartzBatch.maxBatchSize();
+		this.overflow = quartzBatch.overflow();
+		this.offerTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(quartzBatch.offerTimeout());
+	}
+
+	/**
+	 * Set the action firing the consumer when a full batch is waiting.
+	 *
+	 * @param flusher fires the consumer (without blocking)
+	 */
+	public void setFlusher(Runnable flusher)
+	{
+		this.flusher = flusher;
+		requestFlush();
+	}
+
+	/**
+	 * Offer an item to the buffer. If the buffer is full, the overflow policy
+	 * decides: the producer waits for space, the oldest item is dropped, or
+	 * the new item is rejected.
+	 *
+	 * @param item the item
+	 * @return true if the item has been added, false if it has been rejected
+	 */
+	public boolean offer(T item)
+	{
+		if (item == null)
+		{
+			throw new NullPointerException("Null items cannot be buffered");
+		}
+
+		long deadline = 0;
+		long parkNanos = 1000;
+		while (true)
+		{
+			int current = size.get();
+			if (current < capacity)
+			{
+				if (size.compareAndSet(current, current + 1))
+				{
+					items.add(item);
+					offered.incrementAndGet();
+					if (current + 1 >= maxBatchSize)
+					{
+						requestFlush();
+					}
+					return true;
+				}
+				continue;
+			}
+
+			// the buffer is full
+			requestFlush();
+			if (QuartzBatch.OVERFLOW_DROP_OLDEST.equals(overflow))
+			{
+				if (items.poll() != null)
+				{
+					size.decrementAndGet();
+					dropped.incrementAndGet();
+				}
+				continue;
+			}
+			if (QuartzBatch.OVERFLOW_BLOCK.equals(overflow))
+			{
+				long now = System.nanoTime();
+				if (deadline == 0)
+				{
+					deadline = now + offerTimeoutNanos;
+				}
+				if (now - deadline < 0)
+				{
+					LockSupport.parkNanos(Math.min(parkNanos, deadline - now));
+					parkNanos = Math.min(parkNanos * 2, MAX_PARK_NANOS);
+					continue;
+				}
+			}
+			rejected.incrementAndGet();
+			return false;
+		}
+	}
+
+	/**
+	 * Take up to {@link #getMaxBatchSize()} items from the buffer, oldest
+	 * first.
+	 *
+	 * @return the items taken, or an empty list
+	 */
+	public List<T> drain()
+	{
+		int max = maxBatchSize;
+		List<T> batch = new ArrayList<>(Math.min(max, Math.max(size.get(), 1)));
+		T item;
+		while (batch.size() < max && (item = items.poll()) != null)
+		{
+			batch.add(item);
+		}
+		if (!batch.isEmpty())
+		{
+			size.addAndGet(-batch.size());
+			batches.incrementAndGet();
+		}
+		return batch;
+	}
+
+	/**
+	 * Called by the consumer before draining the buffer, so that new items
+	 * fire it again.
+	 */
+	public void flushed()
+	{
+		flushRequested.set(false);
+	}
+
+	/**
+	 * Fire the consumer, unless it has been fired already and not drained the
+	 * buffer since.
+	 */
+	private void requestFlush()
+	{
+		Runnable f = flusher;
+		if (f != null && size.get() >= maxBatchSize && flushRequested.compareAndSet(false, true))
+		{
+			try
+			{
+				f.run();
+			}
+			catch (RuntimeException e)
+			{
+				flushRequested.set(false);
+				logger.warn("Failed to fire the consumer of batch buffer {}: {}", name, e.getMessage());
+			}
+		}
+	}
+
+	@Override
+	public String getName()
+	{
+		return name;
+	}
+
+	@Override
+	public int getSize()
+	{
+		return size.get();
+	}
+
+	@Override
+	public int getCapacity()
+	{
+		return capacity;
+	}
+
+	@Override
+	public int getMaxBatchSize()
+	{
+		return maxBatchSize;
+	}
+
+	@Override
+	public String getOverflow()
+	{
+		return overflow;
+	}
+
+	@Override
+	public long getOfferedCount()
+	{
+		return offered.get();
+	}
+
+	@Override
+	public long getDroppedCount()
+	{
+		return dropped.get();
+	}
+
+	@Override
+	public long getRejectedCount()
+	{
+		return rejected.get();
+	}
+
+	@Override
+	public long getBatchCount()
+	{
+		return batches.get();
+	}
+
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.batch;
+
+/**
+ * Management interface of a {@link BatchBuffer}, registered with the platform
+ * MBean server under
+ * <code>com.jensfendler.ninjaquartz:type=BatchBuffer,name="name"</code>.
+ *
+ * @author Jens Fendler
+ */
+public interface BatchBufferMXBean
+{
+
+	String getName();
+
+	/**
+	 * @return the number of items waiting in the buffer
+	 */
+	int getSize();
+
+	int getCapacity();
+
+	int getMaxBatchSize();
+
+	String getOverflow();
+
+	long getOfferedCount();
+
+	long getDroppedCount();
+
+	long getRejectedCount();
+
+	long getBatchCount();
+
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.batch;
+
+import com.google.inject.Singleton;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The {@link BatchBuffer}s of all methods annotated with
+ * {@link com.jensfendler.ninjaquartz.annotations.QuartzBatch}, by name.
+ * Producers inject this class, and offer their items to the buffer:
+ *
+ * <code>
+ * &#64;Inject
+ * BatchBuffers batchBuffers;
+ * ...
+ * batchBuffers.&lt;AuditEvent&gt;get("auditEvents").offer(event);
+ * </code>
+ *
+ * @author Jens Fendler
+ */
+@Singleton
+public class BatchBuffers
+{
+
+	private final ConcurrentMap<String, BatchBuffer<?>> buffers = new ConcurrentHashMap<>();
+
+	/**
+	 * Get a buffer by name. A buffer whose consumer has not been scheduled yet
+	 * is created.
+	 *
+	 * @param name the name of the buffer
+	 * @param <T>  the type of the items
+	 * @return the buffer
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> BatchBuffer<T> get(String name)
+	{
+		return (BatchBuffer<T>) buffers.computeIfAbsent(name, BatchBuffer::new);
+	}
+
+	/**
+	 * @return all buffers
+	 */
+	public Collection<BatchBuffer<?>> getAll()
+	{
+		return Collections.unmodifiableCollection(buffers.values());
+	}
+
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.delay;
+
+/**
+ * A slot of a {@link TimingWheel}: a doubly-linked list of {@link Timeout}s
+ * with O(1) insertion and removal. Only accessed by the ticker thread.
+ *
+ * @author Jens Fendler
+ */
+final class Bucket
+{
+
+	private Timeout head;
+
+	private Timeout tail;
+
+	void add(Timeout timeout)
+	{
+		timeout.bucket = this;
+		timeout.previous = tail;
+		timeout.next = null;
+		if (tail == null)
+		{
+			head = timeout;
+		}
+		else
+		{
+			tail.next = timeout;
+		}
+		tail = timeout;
+	}
+
+	void remove(Timeout timeout)
+	{
+		if (timeout.previous == null)
+		{
+			head = timeout.next;
+		}
+		else
+		{
+			timeout.previous.next = timeout.next;
+		}
+		if (timeout.next == null)
+		{
+			tail = timeout.previous;
+		}
+		else
+		{
+			timeout.next.previous = timeout.previous;
+		}
+		timeout.bucket = null;
+		timeout.previous = null;
+		timeout.next = null;
+	}
+
+	/**
+	 * Remove and return the first timeout of this bucket.
+	 *
+	 * @return the first timeout, or null if the bucket is empty
+	 */
+	Timeout poll()
+	{
+		Timeout timeout = head;
+		if (timeout != null)
+		{
+			remove(timeout);
+		}
+		return timeout;
+	}
+
+}
@@ -0,0 +1,311 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.delay;
+
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+import com.jensfendler.ninjaquartz.NinjaQuartzModule;
+
+import org.quartz.JobDataMap;
+import org.quartz.JobKey;
+import org.quartz.Scheduler;
+import org.quartz.SchedulerException;
+import org.quartz.SchedulerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces requests to fire jobs by key, so that a key fires its job at most
+ * once per window, however many requests arrive. Each key with pending
+ * requests costs one map entry and one {@link Timeout} on the
+ * {@link TimingWheel} of {@link NinjaQuartzDelays}; requests within a window
+ * only update the entry.
+ * <p>
+ * The job is fired through {@link Scheduler#triggerJob(JobKey, JobDataMap)},
+ * with the key in the trigger's job data under {@link #DATA_KEY}. Pending
+ * fires are kept in memory only, and are lost on shutdown.
+ *
+ * @author Jens Fendler
+ */
+@Singleton
+public class CoalescingTriggers
+{
+
+	protected static final Logger logger = LoggerFactory.getLogger(NinjaQuartzModule.class);
+
+	/**
+	 * The key of the coalesced key in the job data of the fired trigger.
+	 */
+	public static final String DATA_KEY = "nqKey";
+
+	private final NinjaQuartzDelays delays;
+
+	private final Provider<SchedulerFactory> schedulerFactoryProvider;
+
+	private final ConcurrentMap<Key, Debounce> debounced = new ConcurrentHashMap<>();
+
+	private final ConcurrentMap<Key, Throttle> throttled = new ConcurrentHashMap<>();
+
+	/**
+	 * The schedulers of fired jobs, resolved on first use
+	 */
+	private final ConcurrentMap<JobKey, Scheduler> schedulers = new ConcurrentHashMap<>();
+
+	@Inject
+	public CoalescingTriggers(NinjaQuartzDelays delays, Provider<SchedulerFactory> schedulerFactoryProvider)
+	{
+		this.delays = delays;
+		this.schedulerFactoryProvider = schedulerFactoryProvider;
+	}
+
+	/**
+	 * Fire a job once the given delay has passed without further requests for
+	 * the same key (trailing-edge debounce).
+	 *
+	 * @param jobKey  the key of the job to fire
+	 * @param dataKey the key the request is coalesced by
+	 * @param delay   the quiet period before the job fires
+	 * @param unit    the time unit of the delay
+	 * @throws SchedulerException if the job does not exist
+	 */
+	public void debounce(JobKey jobKey, String dataKey, long delay, TimeUnit unit) throws SchedulerException
+	{
+		Scheduler scheduler = schedulerOf(jobKey);
+		long delayNanos = unit.toNanos(delay);
+		long deadline = System.nanoTime() + delayNanos;
+		debounced.compute(new Key(jobKey, dataKey), (key, debounce) -> {
+			if (debounce == null)
+			{
+				debounce = new Debounce(scheduler, key, deadline);
+				delays.delay(debounce, delayNanos, TimeUnit.NANOSECONDS);
+			}
+			else
+			{
+				// the timeout checks the deadline when it expires
+				debounce.deadline = deadline;
+			}
+			return debounce;
+		});
+	}
+
+	/**
+	 * Fire a job at once, and at most once per window for the same key after
+	 * that. Requests within a window fire the job once more at the end of the
+	 * window (leading- and trailing-edge throttle).
+	 *
+	 * @param jobKey  the key of the job to fire
+	 * @param dataKey the key the request is coalesced by
+	 * @param window  the minimum time between two fires for the key
+	 * @param unit    the time unit of the window
+	 * @throws SchedulerException if the job does not exist
+	 */
+	public void throttle(JobKey jobKey, String dataKey, long window, TimeUnit unit) throws SchedulerException
+	{
+		Scheduler scheduler = schedulerOf(jobKey);
+		long windowNanos = unit.toNanos(window);
+		boolean[] fire = new boolean[1];
+		Throttle created = throttled.compute(new Key(jobKey, dataKey), (key, throttle) -> {
+			if (throttle == null)
+			{
+				throttle = new Throttle(scheduler, key, windowNanos);
+				delays.delay(throttle, windowNanos, TimeUnit.NANOSECONDS);
+				fire[0] = true;
+			}
+			else
+			{
+				throttle.pending = true;
+			}
+			return throttle;
+		});
+		if (fire[0])
+		{
+			created.fire();
+		}
+	}
+
+	/**
+	 * @return the number of keys with a pending debounced fire
+	 */
+	public int getDebouncedCount()
+	{
+		return debounced.size();
+	}
+
+	/**
+	 * @return the number of keys within a throttle window
+	 */
+	public int getThrottledCount()
+	{
+		return throttled.size();
+	}
+
+	private Scheduler schedulerOf(JobKey jobKey) throws SchedulerException
+	{
+		Scheduler scheduler = schedulers.get(jobKey);
+		if (scheduler == null)
+		{
+			for (Scheduler candidate : schedulerFactoryProvider.get().getAllSchedulers())
+			{
+				if (candidate.checkExists(jobKey))
+				{
+					scheduler = candidate;
+					schedulers.put(jobKey, scheduler);
+					break;
+				}
+			}
+			if (scheduler == null)
+			{
+				throw new SchedulerException("Job " + jobKey + " does not exist");
+			}
+		}
+		return scheduler;
+	}
+
+	/**
+	 * The job and data key requests are coalesced by
+	 */
+	private static final class Key
+	{
+		private final JobKey jobKey;
+
+		private final String dataKey;
+
+		Key(JobKey jobKey, String dataKey)
+		{
+			this.jobKey = jobKey;
+			this.dataKey = dataKey;
+		}
+
+		@Override
+		public boolean equals(Object o)
+		{
+			if (!(o instanceof Key))
+			{
+				return false;
+			}
+			Key other = (Key) o;
+			return jobKey.equals(other.jobKey) && dataKey.equals(other.dataKey);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return 31 * jobKey.hashCode() + dataKey.hashCode();
+		}
+	}
+
+	/**
+	 * A pending fire of a key, and the timeout of its window
+	 */
+	private abstract static class Window implements Runnable
+	{
+		final Scheduler scheduler;
+
+		final Key key;
+
+		Window(Scheduler scheduler, Key key)
+		{
+			this.scheduler = scheduler;
+			this.key = key;
+		}
+
+		void fire()
+		{
+			JobDataMap data = new JobDataMap();
+			data.put(DATA_KEY, key.dataKey);
+			try
+			{
+				scheduler.triggerJob(key.jobKey, data);
+			}
+			catch (SchedulerException e)
+			{
+				logger.error("Failed to fire job {} for key {}.", key.jobKey, key.dataKey, e);
+			}
+		}
+	}
+
+	private final class Debounce extends Window
+	{
+		volatile long deadline;
+
+		Debounce(Scheduler scheduler, Key key, long deadline)
+		{
+			super(scheduler, key);
+			this.deadline = deadline;
+		}
+
+		@Override
+		public void run()
+		{
+			boolean[] fire = new boolean[1];
+			debounced.computeIfPresent(key, (k, debounce) -> {
+				long remaining = deadline - System.nanoTime();
+				if (remaining > 0)
+				{
+					// requests arrived since the timeout was set
+					delays.delay(this, remaining, TimeUnit.NANOSECONDS);
+					return debounce;
+				}
+				fire[0] = true;
+				return null;
+			});
+			if (fire[0])
+			{
+				fire();
+			}
+		}
+	}
+
+	private final class Throttle extends Window
+	{
+		final long windowNanos;
+
+		boolean pending;
+
+		Throttle(Scheduler scheduler, Key key, long windowNanos)
+		{
+			super(scheduler, key);
+			this.windowNanos = windowNanos;
+		}
+
+		@Override
+		public void run()
+		{
+			boolean[] fire = new boolean[1];
+			throttled.computeIfPresent(key, (k, throttle) -> {
+				if (!pending)
+				{
+					// the window has passed without requests
+					return null;
+				}
+				pending = false;
+				delays.delay(this, windowNanos, TimeUnit.NANOSECONDS);
+				fire[0] = true;
+				return throttle;
+			});
+			if (fire[0])
+			{
+				fire();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.delay;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.jensfendler.ninjaquartz.NinjaQuartzModule;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ninja.utils.NinjaProperties;
+
+/**
+ * Runs one-shot delayed tasks on a {@link TimingWheel}, configured from
+ * application.conf. The wheel and its dispatch threads are created on first
+ * use.
+ *
+ * @author Jens Fendler
+ */
+@Singleton
+public class NinjaQuartzDelays
+{
+
+	protected static final Logger logger = LoggerFactory.getLogger(NinjaQuartzModule.class);
+
+	/**
+	 * The key name of the property in application.conf with the tick duration
+	 * of the timing wheel in milliseconds. Defaults to
+	 * {@link #DEFAULT_TICK_MILLIS}.
+	 */
+	public static final String CONF_KEY_TICK_MILLIS = "quartz.delay.tickMillis";
+
+	/**
+	 * The key name of the property in application.conf with the number of
+	 * buckets per level of the timing wheel (a power of two). Defaults to
+	 * {@link #DEFAULT_WHEEL_SIZE}.
+	 */
+	public static final String CONF_KEY_WHEEL_SIZE = "quartz.delay.wheelSize";
+
+	/**
+	 * The key name of the property in application.conf with the number of
+	 * threads running the delayed tasks. Defaults to {@link #DEFAULT_THREADS}.
+	 */
+	public static final String CONF_KEY_THREADS = "quartz.delay.threads";
+
+	public static final int DEFAULT_TICK_MILLIS = 10;
+
+	public static final int DEFAULT_WHEEL_SIZE = 512;
+
+	public static final int DEFAULT_THREADS = 2;
+
+	private final NinjaProperties ninjaProperties;
+
+	private TimingWheel wheel;
+
+	private ExecutorService dispatcher;
+
+	@Inject
+	public NinjaQuartzDelays(NinjaProperties ninjaProperties)
+	{
+		this.ninjaProperties = ninjaProperties;
+	}
+
+	/**
+	 * Run the given task once after the given delay.
+	 *
+	 * @param task  the task to run
+	 * @param delay the delay
+	 * @param unit  the time unit of the delay
+	 * @return the handle to cancel the task
+	 */
+	public Timeout delay(Runnable task, long delay, TimeUnit unit)
+	{
+		return getWheel().schedule(task, delay, unit);
+	}
+
+	/**
+	 * @return the timing wheel, which is created on the first call
+	 */
+	public synchronized TimingWheel getWheel()
+	{
+		if (wheel == null)
+		{
+			int tickMillis = ninjaProperties.getIntegerWithDefault(CONF_KEY_TICK_MILLIS, DEFAULT_TICK_MILLIS);
+			int wheelSize = ninjaProperties.getIntegerWithDefault(CONF_KEY_WHEEL_SIZE, DEFAULT_WHEEL_SIZE);
+			int threads = ninjaProperties.getIntegerWithDefault(CONF_KEY_THREADS, DEFAULT_THREADS);
+
+			dispatcher = Executors.newFixedThreadPool(threads, new DispatchThreadFactory());
+			wheel = new TimingWheel(tickMillis, TimeUnit.MILLISECONDS, wheelSize, dispatcher);
+			logger.info("Started timing wheel with {}ms ticks, {} buckets per level and {} dispatch threads",
+					tickMillis, wheelSize, threads);
+		}
+		return wheel;
+	}
+
+	/**
+	 * Stop the timing wheel and its dispatch threads, if they have been
+	 * started. Pending tasks are dropped.
+	 */
+	public synchronized void shutdown()
+	{
+		if (wheel != null)
+		{
+			logger.info("Stopping timing wheel with {} pending tasks", wheel.getPendingCount());
+			wheel.stop();
+			dispatcher.shutdown();
+			wheel = null;
+			dispatcher = null;
+		}
+	}
+
+	private static class DispatchThreadFactory implements ThreadFactory
+	{
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable r)
+		{
+			Thread thread = new Thread(r, "NinjaQuartz-Delay-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.delay;
+
+import com.jensfendler.ninjaquartz.NinjaQuartzModule;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * The handle of a task delayed by a {@link TimingWheel}, which can be used to
+ * cancel the task before it runs.
+ * <p>
+ * The handle is also the entry of the task in its wheel bucket (an intrusive,
+ * doubly-linked list), so a delayed task costs exactly one object.
+ *
+ * @author Jens Fendler
+ */
+public final class Timeout implements Runnable
+{
+
+	protected static final Logger logger = LoggerFactory.getLogger(NinjaQuartzModule.class);
+
+	static final int STATE_PENDING = 0;
+
+	static final int STATE_CANCELLED = 1;
+
+	static final int STATE_EXPIRED = 2;
+
+	private static final AtomicIntegerFieldUpdater<Timeout> STATE = AtomicIntegerFieldUpdater
+			.newUpdater(Timeout.class, "state");
+
+	private final TimingWheel wheel;
+
+	private volatile Runnable task;
+
+	private volatile int state = STATE_PENDING;
+
+	/**
+	 * The tick at which this task expires. Updated by the ticker thread.
+	 */
+	long expirationTick;
+
+	/**
+	 * The bucket links, only accessed by the ticker thread.
+	 */
+	Bucket bucket;
+
+	Timeout previous;
+
+	Timeout next;
+
+	/**
+	 * The links of the lock-free stacks of added and cancelled timeouts.
+	 */
+	Timeout nextAdded;
+
+	Timeout nextCancelled;
+
+	Timeout(TimingWheel wheel, Runnable task, long expirationTick)
+	{
+		this.wheel = wheel;
+		this.task = task;
+		this.expirationTick = expirationTick;
+	}
+
+	/**
+	 * Cancel the delayed task. This has no effect if the task has already been
+	 * run or cancelled.
+	 *
+	 * @return true if the task has been cancelled by this call
+	 */
+	public boolean cancel()
+	{
+		if (!STATE.compareAndSet(this, STATE_PENDING, STATE_CANCELLED))
+		{
+			return false;
+		}
+		// release the task right away, the timeout itself is removed from its
+		// bucket by the ticker thread
+		task = null;
+		wheel.cancelled(this);
+		return true;
+	}
+
+	/**
+	 * @return true if the task has been cancelled
+	 */
+	public boolean isCancelled()
+	{
+		return state == STATE_CANCELLED;
+	}
+
+	/**
+	 * @return true if the task is due and has been passed on for execution
+	 */
+	public boolean isExpired()
+	{
+		return state == STATE_EXPIRED;
+	}
+
+	/**
+	 * Mark this timeout as expired.
+	 *
+	 * @return true if the task is to be run, false if it had been cancelled
+	 */
+	boolean expire()
+	{
+		return STATE.compareAndSet(this, STATE_PENDING, STATE_EXPIRED);
+	}
+
+	/**
+	 * Runs the delayed task on a thread of the dispatch executor.
+	 */
+	@Override
+	public void run()
+	{
+		Runnable runnable = task;
+		task = null;
+		if (runnable == null)
+		{
+			return;
+		}
+		try
+		{
+			runnable.run();
+		}
+		catch (Throwable t)
+		{
+			logger.error("Delayed task " + runnable + " failed", t);
+		}
+	}
+
+}
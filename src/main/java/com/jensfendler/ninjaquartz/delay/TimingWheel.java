@@ -0,0 +1,340 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.delay;
+
+import com.jensfendler.ninjaquartz.NinjaQuartzModule;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A hierarchical timing wheel for large numbers of short-lived, one-shot
+ * delayed tasks.
+ * <p>
+ * Time advances in ticks of a fixed duration. Level 0 of the wheel has one
+ * bucket per tick, each higher level has buckets spanning a whole rotation of
+ * the level below. Tasks are placed on the lowest level covering their delay,
+ * and cascade down to lower levels as their expiration time approaches. Adding
+ * and cancelling a task are O(1), and a pending task costs a single
+ * {@link Timeout} object.
+ * <p>
+ * Tasks are added and cancelled through lock-free stacks, and moved into (or
+ * out of) the buckets by a single ticker thread. Expired tasks are run on the
+ * given dispatch {@link Executor}, so slow tasks do not delay the ticker.
+ * Tasks are run no earlier than their delay, and usually within one tick
+ * after it.
+ *
+ * @author Jens Fendler
+ */
+public class TimingWheel
+{
+
+	protected static final Logger logger = LoggerFactory.getLogger(NinjaQuartzModule.class);
+
+	private final long tickNanos;
+
+	private final int bits;
+
+	private final int mask;
+
+	/**
+	 * The buckets of all levels. Levels above level 0 are created on first
+	 * use.
+	 */
+	private final Bucket[][] levels;
+
+	private final Executor dispatcher;
+
+	private final long startNanos;
+
+	private final AtomicReference<Timeout> added = new AtomicReference<>();
+
+	private final AtomicReference<Timeout> cancelled = new AtomicReference<>();
+
+	private final AtomicLong pending = new AtomicLong();
+
+	private final Thread ticker;
+
+	private volatile boolean running = true;
+
+	/**
+	 * Create and start a new {@link TimingWheel}.
+	 *
+	 * @param tickDuration the duration of a tick, i.e. the resolution of the
+	 *                     wheel
+	 * @param unit         the time unit of the tick duration
+	 * @param wheelSize    the number of buckets per level. Must be a power of
+	 *                     two.
+	 * @param dispatcher   the executor to run expired tasks on
+	 */
+	public TimingWheel(long tickDuration, TimeUnit unit, int wheelSize, Executor dispatcher)
+	{
+		if (tickDuration <= 0)
+		{
+			throw new IllegalArgumentException("Tick duration must be positive: " + tickDuration);
+		}
+		if (wheelSize < 2 || Integer.bitCount(wheelSize) != 1)
+		{
+			throw new IllegalArgumentException("Wheel size must be a power of two: " + wheelSize);
+		}
+
+		this.tickNanos = unit.toNanos(tickDuration);
+		this.bits = Integer.numberOfTrailingZeros(wheelSize);
+		this.mask = wheelSize - 1;
+		this.levels = new Bucket[(63 + bits - 1) / bits][];
+		this.levels[0] = newLevel();
+		this.dispatcher = dispatcher;
+		this.startNanos = System.nanoTime();
+
+		this.ticker = new Thread(this::tick, "NinjaQuartz-TimingWheel");
+		this.ticker.setDaemon(true);
+		this.ticker.start();
+	}
+
+	/**
+	 * Run the given task once after the given delay.
+	 *
+	 * @param task  the task to run
+	 * @param delay the delay
+	 * @param unit  the time unit of the delay
+	 * @return the handle to cancel the task
+	 * @throws IllegalStateException if the wheel has been stopped
+	 */
+	public Timeout schedule(Runnable task, long delay, TimeUnit unit)
+	{
+		if (task == null)
+		{
+			throw new NullPointerException("task");
+		}
+		if (!running)
+		{
+			throw new IllegalStateException("Timing wheel has been stopped");
+		}
+
+		// round up to the next tick, so tasks never run early
+		long delayNanos = Math.min(Math.max(unit.toNanos(delay), 0), Long.MAX_VALUE / 4);
+		long expirationTick = (System.nanoTime() - startNanos + delayNanos + tickNanos - 1) / tickNanos;
+
+		Timeout timeout = new Timeout(this, task, expirationTick);
+		pending.incrementAndGet();
+		Timeout head;
+		do
+		{
+			head = added.get();
+			timeout.nextAdded = head;
+		}
+		while (!added.compareAndSet(head, timeout));
+		return timeout;
+	}
+
+	/**
+	 * @return the number of tasks which have neither run nor been cancelled yet
+	 */
+	public long getPendingCount()
+	{
+		return pending.get();
+	}
+
+	/**
+	 * Stop the ticker thread. Pending tasks are not run anymore.
+	 */
+	public void stop()
+	{
+		running = false;
+		LockSupport.unpark(ticker);
+		try
+		{
+			ticker.join(TimeUnit.SECONDS.toMillis(5));
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Called by {@link Timeout#cancel()} after the state has been changed.
+	 */
+	void cancelled(Timeout timeout)
+	{
+		pending.decrementAndGet();
+		Timeout head;
+		do
+		{
+			head = cancelled.get();
+			timeout.nextCancelled = head;
+		}
+		while (!cancelled.compareAndSet(head, timeout));
+	}
+
+	/**
+	 * The main loop of the ticker thread.
+	 */
+	private void tick()
+	{
+		// the next tick to process
+		long tick = 0;
+		while (running)
+		{
+			long sleepNanos = startNanos + tick * tickNanos - System.nanoTime();
+			if (sleepNanos > 0)
+			{
+				LockSupport.parkNanos(this, sleepNanos);
+				continue;
+			}
+
+			try
+			{
+				// cascade before adding new tasks: a task added to the
+				// bucket being cascaded must wait for its next rotation
+				cascade(tick);
+				transferAdded(tick);
+				removeCancelled();
+				expire(tick);
+			}
+			catch (Throwable t)
+			{
+				logger.error("Timing wheel failed to process tick " + tick, t);
+			}
+			tick++;
+		}
+	}
+
+	private void transferAdded(long tick)
+	{
+		Timeout timeout = added.getAndSet(null);
+		while (timeout != null)
+		{
+			Timeout nextAdded = timeout.nextAdded;
+			timeout.nextAdded = null;
+			if (!timeout.isCancelled())
+			{
+				place(timeout, tick);
+			}
+			timeout = nextAdded;
+		}
+	}
+
+	private void removeCancelled()
+	{
+		Timeout timeout = cancelled.getAndSet(null);
+		while (timeout != null)
+		{
+			Timeout nextCancelled = timeout.nextCancelled;
+			timeout.nextCancelled = null;
+			if (timeout.bucket != null)
+			{
+				timeout.bucket.remove(timeout);
+			}
+			timeout = nextCancelled;
+		}
+	}
+
+	/**
+	 * Move the tasks of all higher level buckets starting at the given tick
+	 * down to the lower levels, starting with the highest level.
+	 */
+	private void cascade(long tick)
+	{
+		if ((tick & mask) != 0)
+		{
+			return;
+		}
+
+		int top = 1;
+		while (top < levels.length - 1 && (tick & ((1L << (bits * (top + 1))) - 1)) == 0)
+		{
+			top++;
+		}
+		for (int level = top; level > 0; level--)
+		{
+			if (levels[level] == null)
+			{
+				continue;
+			}
+			Bucket bucket = levels[level][(int) ((tick >>> (bits * level)) & mask)];
+			Timeout timeout;
+			while ((timeout = bucket.poll()) != null)
+			{
+				if (!timeout.isCancelled())
+				{
+					place(timeout, tick);
+				}
+			}
+		}
+	}
+
+	private void expire(long tick)
+	{
+		Bucket bucket = levels[0][(int) (tick & mask)];
+		Timeout timeout;
+		while ((timeout = bucket.poll()) != null)
+		{
+			if (timeout.expire())
+			{
+				pending.decrementAndGet();
+				try
+				{
+					dispatcher.execute(timeout);
+				}
+				catch (RejectedExecutionException e)
+				{
+					logger.warn("Delayed task rejected by dispatch executor: {}", e.getMessage());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Put the given timeout into the bucket of the lowest level covering its
+	 * remaining delay.
+	 */
+	private void place(Timeout timeout, long tick)
+	{
+		long expirationTick = Math.max(timeout.expirationTick, tick);
+		timeout.expirationTick = expirationTick;
+
+		long delta = expirationTick - tick;
+		int level = 0;
+		while (level < levels.length - 1 && delta >= (1L << (bits * (level + 1))))
+		{
+			level++;
+		}
+		if (levels[level] == null)
+		{
+			levels[level] = newLevel();
+		}
+		levels[level][(int) ((expirationTick >>> (bits * level)) & mask)].add(timeout);
+	}
+
+	private Bucket[] newLevel()
+	{
+		Bucket[] buckets = new Bucket[mask + 1];
+		for (int i = 0; i < buckets.length; i++)
+		{
+			buckets[i] = new Bucket();
+		}
+		return buckets;
+	}
+
+}
@@ -0,0 +1,314 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.dependency;
+
+import com.jensfendler.ninjaquartz.NinjaQuartzModule;
+
+import org.quartz.JobDataMap;
+import org.quartz.JobKey;
+import org.quartz.Scheduler;
+import org.quartz.SchedulerException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The dependencies between jobs (see
+ * {@link com.jensfendler.ninjaquartz.annotations.QuartzSchedule#dependsOn()}).
+ * Each scheduler has an instance of its own in its
+ * {@link org.quartz.SchedulerContext}, under {@link #SCHEDULER_CONTEXT_KEY},
+ * so that jobs with the same key in different schedulers do not share their
+ * dependencies.
+ * <p>
+ * When a job has completed successfully, every job depending on it for which
+ * all other upstream jobs have completed as well is fired through
+ * {@link Scheduler#triggerJob(JobKey, JobDataMap)}, and receives the results
+ * of its upstream jobs as {@link UpstreamResults}. The dependencies form a
+ * directed acyclic graph: registering a dependency closing a cycle fails.
+ * <p>
+ * Dependencies and results are kept in memory, on the node on which the jobs
+ * run.
+ *
+ * @author Jens Fendler
+ */
+public class JobDependencies
+{
+
+	protected static final Logger logger = LoggerFactory.getLogger(NinjaQuartzModule.class);
+
+	/**
+	 * The key of this instance in the context of each scheduler.
+	 */
+	public static final String SCHEDULER_CONTEXT_KEY = "nqJobDependencies";
+
+	/**
+	 * The key of the trigger data marking a fire caused by upstream jobs.
+	 */
+	public static final String UPSTREAM_FIRE_KEY = "nqUpstreamFire";
+
+	/**
+	 * The jobs with dependencies, by job key
+	 */
+	private final Map<JobKey, Dependent> dependents = new HashMap<>();
+
+	/**
+	 * The jobs depending on a job, by the key of the upstream job
+	 */
+	private final Map<JobKey, List<Dependent>> downstream = new HashMap<>();
+
+	/**
+	 * Register the jobs a job depends on, replacing any earlier registration of
+	 * the job.
+	 *
+	 * @param scheduler the scheduler of the job
+	 * @param jobKey    the key of the job
+	 * @param upstream  the keys of the jobs the job depends on
+	 * @throws SchedulerException if the dependencies form a cycle
+	 */
+	public synchronized void register(Scheduler scheduler, JobKey jobKey, Collection<JobKey> upstream)
+			throws SchedulerException
+	{
+		check(jobKey, upstream);
+		unregister(jobKey);
+		if (upstream.isEmpty())
+		{
+			return;
+		}
+		Dependent dependent = new Dependent(scheduler, jobKey, upstream);
+		dependents.put(jobKey, dependent);
+		for (JobKey upstreamKey : dependent.upstream)
+		{
+			downstream.computeIfAbsent(upstreamKey, k -> new ArrayList<>()).add(dependent);
+		}
+	}
+
+	/**
+	 * Make sure that the jobs a job depends on can be registered, without
+	 * registering them.
+	 *
+	 * @param jobKey   the key of the job
+	 * @param upstream the keys of the jobs the job depends on
+	 * @throws SchedulerException if the dependencies form a cycle
+	 */
+	public synchronized void check(JobKey jobKey, Collection<JobKey> upstream) throws SchedulerException
+	{
+		for (JobKey upstreamKey : upstream)
+		{
+			List<JobKey> path = path(upstreamKey, jobKey);
+			if (path != null)
+			{
+				Collections.reverse(path);
+				path.add(jobKey);
+				throw new SchedulerException("Dependency of job " + jobKey + " on " + upstreamKey
+						+ " closes the cycle " + path);
+			}
+		}
+	}
+
+	/**
+	 * Remove the dependencies of a job.
+	 *
+	 * @param jobKey the key of the job
+	 */
+	public synchronized void unregister(JobKey jobKey)
+	{
+		Dependent dependent = dependents.remove(jobKey);
+		if (dependent != null)
+		{
+			for (JobKey upstreamKey : dependent.upstream)
+			{
+				List<Dependent> list = downstream.get(upstreamKey);
+				list.remove(dependent);
+				if (list.isEmpty())
+				{
+					downstream.remove(upstreamKey);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Find a path of dependencies from a job up to another job.
+	 *
+	 * @return the path from <code>from</code> up to <code>to</code>, or null
+	 */
+	private List<JobKey> path(JobKey from, JobKey to)
+	{
+		if (from.equals(to))
+		{
+			List<JobKey> path = new ArrayList<>();
+			path.add(from);
+			return path;
+		}
+		Dependent dependent = dependents.get(from);
+		if (dependent != null)
+		{
+			for (JobKey upstreamKey : dependent.upstream)
+			{
+				List<JobKey> path = path(upstreamKey, to);
+				if (path != null)
+				{
+					path.add(0, from);
+					return path;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @param jobKey the key of a job
+	 * @return the keys of the jobs the job depends on
+	 */
+	public synchronized Set<JobKey> getUpstream(JobKey jobKey)
+	{
+		Dependent dependent = dependents.get(jobKey);
+		return dependent == null ? Collections.<JobKey>emptySet() : dependent.upstream;
+	}
+
+	/**
+	 * @param jobKey the key of a job
+	 * @return true if other jobs depend on the job
+	 */
+	public synchronized boolean hasDownstream(JobKey jobKey)
+	{
+		return downstream.containsKey(jobKey);
+	}
+
+	/**
+	 * Record the successful completion of a job, and fire the jobs depending on
+	 * it whose upstream jobs have all completed.
+	 *
+	 * @param jobKey the key of the completed job
+	 * @param result the result of the job, or null
+	 */
+	public void completed(JobKey jobKey, Object result)
+	{
+		List<Dependent> ready;
+		synchronized (this)
+		{
+			List<Dependent> list = downstream.get(jobKey);
+			if (list == null)
+			{
+				return;
+			}
+			ready = new ArrayList<>();
+			for (Dependent dependent : list)
+			{
+				if (dependent.completed(jobKey, result))
+				{
+					ready.add(dependent);
+				}
+			}
+		}
+
+		for (Dependent dependent : ready)
+		{
+			JobDataMap data = new JobDataMap();
+			data.put(UPSTREAM_FIRE_KEY, true);
+			try
+			{
+				dependent.scheduler.triggerJob(dependent.jobKey, data);
+			}
+			catch (SchedulerException e)
+			{
+				logger.error("Failed to fire job {} after its upstream jobs completed.", dependent.jobKey, e);
+				take(dependent.jobKey);
+			}
+		}
+	}
+
+	/**
+	 * Take the upstream results for a fire caused by upstream jobs. Fires are
+	 * served in the order in which their upstream jobs completed.
+	 *
+	 * @param jobKey the key of the job
+	 * @return the upstream results, or {@link UpstreamResults#NONE}
+	 */
+	public synchronized UpstreamResults take(JobKey jobKey)
+	{
+		Dependent dependent = dependents.get(jobKey);
+		UpstreamResults results = dependent == null ? null : dependent.ready.poll();
+		return results == null ? UpstreamResults.NONE : results;
+	}
+
+	/**
+	 * Return the upstream results taken by a fire which has been held back and
+	 * scheduled again later, so that the later fire receives them.
+	 *
+	 * @param jobKey  the key of the job
+	 * @param results the upstream results taken by the held back fire
+	 */
+	public synchronized void requeue(JobKey jobKey, UpstreamResults results)
+	{
+		Dependent dependent = dependents.get(jobKey);
+		if (dependent != null && results != UpstreamResults.NONE)
+		{
+			dependent.ready.addFirst(results);
+		}
+	}
+
+	/**
+	 * A job depending on other jobs, collecting the results of its upstream
+	 * jobs until all of them have completed.
+	 */
+	private static class Dependent
+	{
+		private final Scheduler scheduler;
+
+		private final JobKey jobKey;
+
+		private final Set<JobKey> upstream;
+
+		private final Map<JobKey, Object> results = new LinkedHashMap<>();
+
+		private final Deque<UpstreamResults> ready = new ArrayDeque<>();
+
+		Dependent(Scheduler scheduler, JobKey jobKey, Collection<JobKey> upstream)
+		{
+			this.scheduler = scheduler;
+			this.jobKey = jobKey;
+			this.upstream = Collections.unmodifiableSet(new LinkedHashSet<>(upstream));
+		}
+
+		/**
+		 * @return true if all upstream jobs have completed
+		 */
+		boolean completed(JobKey upstreamKey, Object result)
+		{
+			results.put(upstreamKey, result);
+			if (results.size() < upstream.size())
+			{
+				return false;
+			}
+			ready.add(new UpstreamResults(results));
+			results.clear();
+			return true;
+		}
+	}
+
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.dependency;
+
+import org.quartz.JobExecutionContext;
+import org.quartz.JobKey;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The results of the jobs a job depends on (see
+ * {@link com.jensfendler.ninjaquartz.annotations.QuartzSchedule#dependsOn()}),
+ * for the execution fired by their completion. The result of a job is the
+ * return value of its scheduled method (or the result set through
+ * {@link JobExecutionContext#setResult(Object)}). Results are handed over in
+ * memory, and never written to the job store.
+ * <p>
+ * Scheduled methods receive the results through an {@link UpstreamResults}
+ * parameter. Executions not fired by the completion of upstream jobs receive
+ * {@link #NONE}.
+ *
+ * @author Jens Fendler
+ */
+public final class UpstreamResults
+{
+
+	/**
+	 * The key of the results in the {@link JobExecutionContext}.
+	 */
+	public static final String CONTEXT_KEY = "nqUpstreamResults";
+
+	/**
+	 * No results, i.e. for executions not fired by upstream jobs.
+	 */
+	public static final UpstreamResults NONE = new UpstreamResults(Collections.emptyMap());
+
+	private final Map<JobKey, Object> results;
+
+	UpstreamResults(Map<JobKey, Object> results)
+	{
+		this.results = Collections.unmodifiableMap(new LinkedHashMap<>(results));
+	}
+
+	/**
+	 * @param context the execution context of a job
+	 * @return the upstream results of the execution
+	 */
+	public static UpstreamResults of(JobExecutionContext context)
+	{
+		Object results = context.get(CONTEXT_KEY);
+		return results instanceof UpstreamResults ? (UpstreamResults) results : NONE;
+	}
+
+	/**
+	 * @param jobKey the key of an upstream job
+	 * @return the result of the upstream job, or null
+	 */
+	public Object get(JobKey jobKey)
+	{
+		return results.get(jobKey);
+	}
+
+	/**
+	 * @param jobName the name of an upstream job (in any group)
+	 * @return the result of the upstream job, or null
+	 */
+	public Object get(String jobName)
+	{
+		for (Map.Entry<JobKey, Object> result : results.entrySet())
+		{
+			if (result.getKey().getName().equals(jobName))
+			{
+				return result.getValue();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return the results of all upstream jobs, by job key
+	 */
+	public Map<JobKey, Object> getAll()
+	{
+		return results;
+	}
+
+	/**
+	 * @return true if the execution has not been fired by upstream jobs
+	 */
+	public boolean isEmpty()
+	{
+		return results.isEmpty();
+	}
+
+	@Override
+	public String toString()
+	{
+		return "UpstreamResults" + results;
+	}
+
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.jfr;
+
+import org.quartz.JobExecutionContext;
+import org.quartz.JobKey;
+import org.quartz.Trigger;
+
+import java.util.Date;
+
+/**
+ * {@link NinjaQuartzEventRecorder} backed by the JDK Flight Recorder. Only
+ * loaded (reflectively) if the <code>jdk.jfr</code> API is available.
+ * <p>
+ * The <code>*_PROBE</code> events are never committed. They are only used to
+ * check if an event type is enabled, so that nothing is allocated while no
+ * recording is running.
+ *
+ * @author Jens Fendler
+ */
+public class JfrNinjaQuartzEventRecorder extends NinjaQuartzEventRecorder
+{
+
+	private static final String OUTCOME_SUCCESS = "SUCCESS";
+
+	private static final String OUTCOME_FAILURE = "FAILURE";
+
+	private static final JobExecutionEvent EXECUTION_PROBE = new JobExecutionEvent();
+
+	private static final JobMisfireEvent MISFIRE_PROBE = new JobMisfireEvent();
+
+	private static final JobRemovedEvent REMOVED_PROBE = new JobRemovedEvent();
+
+	public JfrNinjaQuartzEventRecorder()
+	{
+		super();
+	}
+
+	@Override
+	public boolean isAvailable()
+	{
+		return true;
+	}
+
+	@Override
+	public Object executionStarted()
+	{
+		if (!EXECUTION_PROBE.isEnabled())
+		{
+			return null;
+		}
+		JobExecutionEvent event = new JobExecutionEvent();
+		event.begin();
+		return event;
+	}
+
+	@Override
+	public void executionFinished(Object handle, JobExecutionContext context, String taskName, Throwable failure)
+	{
+		if (handle == null)
+		{
+			return;
+		}
+
+		JobExecutionEvent event = (JobExecutionEvent) handle;
+		event.end();
+		if (event.shouldCommit())
+		{
+			JobKey jobKey = context.getJobDetail().getKey();
+			event.jobName = jobKey.getName();
+			event.jobGroup = jobKey.getGroup();
+			event.taskName = taskName;
+			event.scheduledFireTime = toMillis(context.getScheduledFireTime());
+			event.fireTime = toMillis(context.getFireTime());
+			event.outcome = failure == null ? OUTCOME_SUCCESS : OUTCOME_FAILURE;
+			event.exception = failure == null ? null : failure.getClass();
+			event.commit();
+		}
+	}
+
+	@Override
+	public void triggerMisfired(Trigger trigger)
+	{
+		if (!MISFIRE_PROBE.isEnabled())
+		{
+			return;
+		}
+
+		JobMisfireEvent event = new JobMisfireEvent();
+		if (event.shouldCommit())
+		{
+			event.jobName = trigger.getJobKey().getName();
+			event.jobGroup = trigger.getJobKey().getGroup();
+			event.triggerName = trigger.getKey().getName();
+			event.triggerGroup = trigger.getKey().getGroup();
+			event.scheduledFireTime = toMillis(trigger.getNextFireTime());
+			event.commit();
+		}
+	}
+
+	@Override
+	public void jobRemoved(JobKey jobKey, String taskName)
+	{
+		if (!REMOVED_PROBE.isEnabled())
+		{
+			return;
+		}
+
+		JobRemovedEvent event = new JobRemovedEvent();
+		if (event.shouldCommit())
+		{
+			event.jobName = jobKey.getName();
+			event.jobGroup = jobKey.getGroup();
+			event.taskName = taskName;
+			event.commit();
+		}
+	}
+
+	private static long toMillis(Date date)
+	{
+		return date == null ? 0 : date.getTime();
+	}
+
+}
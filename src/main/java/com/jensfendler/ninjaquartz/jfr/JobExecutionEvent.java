@@ -0,0 +1,60 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timestamp;
+
+/**
+ * JFR duration event covering the execution of a scheduled task.
+ *
+ * @author Jens Fendler
+ */
+@Name("ninjaquartz.JobExecution")
+@Label("Job Execution")
+@Category({"Ninja Quartz"})
+@Description("Execution of a scheduled NinjaQuartz task")
+class JobExecutionEvent extends Event
+{
+
+	@Label("Job Name")
+	String jobName;
+
+	@Label("Job Group")
+	String jobGroup;
+
+	@Label("Task Name")
+	String taskName;
+
+	@Label("Scheduled Fire Time")
+	@Timestamp(Timestamp.MILLISECONDS_SINCE_EPOCH)
+	long scheduledFireTime;
+
+	@Label("Actual Fire Time")
+	@Timestamp(Timestamp.MILLISECONDS_SINCE_EPOCH)
+	long fireTime;
+
+	@Label("Outcome")
+	String outcome;
+
+	@Label("Exception")
+	Class<?> exception;
+
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timestamp;
+
+/**
+ * JFR event recorded when a trigger misfired.
+ *
+ * @author Jens Fendler
+ */
+@Name("ninjaquartz.JobMisfire")
+@Label("Job Misfire")
+@Category({"Ninja Quartz"})
+@Description("A trigger of a scheduled job misfired")
+@StackTrace(false)
+class JobMisfireEvent extends Event
+{
+
+	@Label("Job Name")
+	String jobName;
+
+	@Label("Job Group")
+	String jobGroup;
+
+	@Label("Trigger Name")
+	String triggerName;
+
+	@Label("Trigger Group")
+	String triggerGroup;
+
+	@Label("Missed Fire Time")
+	@Timestamp(Timestamp.MILLISECONDS_SINCE_EPOCH)
+	long scheduledFireTime;
+
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.jfr;
+
+import org.quartz.Trigger;
+import org.quartz.listeners.TriggerListenerSupport;
+
+/**
+ * Global trigger listener passing misfires on to the
+ * {@link NinjaQuartzEventRecorder}.
+ *
+ * @author Jens Fendler
+ */
+public class MisfireEventListener extends TriggerListenerSupport
+{
+
+	/**
+	 * The name of the listener in the scheduler's listener manager.
+	 */
+	public static final String NAME = "nqMisfireEvents";
+
+	private final NinjaQuartzEventRecorder recorder;
+
+	public MisfireEventListener(NinjaQuartzEventRecorder recorder)
+	{
+		this.recorder = recorder;
+	}
+
+	/**
+	 * @see org.quartz.TriggerListener#getName()
+	 */
+	public String getName()
+	{
+		return NAME;
+	}
+
+	/**
+	 * @see org.quartz.listeners.TriggerListenerSupport#triggerMisfired(org.quartz.Trigger)
+	 */
+	@Override
+	public void triggerMisfired(Trigger trigger)
+	{
+		recorder.triggerMisfired(trigger);
+	}
+
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.jfr;
+
+import com.jensfendler.ninjaquartz.NinjaQuartzModule;
+
+import org.quartz.JobExecutionContext;
+import org.quartz.JobKey;
+import org.quartz.Trigger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Records NinjaQuartz events with the JDK Flight Recorder.
+ * <p>
+ * This class does not reference the <code>jdk.jfr</code> API itself. The
+ * {@link #INSTANCE} is a {@link JfrNinjaQuartzEventRecorder} if the running JVM
+ * provides JFR (Java 8u262 and later, Java 11 and later), and a no-op recorder
+ * otherwise. Whether events are actually recorded is controlled through the JFR
+ * settings of a recording (event names start with <code>ninjaquartz.</code>).
+ *
+ * @author Jens Fendler
+ */
+public class NinjaQuartzEventRecorder
+{
+
+	protected static final Logger logger = LoggerFactory.getLogger(NinjaQuartzModule.class);
+
+	private static final String JFR_EVENT_CLASS = "jdk.jfr.Event";
+
+	private static final String JFR_RECORDER_CLASS = "com.jensfendler.ninjaquartz.jfr.JfrNinjaQuartzEventRecorder";
+
+	/**
+	 * The recorder to use.
+	 */
+	public static final NinjaQuartzEventRecorder INSTANCE = load();
+
+	protected NinjaQuartzEventRecorder()
+	{
+	}
+
+	private static NinjaQuartzEventRecorder load()
+	{
+		try
+		{
+			Class.forName(JFR_EVENT_CLASS);
+			return (NinjaQuartzEventRecorder) Class.forName(JFR_RECORDER_CLASS).getConstructor().newInstance();
+		}
+		catch (ClassNotFoundException e)
+		{
+			logger.debug("JDK Flight Recorder is not available. NinjaQuartz events will not be recorded.");
+		}
+		catch (ReflectiveOperationException | LinkageError e)
+		{
+			logger.warn("Failed to initialise JDK Flight Recorder events: {}", e.getMessage());
+		}
+		return new NinjaQuartzEventRecorder();
+	}
+
+	/**
+	 * @return true if events can be recorded in this JVM
+	 */
+	public boolean isAvailable()
+	{
+		return false;
+	}
+
+	/**
+	 * Called before a scheduled task is executed.
+	 *
+	 * @return an opaque handle to pass to
+	 * {@link #executionFinished(Object, JobExecutionContext, String, Throwable)},
+	 * or null if execution events are currently not recorded
+	 */
+	public Object executionStarted()
+	{
+		return null;
+	}
+
+	/**
+	 * Called after a scheduled task has been executed.
+	 *
+	 * @param handle   the handle returned by {@link #executionStarted()}
+	 * @param context  the execution context of the job
+	 * @param taskName the name of the executed task
+	 * @param failure  the exception thrown by the task, or null on success
+	 */
+	public void executionFinished(Object handle, JobExecutionContext context, String taskName, Throwable failure)
+	{
+	}
+
+	/**
+	 * Called when a trigger misfired.
+	 *
+	 * @param trigger the misfired trigger
+	 */
+	public void triggerMisfired(Trigger trigger)
+	{
+	}
+
+	/**
+	 * Called when a job has been removed from its scheduler after an error.
+	 *
+	 * @param jobKey   the key of the removed job
+	 * @param taskName the name of the task
+	 */
+	public void jobRemoved(JobKey jobKey, String taskName)
+	{
+	}
+
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.jmx;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.jensfendler.ninjaquartz.NinjaQuartzModule;
+import com.jensfendler.ninjaquartz.admission.AdmissionController;
+import com.jensfendler.ninjaquartz.admission.ResourceBudget;
+import com.jensfendler.ninjaquartz.batch.BatchBuffer;
+import com.jensfendler.ninjaquartz.job.NinjaQuartzJobStatus;
+
+import org.quartz.JobKey;
+import org.quartz.Scheduler;
+import org.quartz.TriggerKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import ninja.utils.NinjaProperties;
+
+/**
+ * Registers a {@link NinjaQuartzJobMXBean} for every scheduled method (and a
+ * {@link com.jensfendler.ninjaquartz.batch.BatchBufferMXBean} for every batch
+ * buffer, and one for the {@link AdmissionController} and the
+ * {@link ResourceBudget}) with the platform MBean server, if enabled through the
+ * {@link #CONF_KEY_JMX_ENABLED} property in application.conf.
+ *
+ * @author Jens Fendler
+ */
+@Singleton
+public class NinjaQuartzJmx
+{
+
+	protected static final Logger logger = LoggerFactory.getLogger(NinjaQuartzModule.class);
+
+	/**
+	 * The key name of the boolean property in application.conf which enables
+	 * the registration of MBeans. Defaults to <code>false</code>.
+	 */
+	public static final String CONF_KEY_JMX_ENABLED = "quartz.jmx";
+
+	/**
+	 * The JMX domain of all NinjaQuartz MBeans.
+	 */
+	public static final String DOMAIN = "com.jensfendler.ninjaquartz";
+
+	private final boolean enabled;
+
+	private final MBeanServer mBeanServer;
+
+	private final Map<JobKey, ObjectName> registeredNames = new ConcurrentHashMap<>();
+
+	private final Map<String, ObjectName> registeredBuffers = new ConcurrentHashMap<>();
+
+	private final Map<String, ObjectName> registeredSingletons = new ConcurrentHashMap<>();
+
+	@Inject
+	public NinjaQuartzJmx(NinjaProperties ninjaProperties)
+	{
+		this.enabled = ninjaProperties.getBooleanWithDefault(CONF_KEY_JMX_ENABLED, false);
+		this.mBeanServer = enabled ? ManagementFactory.getPlatformMBeanServer() : null;
+	}
+
+	/**
+	 * Build the {@link ObjectName} for the MBean of the given job.
+	 *
+	 * @param jobKey the key of the job
+	 * @return the (stable) name of the job's MBean
+	 * @throws MalformedObjectNameException if no valid name can be built
+	 */
+	public static ObjectName objectName(JobKey jobKey) throws MalformedObjectNameException
+	{
+		return new ObjectName(DOMAIN + ":type=Job,group=" + ObjectName.quote(jobKey.getGroup()) + ",name="
+				+ ObjectName.quote(jobKey.getName()));
+	}
+
+	/**
+	 * Register the MBean for a scheduled job. An MBean registered earlier under
+	 * the same name (e.g. by a previous application instance within the same
+	 * JVM) will be replaced.
+	 *
+	 * @param scheduler  the {@link Scheduler} the job is scheduled with
+	 * @param jobKey     the key of the job
+	 * @param triggerKey the key of the job's trigger, or null for a job fired
+	 *                   by the jobs it depends on only
+	 * @param status     the run-time status of the job
+	 */
+	public void register(Scheduler scheduler, JobKey jobKey, TriggerKey triggerKey, NinjaQuartzJobStatus status)
+	{
+		if (!enabled)
+		{
+			return;
+		}
+
+		try
+		{
+			ObjectName name = objectName(jobKey);
+			if (mBeanServer.isRegistered(name))
+			{
+				mBeanServer.unregisterMBean(name);
+			}
+			mBeanServer.registerMBean(new NinjaQuartzJobManagement(scheduler, jobKey, triggerKey, status), name);
+			registeredNames.put(jobKey, name);
+			logger.debug("Registered MBean {}", name);
+		}
+		catch (JMException e)
+		{
+			logger.warn("Failed to register MBean for job {}: {}", jobKey, e.getMessage());
+		}
+	}
+
+	/**
+	 * Register the MBean for a batch buffer, replacing an MBean registered
+	 * earlier under the same name.
+	 *
+	 * @param buffer the buffer
+	 */
+	public void register(BatchBuffer<?> buffer)
+	{
+		if (!enabled)
+		{
+			return;
+		}
+
+		try
+		{
+			ObjectName name = new ObjectName(DOMAIN + ":type=BatchBuffer,name=" + ObjectName.quote(buffer.getName()));
+			if (mBeanServer.isRegistered(name))
+			{
+				mBeanServer.unregisterMBean(name);
+			}
+			mBeanServer.registerMBean(buffer, name);
+			registeredBuffers.put(buffer.getName(), name);
+			logger.debug("Registered MBean {}", name);
+		}
+		catch (JMException e)
+		{
+			logger.warn("Failed to register MBean for batch buffer {}: {}", buffer.getName(), e.getMessage());
+		}
+	}
+
+	/**
+	 * Register the MBean for the admission controller, replacing an MBean
+	 * registered earlier.
+	 *
+	 * @param admissionController the admission controller
+	 */
+	public void register(AdmissionController admissionController)
+	{
+		registerSingleton("AdmissionController", admissionController);
+	}
+
+	/**
+	 * Register the MBean for the resource budget, replacing an MBean
+	 * registered earlier.
+	 *
+	 * @param resourceBudget the resource budget
+	 */
+	public void register(ResourceBudget resourceBudget)
+	{
+		registerSingleton("ResourceBudget", resourceBudget);
+	}
+
+	/**
+	 * Register the only MBean of a type.
+	 */
+	private void registerSingleton(String type, Object mBean)
+	{
+		if (!enabled)
+		{
+			return;
+		}
+
+		try
+		{
+			ObjectName name = new ObjectName(DOMAIN + ":type=" + type);
+			if (mBeanServer.isRegistered(name))
+			{
+				mBeanServer.unregisterMBean(name);
+			}
+			mBeanServer.registerMBean(mBean, name);
+			registeredSingletons.put(type, name);
+			logger.debug("Registered MBean {}", name);
+		}
+		catch (JMException e)
+		{
+			logger.warn("Failed to register MBean {}: {}", type, e.getMessage());
+		}
+	}
+
+	/**
+	 * Unregister all MBeans registered through this instance.
+	 */
+	public void unregisterAll()
+	{
+		List<ObjectName> names = new ArrayList<>(registeredNames.values());
+		names.addAll(registeredBuffers.values());
+		names.addAll(registeredSingletons.values());
+		for (ObjectName name : names)
+		{
+			try
+			{
+				if (mBeanServer.isRegistered(name))
+				{
+					mBeanServer.unregisterMBean(name);
+				}
+			}
+			catch (JMException e)
+			{
+				logger.warn("Failed to unregister MBean {}: {}", name, e.getMessage());
+			}
+		}
+		registeredNames.clear();
+		registeredBuffers.clear();
+		registeredSingletons.clear();
+	}
+
+}
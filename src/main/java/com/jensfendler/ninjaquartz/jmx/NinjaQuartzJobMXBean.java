@@ -0,0 +1,107 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.jmx;
+
+import com.jensfendler.ninjaquartz.job.NinjaQuartzJobStatus;
+
+import java.util.Date;
+
+/**
+ * Management interface of a single scheduled method, registered with the
+ * platform MBean server under
+ * <code>com.jensfendler.ninjaquartz:type=Job,group="jobGroup",name="jobName"</code>.
+ * <p>
+ * All attributes are served from the cached {@link NinjaQuartzJobStatus} of
+ * the job. Only the operations access the Quartz scheduler.
+ *
+ * @author Jens Fendler
+ */
+public interface NinjaQuartzJobMXBean
+{
+
+	String getJobName();
+
+	String getJobGroup();
+
+	/**
+	 * @return the name of the job's trigger, or null for a job fired by the
+	 * jobs it depends on only
+	 */
+	String getTriggerName();
+
+	/**
+	 * @return the group of the job's trigger, or null for a job fired by the
+	 * jobs it depends on only
+	 */
+	String getTriggerGroup();
+
+	String getCronSchedule();
+
+	/**
+	 * @return one of {@link NinjaQuartzJobStatus#STATE_NORMAL},
+	 * {@link NinjaQuartzJobStatus#STATE_PAUSED} or
+	 * {@link NinjaQuartzJobStatus#STATE_REMOVED}
+	 */
+	String getState();
+
+	long getExecutionCount();
+
+	long getSuccessCount();
+
+	long getFailureCount();
+
+	long getOverlapCount();
+
+	int getRunningCount();
+
+	long getAdmissionSkipCount();
+
+	long getAdmissionDeferCount();
+
+	long getRateLimitSkipCount();
+
+	long getRateLimitDelayCount();
+
+	long getLastRunDurationMillis();
+
+	Date getLastFireTime();
+
+	Date getNextFireTime();
+
+	/**
+	 * Pause the job (i.e. all of its triggers).
+	 */
+	void pause();
+
+	/**
+	 * Resume a previously paused job.
+	 */
+	void resume();
+
+	/**
+	 * Fire the job once, immediately.
+	 */
+	void triggerNow();
+
+	/**
+	 * Replace the cron schedule of the job's trigger. Jobs fired by the jobs
+	 * they depend on only have no trigger to reschedule.
+	 *
+	 * @param cronSchedule the new cron expression
+	 */
+	void reschedule(String cronSchedule);
+
+}
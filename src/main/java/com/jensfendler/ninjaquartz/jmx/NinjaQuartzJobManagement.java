@@ -0,0 +1,229 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.jmx;
+
+import com.jensfendler.ninjaquartz.NinjaQuartzSchedulerRegistration;
+import com.jensfendler.ninjaquartz.job.NinjaQuartzJobStatus;
+
+import org.quartz.CronTrigger;
+import org.quartz.JobKey;
+import org.quartz.Scheduler;
+import org.quartz.SchedulerException;
+import org.quartz.Trigger;
+import org.quartz.TriggerKey;
+
+import java.text.ParseException;
+import java.util.Date;
+
+/**
+ * {@link NinjaQuartzJobMXBean} implementation for a job scheduled by
+ * NinjaQuartz.
+ * <p>
+ * Operations throw plain {@link IllegalStateException}s and
+ * {@link IllegalArgumentException}s (without Quartz causes), so that JMX
+ * clients do not need the Quartz classes to display errors.
+ *
+ * @author Jens Fendler
+ */
+public class NinjaQuartzJobManagement implements NinjaQuartzJobMXBean
+{
+
+	private final Scheduler scheduler;
+
+	private final JobKey jobKey;
+
+	private final TriggerKey triggerKey;
+
+	private final NinjaQuartzJobStatus status;
+
+	public NinjaQuartzJobManagement(Scheduler scheduler, JobKey jobKey, TriggerKey triggerKey, NinjaQuartzJobStatus status)
+	{
+		this.scheduler = scheduler;
+		this.jobKey = jobKey;
+		this.triggerKey = triggerKey;
+		this.status = status;
+	}
+
+	public String getJobName()
+	{
+		return jobKey.getName();
+	}
+
+	public String getJobGroup()
+	{
+		return jobKey.getGroup();
+	}
+
+	public String getTriggerName()
+	{
+		return triggerKey == null ? null : triggerKey.getName();
+	}
+
+	public String getTriggerGroup()
+	{
+		return triggerKey == null ? null : triggerKey.getGroup();
+	}
+
+	public String getCronSchedule()
+	{
+		return status.getCronSchedule();
+	}
+
+	public String getState()
+	{
+		return status.getState();
+	}
+
+	public long getExecutionCount()
+	{
+		return status.getExecutionCount();
+	}
+
+	public long getSuccessCount()
+	{
+		return status.getSuccessCount();
+	}
+
+	public long getFailureCount()
+	{
+		return status.getFailureCount();
+	}
+
+	public long getOverlapCount()
+	{
+		return status.getOverlapCount();
+	}
+
+	public int getRunningCount()
+	{
+		return status.getRunningCount();
+	}
+
+	public long getAdmissionSkipCount()
+	{
+		return status.getAdmissionSkipCount();
+	}
+
+	public long getAdmissionDeferCount()
+	{
+		return status.getAdmissionDeferCount();
+	}
+
+	public long getRateLimitSkipCount()
+	{
+		return status.getRateLimitSkipCount();
+	}
+
+	public long getRateLimitDelayCount()
+	{
+		return status.getRateLimitDelayCount();
+	}
+
+	public long getLastRunDurationMillis()
+	{
+		return status.getLastRunDurationMillis();
+	}
+
+	public Date getLastFireTime()
+	{
+		return status.getLastFireTime();
+	}
+
+	public Date getNextFireTime()
+	{
+		return status.getNextFireTime();
+	}
+
+	public void pause()
+	{
+		try
+		{
+			scheduler.pauseJob(jobKey);
+			status.setState(NinjaQuartzJobStatus.STATE_PAUSED);
+		}
+		catch (SchedulerException e)
+		{
+			throw new IllegalStateException("Failed to pause job " + jobKey + ": " + e.getMessage());
+		}
+	}
+
+	public void resume()
+	{
+		try
+		{
+			scheduler.resumeJob(jobKey);
+			status.setState(NinjaQuartzJobStatus.STATE_NORMAL);
+			Trigger trigger = triggerKey == null ? null : scheduler.getTrigger(triggerKey);
+			if (trigger != null)
+			{
+				status.setNextFireTime(trigger.getNextFireTime());
+			}
+		}
+		catch (SchedulerException e)
+		{
+			throw new IllegalStateException("Failed to resume job " + jobKey + ": " + e.getMessage());
+		}
+	}
+
+	public void triggerNow()
+	{
+		try
+		{
+			scheduler.triggerJob(jobKey);
+		}
+		catch (SchedulerException e)
+		{
+			throw new IllegalStateException("Failed to trigger job " + jobKey + ": " + e.getMessage());
+		}
+	}
+
+	public void reschedule(String cronSchedule)
+	{
+		if (triggerKey == null)
+		{
+			throw new IllegalStateException("Job " + jobKey + " has no trigger. It only runs after the jobs it depends on.");
+		}
+		try
+		{
+			Trigger trigger = scheduler.getTrigger(triggerKey);
+			if (!(trigger instanceof CronTrigger))
+			{
+				throw new IllegalStateException("No cron trigger " + triggerKey + " found for job " + jobKey + ".");
+			}
+
+			CronTrigger newTrigger = NinjaQuartzSchedulerRegistration.withCronSchedule((CronTrigger) trigger,
+					cronSchedule);
+			Date nextFireTime = scheduler.rescheduleJob(triggerKey, newTrigger);
+			if (NinjaQuartzJobStatus.STATE_PAUSED.equals(status.getState()))
+			{
+				// replacing the trigger resumes it, but the job should stay
+				// paused
+				scheduler.pauseTrigger(triggerKey);
+			}
+			status.setCronSchedule(cronSchedule);
+			status.setNextFireTime(nextFireTime);
+		}
+		catch (ParseException e)
+		{
+			throw new IllegalArgumentException("Invalid cron schedule '" + cronSchedule + "': " + e.getMessage());
+		}
+		catch (SchedulerException e)
+		{
+			throw new IllegalStateException("Failed to reschedule job " + jobKey + ": " + e.getMessage());
+		}
+	}
+
+}
@@ -15,7 +15,15 @@
  */
 package com.jensfendler.ninjaquartz.job;
 
+import com.jensfendler.ninjaquartz.NinjaQuartzReadiness;
+import com.jensfendler.ninjaquartz.admission.AdmissionController;
+import com.jensfendler.ninjaquartz.admission.RateLimits;
+import com.jensfendler.ninjaquartz.admission.ResourceBudget;
 import com.jensfendler.ninjaquartz.annotations.QuartzSchedule;
+import com.jensfendler.ninjaquartz.dependency.JobDependencies;
+import com.jensfendler.ninjaquartz.dependency.UpstreamResults;
+import com.jensfendler.ninjaquartz.jfr.NinjaQuartzEventRecorder;
+import com.jensfendler.ninjaquartz.lock.RunOnceLocks;
 
 import org.quartz.Job;
 import org.quartz.JobDataMap;
@@ -66,6 +74,62 @@ public abstract class AbstractNinjaQuartzJob implements Job
 	 */
 	public static final String JOB_FORCE_KEEP = "forceKeepingOfJob";
 
+	/**
+	 * The key name of a boolean property of the job's {@link JobDataMap},
+	 * indicating that the map is kept in memory and written to the job store
+	 * by the {@link WriteBehindJobDataListener}, instead of after every
+	 * execution.
+	 * <p>
+	 * The default for this property is <code>false</code>.
+	 */
+	public static final String JOB_WRITE_BEHIND = "writeBehindJobData";
+
+	/**
+	 * The key name of a boolean property of the job's {@link JobDataMap},
+	 * indicating that each fire of the job runs on one node only, i.e. on the
+	 * node taking the job's lock from the {@link RunOnceLocks} in the
+	 * scheduler's context first.
+	 * <p>
+	 * The default for this property is <code>false</code>.
+	 */
+	public static final String JOB_RUN_ONCE = "runOnce";
+
+	/**
+	 * The key names of the integer properties of the job's {@link JobDataMap}
+	 * holding the weights taken from the {@link ResourceBudget} in the
+	 * scheduler's context by each run (see {@link QuartzSchedule#cpuWeight()}
+	 * and {@link QuartzSchedule#memoryWeight()}).
+	 */
+	public static final String JOB_CPU_WEIGHT = "cpuWeight";
+
+	public static final String JOB_MEMORY_WEIGHT = "memoryWeight";
+
+	/**
+	 * The key name of a boolean property of the job's {@link JobDataMap},
+	 * indicating that its fires are limited by the {@link RateLimits} in the
+	 * scheduler's context (see {@link QuartzSchedule#rateLimit()}).
+	 * <p>
+	 * The default for this property is <code>false</code>.
+	 */
+	public static final String JOB_RATE_LIMITED = "rateLimited";
+
+	/**
+	 * The key name of a boolean property of the trigger's {@link JobDataMap},
+	 * marking the run fired on start (see {@link QuartzSchedule#fireOnStart()}).
+	 */
+	public static final String FIRE_ON_START_KEY = "nqFireOnStart";
+
+	/**
+	 * The key in the {@link JobExecutionContext} marking a fire which has been
+	 * held back, and scheduled again later (e.g. by the {@link RateLimits}).
+	 */
+	public static final String FIRE_DELAYED_KEY = "nqFireDelayed";
+
+	/**
+	 * Records JDK Flight Recorder events for executions and removals.
+	 */
+	private static final NinjaQuartzEventRecorder EVENTS = NinjaQuartzEventRecorder.INSTANCE;
+
 	public AbstractNinjaQuartzJob()
 	{
 	}
@@ -75,19 +139,21 @@ public abstract class AbstractNinjaQuartzJob implements Job
 	 */
 	public void execute(JobExecutionContext context) throws JobExecutionException
 	{
-		// get NinjaQuartz settings from the context
-		boolean forceKeepJob = context.getMergedJobDataMap().containsKey(JOB_FORCE_KEEP)
-				? context.getMergedJobDataMap().getBooleanValue(JOB_FORCE_KEEP) : QuartzSchedule.DEFAULT_FORCE_KEEP;
-		boolean removeOnInvocationTargetException = context.getMergedJobDataMap()
-				.containsKey(JOB_REMOVE_ON_RUNTIME_ERROR)
-				? context.getMergedJobDataMap().getBooleanValue(JOB_REMOVE_ON_RUNTIME_ERROR)
-				: QuartzSchedule.DEFAULT_REMOVE_ON_ERROR;
-
 		NinjaQuartzTask task = (NinjaQuartzTask) context.getJobDetail().getJobDataMap().get(JOB_TASK_KEY);
+		if (task instanceof DetachedTask)
+		{
+			// read from a persistent job store
+			task = ((DetachedTask) task).resolve(context);
+		}
 		if (task == null)
 		{
-			LOG.error(
-					"JobTask object for task {} is null. Nothing to do in this Quartz Job, so it will be removed from the schedule.");
+			LOG.error("JobTask object for job {} is null. Nothing to do in this Quartz Job, so it will be removed from the schedule.",
+					context.getJobDetail().getKey());
+			// without a task, the NinjaQuartz settings can only be taken from
+			// the context
+			JobDataMap jobDataMap = context.getMergedJobDataMap();
+			boolean forceKeepJob = jobDataMap.containsKey(JOB_FORCE_KEEP) ? jobDataMap.getBooleanValue(JOB_FORCE_KEEP)
+					: QuartzSchedule.DEFAULT_FORCE_KEEP;
 			if (!forceKeepJob)
 			{
 				removeSelf("NULL-TASK", context);
@@ -95,6 +161,107 @@ public abstract class AbstractNinjaQuartzJob implements Job
 			return;
 		}
 
+		NinjaQuartzJobStatus status = task.getStatus();
+		boolean startupFire = context.getTrigger().getJobDataMap().containsKey(FIRE_ON_START_KEY);
+
+		// fires of upstream jobs take their results before any gate can hold
+		// them back, so that no results are left behind
+		JobDependencies dependencies = contextValue(context, JobDependencies.SCHEDULER_CONTEXT_KEY,
+				JobDependencies.class);
+		UpstreamResults upstreamResults = null;
+		if (dependencies != null && context.getTrigger().getJobDataMap().containsKey(JobDependencies.UPSTREAM_FIRE_KEY))
+		{
+			upstreamResults = dependencies.take(context.getJobDetail().getKey());
+			context.put(UpstreamResults.CONTEXT_KEY, upstreamResults);
+		}
+
+		// runs fired on start are awaited by the readiness of the application,
+		// so they are reported as finished if any of the gates refuses them
+		JobDataMap jobData = context.getJobDetail().getJobDataMap();
+		int cpuWeight = weight(jobData, JOB_CPU_WEIGHT);
+		int memoryWeight = weight(jobData, JOB_MEMORY_WEIGHT);
+		ResourceBudget budget = null;
+		RunOnceLocks.Lease lease = null;
+		boolean admitted = false;
+		try
+		{
+			if (!startupFire && status.isDueDuringStartupFire(context.getScheduledFireTime()))
+			{
+				if (LOG.isDebugEnabled())
+				{
+					LOG.debug("Skipping fire of task {} duplicating its run fired on start.", task.getTaskName());
+				}
+				return;
+			}
+
+			AdmissionController admission = startupFire ? null
+					: contextValue(context, AdmissionController.SCHEDULER_CONTEXT_KEY, AdmissionController.class);
+			if (admission != null && !admission.admit(context, status))
+			{
+				if (LOG.isDebugEnabled())
+				{
+					LOG.debug("Holding back task {} under load.", task.getTaskName());
+				}
+				return;
+			}
+
+			RateLimits rateLimits = jobData.containsKey(JOB_RATE_LIMITED)
+					? contextValue(context, RateLimits.SCHEDULER_CONTEXT_KEY, RateLimits.class)
+					: null;
+			if (rateLimits != null && !rateLimits.admit(context, status))
+			{
+				return;
+			}
+
+			budget = cpuWeight > 0 || memoryWeight > 0
+					? contextValue(context, ResourceBudget.SCHEDULER_CONTEXT_KEY, ResourceBudget.class)
+					: null;
+			if (budget != null && !budget.acquire(cpuWeight, memoryWeight, context.getTrigger().getPriority()))
+			{
+				LOG.warn("Skipping fire of task {}: its weights did not fit the resource budget in time.",
+						task.getTaskName());
+				if (rateLimits != null)
+				{
+					rateLimits.refund(context);
+				}
+				return;
+			}
+
+			if (Boolean.TRUE.equals(jobData.get(JOB_RUN_ONCE)))
+			{
+				lease = acquireLock(task, context);
+				if (lease == null)
+				{
+					if (budget != null)
+					{
+						budget.release(cpuWeight, memoryWeight);
+					}
+					if (rateLimits != null)
+					{
+						rateLimits.refund(context);
+					}
+					return;
+				}
+			}
+			admitted = true;
+		}
+		finally
+		{
+			if (!admitted && upstreamResults != null && context.get(FIRE_DELAYED_KEY) != null)
+			{
+				// the delayed fire receives the results instead
+				dependencies.requeue(context.getJobDetail().getKey(), upstreamResults);
+			}
+			if (startupFire && !admitted)
+			{
+				startupFireFinished(context);
+			}
+		}
+
+		// the NinjaQuartz settings are resolved once, when the task is created
+		boolean forceKeepJob = task.isForceKeep();
+		boolean removeOnInvocationTargetException = task.isRemoveOnError();
+
 		// ensure we have a task name to use.
 		String taskName = task.getTaskName();
 		if (taskName == null)
@@ -102,22 +269,35 @@ public abstract class AbstractNinjaQuartzJob implements Job
 			taskName = task.toString();
 		}
 
+		if (startupFire)
+		{
+			status.startupFireStarted();
+		}
+		status.executionStarted(context.getFireTime());
+		Object event = EVENTS.executionStarted();
+		long startNanos = System.nanoTime();
+		Throwable failure = null;
 		try
 		{
+			if (LOG.isDebugEnabled())
+			{
+				LOG.debug("Executing Ninja Quartz task {} ({}).", taskName, context.getJobDetail().getDescription());
+			}
 
-			LOG.debug("Executing Ninja Quartz task {}{}.", taskName, context.getJobDetail().getDescription() != null
-					? " (" + context.getJobDetail().getDescription() : ")");
-
-			// invokd the scheduled method
+			// invoke the scheduled method
 			task.execute(context);
 
-			LOG.debug("Ninja Quartz task{} execution finished. Next fire time will be: {}", taskName,
-					context.getNextFireTime().toString());
+			if (LOG.isDebugEnabled())
+			{
+				LOG.debug("Ninja Quartz task {} execution finished. Next fire time will be: {}", taskName,
+						context.getNextFireTime());
+			}
 
 		}
 		catch (IllegalAccessException e)
 		{
-			LOG.error("Illegal access exception while trying to execute task " + taskName + ".", e);
+			failure = e;
+			LOG.error("Illegal access exception while trying to execute task {}.", taskName, e);
 			if (!forceKeepJob)
 			{
 				removeSelf(taskName, context);
@@ -126,8 +306,9 @@ public abstract class AbstractNinjaQuartzJob implements Job
 		}
 		catch (IllegalArgumentException e)
 		{
-			LOG.error("Illegal argument exception while trying to execute task " + taskName
-					+ ". Your scheduled method should not require any parameters!", e);
+			failure = e;
+			LOG.error("Illegal argument exception while trying to execute task {}. "
+					+ "Your scheduled method should only require injectable parameters!", taskName, e);
 			if (!forceKeepJob)
 			{
 				removeSelf(taskName, context);
@@ -136,6 +317,7 @@ public abstract class AbstractNinjaQuartzJob implements Job
 		}
 		catch (InvocationTargetException e)
 		{
+			failure = e.getTargetException();
 			// check if we should ignore this exception
 			if (forceKeepJob || !removeOnInvocationTargetException)
 			{
@@ -147,21 +329,146 @@ public abstract class AbstractNinjaQuartzJob implements Job
 			{
 				// we should not ignore this. log the full exception at ERROR
 				// level and remove the job.
-				LOG.error(
-						"Removing scheduled job after InvocationTargetException during execution of " + taskName + ".",
+				LOG.error("Removing scheduled job after InvocationTargetException during execution of {}.", taskName,
 						e);
 				removeSelf(taskName, context);
 			}
 		}
 		catch (Throwable t)
 		{
+			failure = t;
 			// fallback for any other problem in the scheduled method
-			LOG.error("Exception during execution of quartz task " + taskName + ".", t);
+			LOG.error("Exception during execution of quartz task {}.", taskName, t);
 			if (!forceKeepJob)
 			{
 				removeSelf(taskName, context);
 			}
 		}
+		finally
+		{
+			// the trigger firing on start does not fire again
+			status.executionFinished(System.nanoTime() - startNanos, failure == null,
+					startupFire ? status.getNextFireTime() : context.getNextFireTime());
+			EVENTS.executionFinished(event, context, taskName, failure);
+			if (lease != null)
+			{
+				releaseLock(lease, context);
+			}
+			if (budget != null)
+			{
+				budget.release(cpuWeight, memoryWeight);
+			}
+			if (startupFire)
+			{
+				status.startupFireFinished();
+				startupFireFinished(context);
+			}
+		}
+
+		if (failure == null && dependencies != null)
+		{
+			// fire the jobs depending on this one
+			dependencies.completed(context.getJobDetail().getKey(), context.getResult());
+		}
+	}
+
+	/**
+	 * Let the readiness of the application know that a run fired on start
+	 * has finished.
+	 */
+	private static void startupFireFinished(JobExecutionContext context)
+	{
+		try
+		{
+			NinjaQuartzReadiness readiness = (NinjaQuartzReadiness) context.getScheduler().getContext()
+					.get(NinjaQuartzReadiness.SCHEDULER_CONTEXT_KEY);
+			if (readiness != null)
+			{
+				readiness.finished(context.getJobDetail().getKey());
+			}
+		}
+		catch (SchedulerException e)
+		{
+			LOG.warn("Failed to report the end of the run fired on start of job {}.", context.getJobDetail().getKey(),
+					e);
+		}
+	}
+
+	/**
+	 * Get a service shared by all jobs through the scheduler's context (e.g.
+	 * the {@link JobDependencies} or the {@link RateLimits}).
+	 *
+	 * @param context the execution context of the fire
+	 * @param key     the key of the service in the scheduler's context
+	 * @param type    the type of the service
+	 * @return the service, or null if the scheduler has none
+	 */
+	private static <T> T contextValue(JobExecutionContext context, String key, Class<T> type)
+	{
+		if (context.getScheduler() == null)
+		{
+			return null;
+		}
+		try
+		{
+			return type.cast(context.getScheduler().getContext().get(key));
+		}
+		catch (SchedulerException e)
+		{
+			LOG.warn("Failed to get the {} of the scheduler.", type.getSimpleName(), e);
+			return null;
+		}
+	}
+
+	private static int weight(JobDataMap jobData, String key)
+	{
+		Object weight = jobData.get(key);
+		return weight instanceof Integer ? (Integer) weight : 0;
+	}
+
+	/**
+	 * Take the lock of a job running once.
+	 *
+	 * @return the lease of the lock, or null if the job is not to be run on
+	 * this node
+	 */
+	private static RunOnceLocks.Lease acquireLock(NinjaQuartzTask task, JobExecutionContext context)
+	{
+		try
+		{
+			RunOnceLocks locks = (RunOnceLocks) context.getScheduler().getContext()
+					.get(RunOnceLocks.SCHEDULER_CONTEXT_KEY);
+			if (locks == null)
+			{
+				LOG.error("Not executing task {}: the scheduler has no locks for jobs running once.",
+						task.getTaskName());
+				return null;
+			}
+			RunOnceLocks.Lease lease = locks.acquire(context);
+			if (lease == null && LOG.isDebugEnabled())
+			{
+				LOG.debug("Not executing task {}: it runs on another node.", task.getTaskName());
+			}
+			return lease;
+		}
+		catch (SchedulerException e)
+		{
+			// not running the job is safer than running it on every node
+			LOG.error("Not executing task {}: failed to take its lock.", task.getTaskName(), e);
+			return null;
+		}
+	}
+
+	private static void releaseLock(RunOnceLocks.Lease lease, JobExecutionContext context)
+	{
+		try
+		{
+			lease.release(context.getNextFireTime());
+		}
+		catch (SchedulerException e)
+		{
+			LOG.warn("Failed to release lock {}. It expires with its lease.", lease.getName(), e);
+		}
 	}
 
 	/**
@@ -176,6 +483,21 @@ public abstract class AbstractNinjaQuartzJob implements Job
 		try
 		{
 			context.getScheduler().deleteJob(key);
+			EVENTS.jobRemoved(key, taskName);
+			NinjaQuartzTask task = (NinjaQuartzTask) context.getJobDetail().getJobDataMap().get(JOB_TASK_KEY);
+			if (task instanceof DetachedTask)
+			{
+				task = ((DetachedTask) task).resolve(context);
+			}
+			if (task != null)
+			{
+				task.getStatus().setState(NinjaQuartzJobStatus.STATE_REMOVED);
+				AttachedTasks attached = AttachedTasks.of(context.getScheduler());
+				if (attached != null)
+				{
+					attached.detach(task);
+				}
+			}
 		}
 		catch (SchedulerException e)
 		{
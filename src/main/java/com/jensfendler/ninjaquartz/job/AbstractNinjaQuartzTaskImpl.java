@@ -15,6 +15,8 @@
  */
 package com.jensfendler.ninjaquartz.job;
 
+import com.jensfendler.ninjaquartz.annotations.QuartzSchedule;
+
 import org.quartz.JobExecutionContext;
 
 import java.io.Serializable;
@@ -32,13 +34,43 @@ public abstract class AbstractNinjaQuartzTaskImpl implements NinjaQuartzTask, Se
 	protected String taskName;
 
 	/**
-	 * Create a new {@link AbstractNinjaQuartzTaskImpl} object.
+	 * The run-time status of the task
+	 */
+	protected final NinjaQuartzJobStatus status = new NinjaQuartzJobStatus();
+
+	/**
+	 * Remove the job after the task threw an {@link InvocationTargetException}
+	 */
+	protected final boolean removeOnError;
+
+	/**
+	 * Keep the job scheduled despite any exception
+	 */
+	protected final boolean forceKeep;
+
+	/**
+	 * Create a new {@link AbstractNinjaQuartzTaskImpl} object with the default
+	 * error handling.
 	 *
 	 * @param taskName the name of the task.
 	 */
 	public AbstractNinjaQuartzTaskImpl(String taskName)
+	{
+		this(taskName, QuartzSchedule.DEFAULT_REMOVE_ON_ERROR, QuartzSchedule.DEFAULT_FORCE_KEEP);
+	}
+
+	/**
+	 * Create a new {@link AbstractNinjaQuartzTaskImpl} object.
+	 *
+	 * @param taskName      the name of the task.
+	 * @param removeOnError see {@link QuartzSchedule#removeOnError()}
+	 * @param forceKeep     see {@link QuartzSchedule#forceKeep()}
+	 */
+	public AbstractNinjaQuartzTaskImpl(String taskName, boolean removeOnError, boolean forceKeep)
 	{
 		this.taskName = taskName;
+		this.removeOnError = removeOnError;
+		this.forceKeep = forceKeep;
 	}
 
 	/**
@@ -55,4 +87,28 @@ public abstract class AbstractNinjaQuartzTaskImpl implements NinjaQuartzTask, Se
 		return taskName;
 	}
 
+	/**
+	 * @see com.jensfendler.ninjaquartz.job.NinjaQuartzTask#isRemoveOnError()
+	 */
+	public boolean isRemoveOnError()
+	{
+		return removeOnError;
+	}
+
+	/**
+	 * @see com.jensfendler.ninjaquartz.job.NinjaQuartzTask#isForceKeep()
+	 */
+	public boolean isForceKeep()
+	{
+		return forceKeep;
+	}
+
+	/**
+	 * @see com.jensfendler.ninjaquartz.job.NinjaQuartzTask#getStatus()
+	 */
+	public NinjaQuartzJobStatus getStatus()
+	{
+		return status;
+	}
+
 }
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.job;
+
+import com.jensfendler.ninjaquartz.NinjaQuartzModule;
+
+import org.quartz.Scheduler;
+import org.quartz.SchedulerException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The tasks scheduled in a scheduler since the application was started, by
+ * name. The {@link DetachedTask}s of jobs read from a persistent job store
+ * resolve to these tasks.
+ * <p>
+ * Each scheduler has an instance of its own in its
+ * {@link org.quartz.SchedulerContext}, under {@link #SCHEDULER_CONTEXT_KEY},
+ * so that tasks of the same name in different schedulers (or applications
+ * in the same JVM) do not replace each other.
+ *
+ * @author Jens Fendler
+ */
+public class AttachedTasks
+{
+
+	protected static final Logger logger = LoggerFactory.getLogger(NinjaQuartzModule.class);
+
+	/**
+	 * The key of this instance in the context of each scheduler.
+	 */
+	public static final String SCHEDULER_CONTEXT_KEY = "nqAttachedTasks";
+
+	private final Map<String, NinjaQuartzTask> tasks = new ConcurrentHashMap<>();
+
+	/**
+	 * Get the attached tasks of a scheduler.
+	 *
+	 * @param scheduler the scheduler, may be null
+	 * @return the attached tasks, or null if the scheduler has none
+	 */
+	public static AttachedTasks of(Scheduler scheduler)
+	{
+		if (scheduler == null)
+		{
+			return null;
+		}
+		try
+		{
+			return (AttachedTasks) scheduler.getContext().get(SCHEDULER_CONTEXT_KEY);
+		}
+		catch (SchedulerException e)
+		{
+			logger.warn("Failed to get the attached tasks of the scheduler.", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Make a scheduled task available to the {@link DetachedTask}s standing in
+	 * for it.
+	 *
+	 * @param task the scheduled task
+	 */
+	public void attach(NinjaQuartzTask task)
+	{
+		if (!(task instanceof DetachedTask) && task.getTaskName() != null)
+		{
+			tasks.put(task.getTaskName(), task);
+		}
+	}
+
+	/**
+	 * Forget a task which is no longer scheduled.
+	 *
+	 * @param task the task
+	 */
+	public void detach(NinjaQuartzTask task)
+	{
+		if (task.getTaskName() != null)
+		{
+			tasks.remove(task.getTaskName(), task);
+		}
+	}
+
+	/**
+	 * @param taskName the name of a task
+	 * @return the task attached under the name, or null
+	 */
+	public NinjaQuartzTask get(String taskName)
+	{
+		return taskName == null ? null : tasks.get(taskName);
+	}
+
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.job;
+
+import com.jensfendler.ninjaquartz.annotations.QuartzBatch;
+import com.jensfendler.ninjaquartz.batch.BatchBuffer;
+
+import org.quartz.JobExecutionContext;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A {@link NinjaQuartzTask} draining a {@link BatchBuffer} (see
+ * {@link QuartzBatch}). Each execution runs the wrapped task once per batch
+ * of waiting items, until the items waiting when the execution started have
+ * been consumed. Scheduled methods receive the batch through a
+ * {@link List} parameter.
+ * <p>
+ * A batch whose task fails is not offered again.
+ *
+ * @author Jens Fendler
+ */
+public class BatchTask extends AbstractNinjaQuartzTaskImpl
+{
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The batch processed by the current thread
+	 */
+	static final ThreadLocal<List<?>> CURRENT = new ThreadLocal<>();
+
+	private final NinjaQuartzTask task;
+
+	private final transient BatchBuffer<?> buffer;
+
+	/**
+	 * Create a new {@link BatchTask}.
+	 *
+	 * @param task   the task to run for each batch
+	 * @param buffer the buffer to drain
+	 */
+	public BatchTask(NinjaQuartzTask task, BatchBuffer<?> buffer)
+	{
+		super(task.getTaskName(), task.isRemoveOnError(), task.isForceKeep());
+		this.task = task;
+		this.buffer = buffer;
+	}
+
+	/**
+	 * @return the batch processed by the current thread, or an empty list
+	 */
+	static List<?> current()
+	{
+		List<?> batch = CURRENT.get();
+		return batch == null ? Collections.emptyList() : batch;
+	}
+
+	/**
+	 * @see com.jensfendler.ninjaquartz.job.AbstractNinjaQuartzTaskImpl#execute(org.quartz.JobExecutionContext)
+	 */
+	@Override
+	public void execute(JobExecutionContext context)
+			throws IllegalAccessException, IllegalArgumentException, InvocationTargetException
+	{
+		buffer.flushed();
+		// items offered while the batches are consumed wait for the next fire
+		int waiting = buffer.getSize();
+		while (waiting > 0)
+		{
+			List<?> batch = buffer.drain();
+			if (batch.isEmpty())
+			{
+				return;
+			}
+			waiting -= batch.size();
+			CURRENT.set(batch);
+			try
+			{
+				task.execute(context);
+			}
+			finally
+			{
+				CURRENT.remove();
+			}
+		}
+	}
+
+	/**
+	 * @return the task run for each batch
+	 */
+	public NinjaQuartzTask getTask()
+	{
+		return task;
+	}
+
+	/**
+	 * @return the buffer drained by this task
+	 */
+	public BatchBuffer<?> getBuffer()
+	{
+		return buffer;
+	}
+
+}
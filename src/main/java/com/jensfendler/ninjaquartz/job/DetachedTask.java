@@ -0,0 +1,83 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.job;
+
+import org.quartz.JobExecutionContext;
+
+/**
+ * Stands in for a {@link NinjaQuartzTask} in a job read from a persistent job
+ * store.
+ * <p>
+ * Scheduled methods and runnables cannot be persisted, so persistent job
+ * stores keep only the name and error handling of a task. When the job fires,
+ * the {@link DetachedTask} is resolved to the task attached to the
+ * {@link AttachedTasks} of its scheduler under the same name since the
+ * application was started, i.e. the task scheduled again after a restart. A job whose task
+ * was not scheduled again fails (i.e. is removed, unless
+ * <code>forceKeep</code> is set).
+ *
+ * @author Jens Fendler
+ */
+public class DetachedTask extends AbstractNinjaQuartzTaskImpl
+{
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Create a new {@link DetachedTask}.
+	 *
+	 * @param task the task to stand in for
+	 */
+	public DetachedTask(NinjaQuartzTask task)
+	{
+		this(task.getTaskName(), task.isRemoveOnError(), task.isForceKeep());
+	}
+
+	/**
+	 * Create a new {@link DetachedTask}.
+	 *
+	 * @param taskName      the name of the task to stand in for
+	 * @param removeOnError see {@link NinjaQuartzTask#isRemoveOnError()}
+	 * @param forceKeep     see {@link NinjaQuartzTask#isForceKeep()}
+	 */
+	public DetachedTask(String taskName, boolean removeOnError, boolean forceKeep)
+	{
+		super(taskName, removeOnError, forceKeep);
+	}
+
+	/**
+	 * @param context the execution context of the job
+	 * @return the task attached under the name of this task in the scheduler
+	 * of the job, or this task if there is none
+	 */
+	public NinjaQuartzTask resolve(JobExecutionContext context)
+	{
+		AttachedTasks attached = AttachedTasks.of(context.getScheduler());
+		NinjaQuartzTask task = attached == null ? null : attached.get(taskName);
+		return task != null ? task : this;
+	}
+
+	/**
+	 * @see com.jensfendler.ninjaquartz.job.AbstractNinjaQuartzTaskImpl#execute(org.quartz.JobExecutionContext)
+	 */
+	@Override
+	public void execute(JobExecutionContext context)
+	{
+		throw new IllegalStateException("Task " + taskName
+				+ " was read from a persistent job store, but has not been scheduled since the application was started.");
+	}
+
+}
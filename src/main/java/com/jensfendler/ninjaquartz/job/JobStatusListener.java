@@ -0,0 +1,91 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.job;
+
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+import org.quartz.JobKey;
+import org.quartz.listeners.JobListenerSupport;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Global job listener keeping the {@link NinjaQuartzJobStatus} of plain
+ * Quartz {@link org.quartz.Job} classes up to date. (The NinjaQuartz job
+ * wrappers update the status of their tasks themselves.)
+ *
+ * @author Jens Fendler
+ */
+public class JobStatusListener extends JobListenerSupport
+{
+
+	/**
+	 * The name of the listener in the scheduler's listener manager.
+	 */
+	public static final String NAME = "nqJobStatus";
+
+	private final Map<JobKey, NinjaQuartzJobStatus> statuses = new ConcurrentHashMap<>();
+
+	/**
+	 * Start keeping track of the status of the given job.
+	 *
+	 * @param jobKey the key of the job
+	 * @param status the status to update
+	 */
+	public void register(JobKey jobKey, NinjaQuartzJobStatus status)
+	{
+		statuses.put(jobKey, status);
+	}
+
+	/**
+	 * @see org.quartz.JobListener#getName()
+	 */
+	public String getName()
+	{
+		return NAME;
+	}
+
+	/**
+	 * @see org.quartz.listeners.JobListenerSupport#jobToBeExecuted(org.quartz.JobExecutionContext)
+	 */
+	@Override
+	public void jobToBeExecuted(JobExecutionContext context)
+	{
+		NinjaQuartzJobStatus status = statuses.get(context.getJobDetail().getKey());
+		if (status != null)
+		{
+			status.executionStarted(context.getFireTime());
+		}
+	}
+
+	/**
+	 * @see org.quartz.listeners.JobListenerSupport#jobWasExecuted(org.quartz.JobExecutionContext,
+	 * org.quartz.JobExecutionException)
+	 */
+	@Override
+	public void jobWasExecuted(JobExecutionContext context, JobExecutionException jobException)
+	{
+		NinjaQuartzJobStatus status = statuses.get(context.getJobDetail().getKey());
+		if (status != null)
+		{
+			status.executionFinished(TimeUnit.MILLISECONDS.toNanos(context.getJobRunTime()), jobException == null,
+					context.getNextFireTime());
+		}
+	}
+
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.job;
+
+import com.google.inject.Binding;
+import com.google.inject.Provider;
+import com.google.inject.Scopes;
+
+/**
+ * A {@link Provider} looking up a singleton on first use, and keeping it for
+ * all further calls. The singleton is not created when the job is scheduled,
+ * so scheduling does not change the order in which singletons are created,
+ * and later fires do not go through Guice.
+ *
+ * @author Jens Fendler
+ */
+public class LazySingletonProvider<T> implements Provider<T>
+{
+
+	private final Provider<T> provider;
+
+	private volatile T instance;
+
+	private LazySingletonProvider(Provider<T> provider)
+	{
+		this.provider = provider;
+	}
+
+	/**
+	 * @param binding the binding to provide instances of
+	 * @return a lazy provider for singletons, or the provider of the binding
+	 * for all other scopes
+	 */
+	public static <T> Provider<T> of(Binding<T> binding)
+	{
+		return Scopes.isSingleton(binding) ? new LazySingletonProvider<>(binding.getProvider())
+				: binding.getProvider();
+	}
+
+	/**
+	 * @see com.google.inject.Provider#get()
+	 */
+	@Override
+	public T get()
+	{
+		T result = instance;
+		if (result == null)
+		{
+			// the provider of a singleton returns the same instance to racing
+			// threads
+			result = provider.get();
+			instance = result;
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.job;
+
+import com.google.inject.Binding;
+import com.google.inject.ConfigurationException;
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.Provider;
+import com.google.inject.Scopes;
+import com.google.inject.Singleton;
+import com.google.inject.util.Providers;
+
+import org.quartz.Job;
+import org.quartz.Scheduler;
+import org.quartz.SchedulerException;
+import org.quartz.simpl.SimpleJobFactory;
+import org.quartz.spi.JobFactory;
+import org.quartz.spi.TriggerFiredBundle;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A Quartz {@link JobFactory} which avoids creating a new job instance by
+ * reflection for every fire (like Quartz's {@link SimpleJobFactory} does).
+ * <p>
+ * The NinjaQuartz job wrappers (i.e. subclasses of
+ * {@link AbstractNinjaQuartzJob}) are stateless, so a single cached instance
+ * per wrapper class is used for all fires. Instances of all other {@link Job}
+ * classes are created by Guice, honouring their scope, through a
+ * {@link Provider} which is resolved once per class.
+ *
+ * @author Jens Fendler
+ */
+@Singleton
+public class NinjaQuartzJobFactory implements JobFactory
+{
+
+	private final Injector injector;
+
+	private final Map<Class<? extends Job>, Provider<? extends Job>> providers = new ConcurrentHashMap<>();
+
+	@Inject
+	public NinjaQuartzJobFactory(Injector injector)
+	{
+		this.injector = injector;
+	}
+
+	/**
+	 * @see org.quartz.spi.JobFactory#newJob(org.quartz.spi.TriggerFiredBundle,
+	 * org.quartz.Scheduler)
+	 */
+	@Override
+	public Job newJob(TriggerFiredBundle bundle, Scheduler scheduler) throws SchedulerException
+	{
+		Class<? extends Job> jobClass = bundle.getJobDetail().getJobClass();
+		Provider<? extends Job> provider = providers.get(jobClass);
+		if (provider == null)
+		{
+			provider = prepare(jobClass);
+		}
+		try
+		{
+			return provider.get();
+		}
+		catch (RuntimeException e)
+		{
+			throw new SchedulerException("Problem instantiating class '" + jobClass.getName() + "'", e);
+		}
+	}
+
+	/**
+	 * Resolve (and cache) the provider of the given job class, so that a
+	 * missing binding is reported before the job is fired.
+	 *
+	 * @param jobClass the job class
+	 * @return the provider of job instances
+	 * @throws SchedulerException if no instance of the job class can be provided
+	 */
+	public Provider<? extends Job> prepare(Class<? extends Job> jobClass) throws SchedulerException
+	{
+		Provider<? extends Job> provider = providers.get(jobClass);
+		if (provider != null)
+		{
+			return provider;
+		}
+
+		try
+		{
+			if (AbstractNinjaQuartzJob.class.isAssignableFrom(jobClass))
+			{
+				// the wrappers are stateless: share one instance for all fires
+				provider = Providers.of(jobClass.newInstance());
+			}
+			else
+			{
+				Binding<? extends Job> binding = injector.getBinding(jobClass);
+				// singletons are looked up once, everything else is provided
+				// by Guice on every fire
+				provider = Scopes.isSingleton(binding) ? Providers.of(binding.getProvider().get())
+						: binding.getProvider();
+			}
+		}
+		catch (ReflectiveOperationException | ConfigurationException e)
+		{
+			throw new SchedulerException("Problem instantiating class '" + jobClass.getName() + "'", e);
+		}
+
+		Provider<? extends Job> existing = providers.putIfAbsent(jobClass, provider);
+		return existing != null ? existing : provider;
+	}
+
+}
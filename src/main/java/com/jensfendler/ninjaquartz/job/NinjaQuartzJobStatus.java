@@ -0,0 +1,309 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.job;
+
+import java.io.Serializable;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Run-time status of a single scheduled {@link NinjaQuartzTask}.
+ * <p>
+ * All values are updated by the job wrapper while the task is being executed,
+ * and are held in atomic fields. Reading them never queries the Quartz job
+ * store, so they can be polled as often as required (e.g. by a JMX console)
+ * without affecting the scheduler.
+ *
+ * @author Jens Fendler
+ */
+public class NinjaQuartzJobStatus implements Serializable
+{
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The job is scheduled normally.
+	 */
+	public static final String STATE_NORMAL = "NORMAL";
+
+	/**
+	 * The job has been paused.
+	 */
+	public static final String STATE_PAUSED = "PAUSED";
+
+	/**
+	 * The job has been removed from the scheduler (e.g. after an error).
+	 */
+	public static final String STATE_REMOVED = "REMOVED";
+
+	private final AtomicLong executionCount = new AtomicLong();
+
+	private final AtomicLong successCount = new AtomicLong();
+
+	private final AtomicLong failureCount = new AtomicLong();
+
+	private final AtomicLong overlapCount = new AtomicLong();
+
+	private final AtomicInteger runningCount = new AtomicInteger();
+
+	private final AtomicLong admissionSkipCount = new AtomicLong();
+
+	private final AtomicLong admissionDeferCount = new AtomicLong();
+
+	private final AtomicLong rateLimitSkipCount = new AtomicLong();
+
+	private final AtomicLong rateLimitDelayCount = new AtomicLong();
+
+	private final AtomicLong lastRunDurationNanos = new AtomicLong(-1);
+
+	private final AtomicLong lastFireTime = new AtomicLong(-1);
+
+	private final AtomicLong nextFireTime = new AtomicLong(-1);
+
+	private volatile String cronSchedule;
+
+	private volatile String state = STATE_NORMAL;
+
+	/**
+	 * The end of the run fired on start (Long.MAX_VALUE while it is running),
+	 * or 0
+	 */
+	private volatile long startupFireUntil;
+
+	/**
+	 * Record the start of an execution.
+	 *
+	 * @param fireTime the time at which the trigger fired
+	 */
+	public void executionStarted(Date fireTime)
+	{
+		executionCount.incrementAndGet();
+		if (runningCount.getAndIncrement() > 0)
+		{
+			// another execution of the same task is still running
+			overlapCount.incrementAndGet();
+		}
+		if (fireTime != null)
+		{
+			lastFireTime.set(fireTime.getTime());
+		}
+	}
+
+	/**
+	 * Record the end of an execution.
+	 *
+	 * @param durationNanos the run time of the execution (in nanoseconds)
+	 * @param success       if the scheduled method completed without an exception
+	 * @param next          the next fire time of the trigger, or null if it will not
+	 *                      fire again
+	 */
+	public void executionFinished(long durationNanos, boolean success, Date next)
+	{
+		runningCount.decrementAndGet();
+		lastRunDurationNanos.set(durationNanos);
+		if (success)
+		{
+			successCount.incrementAndGet();
+		}
+		else
+		{
+			failureCount.incrementAndGet();
+		}
+		setNextFireTime(next);
+	}
+
+	/**
+	 * Record a fire skipped under load (see
+	 * {@link com.jensfendler.ninjaquartz.admission.AdmissionController}).
+	 */
+	public void admissionSkipped()
+	{
+		admissionSkipCount.incrementAndGet();
+	}
+
+	/**
+	 * Record a fire deferred under load.
+	 */
+	public void admissionDeferred()
+	{
+		admissionDeferCount.incrementAndGet();
+	}
+
+	/**
+	 * Record a fire skipped (or coalesced) by its rate limit (see
+	 * {@link com.jensfendler.ninjaquartz.admission.RateLimits}).
+	 */
+	public void rateLimitSkipped()
+	{
+		rateLimitSkipCount.incrementAndGet();
+	}
+
+	/**
+	 * Record a fire delayed by its rate limit.
+	 */
+	public void rateLimitDelayed()
+	{
+		rateLimitDelayCount.incrementAndGet();
+	}
+
+	/**
+	 * Record the start of the run fired on start.
+	 */
+	public void startupFireStarted()
+	{
+		startupFireUntil = Long.MAX_VALUE;
+	}
+
+	/**
+	 * Record the end of the run fired on start.
+	 */
+	public void startupFireFinished()
+	{
+		startupFireUntil = System.currentTimeMillis();
+	}
+
+	/**
+	 * @param scheduledFireTime the scheduled fire time of a regular fire
+	 * @return true if the fire was due while the run fired on start was
+	 * running, i.e. would duplicate it
+	 */
+	public boolean isDueDuringStartupFire(Date scheduledFireTime)
+	{
+		return scheduledFireTime != null && scheduledFireTime.getTime() <= startupFireUntil;
+	}
+
+	/**
+	 * @param next the next fire time of the trigger, or null if it will not
+	 *             fire again
+	 */
+	public void setNextFireTime(Date next)
+	{
+		nextFireTime.set(next == null ? -1 : next.getTime());
+	}
+
+	/**
+	 * @param cronSchedule the cron expression currently used by the trigger
+	 */
+	public void setCronSchedule(String cronSchedule)
+	{
+		this.cronSchedule = cronSchedule;
+	}
+
+	/**
+	 * @param state one of {@link #STATE_NORMAL}, {@link #STATE_PAUSED} or
+	 *              {@link #STATE_REMOVED}
+	 */
+	public void setState(String state)
+	{
+		this.state = state;
+	}
+
+	public long getExecutionCount()
+	{
+		return executionCount.get();
+	}
+
+	public long getSuccessCount()
+	{
+		return successCount.get();
+	}
+
+	public long getFailureCount()
+	{
+		return failureCount.get();
+	}
+
+	/**
+	 * @return the number of executions which started while another execution
+	 * of the same task was still running
+	 */
+	public long getOverlapCount()
+	{
+		return overlapCount.get();
+	}
+
+	public int getRunningCount()
+	{
+		return runningCount.get();
+	}
+
+	/**
+	 * @return the number of fires skipped under load
+	 */
+	public long getAdmissionSkipCount()
+	{
+		return admissionSkipCount.get();
+	}
+
+	/**
+	 * @return the number of fires deferred under load
+	 */
+	public long getAdmissionDeferCount()
+	{
+		return admissionDeferCount.get();
+	}
+
+	/**
+	 * @return the number of fires skipped (or coalesced) by the rate limit
+	 */
+	public long getRateLimitSkipCount()
+	{
+		return rateLimitSkipCount.get();
+	}
+
+	/**
+	 * @return the number of fires delayed by the rate limit
+	 */
+	public long getRateLimitDelayCount()
+	{
+		return rateLimitDelayCount.get();
+	}
+
+	/**
+	 * @return the duration of the last completed execution in milliseconds, or
+	 * -1 if the task has not completed yet
+	 */
+	public long getLastRunDurationMillis()
+	{
+		long nanos = lastRunDurationNanos.get();
+		return nanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(nanos);
+	}
+
+	public Date getLastFireTime()
+	{
+		long time = lastFireTime.get();
+		return time < 0 ? null : new Date(time);
+	}
+
+	public Date getNextFireTime()
+	{
+		long time = nextFireTime.get();
+		return time < 0 ? null : new Date(time);
+	}
+
+	public String getCronSchedule()
+	{
+		return cronSchedule;
+	}
+
+	public String getState()
+	{
+		return state;
+	}
+
+}
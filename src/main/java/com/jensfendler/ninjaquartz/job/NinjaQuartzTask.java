@@ -53,4 +53,25 @@ public interface NinjaQuartzTask
 	 */
 	String getTaskName();
 
+	/**
+	 * @return true if the job should be removed from the scheduler after the
+	 * task threw an {@link InvocationTargetException}
+	 * @see QuartzSchedule#removeOnError()
+	 */
+	boolean isRemoveOnError();
+
+	/**
+	 * @return true if the job should stay scheduled despite any exception
+	 * thrown while executing the task
+	 * @see QuartzSchedule#forceKeep()
+	 */
+	boolean isForceKeep();
+
+	/**
+	 * Get the run-time status of the task.
+	 *
+	 * @return the {@link NinjaQuartzJobStatus} updated on every execution
+	 */
+	NinjaQuartzJobStatus getStatus();
+
 }
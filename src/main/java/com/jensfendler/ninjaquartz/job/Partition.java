@@ -0,0 +1,128 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.job;
+
+import com.jensfendler.ninjaquartz.annotations.QuartzSchedule;
+
+/**
+ * The partition processed by an execution of a partitioned job (see
+ * {@link QuartzSchedule#partitions()}). Scheduled methods receive it through a
+ * {@link Partition} parameter, runnables through {@link #current()}.
+ * <p>
+ * Example:
+ *
+ * <code>
+ * &#64;QuartzSchedule(cronSchedule = "0 0 2 * * ?", partitions = 8)
+ * public void reconcile(Partition partition) {
+ * // e.g. SELECT ... WHERE MOD(id, :count) = :index
+ * reconcile(accounts.findByIdModulo(partition.getCount(), partition.getIndex()));
+ * }
+ * </code>
+ *
+ * @author Jens Fendler
+ */
+public final class Partition
+{
+
+	/**
+	 * The partition of executions of jobs without partitions.
+	 */
+	public static final Partition SINGLE = new Partition(0, 1);
+
+	/**
+	 * The partition processed by the current thread
+	 */
+	static final ThreadLocal<Partition> CURRENT = new ThreadLocal<>();
+
+	private final int index;
+
+	private final int count;
+
+	/**
+	 * @param index the index of the partition (from 0 to count - 1)
+	 * @param count the number of partitions
+	 */
+	public Partition(int index, int count)
+	{
+		if (count < 1 || index < 0 || index >= count)
+		{
+			throw new IllegalArgumentException("Invalid partition " + index + " of " + count);
+		}
+		this.index = index;
+		this.count = count;
+	}
+
+	/**
+	 * @return the partition processed by the current thread, or
+	 * {@link #SINGLE} outside of partitioned jobs
+	 */
+	public static Partition current()
+	{
+		Partition partition = CURRENT.get();
+		return partition == null ? SINGLE : partition;
+	}
+
+	/**
+	 * @return the index of the partition, from 0 to {@link #getCount()} - 1
+	 */
+	public int getIndex()
+	{
+		return index;
+	}
+
+	/**
+	 * @return the number of partitions
+	 */
+	public int getCount()
+	{
+		return count;
+	}
+
+	/**
+	 * Check if an item belongs to this partition, by the hash of its key.
+	 *
+	 * @param key the key of the item, e.g. the primary key of a row
+	 * @return true if the item is to be processed in this partition
+	 */
+	public boolean contains(Object key)
+	{
+		return count == 1 || Math.floorMod(key == null ? 0 : key.hashCode(), count) == index;
+	}
+
+	@Override
+	public boolean equals(Object obj)
+	{
+		if (!(obj instanceof Partition))
+		{
+			return false;
+		}
+		Partition other = (Partition) obj;
+		return index == other.index && count == other.count;
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return index * 31 + count;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "partition " + index + " of " + count;
+	}
+
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.job;
+
+import com.google.inject.Singleton;
+
+import org.quartz.Job;
+import org.quartz.JobDataMap;
+import org.quartz.JobExecutionContext;
+import org.quartz.PersistJobDataAfterExecution;
+import org.quartz.SchedulerException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * Quartz Job running a single partition of a {@link PartitionedTask}. The
+ * outcome of the partition is written to the job data of the (durable) job,
+ * where the task waiting for the partitions picks it up. Partitions claimed
+ * by the task waiting for them are not run again.
+ *
+ * @author Jens Fendler
+ */
+@Singleton
+@PersistJobDataAfterExecution
+public class PartitionNinjaQuartzJob implements Job
+{
+
+	protected static final Logger LOG = LoggerFactory.getLogger(NinjaQuartzTask.class);
+
+	/**
+	 * @see org.quartz.Job#execute(org.quartz.JobExecutionContext)
+	 */
+	public void execute(JobExecutionContext context)
+	{
+		JobDataMap jobData = context.getJobDetail().getJobDataMap();
+		Object task = jobData.get(AbstractNinjaQuartzJob.JOB_TASK_KEY);
+		if (task instanceof DetachedTask)
+		{
+			// read from a persistent job store
+			task = ((DetachedTask) task).resolve(context);
+		}
+		if (!(task instanceof PartitionedTask))
+		{
+			LOG.error("No partitioned task for partition job {}.", context.getJobDetail().getKey());
+			jobData.put(PartitionedTask.PARTITION_OUTCOME_KEY,
+					"The partitioned task has not been scheduled on this node");
+			return;
+		}
+
+		try
+		{
+			if (!PartitionedTask.claim(context.getScheduler(), context.getJobDetail().getKey()))
+			{
+				// run by the job waiting for its partitions
+				return;
+			}
+		}
+		catch (SchedulerException e)
+		{
+			LOG.error("Failed to claim partition job {}.", context.getJobDetail().getKey(), e);
+			jobData.put(PartitionedTask.PARTITION_OUTCOME_KEY, String.valueOf(e));
+			return;
+		}
+
+		PartitionedTask partitionedTask = (PartitionedTask) task;
+		Partition partition = new Partition(jobData.getIntValue(PartitionedTask.PARTITION_INDEX_KEY),
+				jobData.getIntValue(PartitionedTask.PARTITION_COUNT_KEY));
+		String outcome = "";
+		try
+		{
+			partitionedTask.executePartition(context, partition);
+		}
+		catch (InvocationTargetException e)
+		{
+			LOG.warn("Exception in {} of task {}.", partition, partitionedTask.getTaskName(), e.getTargetException());
+			outcome = String.valueOf(e.getTargetException());
+		}
+		catch (Throwable t)
+		{
+			LOG.error("Exception during execution of {} of task {}.", partition, partitionedTask.getTaskName(), t);
+			outcome = String.valueOf(t);
+		}
+		jobData.put(PartitionedTask.PARTITION_OUTCOME_KEY, outcome);
+	}
+
+}
@@ -0,0 +1,453 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.job;
+
+import com.jensfendler.ninjaquartz.NinjaQuartzModule;
+import com.jensfendler.ninjaquartz.annotations.QuartzSchedule;
+
+import org.quartz.JobBuilder;
+import org.quartz.JobDataMap;
+import org.quartz.JobDetail;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobKey;
+import org.quartz.Scheduler;
+import org.quartz.SchedulerException;
+import org.quartz.SchedulerMetaData;
+import org.quartz.Trigger;
+import org.quartz.TriggerBuilder;
+import org.quartz.impl.matchers.GroupMatcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * A {@link NinjaQuartzTask} running another task once for each of a number of
+ * partitions (see {@link QuartzSchedule#partitions()}), and waiting for all
+ * partitions to finish.
+ * <p>
+ * On the scheduler, each partition is a durable one-shot job in the group
+ * {@link #PARTITION_GROUP_PREFIX}&lt;job key&gt;, run by the
+ * {@link PartitionNinjaQuartzJob}. Partition jobs record their outcome in
+ * their job data, so the outcome of partitions run on other nodes of a
+ * clustered scheduler is seen as well. Without a second worker thread in a
+ * non-clustered scheduler, the partitions run on the fork/join pool.
+ * <p>
+ * The job waiting for its partitions holds a worker thread of the scheduler,
+ * so it runs the partitions no worker has started yet itself. Otherwise jobs
+ * waiting for their partitions could take all worker threads, and wait
+ * forever. Each partition has a claim (a durable job without a trigger),
+ * which is deleted by whoever runs the partition, so a partition is never
+ * run twice.
+ *
+ * @author Jens Fendler
+ */
+public class PartitionedTask extends AbstractNinjaQuartzTaskImpl
+{
+
+	private static final long serialVersionUID = 1L;
+
+	protected static final Logger logger = LoggerFactory.getLogger(NinjaQuartzModule.class);
+
+	/**
+	 * Name prefix for the groups of partition jobs.
+	 */
+	public static final String PARTITION_GROUP_PREFIX = "nqPG-";
+
+	/**
+	 * The key name of the partition index in the job data of partition jobs.
+	 */
+	static final String PARTITION_INDEX_KEY = "nqPartition";
+
+	/**
+	 * The key name of the partition count in the job data of partition jobs.
+	 */
+	static final String PARTITION_COUNT_KEY = "nqPartitions";
+
+	/**
+	 * The key name of the outcome in the job data of finished partition jobs:
+	 * an empty string for success, the failure otherwise.
+	 */
+	static final String PARTITION_OUTCOME_KEY = "nqPartitionOutcome";
+
+	/**
+	 * Name suffix of the claims of partition jobs.
+	 */
+	static final String CLAIM_SUFFIX = "-claim";
+
+	/**
+	 * The longest pause (in milliseconds) between checks for finished
+	 * partitions.
+	 */
+	private static final long MAX_POLL_INTERVAL = 1000;
+
+	private final NinjaQuartzTask task;
+
+	private final int partitions;
+
+	private final boolean forkJoinPool;
+
+	private volatile boolean warnedNoThreads;
+
+	/**
+	 * Create a new {@link PartitionedTask}.
+	 *
+	 * @param task         the task to run for each partition
+	 * @param partitions   the number of partitions
+	 * @param forkJoinPool run the partitions on the fork/join pool instead of
+	 *                     the scheduler
+	 */
+	public PartitionedTask(NinjaQuartzTask task, int partitions, boolean forkJoinPool)
+	{
+		super(task.getTaskName(), task.isRemoveOnError(), task.isForceKeep());
+		this.task = task;
+		this.partitions = partitions;
+		this.forkJoinPool = forkJoinPool;
+	}
+
+	/**
+	 * Run all partitions, and wait for them to finish.
+	 *
+	 * @throws InvocationTargetException if any partition has failed, with the
+	 *                                   first failure as target exception, and
+	 *                                   all other failures suppressed
+	 * @see com.jensfendler.ninjaquartz.job.AbstractNinjaQuartzTaskImpl#execute(org.quartz.JobExecutionContext)
+	 */
+	@Override
+	public void execute(JobExecutionContext context)
+			throws IllegalAccessException, IllegalArgumentException, InvocationTargetException
+	{
+		List<Throwable> failures;
+		if (forkJoinPool || !hasThreadsForPartitions(context.getScheduler()))
+		{
+			failures = executeOnForkJoinPool(context);
+		}
+		else
+		{
+			try
+			{
+				failures = executeOnScheduler(context);
+			}
+			catch (SchedulerException e)
+			{
+				throw new InvocationTargetException(e, "Failed to run the partitions of task " + taskName);
+			}
+		}
+
+		if (!failures.isEmpty())
+		{
+			InvocationTargetException e = new InvocationTargetException(failures.get(0),
+					failures.size() + " of " + partitions + " partitions of task " + taskName + " failed: "
+							+ failures.get(0));
+			for (Throwable failure : failures.subList(1, failures.size()))
+			{
+				e.addSuppressed(failure);
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Run a single partition of the task in the current thread.
+	 *
+	 * @param context   the execution context
+	 * @param partition the partition to process
+	 */
+	public void executePartition(JobExecutionContext context, Partition partition)
+			throws IllegalAccessException, IllegalArgumentException, InvocationTargetException
+	{
+		Partition previous = Partition.CURRENT.get();
+		Partition.CURRENT.set(partition);
+		try
+		{
+			task.execute(context);
+		}
+		finally
+		{
+			if (previous == null)
+			{
+				Partition.CURRENT.remove();
+			}
+			else
+			{
+				Partition.CURRENT.set(previous);
+			}
+		}
+	}
+
+	private boolean hasThreadsForPartitions(Scheduler scheduler)
+	{
+		try
+		{
+			SchedulerMetaData metaData = scheduler.getMetaData();
+			if (metaData.isJobStoreClustered() || metaData.getThreadPoolSize() > 1)
+			{
+				return true;
+			}
+		}
+		catch (SchedulerException e)
+		{
+			logger.debug("Failed to read the meta data of the scheduler", e);
+		}
+		if (!warnedNoThreads)
+		{
+			warnedNoThreads = true;
+			logger.warn("The scheduler of partitioned task {} has a single thread. Running its partitions on the fork/join pool.",
+					taskName);
+		}
+		return false;
+	}
+
+	private List<Throwable> executeOnForkJoinPool(JobExecutionContext context)
+	{
+		List<Callable<Void>> runs = new ArrayList<>(partitions);
+		for (int i = 0; i < partitions; i++)
+		{
+			Partition partition = new Partition(i, partitions);
+			runs.add(() -> {
+				executePartition(context, partition);
+				return null;
+			});
+		}
+
+		List<Throwable> failures = new ArrayList<>();
+		for (Future<Void> run : PartitionPool.POOL.invokeAll(runs))
+		{
+			try
+			{
+				run.get();
+			}
+			catch (ExecutionException e)
+			{
+				Throwable cause = e.getCause();
+				failures.add(cause instanceof InvocationTargetException
+						? ((InvocationTargetException) cause).getTargetException() : cause);
+			}
+			catch (InterruptedException e)
+			{
+				// all runs have finished
+				Thread.currentThread().interrupt();
+			}
+		}
+		return failures;
+	}
+
+	private List<Throwable> executeOnScheduler(JobExecutionContext context)
+			throws SchedulerException, InvocationTargetException
+	{
+		Scheduler scheduler = context.getScheduler();
+		JobDetail jobDetail = context.getJobDetail();
+		String group = PARTITION_GROUP_PREFIX + jobDetail.getKey();
+		if (jobDetail.isConcurrentExectionDisallowed())
+		{
+			// left by a run which was interrupted (no other run is active)
+			for (JobKey leftover : scheduler.getJobKeys(GroupMatcher.jobGroupEquals(group)))
+			{
+				scheduler.deleteJob(leftover);
+			}
+		}
+
+		String run = context.getFireInstanceId();
+		Map<JobDetail, Set<? extends Trigger>> partitionJobs = new LinkedHashMap<>();
+		for (int i = 0; i < partitions; i++)
+		{
+			JobDataMap jobData = new JobDataMap();
+			jobData.put(AbstractNinjaQuartzJob.JOB_TASK_KEY, this);
+			jobData.put(PARTITION_INDEX_KEY, i);
+			jobData.put(PARTITION_COUNT_KEY, partitions);
+			JobDetail partitionJob = JobBuilder.newJob(PartitionNinjaQuartzJob.class).withIdentity(run + "-" + i, group)
+					.storeDurably().requestRecovery(jobDetail.requestsRecovery()).usingJobData(jobData).build();
+			Trigger trigger = TriggerBuilder.newTrigger().withIdentity(run + "-" + i, group).forJob(partitionJob)
+					.withPriority(context.getTrigger().getPriority()).startNow().build();
+			partitionJobs.put(partitionJob, Collections.singleton(trigger));
+			partitionJobs.put(JobBuilder.newJob(PartitionNinjaQuartzJob.class).withIdentity(claimKey(partitionJob.getKey()))
+					.storeDurably().build(), Collections.<Trigger> emptySet());
+		}
+		scheduler.scheduleJobs(partitionJobs, true);
+
+		List<Throwable> failures = new ArrayList<>();
+		List<JobKey> pending = new ArrayList<>(partitions);
+		for (JobDetail partitionJob : partitionJobs.keySet())
+		{
+			if (partitionJob.getJobDataMap().containsKey(PARTITION_INDEX_KEY))
+			{
+				pending.add(partitionJob.getKey());
+			}
+		}
+		List<JobKey> unclaimed = new ArrayList<>(pending);
+		long pause = 10;
+		while (!pending.isEmpty())
+		{
+			JobKey claimed = claimNext(scheduler, unclaimed);
+			if (claimed != null)
+			{
+				// not started by any worker (yet): run it in this thread
+				pending.remove(claimed);
+				scheduler.deleteJob(claimed);
+				Partition partition = new Partition(partitionIndex(claimed), partitions);
+				try
+				{
+					executePartition(context, partition);
+				}
+				catch (InvocationTargetException e)
+				{
+					failures.add(e.getTargetException());
+				}
+				catch (IllegalAccessException | RuntimeException e)
+				{
+					failures.add(e);
+				}
+				continue;
+			}
+
+			try
+			{
+				Thread.sleep(pause);
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new InvocationTargetException(e,
+						"Interrupted while waiting for " + pending.size() + " partitions of task " + taskName);
+			}
+			pause = Math.min(pause * 2, MAX_POLL_INTERVAL);
+
+			for (Iterator<JobKey> it = pending.iterator(); it.hasNext();)
+			{
+				JobKey key = it.next();
+				JobDetail partitionJob = scheduler.getJobDetail(key);
+				if (partitionJob == null)
+				{
+					failures.add(new IllegalStateException("Partition job " + key + " has been deleted"));
+					it.remove();
+				}
+				else if (partitionJob.getJobDataMap().containsKey(PARTITION_OUTCOME_KEY))
+				{
+					String outcome = partitionJob.getJobDataMap().getString(PARTITION_OUTCOME_KEY);
+					if (!outcome.isEmpty())
+					{
+						failures.add(new PartitionFailedException(
+								new Partition(partitionJob.getJobDataMap().getIntValue(PARTITION_INDEX_KEY),
+										partitions),
+								outcome));
+					}
+					scheduler.deleteJob(key);
+					it.remove();
+				}
+			}
+		}
+		return failures;
+	}
+
+	/**
+	 * Claim the next partition no worker has started yet.
+	 *
+	 * @param scheduler the scheduler of the partition jobs
+	 * @param unclaimed the keys of the partition jobs which may not have been
+	 *                  claimed yet. Claimed keys are removed.
+	 * @return the key of the claimed partition job, or null if all partitions
+	 *         have been claimed
+	 */
+	private static JobKey claimNext(Scheduler scheduler, List<JobKey> unclaimed) throws SchedulerException
+	{
+		for (Iterator<JobKey> it = unclaimed.iterator(); it.hasNext();)
+		{
+			JobKey key = it.next();
+			it.remove();
+			if (claim(scheduler, key))
+			{
+				return key;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Claim a partition before running it.
+	 *
+	 * @param scheduler the scheduler of the partition job
+	 * @param key       the key of the partition job
+	 * @return true if the partition is to be run by the caller, false if it
+	 *         has been claimed already
+	 */
+	static boolean claim(Scheduler scheduler, JobKey key) throws SchedulerException
+	{
+		return scheduler.deleteJob(claimKey(key));
+	}
+
+	private static JobKey claimKey(JobKey key)
+	{
+		return JobKey.jobKey(key.getName() + CLAIM_SUFFIX, key.getGroup());
+	}
+
+	/**
+	 * @return the index of a partition, from the key of its partition job
+	 */
+	private static int partitionIndex(JobKey key)
+	{
+		return Integer.parseInt(key.getName().substring(key.getName().lastIndexOf('-') + 1));
+	}
+
+	/**
+	 * @return the task run for each partition
+	 */
+	public NinjaQuartzTask getTask()
+	{
+		return task;
+	}
+
+	/**
+	 * @return the number of partitions
+	 */
+	public int getPartitions()
+	{
+		return partitions;
+	}
+
+	/**
+	 * The failure of a partition run by a partition job, possibly on another
+	 * node.
+	 */
+	public static class PartitionFailedException extends Exception
+	{
+		private static final long serialVersionUID = 1L;
+
+		PartitionFailedException(Partition partition, String outcome)
+		{
+			super("Failure in " + partition + ": " + outcome);
+		}
+	}
+
+	/**
+	 * Holds the fork/join pool for partitions, created on first use.
+	 */
+	private static class PartitionPool
+	{
+		static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+	}
+
+}
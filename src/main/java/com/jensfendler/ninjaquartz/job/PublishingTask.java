@@ -0,0 +1,85 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.job;
+
+import com.jensfendler.ninjaquartz.value.ScheduledValue;
+
+import org.quartz.JobExecutionContext;
+
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * A {@link NinjaQuartzTask} publishing the result of the task it wraps (i.e.
+ * the return value of a scheduled method) as a {@link ScheduledValue} (see
+ * {@link com.jensfendler.ninjaquartz.annotations.QuartzSchedule#publishAs()}).
+ * Failed executions and null results keep the previous value.
+ *
+ * @author Jens Fendler
+ */
+public class PublishingTask extends AbstractNinjaQuartzTaskImpl
+{
+
+	private static final long serialVersionUID = 1L;
+
+	private final NinjaQuartzTask task;
+
+	private final transient ScheduledValue<Object> value;
+
+	/**
+	 * Create a new {@link PublishingTask}.
+	 *
+	 * @param task  the task whose result is published
+	 * @param value the value to publish the result as
+	 */
+	public PublishingTask(NinjaQuartzTask task, ScheduledValue<Object> value)
+	{
+		super(task.getTaskName(), task.isRemoveOnError(), task.isForceKeep());
+		this.task = task;
+		this.value = value;
+	}
+
+	/**
+	 * @see com.jensfendler.ninjaquartz.job.AbstractNinjaQuartzTaskImpl#execute(org.quartz.JobExecutionContext)
+	 */
+	@Override
+	public void execute(JobExecutionContext context)
+			throws IllegalAccessException, IllegalArgumentException, InvocationTargetException
+	{
+		task.execute(context);
+		Object result = context.getResult();
+		if (result != null)
+		{
+			value.publish(result);
+		}
+	}
+
+	/**
+	 * @return the task whose result is published
+	 */
+	public NinjaQuartzTask getTask()
+	{
+		return task;
+	}
+
+	/**
+	 * @return the published value
+	 */
+	public ScheduledValue<Object> getValue()
+	{
+		return value;
+	}
+
+}
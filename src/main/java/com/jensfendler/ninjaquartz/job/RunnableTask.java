@@ -0,0 +1,74 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.job;
+
+import com.google.inject.Provider;
+
+import org.quartz.JobExecutionContext;
+
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * A {@link NinjaQuartzTask} running a {@link Runnable}, e.g. a lambda or a
+ * method reference scheduled at run time.
+ * <p>
+ * The runnable is taken from a {@link Provider} on every execution, so that
+ * Guice-bound runnables are created according to their scope. Exceptions
+ * thrown by the runnable are wrapped in an {@link InvocationTargetException},
+ * i.e. they are handled exactly like exceptions thrown by scheduled methods.
+ *
+ * @author Jens Fendler
+ */
+public class RunnableTask extends AbstractNinjaQuartzTaskImpl
+{
+
+	private static final long serialVersionUID = 1L;
+
+	private final Provider<? extends Runnable> runnableProvider;
+
+	/**
+	 * Create a new {@link RunnableTask}.
+	 *
+	 * @param taskName         the name of the task
+	 * @param runnableProvider the provider of the runnable to run
+	 * @param removeOnError    remove the job after the runnable threw an exception
+	 * @param forceKeep        keep the job scheduled despite any exception
+	 */
+	public RunnableTask(String taskName, Provider<? extends Runnable> runnableProvider, boolean removeOnError,
+			boolean forceKeep)
+	{
+		super(taskName, removeOnError, forceKeep);
+		this.runnableProvider = runnableProvider;
+	}
+
+	/**
+	 * @see com.jensfendler.ninjaquartz.job.AbstractNinjaQuartzTaskImpl#execute(org.quartz.JobExecutionContext)
+	 */
+	@Override
+	public void execute(JobExecutionContext context)
+			throws IllegalAccessException, IllegalArgumentException, InvocationTargetException
+	{
+		try
+		{
+			runnableProvider.get().run();
+		}
+		catch (RuntimeException | Error e)
+		{
+			throw new InvocationTargetException(e);
+		}
+	}
+
+}
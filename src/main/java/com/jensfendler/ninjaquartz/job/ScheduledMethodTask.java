@@ -0,0 +1,194 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.job;
+
+import com.google.inject.Injector;
+import com.google.inject.Provider;
+import com.jensfendler.ninjaquartz.annotations.QuartzBatch;
+import com.jensfendler.ninjaquartz.annotations.QuartzSchedule;
+import com.jensfendler.ninjaquartz.dependency.UpstreamResults;
+
+import org.quartz.JobExecutionContext;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A {@link NinjaQuartzTask} invoking a scheduled method (i.e. a method
+ * annotated with {@link QuartzSchedule}) on its target instance.
+ * <p>
+ * The sources of all method parameters are resolved once when the task is
+ * created: a {@link JobExecutionContext} parameter receives the current
+ * context, a {@link Partition} parameter the partition to process, an
+ * {@link UpstreamResults} parameter the results of the jobs the method depends
+ * on, a {@link List} parameter of a method annotated with {@link QuartzBatch}
+ * the batch to consume, singletons are looked up once (on the first
+ * invocation), and all other
+ * parameters are provided through Guice {@link Provider}s. The argument array
+ * is reused per thread, so that invoking the method does not allocate.
+ * <p>
+ * The return value of a non-void method is set as the result of the
+ * execution (see {@link JobExecutionContext#setResult(Object)}).
+ *
+ * @author Jens Fendler
+ */
+public class ScheduledMethodTask extends AbstractNinjaQuartzTaskImpl
+{
+
+	private static final long serialVersionUID = 1L;
+
+	private static final Object[] NO_ARGUMENTS = new Object[0];
+
+	private static final Provider<Partition> CURRENT_PARTITION = Partition::current;
+
+	private static final Provider<List<?>> CURRENT_BATCH = BatchTask::current;
+
+	/**
+	 * Marks {@link UpstreamResults} parameters, which are taken from the
+	 * context
+	 */
+	private static final Provider<UpstreamResults> UPSTREAM_RESULTS = () -> UpstreamResults.NONE;
+
+	private final Object target;
+
+	private final Method method;
+
+	/**
+	 * The providers for all method parameters. Entries for
+	 * {@link JobExecutionContext} parameters are null.
+	 */
+	private final Provider<?>[] parameterProviders;
+
+	private final ThreadLocal<Object[]> arguments;
+
+	private final boolean returnsResult;
+
+	/**
+	 * Create a new {@link ScheduledMethodTask}.
+	 *
+	 * @param taskName      the name of the task
+	 * @param target        the instance to invoke the method on
+	 * @param method        the scheduled method
+	 * @param injector      the injector providing method parameters
+	 * @param removeOnError see {@link QuartzSchedule#removeOnError()}
+	 * @param forceKeep     see {@link QuartzSchedule#forceKeep()}
+	 * @throws com.google.inject.ConfigurationException if a parameter cannot
+	 *                                                  be provided by Guice
+	 */
+	public ScheduledMethodTask(String taskName, Object target, Method method, Injector injector,
+			boolean removeOnError, boolean forceKeep)
+	{
+		super(taskName, removeOnError, forceKeep);
+		this.target = target;
+		this.method = method;
+
+		Class<?>[] parameterTypes = method.getParameterTypes();
+		this.parameterProviders = new Provider<?>[parameterTypes.length];
+		for (int i = 0; i < parameterTypes.length; i++)
+		{
+			if (parameterTypes[i] == Partition.class)
+			{
+				parameterProviders[i] = CURRENT_PARTITION;
+			}
+			else if (parameterTypes[i] == List.class && method.isAnnotationPresent(QuartzBatch.class))
+			{
+				parameterProviders[i] = CURRENT_BATCH;
+			}
+			else if (parameterTypes[i] == UpstreamResults.class)
+			{
+				parameterProviders[i] = UPSTREAM_RESULTS;
+			}
+			else if (!JobExecutionContext.class.isAssignableFrom(parameterTypes[i]))
+			{
+				// singletons are looked up on the first invocation,
+				// everything else is provided by Guice on every invocation
+				parameterProviders[i] = LazySingletonProvider.of(injector.getBinding(parameterTypes[i]));
+			}
+		}
+		this.arguments = parameterTypes.length == 0 ? null
+				: ThreadLocal.withInitial(() -> new Object[parameterTypes.length]);
+		this.returnsResult = method.getReturnType() != void.class;
+
+		try
+		{
+			// skip the access checks on every invocation
+			method.setAccessible(true);
+		}
+		catch (SecurityException e)
+		{
+			// not a problem, the method is public.
+		}
+	}
+
+	/**
+	 * @see com.jensfendler.ninjaquartz.job.AbstractNinjaQuartzTaskImpl#execute(org.quartz.JobExecutionContext)
+	 */
+	@Override
+	public void execute(JobExecutionContext context)
+			throws IllegalAccessException, IllegalArgumentException, InvocationTargetException
+	{
+		if (arguments == null)
+		{
+			// no arguments
+			setResult(context, method.invoke(target, NO_ARGUMENTS));
+			return;
+		}
+
+		Object[] parameters = arguments.get();
+		try
+		{
+			for (int i = 0; i < parameters.length; i++)
+			{
+				Provider<?> provider = parameterProviders[i];
+				parameters[i] = provider == null ? context
+						: provider == UPSTREAM_RESULTS ? UpstreamResults.of(context) : provider.get();
+			}
+			setResult(context, method.invoke(target, parameters));
+		}
+		finally
+		{
+			// do not keep the arguments of this invocation alive
+			Arrays.fill(parameters, null);
+		}
+	}
+
+	private void setResult(JobExecutionContext context, Object result)
+	{
+		if (returnsResult)
+		{
+			context.setResult(result);
+		}
+	}
+
+	/**
+	 * @return the scheduled method
+	 */
+	public Method getMethod()
+	{
+		return method;
+	}
+
+	/**
+	 * @return the instance the scheduled method is invoked on
+	 */
+	public Object getTarget()
+	{
+		return target;
+	}
+
+}
@@ -0,0 +1,295 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.job;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.jensfendler.ninjaquartz.NinjaQuartzModule;
+
+import org.quartz.JobDataMap;
+import org.quartz.JobDetail;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+import org.quartz.JobKey;
+import org.quartz.Scheduler;
+import org.quartz.SchedulerException;
+import org.quartz.listeners.JobListenerSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import ninja.utils.NinjaProperties;
+
+/**
+ * Global job listener keeping the {@link JobDataMap}s of write-behind jobs
+ * (see {@link AbstractNinjaQuartzJob#JOB_WRITE_BEHIND}) in memory.
+ * <p>
+ * Before each execution, the job data of the execution is replaced by the
+ * job data left by the previous execution. Job data changed by an execution
+ * is written to the job store by a background thread every
+ * <code>quartz.writeBehind.flushInterval</code> milliseconds (i.e. at most
+ * once per interval for each job, no matter how often it fires), and when
+ * Ninja shuts down. The interval is the maximum time span of changes lost if
+ * the application crashes.
+ *
+ * @author Jens Fendler
+ */
+@Singleton
+public class WriteBehindJobDataListener extends JobListenerSupport
+{
+
+	protected static final Logger logger = LoggerFactory.getLogger(NinjaQuartzModule.class);
+
+	/**
+	 * The name of the listener in the scheduler's listener manager.
+	 */
+	public static final String NAME = "nqWriteBehind";
+
+	/**
+	 * The key name of the property in application.conf with the interval (in
+	 * milliseconds) in which changed job data is written to the job store.
+	 * Defaults to {@link #DEFAULT_FLUSH_INTERVAL}.
+	 */
+	public static final String CONF_KEY_FLUSH_INTERVAL = "quartz.writeBehind.flushInterval";
+
+	public static final int DEFAULT_FLUSH_INTERVAL = 10000;
+
+	private final NinjaProperties ninjaProperties;
+
+	/**
+	 * The job data of all write-behind jobs which have been executed, by
+	 * scheduler and job
+	 */
+	private final Map<Scheduler, Map<JobKey, CachedJobData>> jobData = new ConcurrentHashMap<>();
+
+	private ScheduledExecutorService flusher;
+
+	@Inject
+	public WriteBehindJobDataListener(NinjaProperties ninjaProperties)
+	{
+		this.ninjaProperties = ninjaProperties;
+	}
+
+	/**
+	 * @see org.quartz.JobListener#getName()
+	 */
+	public String getName()
+	{
+		return NAME;
+	}
+
+	/**
+	 * Replace the job data of the execution by the cached job data.
+	 *
+	 * @see org.quartz.listeners.JobListenerSupport#jobToBeExecuted(org.quartz.JobExecutionContext)
+	 */
+	@Override
+	public void jobToBeExecuted(JobExecutionContext context)
+	{
+		JobDataMap executionData = context.getJobDetail().getJobDataMap();
+		if (!Boolean.TRUE.equals(executionData.get(AbstractNinjaQuartzJob.JOB_WRITE_BEHIND)))
+		{
+			return;
+		}
+
+		CachedJobData cached = jobData.computeIfAbsent(context.getScheduler(), s -> new ConcurrentHashMap<>())
+				.computeIfAbsent(context.getJobDetail().getKey(),
+						key -> new CachedJobData(context.getScheduler(), key, userData(executionData)));
+		synchronized (cached)
+		{
+			executionData.putAll(cached.data);
+			JobDataMap triggerData = context.getTrigger().getJobDataMap();
+			for (Map.Entry<String, Object> entry : cached.data.entrySet())
+			{
+				// trigger data takes precedence over job data
+				if (!triggerData.containsKey(entry.getKey()))
+				{
+					context.getMergedJobDataMap().put(entry.getKey(), entry.getValue());
+				}
+			}
+		}
+		// track the changes of this execution
+		executionData.clearDirtyFlag();
+	}
+
+	/**
+	 * Cache the job data of the execution, if it has been changed.
+	 *
+	 * @see org.quartz.listeners.JobListenerSupport#jobWasExecuted(org.quartz.JobExecutionContext,
+	 * org.quartz.JobExecutionException)
+	 */
+	@Override
+	public void jobWasExecuted(JobExecutionContext context, JobExecutionException jobException)
+	{
+		JobDataMap executionData = context.getJobDetail().getJobDataMap();
+		if (!executionData.isDirty() || !Boolean.TRUE.equals(executionData.get(AbstractNinjaQuartzJob.JOB_WRITE_BEHIND)))
+		{
+			return;
+		}
+		Map<JobKey, CachedJobData> schedulerData = jobData.get(context.getScheduler());
+		CachedJobData cached = schedulerData == null ? null : schedulerData.get(context.getJobDetail().getKey());
+		if (cached == null)
+		{
+			return;
+		}
+		synchronized (cached)
+		{
+			cached.data = userData(executionData);
+			cached.dirty = true;
+		}
+		startFlushing();
+	}
+
+	/**
+	 * @return the job data without the NinjaQuartz properties of the job
+	 */
+	private static JobDataMap userData(JobDataMap executionData)
+	{
+		JobDataMap data = new JobDataMap(executionData.getWrappedMap());
+		data.remove(AbstractNinjaQuartzJob.JOB_TASK_KEY);
+		data.remove(AbstractNinjaQuartzJob.JOB_REMOVE_ON_RUNTIME_ERROR);
+		data.remove(AbstractNinjaQuartzJob.JOB_FORCE_KEEP);
+		data.remove(AbstractNinjaQuartzJob.JOB_WRITE_BEHIND);
+		return data;
+	}
+
+	private synchronized void startFlushing()
+	{
+		if (flusher == null)
+		{
+			long flushInterval = ninjaProperties.getIntegerWithDefault(CONF_KEY_FLUSH_INTERVAL,
+					DEFAULT_FLUSH_INTERVAL);
+			flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread thread = new Thread(r, "NinjaQuartz-WriteBehind");
+				thread.setDaemon(true);
+				return thread;
+			});
+			flusher.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+			logger.info("Writing changed job data of write-behind jobs every {}ms", flushInterval);
+		}
+	}
+
+	/**
+	 * Write all changed job data to the job stores.
+	 *
+	 * @return the number of jobs written
+	 */
+	public int flush()
+	{
+		int written = 0;
+		for (Map<JobKey, CachedJobData> schedulerData : jobData.values())
+		{
+			for (CachedJobData cached : schedulerData.values())
+			{
+				JobDataMap data;
+				synchronized (cached)
+				{
+					if (!cached.dirty)
+					{
+						continue;
+					}
+					data = cached.data;
+					cached.dirty = false;
+				}
+
+				try
+				{
+					JobDetail stored = cached.scheduler.getJobDetail(cached.jobKey);
+					if (stored == null)
+					{
+						// the job has been deleted
+						schedulerData.remove(cached.jobKey, cached);
+						continue;
+					}
+					JobDataMap storedData = new JobDataMap(stored.getJobDataMap().getWrappedMap());
+					storedData.putAll(data);
+					cached.scheduler.addJob(stored.getJobBuilder().setJobData(storedData).build(), true, true);
+					written++;
+				}
+				catch (SchedulerException e)
+				{
+					synchronized (cached)
+					{
+						// retry with the next flush
+						cached.dirty = true;
+					}
+					logger.warn("Failed to write the job data of write-behind job {}", cached.jobKey, e);
+				}
+			}
+		}
+		if (written > 0)
+		{
+			logger.debug("Wrote the job data of {} write-behind jobs", written);
+		}
+		return written;
+	}
+
+	/**
+	 * Stop flushing periodically, and write all changed job data to the job
+	 * stores.
+	 */
+	public void shutdown()
+	{
+		synchronized (this)
+		{
+			if (flusher != null)
+			{
+				flusher.shutdown();
+				flusher = null;
+			}
+		}
+		int written = flush();
+		if (written > 0)
+		{
+			logger.info("Wrote the job data of {} write-behind jobs on shutdown", written);
+		}
+	}
+
+	/**
+	 * The job data of a write-behind job.
+	 */
+	private static class CachedJobData
+	{
+		final Scheduler scheduler;
+
+		final JobKey jobKey;
+
+		/**
+		 * The job data left by the last execution. Replaced (not modified) by
+		 * every execution changing it.
+		 */
+		JobDataMap data;
+
+		/**
+		 * Indicates that the job data has been changed since it was last
+		 * written to the job store
+		 */
+		boolean dirty;
+
+		CachedJobData(Scheduler scheduler, JobKey jobKey, JobDataMap data)
+		{
+			this.scheduler = scheduler;
+			this.jobKey = jobKey;
+			this.data = data;
+		}
+	}
+
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.lock;
+
+import org.quartz.SchedulerException;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A {@link LockProvider} keeping each lock in a file of a directory shared by
+ * all nodes (e.g. on a network file system supporting file locks). The file
+ * holds the owner and the end of the lease, and is changed while holding an
+ * exclusive {@link FileLock} on it.
+ *
+ * @author Jens Fendler
+ */
+public class FileLockProvider implements LockProvider
+{
+
+	/**
+	 * File locks are held by the whole JVM, so threads (and providers) of the
+	 * same JVM are serialized by these monitors, by lock file
+	 */
+	private static final ConcurrentMap<Path, Object> MONITORS = new ConcurrentHashMap<>();
+
+	private final Path directory;
+
+	/**
+	 * @param directory the directory of the lock files. It is created if
+	 *                  necessary.
+	 */
+	public FileLockProvider(Path directory)
+	{
+		this.directory = directory.toAbsolutePath().normalize();
+	}
+
+	/**
+	 * @see com.jensfendler.ninjaquartz.lock.LockProvider#tryLock(java.lang.String,
+	 *      java.lang.String, long)
+	 */
+	@Override
+	public boolean tryLock(String name, String owner, long leasedUntil) throws SchedulerException
+	{
+		Path file = lockFile(name);
+		synchronized (MONITORS.computeIfAbsent(file, f -> new Object()))
+		{
+			try (FileChannel channel = open(file))
+			{
+				FileLock lock = channel.lock();
+				try
+				{
+					String[] lease = read(channel);
+					if (lease != null && Long.parseLong(lease[1]) > System.currentTimeMillis())
+					{
+						return false;
+					}
+					write(channel, owner, leasedUntil);
+					return true;
+				}
+				finally
+				{
+					lock.release();
+				}
+			}
+			catch (IOException | RuntimeException e)
+			{
+				throw new SchedulerException("Failed to take lock " + name, e);
+			}
+		}
+	}
+
+	/**
+	 * @see com.jensfendler.ninjaquartz.lock.LockProvider#unlock(java.lang.String,
+	 *      java.lang.String, long)
+	 */
+	@Override
+	public void unlock(String name, String owner, long leasedUntil) throws SchedulerException
+	{
+		Path file = lockFile(name);
+		synchronized (MONITORS.computeIfAbsent(file, f -> new Object()))
+		{
+			try (FileChannel channel = open(file))
+			{
+				FileLock lock = channel.lock();
+				try
+				{
+					String[] lease = read(channel);
+					if (lease != null && lease[0].equals(owner))
+					{
+						write(channel, owner, leasedUntil);
+					}
+				}
+				finally
+				{
+					lock.release();
+				}
+			}
+			catch (IOException | RuntimeException e)
+			{
+				throw new SchedulerException("Failed to release lock " + name, e);
+			}
+		}
+	}
+
+	/**
+	 * @return the directory of the lock files
+	 */
+	public Path getDirectory()
+	{
+		return directory;
+	}
+
+	private Path lockFile(String name) throws SchedulerException
+	{
+		try
+		{
+			return directory.resolve(URLEncoder.encode(name, "UTF-8") + ".lock");
+		}
+		catch (UnsupportedEncodingException e)
+		{
+			throw new SchedulerException(e);
+		}
+	}
+
+	private FileChannel open(Path file) throws IOException
+	{
+		Files.createDirectories(directory);
+		return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+	}
+
+	/**
+	 * @return the owner and the end of the lease, or null for a new lock file
+	 */
+	private static String[] read(FileChannel channel) throws IOException
+	{
+		ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+		while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) >= 0)
+		{
+			// read the whole file
+		}
+		String content = new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8);
+		int newline = content.indexOf('\n');
+		return newline < 0 ? null : new String[] { content.substring(0, newline), content.substring(newline + 1).trim() };
+	}
+
+	private static void write(FileChannel channel, String owner, long leasedUntil) throws IOException
+	{
+		ByteBuffer buffer = ByteBuffer.wrap((owner + "\n" + leasedUntil + "\n").getBytes(StandardCharsets.UTF_8));
+		channel.truncate(0);
+		while (buffer.hasRemaining())
+		{
+			channel.write(buffer, buffer.position());
+		}
+		channel.force(false);
+	}
+
+}
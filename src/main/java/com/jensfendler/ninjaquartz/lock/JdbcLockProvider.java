@@ -0,0 +1,212 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.lock;
+
+import com.jensfendler.ninjaquartz.NinjaQuartzModule;
+
+import org.quartz.SchedulerException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * A {@link LockProvider} keeping its locks in a database table, with one row
+ * per lock. The table is created if it does not exist:
+ *
+ * <pre>
+ * CREATE TABLE NQ_LOCKS (
+ *   LOCK_NAME VARCHAR(200) NOT NULL PRIMARY KEY,
+ *   LOCKED_BY VARCHAR(200) NOT NULL,
+ *   LOCKED_UNTIL BIGINT NOT NULL)
+ * </pre>
+ *
+ * A lock is taken by a single conditional <code>UPDATE</code> (or an
+ * <code>INSERT</code> for a new lock), so the database decides which node
+ * gets it. The provider keeps a single connection, which is opened again if
+ * it fails.
+ *
+ * @author Jens Fendler
+ */
+public class JdbcLockProvider implements LockProvider
+{
+
+	protected static final Logger logger = LoggerFactory.getLogger(NinjaQuartzModule.class);
+
+	public static final String DEFAULT_TABLE = "NQ_LOCKS";
+
+	private final String url;
+
+	private final String user;
+
+	private final String password;
+
+	private final String table;
+
+	private Connection connection;
+
+	/**
+	 * @param url      the JDBC URL of the database
+	 * @param user     the database user, or null
+	 * @param password the password of the user, or null
+	 * @param table    the name of the lock table
+	 */
+	public JdbcLockProvider(String url, String user, String password, String table)
+	{
+		this.url = url;
+		this.user = user;
+		this.password = password;
+		this.table = table;
+	}
+
+	/**
+	 * @see com.jensfendler.ninjaquartz.lock.LockProvider#tryLock(java.lang.String,
+	 *      java.lang.String, long)
+	 */
+	@Override
+	public synchronized boolean tryLock(String name, String owner, long leasedUntil) throws SchedulerException
+	{
+		try
+		{
+			Connection c = connection();
+			try (PreparedStatement update = c.prepareStatement("UPDATE " + table
+					+ " SET LOCKED_BY = ?, LOCKED_UNTIL = ? WHERE LOCK_NAME = ? AND LOCKED_UNTIL <= ?"))
+			{
+				update.setString(1, owner);
+				update.setLong(2, leasedUntil);
+				update.setString(3, name);
+				update.setLong(4, System.currentTimeMillis());
+				if (update.executeUpdate() > 0)
+				{
+					return true;
+				}
+			}
+
+			try (PreparedStatement insert = c.prepareStatement(
+					"INSERT INTO " + table + " (LOCK_NAME, LOCKED_BY, LOCKED_UNTIL) VALUES (?, ?, ?)"))
+			{
+				insert.setString(1, name);
+				insert.setString(2, owner);
+				insert.setLong(3, leasedUntil);
+				insert.executeUpdate();
+				return true;
+			}
+			catch (SQLException e)
+			{
+				if (e.getSQLState() != null && e.getSQLState().startsWith("23"))
+				{
+					// integrity constraint violation: the lock exists, and is
+					// leased
+					return false;
+				}
+				throw e;
+			}
+		}
+		catch (SQLException e)
+		{
+			closeConnection();
+			throw new SchedulerException("Failed to take lock " + name, e);
+		}
+	}
+
+	/**
+	 * @see com.jensfendler.ninjaquartz.lock.LockProvider#unlock(java.lang.String,
+	 *      java.lang.String, long)
+	 */
+	@Override
+	public synchronized void unlock(String name, String owner, long leasedUntil) throws SchedulerException
+	{
+		try (PreparedStatement update = connection().prepareStatement(
+				"UPDATE " + table + " SET LOCKED_UNTIL = ? WHERE LOCK_NAME = ? AND LOCKED_BY = ?"))
+		{
+			update.setLong(1, leasedUntil);
+			update.setString(2, name);
+			update.setString(3, owner);
+			update.executeUpdate();
+		}
+		catch (SQLException e)
+		{
+			closeConnection();
+			throw new SchedulerException("Failed to release lock " + name, e);
+		}
+	}
+
+	/**
+	 * @see com.jensfendler.ninjaquartz.lock.LockProvider#shutdown()
+	 */
+	@Override
+	public synchronized void shutdown()
+	{
+		closeConnection();
+	}
+
+	private Connection connection() throws SQLException
+	{
+		if (connection == null)
+		{
+			connection = DriverManager.getConnection(url, user, password);
+			connection.setAutoCommit(true);
+			createTable(connection);
+		}
+		return connection;
+	}
+
+	private void createTable(Connection c)
+	{
+		try (Statement statement = c.createStatement())
+		{
+			statement.executeQuery("SELECT LOCK_NAME FROM " + table + " WHERE 1 = 0").close();
+			return;
+		}
+		catch (SQLException e)
+		{
+			// the table does not exist (yet)
+		}
+
+		try (Statement statement = c.createStatement())
+		{
+			statement.executeUpdate("CREATE TABLE " + table + " (LOCK_NAME VARCHAR(200) NOT NULL PRIMARY KEY, "
+					+ "LOCKED_BY VARCHAR(200) NOT NULL, LOCKED_UNTIL BIGINT NOT NULL)");
+			logger.info("Created lock table {}", table);
+		}
+		catch (SQLException e)
+		{
+			// another node may have created it in the meantime
+			logger.debug("Failed to create lock table {}", table, e);
+		}
+	}
+
+	private void closeConnection()
+	{
+		if (connection != null)
+		{
+			try
+			{
+				connection.close();
+			}
+			catch (SQLException e)
+			{
+				logger.debug("Failed to close the connection of the lock provider", e);
+			}
+			connection = null;
+		}
+	}
+
+}
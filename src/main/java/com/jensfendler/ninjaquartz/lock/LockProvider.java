@@ -0,0 +1,70 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.lock;
+
+import org.quartz.SchedulerException;
+
+/**
+ * Leases named locks shared by all nodes of an application, for jobs which
+ * run on one node only (see
+ * {@link com.jensfendler.ninjaquartz.annotations.QuartzSchedule#runOnce()}).
+ * <p>
+ * A lock is held by an owner until a point in time (the end of its lease). A
+ * lock whose lease has ended can be taken by any owner, so the locks of
+ * crashed nodes expire by themselves. All times are in milliseconds since the
+ * epoch, as seen by the node calling the provider, so the clocks of all nodes
+ * must be synchronized.
+ * <p>
+ * Implementations must be thread-safe.
+ *
+ * @author Jens Fendler
+ */
+public interface LockProvider
+{
+
+	/**
+	 * Take a lock, unless it is leased by any owner (including the given one).
+	 *
+	 * @param name        the name of the lock
+	 * @param owner       the owner taking the lock
+	 * @param leasedUntil the end of the lease
+	 * @return true if the lock has been taken, false if it is leased
+	 * @throws SchedulerException if the state of the lock cannot be read or
+	 *                            written
+	 */
+	boolean tryLock(String name, String owner, long leasedUntil) throws SchedulerException;
+
+	/**
+	 * Change the end of the lease of a lock held by the given owner. Locks
+	 * held by other owners are not changed.
+	 *
+	 * @param name        the name of the lock
+	 * @param owner       the owner holding the lock
+	 * @param leasedUntil the new end of the lease. A time in the past releases
+	 *                    the lock.
+	 * @throws SchedulerException if the state of the lock cannot be read or
+	 *                            written
+	 */
+	void unlock(String name, String owner, long leasedUntil) throws SchedulerException;
+
+	/**
+	 * Release all resources of the provider. Called when Ninja shuts down.
+	 */
+	default void shutdown()
+	{
+	}
+
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.lock;
+
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.Singleton;
+import com.jensfendler.ninjaquartz.NinjaQuartzModule;
+
+import org.quartz.JobExecutionContext;
+import org.quartz.SchedulerException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Paths;
+import java.util.Date;
+
+import ninja.utils.NinjaProperties;
+
+/**
+ * Leases the locks of jobs running on one node only (see
+ * {@link com.jensfendler.ninjaquartz.annotations.QuartzSchedule#runOnce()}).
+ * Each scheduler keeps the instance in its
+ * {@link org.quartz.SchedulerContext}, under
+ * {@link #SCHEDULER_CONTEXT_KEY}.
+ * <p>
+ * Locks are named by the key of the job. The node which takes the lock of a
+ * job first runs the fire; all other nodes skip it. The lock is leased for
+ * <code>quartz.runOnce.leaseTime</code> milliseconds. When the job has finished, the lease is shortened to the next
+ * fire time of the trigger, so that nodes firing late skip the same fire, and
+ * the next fire can run on any node.
+ * <p>
+ * Configuration in application.conf:
+ *
+ * <pre>
+ * quartz.runOnce.lockProvider=jdbc          # jdbc, file, or the class name of a LockProvider (created by Guice)
+ * quartz.runOnce.jdbc.url=jdbc:postgresql://db/app
+ * quartz.runOnce.jdbc.user=app
+ * quartz.runOnce.jdbc.password=secret
+ * quartz.runOnce.jdbc.table=NQ_LOCKS        # optional
+ * quartz.runOnce.file.directory=/shared/locks
+ * quartz.runOnce.leaseTime=300000           # optional, milliseconds
+ * quartz.runOnce.owner=node-1               # optional, default: pid@host
+ * </pre>
+ *
+ * @author Jens Fendler
+ */
+@Singleton
+public class RunOnceLocks
+{
+
+	protected static final Logger logger = LoggerFactory.getLogger(NinjaQuartzModule.class);
+
+	/**
+	 * The key of this instance in the context of each scheduler.
+	 */
+	public static final String SCHEDULER_CONTEXT_KEY = "nqRunOnceLocks";
+
+	public static final String CONF_LOCK_PROVIDER = "quartz.runOnce.lockProvider";
+
+	public static final String CONF_LEASE_TIME = "quartz.runOnce.leaseTime";
+
+	public static final String CONF_OWNER = "quartz.runOnce.owner";
+
+	public static final String CONF_JDBC_URL = "quartz.runOnce.jdbc.url";
+
+	public static final String CONF_JDBC_USER = "quartz.runOnce.jdbc.user";
+
+	public static final String CONF_JDBC_PASSWORD = "quartz.runOnce.jdbc.password";
+
+	public static final String CONF_JDBC_TABLE = "quartz.runOnce.jdbc.table";
+
+	public static final String CONF_FILE_DIRECTORY = "quartz.runOnce.file.directory";
+
+	public static final String LOCK_PROVIDER_JDBC = "jdbc";
+
+	public static final String LOCK_PROVIDER_FILE = "file";
+
+	public static final int DEFAULT_LEASE_TIME = 300000;
+
+	private final NinjaProperties ninjaProperties;
+
+	private final Injector injector;
+
+	private LockProvider lockProvider;
+
+	private final long leaseTime;
+
+	private final String owner;
+
+	@Inject
+	public RunOnceLocks(NinjaProperties ninjaProperties, Injector injector)
+	{
+		this.ninjaProperties = ninjaProperties;
+		this.injector = injector;
+		this.leaseTime = ninjaProperties.getIntegerWithDefault(CONF_LEASE_TIME, DEFAULT_LEASE_TIME);
+		this.owner = ninjaProperties.getWithDefault(CONF_OWNER, ManagementFactory.getRuntimeMXBean().getName());
+	}
+
+	/**
+	 * Create locks with the given provider, e.g. for schedulers not managed by
+	 * NinjaQuartz.
+	 *
+	 * @param lockProvider the lock provider
+	 * @param leaseTime    the time (in milliseconds) locks are leased for
+	 * @param owner        the name of this node
+	 */
+	public RunOnceLocks(LockProvider lockProvider, long leaseTime, String owner)
+	{
+		this.ninjaProperties = null;
+		this.injector = null;
+		this.lockProvider = lockProvider;
+		this.leaseTime = leaseTime;
+		this.owner = owner;
+	}
+
+	/**
+	 * Get the lock provider configured in application.conf, and create it on
+	 * first use.
+	 *
+	 * @return the lock provider
+	 * @throws SchedulerException if no (valid) lock provider is configured
+	 */
+	public synchronized LockProvider getLockProvider() throws SchedulerException
+	{
+		if (lockProvider == null)
+		{
+			lockProvider = createLockProvider();
+			logger.info("Using lock provider {} for jobs running once, leased for {}ms by {}",
+					lockProvider.getClass().getName(), leaseTime, owner);
+		}
+		return lockProvider;
+	}
+
+	private LockProvider createLockProvider() throws SchedulerException
+	{
+		String type = ninjaProperties.get(CONF_LOCK_PROVIDER);
+		if (type == null)
+		{
+			throw new SchedulerException("Jobs running once require a lock provider. Set " + CONF_LOCK_PROVIDER
+					+ " in application.conf.");
+		}
+		if (LOCK_PROVIDER_JDBC.equals(type))
+		{
+			String url = ninjaProperties.get(CONF_JDBC_URL);
+			if (url == null)
+			{
+				throw new SchedulerException(CONF_JDBC_URL + " is not set in application.conf");
+			}
+			return new JdbcLockProvider(url, ninjaProperties.get(CONF_JDBC_USER),
+					ninjaProperties.get(CONF_JDBC_PASSWORD),
+					ninjaProperties.getWithDefault(CONF_JDBC_TABLE, JdbcLockProvider.DEFAULT_TABLE));
+		}
+		if (LOCK_PROVIDER_FILE.equals(type))
+		{
+			String directory = ninjaProperties.get(CONF_FILE_DIRECTORY);
+			if (directory == null)
+			{
+				throw new SchedulerException(CONF_FILE_DIRECTORY + " is not set in application.conf");
+			}
+			return new FileLockProvider(Paths.get(directory));
+		}
+		try
+		{
+			return (LockProvider) injector.getInstance(Class.forName(type));
+		}
+		catch (ClassNotFoundException | RuntimeException e)
+		{
+			throw new SchedulerException("Invalid lock provider " + type + " in " + CONF_LOCK_PROVIDER, e);
+		}
+	}
+
+	/**
+	 * Take the lock of the job of the given execution.
+	 *
+	 * @param context the execution context of the job
+	 * @return the lease, or null if the job is running (or has run) on
+	 * another node
+	 * @throws SchedulerException if the lock cannot be taken
+	 */
+	public Lease acquire(JobExecutionContext context) throws SchedulerException
+	{
+		// the same job is scheduled under the same key on all nodes
+		String name = context.getJobDetail().getKey().toString();
+		long leasedUntil = System.currentTimeMillis() + leaseTime;
+		return getLockProvider().tryLock(name, owner, leasedUntil) ? new Lease(name, leasedUntil) : null;
+	}
+
+	/**
+	 * Release the resources of the lock provider.
+	 */
+	public synchronized void shutdown()
+	{
+		if (lockProvider != null)
+		{
+			lockProvider.shutdown();
+		}
+	}
+
+	/**
+	 * @return the name of this node
+	 */
+	public String getOwner()
+	{
+		return owner;
+	}
+
+	/**
+	 * A lock held by this node.
+	 */
+	public class Lease
+	{
+		private final String name;
+
+		private final long leasedUntil;
+
+		Lease(String name, long leasedUntil)
+		{
+			this.name = name;
+			this.leasedUntil = leasedUntil;
+		}
+
+		/**
+		 * Release the lock after the job has finished. The lock stays leased
+		 * until the next fire time (but not longer than the original lease).
+		 * The lock of a fire with no next fire time (e.g. a one-shot fire) is
+		 * released immediately, so that it does not hold back the fires of
+		 * the job's other triggers.
+		 *
+		 * @param nextFireTime the next fire time of the trigger, or null
+		 * @throws SchedulerException if the lock cannot be released
+		 */
+		public void release(Date nextFireTime) throws SchedulerException
+		{
+			long until = nextFireTime == null ? System.currentTimeMillis()
+					: Math.min(nextFireTime.getTime(), leasedUntil);
+			getLockProvider().unlock(name, owner, until);
+		}
+
+		/**
+		 * @return the name of the lock
+		 */
+		public String getName()
+		{
+			return name;
+		}
+	}
+
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.provider;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.jensfendler.ninjaquartz.NinjaQuartzModule;
+import com.jensfendler.ninjaquartz.store.ConcurrentRAMJobStore;
+import com.jensfendler.ninjaquartz.store.MappedFileJobStore;
+import com.jensfendler.ninjaquartz.store.NinjaQuartzJDBCDelegate;
+
+import org.quartz.Scheduler;
+import org.quartz.SchedulerException;
+import org.quartz.SchedulerFactory;
+import org.quartz.impl.StdSchedulerFactory;
+import org.quartz.impl.jdbcjobstore.JobStoreTX;
+import org.quartz.simpl.RAMJobStore;
+import org.quartz.simpl.SimpleThreadPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import ninja.utils.NinjaProperties;
+
+/**
+ * Provides the default {@link Scheduler}, and the named schedulers configured
+ * in application.conf.
+ * <p>
+ * A named scheduler is configured through properties with the prefix
+ * <code>quartz.scheduler.&lt;name&gt;.</code>, e.g.
+ *
+ * <pre>
+ * quartz.scheduler.heartbeat.threadCount=2
+ * quartz.scheduler.heartbeat.jobStore=ram
+ *
+ * quartz.scheduler.billing.threadCount=4
+ * quartz.scheduler.billing.jobStore=jdbc
+ * quartz.scheduler.billing.batchMaxCount=10
+ * quartz.scheduler.billing.batchTimeWindow=1000
+ * quartz.scheduler.billing.org.quartz.jobStore.dataSource=billingDS
+ * quartz.scheduler.billing.org.quartz.dataSource.billingDS.URL=jdbc:...
+ * </pre>
+ *
+ * All <code>org.quartz.*</code> keys of a named scheduler are passed on to its
+ * {@link StdSchedulerFactory} unchanged. Named schedulers inherit all Quartz
+ * properties of the default scheduler (see
+ * {@link QuartzSchedulerFactoryProvider#getQuartzProperties()}) except for the
+ * thread pool, job store and trigger batching settings.
+ *
+ * @author Jens Fendler
+ */
+@Singleton
+public class NinjaQuartzSchedulers
+{
+
+	protected static final Logger logger = LoggerFactory.getLogger(NinjaQuartzModule.class);
+
+	/**
+	 * The prefix of all properties of named schedulers in application.conf.
+	 */
+	public static final String CONF_KEY_SCHEDULER_PREFIX = "quartz.scheduler.";
+
+	/**
+	 * The number of threads of a named scheduler. Defaults to
+	 * {@link #DEFAULT_THREAD_COUNT}.
+	 */
+	public static final String CONF_THREAD_COUNT = "threadCount";
+
+	/**
+	 * The job store of a named scheduler: <code>ram</code> (the default),
+	 * <code>concurrent</code>, <code>file</code>, <code>jdbc</code>, or the
+	 * class name of a job store.
+	 */
+	public static final String CONF_JOB_STORE = "jobStore";
+
+	/**
+	 * The maximum number of triggers a named scheduler acquires at once.
+	 */
+	public static final String CONF_BATCH_MAX_COUNT = "batchMaxCount";
+
+	/**
+	 * The time window (in milliseconds) in which a named scheduler acquires
+	 * triggers ahead of their fire time.
+	 */
+	public static final String CONF_BATCH_TIME_WINDOW = "batchTimeWindow";
+
+	/**
+	 * If a named scheduler with a <code>jdbc</code> job store writes job data
+	 * with the {@link NinjaQuartzJDBCDelegate}. Defaults to <code>false</code>,
+	 * i.e. Quartz' own delegate.
+	 */
+	public static final String CONF_COMPACT_JOB_DATA = "compactJobData";
+
+	public static final int DEFAULT_THREAD_COUNT = 10;
+
+	public static final String JOB_STORE_RAM = "ram";
+
+	public static final String JOB_STORE_CONCURRENT = "concurrent";
+
+	public static final String JOB_STORE_FILE = "file";
+
+	public static final String JOB_STORE_JDBC = "jdbc";
+
+	private final QuartzSchedulerFactoryProvider schedulerFactoryProvider;
+
+	private final NinjaProperties ninjaProperties;
+
+	private final Map<String, SchedulerFactory> namedFactories = new HashMap<>();
+
+	@Inject
+	public NinjaQuartzSchedulers(QuartzSchedulerFactoryProvider schedulerFactoryProvider,
+			NinjaProperties ninjaProperties)
+	{
+		this.schedulerFactoryProvider = schedulerFactoryProvider;
+		this.ninjaProperties = ninjaProperties;
+	}
+
+	/**
+	 * Get the scheduler with the given name.
+	 *
+	 * @param schedulerName the name of a scheduler configured in
+	 *                      application.conf, or null for the default scheduler
+	 * @return the scheduler (which may not be started yet)
+	 * @throws SchedulerException if the named scheduler is not configured, or
+	 *                            cannot be created
+	 */
+	public Scheduler getScheduler(String schedulerName) throws SchedulerException
+	{
+		if (schedulerName == null)
+		{
+			return schedulerFactoryProvider.get().getScheduler();
+		}
+		return getNamedFactory(schedulerName).getScheduler();
+	}
+
+	/**
+	 * Shut down all named schedulers which have been created.
+	 */
+	public synchronized void shutdown()
+	{
+		for (Map.Entry<String, SchedulerFactory> entry : namedFactories.entrySet())
+		{
+			try
+			{
+				entry.getValue().getScheduler().shutdown();
+			}
+			catch (SchedulerException e)
+			{
+				logger.warn("Failed to shut down scheduler " + entry.getKey(), e);
+			}
+		}
+		namedFactories.clear();
+	}
+
+	private synchronized SchedulerFactory getNamedFactory(String schedulerName) throws SchedulerException
+	{
+		SchedulerFactory schedulerFactory = namedFactories.get(schedulerName);
+		if (schedulerFactory == null)
+		{
+			schedulerFactory = new StdSchedulerFactory(getSchedulerProperties(schedulerName));
+			namedFactories.put(schedulerName, schedulerFactory);
+			logger.info("Created scheduler factory for named scheduler {}", schedulerName);
+		}
+		return schedulerFactory;
+	}
+
+	/**
+	 * Build the Quartz properties of a named scheduler from application.conf.
+	 *
+	 * @param schedulerName the name of the scheduler
+	 * @return the Quartz properties
+	 * @throws SchedulerException if the scheduler is not configured
+	 */
+	protected Properties getSchedulerProperties(String schedulerName) throws SchedulerException
+	{
+		String prefix = CONF_KEY_SCHEDULER_PREFIX + schedulerName + ".";
+		Properties conf = new Properties();
+		Properties all = ninjaProperties.getAllCurrentNinjaProperties();
+		for (String key : all.stringPropertyNames())
+		{
+			if (key.startsWith(prefix))
+			{
+				conf.setProperty(key.substring(prefix.length()), all.getProperty(key));
+			}
+		}
+		if (conf.isEmpty())
+		{
+			throw new SchedulerException("Scheduler '" + schedulerName + "' is not configured. Set '" + prefix
+					+ CONF_THREAD_COUNT + "' etc. in application.conf.");
+		}
+
+		// inherit the Quartz properties of the default scheduler, except for
+		// its thread pool, job store and trigger batching, which are tuned for
+		// the default scheduler's load
+		Properties properties = new Properties();
+		Properties defaults = schedulerFactoryProvider.getQuartzProperties();
+		for (String key : defaults.stringPropertyNames())
+		{
+			if (!key.startsWith(StdSchedulerFactory.PROP_THREAD_POOL_PREFIX)
+					&& !key.startsWith(StdSchedulerFactory.PROP_JOB_STORE_PREFIX)
+					&& !key.equals(StdSchedulerFactory.PROP_SCHED_MAX_BATCH_SIZE)
+					&& !key.equals(StdSchedulerFactory.PROP_SCHED_BATCH_TIME_WINDOW))
+			{
+				properties.setProperty(key, defaults.getProperty(key));
+			}
+		}
+		properties.setProperty(StdSchedulerFactory.PROP_SCHED_INSTANCE_NAME, schedulerName);
+		properties.setProperty(StdSchedulerFactory.PROP_THREAD_POOL_CLASS, SimpleThreadPool.class.getName());
+		properties.setProperty(StdSchedulerFactory.PROP_THREAD_POOL_PREFIX + ".threadCount",
+				conf.getProperty(CONF_THREAD_COUNT, String.valueOf(DEFAULT_THREAD_COUNT)));
+
+		String jobStore = conf.getProperty(CONF_JOB_STORE, JOB_STORE_RAM);
+		if (JOB_STORE_RAM.equalsIgnoreCase(jobStore))
+		{
+			properties.setProperty(StdSchedulerFactory.PROP_JOB_STORE_CLASS, RAMJobStore.class.getName());
+		}
+		else if (JOB_STORE_CONCURRENT.equalsIgnoreCase(jobStore))
+		{
+			properties.setProperty(StdSchedulerFactory.PROP_JOB_STORE_CLASS, ConcurrentRAMJobStore.class.getName());
+		}
+		else if (JOB_STORE_FILE.equalsIgnoreCase(jobStore))
+		{
+			properties.setProperty(StdSchedulerFactory.PROP_JOB_STORE_CLASS, MappedFileJobStore.class.getName());
+		}
+		else if (JOB_STORE_JDBC.equalsIgnoreCase(jobStore))
+		{
+			properties.setProperty(StdSchedulerFactory.PROP_JOB_STORE_CLASS, JobStoreTX.class.getName());
+			if (Boolean.parseBoolean(conf.getProperty(CONF_COMPACT_JOB_DATA)))
+			{
+				// job data written by Quartz' delegate can still be read
+				properties.setProperty(StdSchedulerFactory.PROP_JOB_STORE_PREFIX + ".driverDelegateClass",
+						NinjaQuartzJDBCDelegate.class.getName());
+			}
+		}
+		else
+		{
+			properties.setProperty(StdSchedulerFactory.PROP_JOB_STORE_CLASS, jobStore);
+		}
+
+		if (conf.containsKey(CONF_BATCH_MAX_COUNT))
+		{
+			properties.setProperty(StdSchedulerFactory.PROP_SCHED_MAX_BATCH_SIZE, conf.getProperty(CONF_BATCH_MAX_COUNT));
+		}
+		if (conf.containsKey(CONF_BATCH_TIME_WINDOW))
+		{
+			properties.setProperty(StdSchedulerFactory.PROP_SCHED_BATCH_TIME_WINDOW,
+					conf.getProperty(CONF_BATCH_TIME_WINDOW));
+		}
+
+		// pass on all Quartz properties unchanged
+		for (String key : conf.stringPropertyNames())
+		{
+			if (key.startsWith("org.quartz."))
+			{
+				properties.setProperty(key, conf.getProperty(key));
+			}
+		}
+		return properties;
+	}
+
+}
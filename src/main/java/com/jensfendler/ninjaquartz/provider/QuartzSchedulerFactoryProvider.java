@@ -20,15 +20,32 @@ import com.google.inject.Provider;
 import com.google.inject.Singleton;
 import com.jensfendler.ninjaquartz.NinjaQuartzModule;
 
+import org.quartz.SchedulerException;
 import org.quartz.SchedulerFactory;
+import org.quartz.impl.StdSchedulerFactory;
+import org.quartz.simpl.RAMJobStore;
+import org.quartz.simpl.SimpleThreadPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.InvocationTargetException;
+import java.util.Properties;
 
 import ninja.utils.NinjaProperties;
 
 /**
+ * Provides the {@link SchedulerFactory} of the default scheduler.
+ * <p>
+ * A {@link StdSchedulerFactory} (or a subclass, as configured through
+ * {@link #CONF_KEY_SCHEDULER_FACTORY}) is initialised with the Quartz
+ * properties built by {@link #getQuartzProperties()}, i.e. from
+ * application.conf instead of system properties. This allows different
+ * settings per Ninja mode.
+ *
  * @author Jens Fendler
  */
 @Singleton
@@ -36,9 +53,64 @@ public class QuartzSchedulerFactoryProvider implements Provider<SchedulerFactory
 {
 	protected static final Logger logger = LoggerFactory.getLogger(NinjaQuartzModule.class);
 
+	/**
+	 * The key name of the property in application.conf with the class name of
+	 * the {@link SchedulerFactory} to use.
+	 */
+	public static final String CONF_KEY_SCHEDULER_FACTORY = "quartz.schedulerFactory";
+
+	/**
+	 * The key name of the property in application.conf which may contain the
+	 * file name (or class path resource) of a quartz.properties file.
+	 */
+	public static final String CONF_KEY_QUARTZ_PROPERTIES = "quartz.properties";
+
+	/**
+	 * The prefix of Quartz properties in application.conf. E.g.
+	 * <code>quartz.org.quartz.threadPool.threadCount=20</code> sets the Quartz
+	 * property <code>org.quartz.threadPool.threadCount</code>.
+	 */
+	public static final String CONF_KEY_QUARTZ_PREFIX = "quartz.org.quartz.";
+
+	/**
+	 * The key name of the property in application.conf selecting a tuning
+	 * profile: {@value #PROFILE_DEFAULT}, {@value #PROFILE_THROUGHPUT} or
+	 * {@value #PROFILE_LATENCY}.
+	 */
+	public static final String CONF_KEY_PROFILE = "quartz.profile";
+
+	/**
+	 * Quartz' own settings: no batch trigger acquisition.
+	 */
+	public static final String PROFILE_DEFAULT = "default";
+
+	/**
+	 * For dense schedules: a larger thread pool, and triggers acquired in
+	 * batches (as many as there are threads) up to one second ahead of their
+	 * fire time. Individual fires may be up to the time window early.
+	 */
+	public static final String PROFILE_THROUGHPUT = "throughput";
+
+	/**
+	 * For punctual fires: one trigger acquired at a time, never ahead of its
+	 * fire time, and a short idle wait so new triggers are picked up quickly.
+	 */
+	public static final String PROFILE_LATENCY = "latency";
+
+	public static final String DEFAULT_INSTANCE_NAME = "NinjaQuartz";
+
+	public static final int DEFAULT_THREAD_COUNT = 10;
+
+	public static final long DEFAULT_MISFIRE_THRESHOLD = 60000L;
+
 	private final NinjaProperties ninjaProperties;
 
-	private static SchedulerFactory schedulerFactory;
+	private volatile SchedulerFactory schedulerFactory;
+
+	/**
+	 * The number of jobs known to be scheduled when the factory is created
+	 */
+	private volatile int expectedJobCount;
 
 	@Inject
 	public QuartzSchedulerFactoryProvider(NinjaProperties ninjaProperties)
@@ -52,27 +124,186 @@ public class QuartzSchedulerFactoryProvider implements Provider<SchedulerFactory
 	 */
 	public SchedulerFactory get()
 	{
-		logger.debug("{} called to get SchedulerFactory.", getClass().getName());
-		if (schedulerFactory == null)
+		SchedulerFactory sf = schedulerFactory;
+		if (sf == null)
+		{
+			synchronized (this)
+			{
+				sf = schedulerFactory;
+				if (sf == null)
+				{
+					sf = loadSchedulerFactory();
+					schedulerFactory = sf;
+				}
+			}
+		}
+		return sf;
+	}
+
+	/**
+	 * Set the number of jobs which will be scheduled on start, to size the
+	 * thread pool of a tuning profile.
+	 *
+	 * @param jobCount the number of jobs
+	 */
+	public void setExpectedJobCount(int jobCount)
+	{
+		this.expectedJobCount = jobCount;
+
+		String profile = ninjaProperties.getWithDefault(CONF_KEY_PROFILE, PROFILE_DEFAULT);
+		SchedulerFactory sf = get();
+		if (!PROFILE_DEFAULT.equalsIgnoreCase(profile) && sf instanceof StdSchedulerFactory)
+		{
+			// the factory may have been created before the jobs were known.
+			// re-initialising only takes effect for schedulers which have not
+			// been created yet.
+			try
+			{
+				((StdSchedulerFactory) sf).initialize(getQuartzProperties());
+			}
+			catch (SchedulerException e)
+			{
+				logger.warn("Cannot apply Quartz tuning profile '" + profile + "'", e);
+			}
+		}
+	}
+
+	/**
+	 * Build the Quartz properties of the default scheduler. These are (in
+	 * order of precedence):
+	 * <ol>
+	 * <li>all <code>quartz.org.quartz.*</code> properties in application.conf
+	 * (without the <code>quartz.</code> prefix)</li>
+	 * <li>the properties file given in <code>quartz.properties</code>, if
+	 * any</li>
+	 * <li>NinjaQuartz defaults: instance name {@value #DEFAULT_INSTANCE_NAME},
+	 * a {@link SimpleThreadPool} with {@value #DEFAULT_THREAD_COUNT} threads,
+	 * a {@link RAMJobStore} and a misfire threshold of
+	 * {@value #DEFAULT_MISFIRE_THRESHOLD}ms, adjusted by the tuning profile
+	 * selected through {@value #CONF_KEY_PROFILE}.</li>
+	 * </ol>
+	 *
+	 * @return the Quartz properties
+	 */
+	public Properties getQuartzProperties()
+	{
+		Properties properties = new Properties();
+		properties.setProperty(StdSchedulerFactory.PROP_SCHED_INSTANCE_NAME, DEFAULT_INSTANCE_NAME);
+		properties.setProperty(StdSchedulerFactory.PROP_THREAD_POOL_CLASS, SimpleThreadPool.class.getName());
+		properties.setProperty(StdSchedulerFactory.PROP_THREAD_POOL_PREFIX + ".threadCount",
+				String.valueOf(DEFAULT_THREAD_COUNT));
+		properties.setProperty(StdSchedulerFactory.PROP_JOB_STORE_CLASS, RAMJobStore.class.getName());
+		properties.setProperty(StdSchedulerFactory.PROP_JOB_STORE_PREFIX + ".misfireThreshold",
+				String.valueOf(DEFAULT_MISFIRE_THRESHOLD));
+		applyProfile(properties, ninjaProperties.getWithDefault(CONF_KEY_PROFILE, PROFILE_DEFAULT));
+
+		String quartzPropertiesFileName = ninjaProperties.get(CONF_KEY_QUARTZ_PROPERTIES);
+		if (quartzPropertiesFileName != null)
 		{
-			loadSchedulerFactory();
+			logger.info("Loading Quartz properties from {}", quartzPropertiesFileName);
+			properties.putAll(loadPropertiesFile(quartzPropertiesFileName));
 		}
-		return schedulerFactory;
+
+		Properties all = ninjaProperties.getAllCurrentNinjaProperties();
+		for (String key : all.stringPropertyNames())
+		{
+			if (key.startsWith(CONF_KEY_QUARTZ_PREFIX))
+			{
+				properties.setProperty(key.substring("quartz.".length()), all.getProperty(key));
+			}
+		}
+		return properties;
+	}
+
+	/**
+	 * Apply the settings of a tuning profile. The thread pool is sized from
+	 * the number of available processors and the number of jobs: scheduled
+	 * methods mostly wait (e.g. for I/O), so a profile uses more threads than
+	 * processors. It starts from a minimum per processor (2 for throughput, 1
+	 * for latency), and grows with the number of jobs up to a maximum per
+	 * processor (8 for throughput, 4 for latency).
+	 */
+	private void applyProfile(Properties properties, String profile)
+	{
+		int cores = Runtime.getRuntime().availableProcessors();
+		int jobs = Math.max(expectedJobCount, 1);
+		int threadCount;
+		if (PROFILE_THROUGHPUT.equalsIgnoreCase(profile))
+		{
+			threadCount = Math.max(cores * 2, Math.min(jobs, cores * 8));
+			properties.setProperty(StdSchedulerFactory.PROP_SCHED_MAX_BATCH_SIZE, String.valueOf(threadCount));
+			properties.setProperty(StdSchedulerFactory.PROP_SCHED_BATCH_TIME_WINDOW, "1000");
+			properties.setProperty(StdSchedulerFactory.PROP_SCHED_IDLE_WAIT_TIME, "10000");
+		}
+		else if (PROFILE_LATENCY.equalsIgnoreCase(profile))
+		{
+			threadCount = Math.max(cores, Math.min(jobs, cores * 4));
+			properties.setProperty(StdSchedulerFactory.PROP_SCHED_MAX_BATCH_SIZE, "1");
+			properties.setProperty(StdSchedulerFactory.PROP_SCHED_BATCH_TIME_WINDOW, "0");
+			properties.setProperty(StdSchedulerFactory.PROP_SCHED_IDLE_WAIT_TIME, "1000");
+		}
+		else
+		{
+			if (!PROFILE_DEFAULT.equalsIgnoreCase(profile))
+			{
+				logger.warn("Unknown Quartz tuning profile '{}' in {}. Using '{}'.", profile, CONF_KEY_PROFILE,
+						PROFILE_DEFAULT);
+			}
+			return;
+		}
+
+		properties.setProperty(StdSchedulerFactory.PROP_THREAD_POOL_PREFIX + ".threadCount",
+				String.valueOf(threadCount));
+		logger.info("Using Quartz tuning profile '{}' with {} threads for {} jobs on {} processors", profile,
+				threadCount, jobs, cores);
+	}
+
+	/**
+	 * Load a properties file from the file system, or from the class path.
+	 */
+	private Properties loadPropertiesFile(String fileName)
+	{
+		Properties properties = new Properties();
+		File file = new File(fileName);
+		try (InputStream in = file.exists() ? new FileInputStream(file)
+				: Thread.currentThread().getContextClassLoader().getResourceAsStream(fileName))
+		{
+			if (in == null)
+			{
+				throw new RuntimeException("Quartz properties file '" + fileName + "' not found.");
+			}
+			properties.load(in);
+		}
+		catch (IOException e)
+		{
+			throw new RuntimeException("Cannot read Quartz properties file '" + fileName + "'.", e);
+		}
+		return properties;
 	}
 
 	/**
 	 * Instantiate the configured {@link SchedulerFactory} class.
 	 */
-	private void loadSchedulerFactory()
+	private SchedulerFactory loadSchedulerFactory()
 	{
-		String sfClassName = ninjaProperties.getWithDefault("quartz.schedulerFactory",
-				"org.quartz.impl.StdSchedulerFactory");
+		String sfClassName = ninjaProperties.getWithDefault(CONF_KEY_SCHEDULER_FACTORY,
+				StdSchedulerFactory.class.getName());
 		logger.info("Using Quartz SchedulerFactory from {}.", sfClassName);
 
 		try
 		{
 			Class<?> sfClass = Class.forName(sfClassName);
-			schedulerFactory = (SchedulerFactory) sfClass.getConstructor().newInstance();
+			SchedulerFactory sf = (SchedulerFactory) sfClass.getConstructor().newInstance();
+			if (sf instanceof StdSchedulerFactory)
+			{
+				((StdSchedulerFactory) sf).initialize(getQuartzProperties());
+			}
+			else
+			{
+				logger.info("SchedulerFactory {} is not a StdSchedulerFactory. Quartz properties from application.conf are not applied.",
+						sfClassName);
+			}
+			return sf;
 		}
 		catch (ClassNotFoundException e)
 		{
@@ -86,6 +317,10 @@ public class QuartzSchedulerFactoryProvider implements Provider<SchedulerFactory
 		{
 			throw new RuntimeException("Illegal access exception while trying to instantiate Quartz SchedulerFactory class '" + sfClassName + "'.", e);
 		}
+		catch (SchedulerException e)
+		{
+			throw new RuntimeException("Cannot initialise Quartz SchedulerFactory class '" + sfClassName + "'.", e);
+		}
 	}
 
 }
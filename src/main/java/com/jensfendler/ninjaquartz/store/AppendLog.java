@@ -0,0 +1,199 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only log of records in a memory-mapped file.
+ * <p>
+ * Each record consists of its length, a CRC32 checksum, a type byte and the
+ * payload. The length is written last, so that a record is either complete or
+ * invisible after a crash of the process. Records torn by a crash of the
+ * machine are detected by their checksum. Reading stops at the first
+ * incomplete or corrupt record, i.e. the log always recovers to a consistent
+ * prefix of the appended records.
+ * <p>
+ * The file grows (by doubling its mapped size) as records are appended.
+ *
+ * @author Jens Fendler
+ */
+class AppendLog implements Closeable
+{
+
+	/**
+	 * The length (4 bytes), checksum (4 bytes) and type (1 byte) of a record.
+	 */
+	static final int HEADER_SIZE = 9;
+
+	interface RecordHandler
+	{
+		void record(byte type, byte[] payload) throws IOException;
+	}
+
+	private final FileChannel channel;
+
+	private final boolean syncWrites;
+
+	private final CRC32 crc = new CRC32();
+
+	private MappedByteBuffer buffer;
+
+	private int position;
+
+	/**
+	 * Open (or create) a log.
+	 *
+	 * @param file        the log file
+	 * @param minimumSize the minimum mapped size of the file
+	 * @param syncWrites  whether to force every record to the storage device
+	 */
+	AppendLog(Path file, int minimumSize, boolean syncWrites) throws IOException
+	{
+		this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		this.syncWrites = syncWrites;
+		long size = Math.max(channel.size(), minimumSize);
+		if (size > Integer.MAX_VALUE)
+		{
+			throw new IOException("Log file " + file + " is too large (" + size + " bytes).");
+		}
+		this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+	}
+
+	/**
+	 * Read all valid records from the start of the log, and position the log
+	 * after the last valid record.
+	 *
+	 * @param handler receives the records, may be null
+	 * @return the number of records read
+	 */
+	synchronized int replay(RecordHandler handler) throws IOException
+	{
+		int count = 0;
+		int pos = 0;
+		while (pos + HEADER_SIZE <= buffer.capacity())
+		{
+			int length = buffer.getInt(pos);
+			if (length <= 0 || pos + HEADER_SIZE + length > buffer.capacity())
+			{
+				break;
+			}
+			int checksum = buffer.getInt(pos + 4);
+			byte type = buffer.get(pos + 8);
+			byte[] payload = new byte[length];
+			ByteBuffer view = buffer.duplicate();
+			view.position(pos + HEADER_SIZE);
+			view.get(payload);
+			if (checksum(type, payload) != checksum)
+			{
+				break;
+			}
+			if (handler != null)
+			{
+				handler.record(type, payload);
+			}
+			count++;
+			pos += HEADER_SIZE + length;
+		}
+		position = pos;
+		return count;
+	}
+
+	/**
+	 * Append a record.
+	 *
+	 * @param type    the type of the record
+	 * @param payload the payload of the record, must not be empty
+	 */
+	synchronized void append(byte type, byte[] payload) throws IOException
+	{
+		int recordSize = HEADER_SIZE + payload.length;
+		if (position + recordSize > buffer.capacity())
+		{
+			grow(position + recordSize);
+		}
+		ByteBuffer view = buffer.duplicate();
+		view.position(position + HEADER_SIZE);
+		view.put(payload);
+		buffer.put(position + 8, type);
+		buffer.putInt(position + 4, checksum(type, payload));
+		// the length makes the record visible
+		buffer.putInt(position, payload.length);
+		position += recordSize;
+		if (syncWrites)
+		{
+			buffer.force();
+		}
+	}
+
+	private void grow(int minimumSize) throws IOException
+	{
+		long size = Math.max(buffer.capacity(), 4096);
+		while (size < minimumSize)
+		{
+			size *= 2;
+		}
+		if (size > Integer.MAX_VALUE)
+		{
+			throw new IOException("Log file is full.");
+		}
+		buffer.force();
+		buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+	}
+
+	private int checksum(byte type, byte[] payload)
+	{
+		crc.reset();
+		crc.update(type);
+		crc.update(payload, 0, payload.length);
+		return (int) crc.getValue();
+	}
+
+	/**
+	 * @return the number of bytes used by all records
+	 */
+	synchronized int size()
+	{
+		return position;
+	}
+
+	/**
+	 * Force all records to the storage device.
+	 */
+	synchronized void force()
+	{
+		buffer.force();
+	}
+
+	/**
+	 * @see java.io.Closeable#close()
+	 */
+	@Override
+	public synchronized void close() throws IOException
+	{
+		buffer.force();
+		channel.close();
+	}
+
+}
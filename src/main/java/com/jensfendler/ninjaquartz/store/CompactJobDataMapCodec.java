@@ -0,0 +1,452 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.store;
+
+import com.jensfendler.ninjaquartz.job.DetachedTask;
+import com.jensfendler.ninjaquartz.job.NinjaQuartzTask;
+
+import org.quartz.JobDataMap;
+import org.quartz.spi.ClassLoadHelper;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * The default {@link JobDataMapCodec}: a compact binary encoding of the
+ * values NinjaQuartz and most jobs keep in their job data.
+ * <p>
+ * Strings, primitive wrappers, byte arrays and dates are written with a
+ * one-byte type tag (numbers as variable-length integers). Tasks are written
+ * by name (and read as {@link DetachedTask}s, which resolve to the task of the
+ * same name scheduled in the same scheduler since the application was
+ * started). All other values are written with Java serialization.
+ *
+ * @author Jens Fendler
+ */
+public class CompactJobDataMapCodec implements JobDataMapCodec
+{
+
+	private static final byte VERSION = 1;
+
+	private static final byte NULL = 0;
+
+	private static final byte STRING = 1;
+
+	private static final byte INTEGER = 2;
+
+	private static final byte LONG = 3;
+
+	private static final byte BOOLEAN_FALSE = 4;
+
+	private static final byte BOOLEAN_TRUE = 5;
+
+	private static final byte DOUBLE = 6;
+
+	private static final byte FLOAT = 7;
+
+	private static final byte SHORT = 8;
+
+	private static final byte BYTE = 9;
+
+	private static final byte CHARACTER = 10;
+
+	private static final byte BYTES = 11;
+
+	private static final byte DATE = 12;
+
+	private static final byte TASK = 13;
+
+	private static final byte SERIALIZED = 14;
+
+	private static final int TASK_REMOVE_ON_ERROR = 1;
+
+	private static final int TASK_FORCE_KEEP = 2;
+
+	/**
+	 * @see com.jensfendler.ninjaquartz.store.JobDataMapCodec#encode(org.quartz.JobDataMap)
+	 */
+	@Override
+	public byte[] encode(JobDataMap jobData) throws IOException
+	{
+		Output out = new Output(64 + jobData.size() * 16);
+		out.write(VERSION);
+		out.writeVarInt(jobData.size());
+		for (Map.Entry<String, Object> entry : jobData.entrySet())
+		{
+			out.writeString(entry.getKey());
+			writeValue(out, entry.getKey(), entry.getValue());
+		}
+		return out.toByteArray();
+	}
+
+	private static void writeValue(Output out, String key, Object value) throws IOException
+	{
+		if (value == null)
+		{
+			out.write(NULL);
+		}
+		else if (value instanceof String)
+		{
+			out.write(STRING);
+			out.writeString((String) value);
+		}
+		else if (value instanceof Integer)
+		{
+			out.write(INTEGER);
+			out.writeVarLong(zigZag((Integer) value));
+		}
+		else if (value instanceof Long)
+		{
+			out.write(LONG);
+			out.writeVarLong(zigZag((Long) value));
+		}
+		else if (value instanceof Boolean)
+		{
+			out.write((Boolean) value ? BOOLEAN_TRUE : BOOLEAN_FALSE);
+		}
+		else if (value instanceof Double)
+		{
+			out.write(DOUBLE);
+			out.writeFixedLong(Double.doubleToRawLongBits((Double) value));
+		}
+		else if (value instanceof Float)
+		{
+			out.write(FLOAT);
+			out.writeFixedLong(Float.floatToRawIntBits((Float) value) & 0xFFFFFFFFL);
+		}
+		else if (value instanceof Short)
+		{
+			out.write(SHORT);
+			out.writeVarLong(zigZag((Short) value));
+		}
+		else if (value instanceof Byte)
+		{
+			out.write(BYTE);
+			out.write((Byte) value);
+		}
+		else if (value instanceof Character)
+		{
+			out.write(CHARACTER);
+			out.writeVarInt((Character) value);
+		}
+		else if (value instanceof byte[])
+		{
+			out.write(BYTES);
+			out.writeBytes((byte[]) value);
+		}
+		else if (value.getClass() == Date.class)
+		{
+			out.write(DATE);
+			out.writeVarLong(zigZag(((Date) value).getTime()));
+		}
+		else if (value instanceof NinjaQuartzTask)
+		{
+			NinjaQuartzTask task = (NinjaQuartzTask) value;
+			out.write(TASK);
+			out.writeVarInt((task.isRemoveOnError() ? TASK_REMOVE_ON_ERROR : 0)
+					| (task.isForceKeep() ? TASK_FORCE_KEEP : 0));
+			out.writeString(task.getTaskName() == null ? "" : task.getTaskName());
+		}
+		else
+		{
+			out.write(SERIALIZED);
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			try (ObjectOutputStream oos = new ObjectOutputStream(bytes))
+			{
+				oos.writeObject(value);
+			}
+			catch (NotSerializableException e)
+			{
+				throw new NotSerializableException("The value of job data property '" + key
+						+ "' is not serializable: " + e.getMessage());
+			}
+			out.writeBytes(bytes.toByteArray());
+		}
+	}
+
+	/**
+	 * @see com.jensfendler.ninjaquartz.store.JobDataMapCodec#decode(byte[],
+	 *      org.quartz.spi.ClassLoadHelper)
+	 */
+	@Override
+	public JobDataMap decode(byte[] data, ClassLoadHelper loadHelper) throws IOException, ClassNotFoundException
+	{
+		Input in = new Input(data);
+		byte version = in.read();
+		if (version != VERSION)
+		{
+			throw new IOException("Unsupported job data version " + version);
+		}
+		int size = in.readVarInt();
+		JobDataMap jobData = new JobDataMap();
+		for (int i = 0; i < size; i++)
+		{
+			String key = in.readString();
+			jobData.put(key, readValue(in, loadHelper));
+		}
+		jobData.clearDirtyFlag();
+		return jobData;
+	}
+
+	private static Object readValue(Input in, ClassLoadHelper loadHelper) throws IOException, ClassNotFoundException
+	{
+		byte tag = in.read();
+		switch (tag)
+		{
+		case NULL:
+			return null;
+		case STRING:
+			return in.readString();
+		case INTEGER:
+			return (int) unZigZag(in.readVarLong());
+		case LONG:
+			return unZigZag(in.readVarLong());
+		case BOOLEAN_FALSE:
+			return Boolean.FALSE;
+		case BOOLEAN_TRUE:
+			return Boolean.TRUE;
+		case DOUBLE:
+			return Double.longBitsToDouble(in.readFixedLong());
+		case FLOAT:
+			return Float.intBitsToFloat((int) in.readFixedLong());
+		case SHORT:
+			return (short) unZigZag(in.readVarLong());
+		case BYTE:
+			return in.read();
+		case CHARACTER:
+			return (char) in.readVarInt();
+		case BYTES:
+			return in.readBytes();
+		case DATE:
+			return new Date(unZigZag(in.readVarLong()));
+		case TASK:
+			int flags = in.readVarInt();
+			String taskName = in.readString();
+			return new DetachedTask(taskName.isEmpty() ? null : taskName, (flags & TASK_REMOVE_ON_ERROR) != 0,
+					(flags & TASK_FORCE_KEEP) != 0);
+		case SERIALIZED:
+			try (ObjectInputStream ois = new LoadHelperObjectInputStream(in.readBytes(), loadHelper))
+			{
+				return ois.readObject();
+			}
+		default:
+			throw new IOException("Unknown job data value type " + tag);
+		}
+	}
+
+	private static long zigZag(long value)
+	{
+		return (value << 1) ^ (value >> 63);
+	}
+
+	private static long unZigZag(long value)
+	{
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	/**
+	 * A byte array output stream with unsynchronized writes of encoded values.
+	 */
+	private static class Output extends ByteArrayOutputStream
+	{
+		Output(int size)
+		{
+			super(size);
+		}
+
+		@Override
+		public void write(int b)
+		{
+			if (count == buf.length)
+			{
+				ensure(1);
+			}
+			buf[count++] = (byte) b;
+		}
+
+		private void ensure(int bytes)
+		{
+			if (count + bytes > buf.length)
+			{
+				buf = Arrays.copyOf(buf, Math.max(buf.length * 2, count + bytes));
+			}
+		}
+
+		void writeVarInt(int value)
+		{
+			writeVarLong(value & 0xFFFFFFFFL);
+		}
+
+		void writeVarLong(long value)
+		{
+			ensure(10);
+			while ((value & ~0x7FL) != 0)
+			{
+				buf[count++] = (byte) ((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			buf[count++] = (byte) value;
+		}
+
+		void writeFixedLong(long value)
+		{
+			ensure(8);
+			for (int shift = 56; shift >= 0; shift -= 8)
+			{
+				buf[count++] = (byte) (value >>> shift);
+			}
+		}
+
+		void writeBytes(byte[] bytes)
+		{
+			writeVarInt(bytes.length);
+			ensure(bytes.length);
+			System.arraycopy(bytes, 0, buf, count, bytes.length);
+			count += bytes.length;
+		}
+
+		void writeString(String string)
+		{
+			writeBytes(string.getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+	/**
+	 * Reads encoded values from a byte array.
+	 */
+	private static class Input
+	{
+		private final byte[] data;
+
+		private int position;
+
+		Input(byte[] data)
+		{
+			this.data = data;
+		}
+
+		byte read() throws EOFException
+		{
+			if (position >= data.length)
+			{
+				throw new EOFException("Truncated job data");
+			}
+			return data[position++];
+		}
+
+		int readVarInt() throws IOException
+		{
+			long value = readVarLong();
+			if (value > 0xFFFFFFFFL)
+			{
+				throw new IOException("Invalid job data");
+			}
+			return (int) value;
+		}
+
+		long readVarLong() throws IOException
+		{
+			long value = 0;
+			for (int shift = 0; shift < 64; shift += 7)
+			{
+				byte b = read();
+				value |= (long) (b & 0x7F) << shift;
+				if ((b & 0x80) == 0)
+				{
+					return value;
+				}
+			}
+			throw new IOException("Invalid job data");
+		}
+
+		long readFixedLong() throws EOFException
+		{
+			long value = 0;
+			for (int i = 0; i < 8; i++)
+			{
+				value = (value << 8) | (read() & 0xFF);
+			}
+			return value;
+		}
+
+		byte[] readBytes() throws IOException
+		{
+			int length = readVarInt();
+			if (length < 0 || length > data.length - position)
+			{
+				throw new EOFException("Truncated job data");
+			}
+			byte[] bytes = new byte[length];
+			System.arraycopy(data, position, bytes, 0, length);
+			position += length;
+			return bytes;
+		}
+
+		String readString() throws IOException
+		{
+			int length = readVarInt();
+			if (length < 0 || length > data.length - position)
+			{
+				throw new EOFException("Truncated job data");
+			}
+			String string = new String(data, position, length, StandardCharsets.UTF_8);
+			position += length;
+			return string;
+		}
+	}
+
+	/**
+	 * Loads classes through Quartz' class load helper.
+	 */
+	private static class LoadHelperObjectInputStream extends ObjectInputStream
+	{
+		private final ClassLoadHelper loadHelper;
+
+		LoadHelperObjectInputStream(byte[] data, ClassLoadHelper loadHelper) throws IOException
+		{
+			super(new ByteArrayInputStream(data));
+			this.loadHelper = loadHelper;
+		}
+
+		@Override
+		protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException
+		{
+			if (loadHelper != null)
+			{
+				try
+				{
+					return loadHelper.loadClass(desc.getName());
+				}
+				catch (ClassNotFoundException e)
+				{
+					// fall back to the default class loader
+				}
+			}
+			return super.resolveClass(desc);
+		}
+	}
+
+}
@@ -0,0 +1,1771 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.store;
+
+import com.jensfendler.ninjaquartz.NinjaQuartzModule;
+
+import org.quartz.Calendar;
+import org.quartz.JobDataMap;
+import org.quartz.JobDetail;
+import org.quartz.JobKey;
+import org.quartz.JobPersistenceException;
+import org.quartz.ObjectAlreadyExistsException;
+import org.quartz.Scheduler;
+import org.quartz.SchedulerConfigException;
+import org.quartz.Trigger;
+import org.quartz.Trigger.CompletedExecutionInstruction;
+import org.quartz.Trigger.TriggerState;
+import org.quartz.TriggerKey;
+import org.quartz.impl.matchers.GroupMatcher;
+import org.quartz.impl.matchers.StringMatcher;
+import org.quartz.simpl.RAMJobStore;
+import org.quartz.spi.ClassLoadHelper;
+import org.quartz.spi.JobStore;
+import org.quartz.spi.OperableTrigger;
+import org.quartz.spi.SchedulerSignaler;
+import org.quartz.spi.TriggerFiredBundle;
+import org.quartz.spi.TriggerFiredResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An in-memory {@link JobStore} for high fire rates, with the semantics of
+ * Quartz' {@link RAMJobStore}.
+ * <p>
+ * The {@link RAMJobStore} guards all of its state with a single lock, which is
+ * held by the scheduler thread while acquiring and firing triggers, and by
+ * every worker thread completing a job. With many short jobs, the worker
+ * threads mostly wait for each other. This store keeps its jobs and triggers in
+ * concurrent maps, and guards the state of each job and its triggers with one
+ * of a fixed number of lock stripes, selected by the job key. Completing jobs
+ * in different stripes does not contend at all.
+ * <p>
+ * Triggers waiting to fire are kept in a {@link ConcurrentSkipListMap}, ordered
+ * by next fire time, priority and key. Its keys are immutable snapshots of the
+ * triggers' ordering properties, so that triggers can be changed while the map
+ * is read concurrently.
+ * <p>
+ * To use this store, set
+ *
+ * <pre>
+ * quartz.org.quartz.jobStore.class=com.jensfendler.ninjaquartz.store.ConcurrentRAMJobStore
+ * </pre>
+ *
+ * or <code>quartz.scheduler.&lt;name&gt;.jobStore=concurrent</code> for a named
+ * scheduler. The number of lock stripes can be set with
+ * <code>org.quartz.jobStore.lockStripes</code>.
+ * <p>
+ * Subclasses can persist the store's state through the protected hook
+ * methods, which are called after every change of a job, a trigger, or the
+ * paused groups.
+ *
+ * @author Jens Fendler
+ */
+public class ConcurrentRAMJobStore implements JobStore
+{
+
+	protected static final Logger logger = LoggerFactory.getLogger(NinjaQuartzModule.class);
+
+	public static final int DEFAULT_LOCK_STRIPES = 64;
+
+	private static final AtomicLong firedTriggerRecordCounter = new AtomicLong(System.currentTimeMillis());
+
+	private final ConcurrentHashMap<JobKey, JobWrapper> jobsByKey = new ConcurrentHashMap<>(1000);
+
+	private final ConcurrentHashMap<TriggerKey, TriggerWrapper> triggersByKey = new ConcurrentHashMap<>(1000);
+
+	private final ConcurrentHashMap<String, Set<JobKey>> jobsByGroup = new ConcurrentHashMap<>();
+
+	private final ConcurrentHashMap<String, Set<TriggerKey>> triggersByGroup = new ConcurrentHashMap<>();
+
+	private final ConcurrentHashMap<String, Calendar> calendarsByName = new ConcurrentHashMap<>();
+
+	private final ConcurrentSkipListMap<TimeSlot, TriggerWrapper> timeTriggers = new ConcurrentSkipListMap<>();
+
+	private final Set<String> pausedTriggerGroups = ConcurrentHashMap.newKeySet();
+
+	private final Set<String> pausedJobGroups = ConcurrentHashMap.newKeySet();
+
+	private ReentrantLock[] stripes = createStripes(DEFAULT_LOCK_STRIPES);
+
+	private volatile long misfireThreshold = 5000L;
+
+	private SchedulerSignaler signaler;
+
+	public long getMisfireThreshold()
+	{
+		return misfireThreshold;
+	}
+
+	/**
+	 * The number of milliseconds by which a trigger must have missed its
+	 * next fire time to be considered misfired. Set through
+	 * <code>org.quartz.jobStore.misfireThreshold</code>.
+	 *
+	 * @param misfireThreshold the misfire threshold in milliseconds
+	 */
+	public void setMisfireThreshold(long misfireThreshold)
+	{
+		if (misfireThreshold < 1)
+		{
+			throw new IllegalArgumentException("Misfire threshold must be larger than 0");
+		}
+		this.misfireThreshold = misfireThreshold;
+	}
+
+	/**
+	 * The number of locks guarding the jobs and their triggers. Set through
+	 * <code>org.quartz.jobStore.lockStripes</code> before the scheduler is
+	 * created. Rounded up to a power of two.
+	 *
+	 * @param lockStripes the number of lock stripes
+	 */
+	public void setLockStripes(int lockStripes)
+	{
+		if (lockStripes < 1)
+		{
+			throw new IllegalArgumentException("The number of lock stripes must be larger than 0");
+		}
+		this.stripes = createStripes(lockStripes);
+	}
+
+	private static ReentrantLock[] createStripes(int count)
+	{
+		int size = Integer.highestOneBit(count - 1) << 1;
+		ReentrantLock[] locks = new ReentrantLock[Math.max(1, size)];
+		for (int i = 0; i < locks.length; i++)
+		{
+			locks[i] = new ReentrantLock();
+		}
+		return locks;
+	}
+
+	private int stripeIndex(JobKey jobKey)
+	{
+		int h = jobKey.hashCode();
+		return (h ^ (h >>> 16)) & (stripes.length - 1);
+	}
+
+	private void lock(JobKey jobKey)
+	{
+		stripes[stripeIndex(jobKey)].lock();
+	}
+
+	private void unlock(JobKey jobKey)
+	{
+		stripes[stripeIndex(jobKey)].unlock();
+	}
+
+	/**
+	 * Lock the stripes of two jobs, in stripe order.
+	 */
+	private void lock(JobKey first, JobKey second)
+	{
+		int i = stripeIndex(first);
+		int j = stripeIndex(second);
+		stripes[Math.min(i, j)].lock();
+		if (i != j)
+		{
+			stripes[Math.max(i, j)].lock();
+		}
+	}
+
+	private void unlock(JobKey first, JobKey second)
+	{
+		int i = stripeIndex(first);
+		int j = stripeIndex(second);
+		if (i != j)
+		{
+			stripes[Math.max(i, j)].unlock();
+		}
+		stripes[Math.min(i, j)].unlock();
+	}
+
+	/**
+	 * Lock all stripes, in stripe order. Must not be called while holding a
+	 * single stripe.
+	 */
+	protected void lockAll()
+	{
+		for (ReentrantLock stripe : stripes)
+		{
+			stripe.lock();
+		}
+	}
+
+	protected void unlockAll()
+	{
+		for (int i = stripes.length - 1; i >= 0; i--)
+		{
+			stripes[i].unlock();
+		}
+	}
+
+	/**
+	 * Look up a trigger, and lock the stripe of its job. The caller must unlock
+	 * the stripe of the returned trigger's job.
+	 *
+	 * @return the locked trigger, or null if there is no such trigger
+	 */
+	private TriggerWrapper lockTrigger(TriggerKey triggerKey)
+	{
+		while (true)
+		{
+			TriggerWrapper tw = triggersByKey.get(triggerKey);
+			if (tw == null)
+			{
+				return null;
+			}
+			lock(tw.jobKey);
+			if (triggersByKey.get(triggerKey) == tw)
+			{
+				return tw;
+			}
+			// replaced or removed in the meantime
+			unlock(tw.jobKey);
+		}
+	}
+
+	/**
+	 * Add a trigger to the triggers waiting to fire. Must hold the stripe of
+	 * the trigger's job.
+	 */
+	private void addTimeSlot(TriggerWrapper tw)
+	{
+		if (tw.slot == null && tw.trigger.getNextFireTime() != null)
+		{
+			tw.slot = new TimeSlot(tw.trigger);
+			timeTriggers.put(tw.slot, tw);
+		}
+	}
+
+	/**
+	 * Remove a trigger from the triggers waiting to fire. Must hold the stripe
+	 * of the trigger's job.
+	 *
+	 * @return true if the trigger was waiting to fire
+	 */
+	private boolean removeTimeSlot(TriggerWrapper tw)
+	{
+		TimeSlot slot = tw.slot;
+		if (slot == null)
+		{
+			return false;
+		}
+		tw.slot = null;
+		// the acquiring thread may have polled the slot already
+		timeTriggers.remove(slot, tw);
+		return true;
+	}
+
+	private static <K> void addToGroup(ConcurrentHashMap<String, Set<K>> groups, String group, K key)
+	{
+		groups.compute(group, (g, keys) -> {
+			Set<K> set = keys == null ? ConcurrentHashMap.<K> newKeySet() : keys;
+			set.add(key);
+			return set;
+		});
+	}
+
+	private static <K> void removeFromGroup(ConcurrentHashMap<String, Set<K>> groups, String group, K key)
+	{
+		groups.computeIfPresent(group, (g, keys) -> {
+			keys.remove(key);
+			return keys.isEmpty() ? null : keys;
+		});
+	}
+
+	/**
+	 * @see org.quartz.spi.JobStore#initialize(org.quartz.spi.ClassLoadHelper,
+	 *      org.quartz.spi.SchedulerSignaler)
+	 */
+	@Override
+	public void initialize(ClassLoadHelper loadHelper, SchedulerSignaler signaler) throws SchedulerConfigException
+	{
+		this.signaler = signaler;
+		logger.info("ConcurrentRAMJobStore initialized with {} lock stripes.", stripes.length);
+	}
+
+	@Override
+	public void schedulerStarted()
+	{
+	}
+
+	@Override
+	public void schedulerPaused()
+	{
+	}
+
+	@Override
+	public void schedulerResumed()
+	{
+	}
+
+	@Override
+	public void shutdown()
+	{
+	}
+
+	@Override
+	public boolean supportsPersistence()
+	{
+		return false;
+	}
+
+	@Override
+	public long getEstimatedTimeToReleaseAndAcquireTrigger()
+	{
+		return 5;
+	}
+
+	@Override
+	public boolean isClustered()
+	{
+		return false;
+	}
+
+	@Override
+	public void storeJobAndTrigger(JobDetail newJob, OperableTrigger newTrigger) throws JobPersistenceException
+	{
+		storeJob(newJob, false);
+		storeTrigger(newTrigger, false);
+	}
+
+	@Override
+	public void storeJob(JobDetail newJob, boolean replaceExisting) throws JobPersistenceException
+	{
+		JobDetail jobDetail = (JobDetail) newJob.clone();
+		JobKey jobKey = jobDetail.getKey();
+		lock(jobKey);
+		try
+		{
+			JobWrapper jw = jobsByKey.get(jobKey);
+			if (jw != null)
+			{
+				if (!replaceExisting)
+				{
+					throw new ObjectAlreadyExistsException(newJob);
+				}
+				jw.jobDetail = jobDetail;
+			}
+			else
+			{
+				addToGroup(jobsByGroup, jobKey.getGroup(), jobKey);
+				jobsByKey.put(jobKey, new JobWrapper(jobDetail));
+			}
+			jobStored(jobDetail);
+		}
+		finally
+		{
+			unlock(jobKey);
+		}
+	}
+
+	/**
+	 * Store all jobs and triggers. All stripes are locked, so that nothing is
+	 * stored if any job or trigger exists already.
+	 *
+	 * @see org.quartz.spi.JobStore#storeJobsAndTriggers(java.util.Map, boolean)
+	 */
+	@Override
+	public void storeJobsAndTriggers(Map<JobDetail, Set<? extends Trigger>> triggersAndJobs, boolean replace)
+			throws JobPersistenceException
+	{
+		lockAll();
+		try
+		{
+			if (!replace)
+			{
+				for (Map.Entry<JobDetail, Set<? extends Trigger>> e : triggersAndJobs.entrySet())
+				{
+					if (checkExists(e.getKey().getKey()))
+					{
+						throw new ObjectAlreadyExistsException(e.getKey());
+					}
+					for (Trigger trigger : e.getValue())
+					{
+						if (checkExists(trigger.getKey()))
+						{
+							throw new ObjectAlreadyExistsException(trigger);
+						}
+					}
+				}
+			}
+			for (Map.Entry<JobDetail, Set<? extends Trigger>> e : triggersAndJobs.entrySet())
+			{
+				storeJob(e.getKey(), true);
+				for (Trigger trigger : e.getValue())
+				{
+					storeTrigger((OperableTrigger) trigger, true);
+				}
+			}
+		}
+		finally
+		{
+			unlockAll();
+		}
+	}
+
+	@Override
+	public boolean removeJob(JobKey jobKey) throws JobPersistenceException
+	{
+		boolean found;
+		lock(jobKey);
+		try
+		{
+			found = removeJobLocked(jobKey);
+		}
+		finally
+		{
+			unlock(jobKey);
+		}
+		return found;
+	}
+
+	/**
+	 * Remove a job and all its triggers. Must hold the stripe of the job.
+	 */
+	private boolean removeJobLocked(JobKey jobKey) throws JobPersistenceException
+	{
+		JobWrapper jw = jobsByKey.remove(jobKey);
+		if (jw == null)
+		{
+			return false;
+		}
+		for (TriggerWrapper tw : new ArrayList<>(jw.triggers))
+		{
+			removeTriggerLocked(tw, jw);
+		}
+		removeFromGroup(jobsByGroup, jobKey.getGroup(), jobKey);
+		jobRemoved(jobKey);
+		return true;
+	}
+
+	@Override
+	public boolean removeJobs(List<JobKey> jobKeys) throws JobPersistenceException
+	{
+		boolean allFound = true;
+		for (JobKey jobKey : jobKeys)
+		{
+			allFound = removeJob(jobKey) && allFound;
+		}
+		return allFound;
+	}
+
+	@Override
+	public JobDetail retrieveJob(JobKey jobKey)
+	{
+		JobWrapper jw = jobsByKey.get(jobKey);
+		// job details are replaced, never changed
+		return jw == null ? null : (JobDetail) jw.jobDetail.clone();
+	}
+
+	@Override
+	public void storeTrigger(OperableTrigger newTrigger, boolean replaceExisting) throws JobPersistenceException
+	{
+		TriggerWrapper tw = new TriggerWrapper((OperableTrigger) newTrigger.clone());
+		while (true)
+		{
+			TriggerWrapper existing = triggersByKey.get(tw.key);
+			if (existing != null && !replaceExisting)
+			{
+				throw new ObjectAlreadyExistsException(newTrigger);
+			}
+
+			JobKey existingJobKey = existing == null ? tw.jobKey : existing.jobKey;
+			lock(tw.jobKey, existingJobKey);
+			try
+			{
+				if (triggersByKey.get(tw.key) != existing)
+				{
+					// changed in the meantime
+					continue;
+				}
+				if (existing != null)
+				{
+					removeTriggerLocked(existing, jobsByKey.get(existing.jobKey));
+				}
+
+				JobWrapper jw = jobsByKey.get(tw.jobKey);
+				if (jw == null)
+				{
+					throw new JobPersistenceException(
+							"The job (" + tw.jobKey + ") referenced by the trigger does not exist.");
+				}
+				if (triggersByKey.putIfAbsent(tw.key, tw) != null)
+				{
+					// stored concurrently for another job
+					if (!replaceExisting)
+					{
+						throw new ObjectAlreadyExistsException(newTrigger);
+					}
+					continue;
+				}
+				jw.triggers.add(tw);
+				addToGroup(triggersByGroup, tw.key.getGroup(), tw.key);
+
+				// check the paused groups after indexing the trigger, so that
+				// concurrent group pauses find it
+				if (pausedTriggerGroups.contains(tw.key.getGroup()) || pausedJobGroups.contains(tw.jobKey.getGroup()))
+				{
+					tw.state = jw.blocked ? TriggerWrapper.STATE_PAUSED_BLOCKED : TriggerWrapper.STATE_PAUSED;
+				}
+				else if (jw.blocked)
+				{
+					tw.state = TriggerWrapper.STATE_BLOCKED;
+				}
+				else
+				{
+					addTimeSlot(tw);
+				}
+				triggerStored(tw.trigger, isPaused(tw));
+				return;
+			}
+			finally
+			{
+				unlock(tw.jobKey, existingJobKey);
+			}
+		}
+	}
+
+	@Override
+	public boolean removeTrigger(TriggerKey triggerKey) throws JobPersistenceException
+	{
+		TriggerWrapper tw = lockTrigger(triggerKey);
+		if (tw == null)
+		{
+			return false;
+		}
+		JobKey orphanedJob = null;
+		try
+		{
+			JobWrapper jw = jobsByKey.get(tw.jobKey);
+			removeTriggerLocked(tw, jw);
+			if (jw != null && jw.triggers.isEmpty() && !jw.jobDetail.isDurable() && removeJobLocked(tw.jobKey))
+			{
+				orphanedJob = tw.jobKey;
+			}
+		}
+		finally
+		{
+			unlock(tw.jobKey);
+		}
+		if (orphanedJob != null)
+		{
+			signaler.notifySchedulerListenersJobDeleted(orphanedJob);
+		}
+		return true;
+	}
+
+	/**
+	 * Remove a trigger. Must hold the stripe of the trigger's job.
+	 */
+	private void removeTriggerLocked(TriggerWrapper tw, JobWrapper jw) throws JobPersistenceException
+	{
+		if (!triggersByKey.remove(tw.key, tw))
+		{
+			return;
+		}
+		removeFromGroup(triggersByGroup, tw.key.getGroup(), tw.key);
+		if (jw != null)
+		{
+			jw.triggers.remove(tw);
+		}
+		removeTimeSlot(tw);
+		triggerRemoved(tw.key);
+	}
+
+	@Override
+	public boolean removeTriggers(List<TriggerKey> triggerKeys) throws JobPersistenceException
+	{
+		boolean allFound = true;
+		for (TriggerKey triggerKey : triggerKeys)
+		{
+			allFound = removeTrigger(triggerKey) && allFound;
+		}
+		return allFound;
+	}
+
+	@Override
+	public boolean replaceTrigger(TriggerKey triggerKey, OperableTrigger newTrigger) throws JobPersistenceException
+	{
+		TriggerWrapper tw = lockTrigger(triggerKey);
+		if (tw == null)
+		{
+			return false;
+		}
+		try
+		{
+			if (!tw.jobKey.equals(newTrigger.getJobKey()))
+			{
+				throw new JobPersistenceException("New trigger is not related to the same job as the old trigger.");
+			}
+			removeTriggerLocked(tw, jobsByKey.get(tw.jobKey));
+			try
+			{
+				storeTrigger(newTrigger, false);
+			}
+			catch (JobPersistenceException e)
+			{
+				// put the previous trigger back
+				storeTrigger(tw.trigger, false);
+				throw e;
+			}
+		}
+		finally
+		{
+			unlock(tw.jobKey);
+		}
+		return true;
+	}
+
+	@Override
+	public OperableTrigger retrieveTrigger(TriggerKey triggerKey)
+	{
+		TriggerWrapper tw = lockTrigger(triggerKey);
+		if (tw == null)
+		{
+			return null;
+		}
+		try
+		{
+			return (OperableTrigger) tw.trigger.clone();
+		}
+		finally
+		{
+			unlock(tw.jobKey);
+		}
+	}
+
+	@Override
+	public boolean checkExists(JobKey jobKey)
+	{
+		return jobsByKey.containsKey(jobKey);
+	}
+
+	@Override
+	public boolean checkExists(TriggerKey triggerKey)
+	{
+		return triggersByKey.containsKey(triggerKey);
+	}
+
+	/**
+	 * Remove all jobs, triggers and calendars. All stripes are locked, so that
+	 * the store is empty afterwards.
+	 *
+	 * @see org.quartz.spi.JobStore#clearAllSchedulingData()
+	 */
+	@Override
+	public void clearAllSchedulingData() throws JobPersistenceException
+	{
+		lockAll();
+		try
+		{
+			for (JobKey jobKey : new ArrayList<>(jobsByKey.keySet()))
+			{
+				removeJobLocked(jobKey);
+			}
+			calendarsByName.clear();
+		}
+		finally
+		{
+			unlockAll();
+		}
+	}
+
+	@Override
+	public void storeCalendar(String name, Calendar calendar, boolean replaceExisting, boolean updateTriggers)
+			throws ObjectAlreadyExistsException, JobPersistenceException
+	{
+		Calendar copy = (Calendar) calendar.clone();
+		Calendar previous;
+		if (replaceExisting)
+		{
+			previous = calendarsByName.put(name, copy);
+		}
+		else
+		{
+			previous = calendarsByName.putIfAbsent(name, copy);
+			if (previous != null)
+			{
+				throw new ObjectAlreadyExistsException("Calendar with name '" + name + "' already exists.");
+			}
+		}
+		if (previous == null || !updateTriggers)
+		{
+			return;
+		}
+
+		for (TriggerWrapper candidate : triggersByKey.values())
+		{
+			if (!name.equals(candidate.trigger.getCalendarName()))
+			{
+				continue;
+			}
+			TriggerWrapper tw = lockTrigger(candidate.key);
+			if (tw == null)
+			{
+				continue;
+			}
+			try
+			{
+				boolean removed = removeTimeSlot(tw);
+				tw.trigger.updateWithNewCalendar(copy, getMisfireThreshold());
+				if (removed)
+				{
+					addTimeSlot(tw);
+				}
+				triggerStored(tw.trigger, isPaused(tw));
+			}
+			finally
+			{
+				unlock(tw.jobKey);
+			}
+		}
+	}
+
+	@Override
+	public boolean removeCalendar(String calName) throws JobPersistenceException
+	{
+		for (TriggerWrapper tw : triggersByKey.values())
+		{
+			if (calName.equals(tw.trigger.getCalendarName()))
+			{
+				throw new JobPersistenceException("Calender cannot be removed if it referenced by a Trigger!");
+			}
+		}
+		return calendarsByName.remove(calName) != null;
+	}
+
+	@Override
+	public Calendar retrieveCalendar(String calName)
+	{
+		Calendar calendar = calendarsByName.get(calName);
+		return calendar == null ? null : (Calendar) calendar.clone();
+	}
+
+	@Override
+	public int getNumberOfJobs()
+	{
+		return jobsByKey.size();
+	}
+
+	@Override
+	public int getNumberOfTriggers()
+	{
+		return triggersByKey.size();
+	}
+
+	@Override
+	public int getNumberOfCalendars()
+	{
+		return calendarsByName.size();
+	}
+
+	@Override
+	public Set<JobKey> getJobKeys(GroupMatcher<JobKey> matcher)
+	{
+		return getKeys(jobsByGroup, matcher);
+	}
+
+	@Override
+	public Set<TriggerKey> getTriggerKeys(GroupMatcher<TriggerKey> matcher)
+	{
+		return getKeys(triggersByGroup, matcher);
+	}
+
+	private static <K> Set<K> getKeys(Map<String, Set<K>> groups, GroupMatcher<?> matcher)
+	{
+		StringMatcher.StringOperatorName operator = matcher.getCompareWithOperator();
+		String compareToValue = matcher.getCompareToValue();
+		Set<K> keys = new HashSet<>();
+		if (operator == StringMatcher.StringOperatorName.EQUALS)
+		{
+			Set<K> group = groups.get(compareToValue);
+			if (group != null)
+			{
+				keys.addAll(group);
+			}
+			return keys;
+		}
+		for (Map.Entry<String, Set<K>> entry : groups.entrySet())
+		{
+			if (operator.evaluate(entry.getKey(), compareToValue))
+			{
+				keys.addAll(entry.getValue());
+			}
+		}
+		return keys;
+	}
+
+	private static List<String> getMatchingGroups(Collection<String> groups, GroupMatcher<?> matcher)
+	{
+		List<String> matching = new ArrayList<>();
+		for (String group : groups)
+		{
+			if (matcher.getCompareWithOperator().evaluate(group, matcher.getCompareToValue()))
+			{
+				matching.add(group);
+			}
+		}
+		return matching;
+	}
+
+	@Override
+	public List<String> getJobGroupNames()
+	{
+		return new ArrayList<>(jobsByGroup.keySet());
+	}
+
+	@Override
+	public List<String> getTriggerGroupNames()
+	{
+		return new ArrayList<>(triggersByGroup.keySet());
+	}
+
+	@Override
+	public List<String> getCalendarNames()
+	{
+		return new ArrayList<>(calendarsByName.keySet());
+	}
+
+	@Override
+	public List<OperableTrigger> getTriggersForJob(JobKey jobKey)
+	{
+		List<OperableTrigger> triggers = new ArrayList<>();
+		lock(jobKey);
+		try
+		{
+			JobWrapper jw = jobsByKey.get(jobKey);
+			if (jw != null)
+			{
+				for (TriggerWrapper tw : jw.triggers)
+				{
+					triggers.add((OperableTrigger) tw.trigger.clone());
+				}
+			}
+		}
+		finally
+		{
+			unlock(jobKey);
+		}
+		return triggers;
+	}
+
+	@Override
+	public TriggerState getTriggerState(TriggerKey triggerKey)
+	{
+		TriggerWrapper tw = triggersByKey.get(triggerKey);
+		if (tw == null)
+		{
+			return TriggerState.NONE;
+		}
+		switch (tw.state)
+		{
+		case TriggerWrapper.STATE_COMPLETE:
+			return TriggerState.COMPLETE;
+		case TriggerWrapper.STATE_PAUSED:
+		case TriggerWrapper.STATE_PAUSED_BLOCKED:
+			return TriggerState.PAUSED;
+		case TriggerWrapper.STATE_BLOCKED:
+			return TriggerState.BLOCKED;
+		case TriggerWrapper.STATE_ERROR:
+			return TriggerState.ERROR;
+		default:
+			return TriggerState.NORMAL;
+		}
+	}
+
+	@Override
+	public void resetTriggerFromErrorState(TriggerKey triggerKey)
+	{
+		TriggerWrapper tw = lockTrigger(triggerKey);
+		if (tw == null)
+		{
+			return;
+		}
+		try
+		{
+			if (tw.state != TriggerWrapper.STATE_ERROR)
+			{
+				return;
+			}
+			if (pausedTriggerGroups.contains(triggerKey.getGroup()))
+			{
+				tw.state = TriggerWrapper.STATE_PAUSED;
+			}
+			else
+			{
+				tw.state = TriggerWrapper.STATE_WAITING;
+				addTimeSlot(tw);
+			}
+		}
+		finally
+		{
+			unlock(tw.jobKey);
+		}
+	}
+
+	@Override
+	public void pauseTrigger(TriggerKey triggerKey) throws JobPersistenceException
+	{
+		TriggerWrapper tw = lockTrigger(triggerKey);
+		if (tw == null)
+		{
+			return;
+		}
+		try
+		{
+			pauseTriggerLocked(tw);
+		}
+		finally
+		{
+			unlock(tw.jobKey);
+		}
+	}
+
+	private void pauseTriggerLocked(TriggerWrapper tw) throws JobPersistenceException
+	{
+		// pausing a complete trigger does not make sense
+		if (tw.state == TriggerWrapper.STATE_COMPLETE)
+		{
+			return;
+		}
+		tw.state = tw.state == TriggerWrapper.STATE_BLOCKED ? TriggerWrapper.STATE_PAUSED_BLOCKED
+				: TriggerWrapper.STATE_PAUSED;
+		removeTimeSlot(tw);
+		triggerStored(tw.trigger, true);
+	}
+
+	@Override
+	public List<String> pauseTriggers(GroupMatcher<TriggerKey> matcher) throws JobPersistenceException
+	{
+		List<String> pausedGroups = new ArrayList<>();
+		List<String> groups = matcher.getCompareWithOperator() == StringMatcher.StringOperatorName.EQUALS
+				? Collections.singletonList(matcher.getCompareToValue())
+				: getMatchingGroups(triggersByGroup.keySet(), matcher);
+		for (String group : groups)
+		{
+			if (pausedTriggerGroups.add(group))
+			{
+				pausedGroups.add(group);
+			}
+		}
+		for (String group : pausedGroups)
+		{
+			for (TriggerKey triggerKey : getTriggerKeys(GroupMatcher.triggerGroupEquals(group)))
+			{
+				pauseTrigger(triggerKey);
+			}
+		}
+		if (!pausedGroups.isEmpty())
+		{
+			pausedGroupsChanged();
+		}
+		return pausedGroups;
+	}
+
+	@Override
+	public void pauseJob(JobKey jobKey) throws JobPersistenceException
+	{
+		lock(jobKey);
+		try
+		{
+			JobWrapper jw = jobsByKey.get(jobKey);
+			if (jw != null)
+			{
+				for (TriggerWrapper tw : jw.triggers)
+				{
+					pauseTriggerLocked(tw);
+				}
+			}
+		}
+		finally
+		{
+			unlock(jobKey);
+		}
+	}
+
+	@Override
+	public List<String> pauseJobs(GroupMatcher<JobKey> matcher) throws JobPersistenceException
+	{
+		List<String> pausedGroups = new ArrayList<>();
+		List<String> groups = matcher.getCompareWithOperator() == StringMatcher.StringOperatorName.EQUALS
+				? Collections.singletonList(matcher.getCompareToValue())
+				: getMatchingGroups(jobsByGroup.keySet(), matcher);
+		for (String group : groups)
+		{
+			if (pausedJobGroups.add(group))
+			{
+				pausedGroups.add(group);
+			}
+		}
+		for (String group : pausedGroups)
+		{
+			for (JobKey jobKey : getJobKeys(GroupMatcher.jobGroupEquals(group)))
+			{
+				pauseJob(jobKey);
+			}
+		}
+		if (!pausedGroups.isEmpty())
+		{
+			pausedGroupsChanged();
+		}
+		return pausedGroups;
+	}
+
+	@Override
+	public void resumeTrigger(TriggerKey triggerKey) throws JobPersistenceException
+	{
+		TriggerWrapper tw = lockTrigger(triggerKey);
+		if (tw == null)
+		{
+			return;
+		}
+		try
+		{
+			resumeTriggerLocked(tw, jobsByKey.get(tw.jobKey));
+		}
+		finally
+		{
+			unlock(tw.jobKey);
+		}
+	}
+
+	private void resumeTriggerLocked(TriggerWrapper tw, JobWrapper jw) throws JobPersistenceException
+	{
+		// resuming a trigger which is not paused does not make sense
+		if (tw.state != TriggerWrapper.STATE_PAUSED && tw.state != TriggerWrapper.STATE_PAUSED_BLOCKED)
+		{
+			return;
+		}
+		tw.state = jw != null && jw.blocked ? TriggerWrapper.STATE_BLOCKED : TriggerWrapper.STATE_WAITING;
+		applyMisfire(tw);
+		if (tw.state == TriggerWrapper.STATE_WAITING)
+		{
+			addTimeSlot(tw);
+		}
+		triggerStored(tw.trigger, false);
+	}
+
+	@Override
+	public List<String> resumeTriggers(GroupMatcher<TriggerKey> matcher) throws JobPersistenceException
+	{
+		Set<String> groups = new HashSet<>();
+		for (TriggerKey triggerKey : getTriggerKeys(matcher))
+		{
+			groups.add(triggerKey.getGroup());
+			TriggerWrapper tw = triggersByKey.get(triggerKey);
+			if (tw != null && pausedJobGroups.contains(tw.jobKey.getGroup()))
+			{
+				continue;
+			}
+			resumeTrigger(triggerKey);
+		}
+		if (pausedTriggerGroups.removeAll(getMatchingGroups(pausedTriggerGroups, matcher)))
+		{
+			pausedGroupsChanged();
+		}
+		return new ArrayList<>(groups);
+	}
+
+	@Override
+	public Set<String> getPausedTriggerGroups()
+	{
+		return new HashSet<>(pausedTriggerGroups);
+	}
+
+	/**
+	 * @return the names of all paused job groups
+	 */
+	protected Set<String> getPausedJobGroups()
+	{
+		return new HashSet<>(pausedJobGroups);
+	}
+
+	@Override
+	public void resumeJob(JobKey jobKey) throws JobPersistenceException
+	{
+		lock(jobKey);
+		try
+		{
+			JobWrapper jw = jobsByKey.get(jobKey);
+			if (jw != null)
+			{
+				for (TriggerWrapper tw : jw.triggers)
+				{
+					resumeTriggerLocked(tw, jw);
+				}
+			}
+		}
+		finally
+		{
+			unlock(jobKey);
+		}
+	}
+
+	@Override
+	public Collection<String> resumeJobs(GroupMatcher<JobKey> matcher) throws JobPersistenceException
+	{
+		Set<String> resumedGroups = new HashSet<>(getMatchingGroups(pausedJobGroups, matcher));
+		if (pausedJobGroups.removeAll(resumedGroups))
+		{
+			pausedGroupsChanged();
+		}
+		for (JobKey jobKey : getJobKeys(matcher))
+		{
+			resumeJob(jobKey);
+		}
+		return resumedGroups;
+	}
+
+	@Override
+	public void pauseAll() throws JobPersistenceException
+	{
+		for (String group : getTriggerGroupNames())
+		{
+			pauseTriggers(GroupMatcher.triggerGroupEquals(group));
+		}
+	}
+
+	@Override
+	public void resumeAll() throws JobPersistenceException
+	{
+		if (!pausedJobGroups.isEmpty())
+		{
+			pausedJobGroups.clear();
+			pausedGroupsChanged();
+		}
+		resumeTriggers(GroupMatcher.anyTriggerGroup());
+	}
+
+	/**
+	 * Apply the misfire instruction of a trigger, if it missed its next fire
+	 * time. Must hold the stripe of the trigger's job, and the trigger must not
+	 * be waiting to fire.
+	 *
+	 * @return true if the next fire time of the trigger was changed
+	 */
+	private boolean applyMisfire(TriggerWrapper tw)
+	{
+		long misfireTime = System.currentTimeMillis() - getMisfireThreshold();
+		Date nextFireTime = tw.trigger.getNextFireTime();
+		if (nextFireTime == null || nextFireTime.getTime() > misfireTime
+				|| tw.trigger.getMisfireInstruction() == Trigger.MISFIRE_INSTRUCTION_IGNORE_MISFIRE_POLICY)
+		{
+			return false;
+		}
+
+		Calendar calendar = null;
+		if (tw.trigger.getCalendarName() != null)
+		{
+			calendar = retrieveCalendar(tw.trigger.getCalendarName());
+		}
+		signaler.notifyTriggerListenersMisfired((OperableTrigger) tw.trigger.clone());
+		tw.trigger.updateAfterMisfire(calendar);
+
+		if (tw.trigger.getNextFireTime() == null)
+		{
+			tw.state = TriggerWrapper.STATE_COMPLETE;
+			signaler.notifySchedulerListenersFinalized(tw.trigger);
+			removeTimeSlot(tw);
+		}
+		else if (nextFireTime.equals(tw.trigger.getNextFireTime()))
+		{
+			return false;
+		}
+		persistLogged(tw.key, () -> triggerStored(tw.trigger, isPaused(tw)));
+		return true;
+	}
+
+	/**
+	 * @see org.quartz.spi.JobStore#acquireNextTriggers(long, int, long)
+	 */
+	@Override
+	public List<OperableTrigger> acquireNextTriggers(long noLaterThan, int maxCount, long timeWindow)
+	{
+		List<OperableTrigger> result = new ArrayList<>(Math.min(maxCount, 32));
+		Set<JobKey> acquiredJobKeysForNoConcurrentExec = null;
+		List<TriggerWrapper> excludedTriggers = null;
+		long batchEnd = noLaterThan;
+
+		while (true)
+		{
+			Map.Entry<TimeSlot, TriggerWrapper> first = timeTriggers.pollFirstEntry();
+			if (first == null)
+			{
+				break;
+			}
+			TriggerWrapper tw = first.getValue();
+			lock(tw.jobKey);
+			try
+			{
+				if (tw.slot != first.getKey())
+				{
+					// removed from the waiting triggers in the meantime
+					continue;
+				}
+				tw.slot = null;
+
+				if (tw.trigger.getNextFireTime() == null)
+				{
+					continue;
+				}
+				if (applyMisfire(tw))
+				{
+					addTimeSlot(tw);
+					continue;
+				}
+				if (tw.trigger.getNextFireTime().getTime() > batchEnd)
+				{
+					addTimeSlot(tw);
+					break;
+				}
+
+				// acquire only a single trigger per job disallowing concurrent
+				// execution
+				JobWrapper jw = jobsByKey.get(tw.jobKey);
+				if (jw.jobDetail.isConcurrentExectionDisallowed())
+				{
+					if (acquiredJobKeysForNoConcurrentExec == null)
+					{
+						acquiredJobKeysForNoConcurrentExec = new HashSet<>();
+					}
+					if (!acquiredJobKeysForNoConcurrentExec.add(tw.jobKey))
+					{
+						if (excludedTriggers == null)
+						{
+							excludedTriggers = new ArrayList<>();
+						}
+						excludedTriggers.add(tw);
+						continue;
+					}
+				}
+
+				tw.state = TriggerWrapper.STATE_ACQUIRED;
+				tw.trigger.setFireInstanceId(String.valueOf(firedTriggerRecordCounter.incrementAndGet()));
+				if (result.isEmpty())
+				{
+					batchEnd = Math.max(tw.trigger.getNextFireTime().getTime(), System.currentTimeMillis())
+							+ timeWindow;
+				}
+				result.add((OperableTrigger) tw.trigger.clone());
+				if (result.size() == maxCount)
+				{
+					break;
+				}
+			}
+			finally
+			{
+				unlock(tw.jobKey);
+			}
+		}
+
+		// put back the triggers excluded to prevent concurrent execution
+		if (excludedTriggers != null)
+		{
+			for (TriggerWrapper tw : excludedTriggers)
+			{
+				lock(tw.jobKey);
+				try
+				{
+					if (tw.state == TriggerWrapper.STATE_WAITING && triggersByKey.get(tw.key) == tw)
+					{
+						addTimeSlot(tw);
+					}
+				}
+				finally
+				{
+					unlock(tw.jobKey);
+				}
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public void releaseAcquiredTrigger(OperableTrigger trigger)
+	{
+		TriggerWrapper tw = lockTrigger(trigger.getKey());
+		if (tw == null)
+		{
+			return;
+		}
+		try
+		{
+			if (tw.state == TriggerWrapper.STATE_ACQUIRED)
+			{
+				tw.state = TriggerWrapper.STATE_WAITING;
+				addTimeSlot(tw);
+			}
+		}
+		finally
+		{
+			unlock(tw.jobKey);
+		}
+	}
+
+	@Override
+	public List<TriggerFiredResult> triggersFired(List<OperableTrigger> firedTriggers)
+	{
+		List<TriggerFiredResult> results = new ArrayList<>(firedTriggers.size());
+		for (OperableTrigger trigger : firedTriggers)
+		{
+			TriggerWrapper tw = lockTrigger(trigger.getKey());
+			// was the trigger deleted since being acquired?
+			if (tw == null)
+			{
+				continue;
+			}
+			try
+			{
+				// was the trigger completed, paused, blocked, etc. since
+				// being acquired?
+				if (tw.state != TriggerWrapper.STATE_ACQUIRED)
+				{
+					continue;
+				}
+				Calendar calendar = null;
+				if (tw.trigger.getCalendarName() != null)
+				{
+					calendar = retrieveCalendar(tw.trigger.getCalendarName());
+					if (calendar == null)
+					{
+						continue;
+					}
+				}
+				Date prevFireTime = trigger.getPreviousFireTime();
+				// in case the trigger was replaced between acquiring and firing
+				removeTimeSlot(tw);
+				// call triggered on our copy, and the scheduler's copy
+				tw.trigger.triggered(calendar);
+				trigger.triggered(calendar);
+				tw.state = TriggerWrapper.STATE_WAITING;
+				persistLogged(tw.key, () -> triggerStored(tw.trigger, false));
+
+				JobWrapper jw = jobsByKey.get(tw.jobKey);
+				JobDetail job = (JobDetail) jw.jobDetail.clone();
+				TriggerFiredBundle bundle = new TriggerFiredBundle(job, trigger, calendar,
+						Scheduler.DEFAULT_RECOVERY_GROUP.equals(tw.key.getGroup()), new Date(),
+						trigger.getPreviousFireTime(), prevFireTime, trigger.getNextFireTime());
+				persistLogged(tw.jobKey, () -> jobFired(trigger, job));
+
+				if (job.isConcurrentExectionDisallowed())
+				{
+					for (TriggerWrapper ttw : jw.triggers)
+					{
+						if (ttw.state == TriggerWrapper.STATE_WAITING)
+						{
+							ttw.state = TriggerWrapper.STATE_BLOCKED;
+						}
+						if (ttw.state == TriggerWrapper.STATE_PAUSED)
+						{
+							ttw.state = TriggerWrapper.STATE_PAUSED_BLOCKED;
+						}
+						removeTimeSlot(ttw);
+					}
+					jw.blocked = true;
+				}
+				else
+				{
+					addTimeSlot(tw);
+				}
+				results.add(new TriggerFiredResult(bundle));
+			}
+			finally
+			{
+				unlock(tw.jobKey);
+			}
+		}
+		return results;
+	}
+
+	@Override
+	public void triggeredJobComplete(OperableTrigger trigger, JobDetail jobDetail,
+			CompletedExecutionInstruction triggerInstCode)
+	{
+		JobKey jobKey = jobDetail.getKey();
+		boolean signal = false;
+		JobKey orphanedJob = null;
+
+		lock(jobKey);
+		try
+		{
+			persistLogged(jobKey, () -> jobCompleted(trigger, jobDetail));
+
+			// the job may have been deleted during its execution
+			JobWrapper jw = jobsByKey.get(jobKey);
+			if (jw != null)
+			{
+				JobDetail jd = jw.jobDetail;
+				if (jd.isPersistJobDataAfterExecution())
+				{
+					JobDataMap newData = jobDetail.getJobDataMap();
+					if (newData != null)
+					{
+						newData = (JobDataMap) newData.clone();
+						newData.clearDirtyFlag();
+					}
+					jd = jd.getJobBuilder().setJobData(newData).build();
+					jw.jobDetail = jd;
+					JobDetail stored = jd;
+					persistLogged(jobKey, () -> jobStored(stored));
+				}
+				if (jd.isConcurrentExectionDisallowed())
+				{
+					jw.blocked = false;
+					for (TriggerWrapper ttw : jw.triggers)
+					{
+						if (ttw.state == TriggerWrapper.STATE_BLOCKED)
+						{
+							ttw.state = TriggerWrapper.STATE_WAITING;
+							addTimeSlot(ttw);
+						}
+						if (ttw.state == TriggerWrapper.STATE_PAUSED_BLOCKED)
+						{
+							ttw.state = TriggerWrapper.STATE_PAUSED;
+						}
+					}
+					signal = true;
+				}
+			}
+
+			// the trigger may have been deleted during the execution, or
+			// replaced by a trigger of another job
+			TriggerWrapper tw = triggersByKey.get(trigger.getKey());
+			if (tw != null && tw.jobKey.equals(jobKey))
+			{
+				switch (triggerInstCode)
+				{
+				case DELETE_TRIGGER:
+					// the trigger may have been rescheduled during the
+					// execution, which cancels the deletion
+					if (trigger.getNextFireTime() != null || tw.trigger.getNextFireTime() == null)
+					{
+						signal |= trigger.getNextFireTime() != null;
+						persistLogged(tw.key, () -> removeTriggerLocked(tw, jw));
+						if (jw != null && jw.triggers.isEmpty() && !jw.jobDetail.isDurable()
+								&& removeOrphanLocked(jobKey))
+						{
+							orphanedJob = jobKey;
+						}
+					}
+					break;
+				case SET_TRIGGER_COMPLETE:
+					tw.state = TriggerWrapper.STATE_COMPLETE;
+					removeTimeSlot(tw);
+					signal = true;
+					break;
+				case SET_TRIGGER_ERROR:
+					logger.info("Trigger {} set to ERROR state.", trigger.getKey());
+					tw.state = TriggerWrapper.STATE_ERROR;
+					removeTimeSlot(tw);
+					signal = true;
+					break;
+				case SET_ALL_JOB_TRIGGERS_ERROR:
+					logger.info("All triggers of Job {} set to ERROR state.", jobKey);
+					setAllTriggersOfJobToState(jw, TriggerWrapper.STATE_ERROR);
+					signal = true;
+					break;
+				case SET_ALL_JOB_TRIGGERS_COMPLETE:
+					setAllTriggersOfJobToState(jw, TriggerWrapper.STATE_COMPLETE);
+					signal = true;
+					break;
+				default:
+					break;
+				}
+			}
+		}
+		finally
+		{
+			unlock(jobKey);
+		}
+
+		if (orphanedJob != null)
+		{
+			signaler.notifySchedulerListenersJobDeleted(orphanedJob);
+		}
+		if (signal)
+		{
+			signaler.signalSchedulingChange(0L);
+		}
+	}
+
+	private void setAllTriggersOfJobToState(JobWrapper jw, int state)
+	{
+		if (jw == null)
+		{
+			return;
+		}
+		for (TriggerWrapper tw : jw.triggers)
+		{
+			tw.state = state;
+			removeTimeSlot(tw);
+		}
+	}
+
+	private static boolean isPaused(TriggerWrapper tw)
+	{
+		return tw.state == TriggerWrapper.STATE_PAUSED || tw.state == TriggerWrapper.STATE_PAUSED_BLOCKED;
+	}
+
+	/**
+	 * Run a hook persisting a change made while acquiring, firing or
+	 * completing triggers. These changes cannot be rolled back, and the
+	 * scheduler thread cannot handle their failures, so failures are logged.
+	 */
+	private void persistLogged(Object subject, PersistenceHook hook)
+	{
+		try
+		{
+			hook.run();
+		}
+		catch (JobPersistenceException e)
+		{
+			logger.error("Failed to persist the change of {}.", subject, e);
+		}
+	}
+
+	/**
+	 * Remove a job left without triggers after its execution, logging
+	 * persistence failures. Must hold the stripe of the job.
+	 */
+	private boolean removeOrphanLocked(JobKey jobKey)
+	{
+		try
+		{
+			return removeJobLocked(jobKey);
+		}
+		catch (JobPersistenceException e)
+		{
+			logger.error("Failed to persist the removal of job {}.", jobKey, e);
+			return !jobsByKey.containsKey(jobKey);
+		}
+	}
+
+	/**
+	 * A hook of a subclass persisting a change.
+	 */
+	private interface PersistenceHook
+	{
+		void run() throws JobPersistenceException;
+	}
+
+	/**
+	 * Called after a job was stored, or its job data was changed after an
+	 * execution. Called while holding the stripe of the job.
+	 *
+	 * @param jobDetail the stored job
+	 */
+	protected void jobStored(JobDetail jobDetail) throws JobPersistenceException
+	{
+	}
+
+	/**
+	 * Called after a job (and all its triggers) was removed. Called while
+	 * holding the stripe of the job.
+	 *
+	 * @param jobKey the key of the removed job
+	 */
+	protected void jobRemoved(JobKey jobKey) throws JobPersistenceException
+	{
+	}
+
+	/**
+	 * Called after a trigger was stored, fired, paused or resumed, or its next
+	 * fire time was changed. Called while holding the stripe of the trigger's
+	 * job.
+	 *
+	 * @param trigger the stored trigger
+	 * @param paused  whether the trigger is paused
+	 */
+	protected void triggerStored(OperableTrigger trigger, boolean paused) throws JobPersistenceException
+	{
+	}
+
+	/**
+	 * Called after a trigger was removed. Called while holding the stripe of
+	 * the trigger's job.
+	 *
+	 * @param triggerKey the key of the removed trigger
+	 */
+	protected void triggerRemoved(TriggerKey triggerKey) throws JobPersistenceException
+	{
+	}
+
+	/**
+	 * Called after the paused trigger groups or the paused job groups were
+	 * changed.
+	 */
+	protected void pausedGroupsChanged() throws JobPersistenceException
+	{
+	}
+
+	/**
+	 * Called when a trigger fires its job. Called while holding the stripe of
+	 * the job.
+	 *
+	 * @param trigger the fired trigger
+	 * @param job     the job about to be executed
+	 */
+	protected void jobFired(OperableTrigger trigger, JobDetail job) throws JobPersistenceException
+	{
+	}
+
+	/**
+	 * Called when the execution of a job has completed. Called while holding
+	 * the stripe of the job.
+	 *
+	 * @param trigger the trigger which fired the job
+	 * @param job     the executed job
+	 */
+	protected void jobCompleted(OperableTrigger trigger, JobDetail job) throws JobPersistenceException
+	{
+	}
+
+	@Override
+	public long getAcquireRetryDelay(int failureCount)
+	{
+		return 20;
+	}
+
+	@Override
+	public void setInstanceId(String schedInstId)
+	{
+	}
+
+	@Override
+	public void setInstanceName(String schedName)
+	{
+	}
+
+	@Override
+	public void setThreadPoolSize(int poolSize)
+	{
+	}
+
+	/**
+	 * A job and its triggers. Guarded by the stripe of the job.
+	 */
+	private static class JobWrapper
+	{
+		/**
+		 * The job detail. Replaced, never changed.
+		 */
+		volatile JobDetail jobDetail;
+
+		final List<TriggerWrapper> triggers = new ArrayList<>(1);
+
+		/**
+		 * Whether the job disallows concurrent execution, and is executing.
+		 */
+		boolean blocked;
+
+		JobWrapper(JobDetail jobDetail)
+		{
+			this.jobDetail = jobDetail;
+		}
+	}
+
+	/**
+	 * A trigger and its state. Guarded by the stripe of the trigger's job.
+	 */
+	private static class TriggerWrapper
+	{
+		static final int STATE_WAITING = 0;
+
+		static final int STATE_ACQUIRED = 1;
+
+		static final int STATE_COMPLETE = 3;
+
+		static final int STATE_PAUSED = 4;
+
+		static final int STATE_BLOCKED = 5;
+
+		static final int STATE_PAUSED_BLOCKED = 6;
+
+		static final int STATE_ERROR = 7;
+
+		final TriggerKey key;
+
+		final JobKey jobKey;
+
+		final OperableTrigger trigger;
+
+		volatile int state = STATE_WAITING;
+
+		/**
+		 * The key of the trigger in the triggers waiting to fire, or null.
+		 */
+		TimeSlot slot;
+
+		TriggerWrapper(OperableTrigger trigger)
+		{
+			this.trigger = trigger;
+			this.key = trigger.getKey();
+			this.jobKey = trigger.getJobKey();
+		}
+	}
+
+	/**
+	 * An immutable snapshot of the properties ordering a trigger, i.e. its next
+	 * fire time, priority and key (like {@link Trigger.TriggerTimeComparator}).
+	 */
+	private static final class TimeSlot implements Comparable<TimeSlot>
+	{
+		final long nextFireTime;
+
+		final int priority;
+
+		final TriggerKey key;
+
+		TimeSlot(OperableTrigger trigger)
+		{
+			this.nextFireTime = trigger.getNextFireTime().getTime();
+			this.priority = trigger.getPriority();
+			this.key = trigger.getKey();
+		}
+
+		@Override
+		public int compareTo(TimeSlot other)
+		{
+			if (nextFireTime != other.nextFireTime)
+			{
+				return nextFireTime < other.nextFireTime ? -1 : 1;
+			}
+			if (priority != other.priority)
+			{
+				// higher priority first
+				return priority > other.priority ? -1 : 1;
+			}
+			return key.compareTo(other.key);
+		}
+	}
+
+}
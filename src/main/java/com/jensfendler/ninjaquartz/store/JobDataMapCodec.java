@@ -0,0 +1,55 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.store;
+
+import org.quartz.JobDataMap;
+import org.quartz.spi.ClassLoadHelper;
+
+import java.io.IOException;
+
+/**
+ * Encodes the {@link JobDataMap}s of jobs and triggers for persistent job
+ * stores (see {@link NinjaQuartzJDBCDelegate}).
+ * <p>
+ * Implementations must have a public no-argument constructor, and be
+ * thread-safe.
+ *
+ * @author Jens Fendler
+ */
+public interface JobDataMapCodec
+{
+
+	/**
+	 * Encode a {@link JobDataMap}.
+	 *
+	 * @param jobData the map to encode
+	 * @return the encoded map
+	 * @throws IOException if a value of the map cannot be encoded
+	 */
+	byte[] encode(JobDataMap jobData) throws IOException;
+
+	/**
+	 * Decode a {@link JobDataMap} encoded by {@link #encode(JobDataMap)}.
+	 *
+	 * @param data       the encoded map
+	 * @param loadHelper loads the classes of the values
+	 * @return the decoded map
+	 * @throws IOException            if the data is invalid
+	 * @throws ClassNotFoundException if the class of a value cannot be loaded
+	 */
+	JobDataMap decode(byte[] data, ClassLoadHelper loadHelper) throws IOException, ClassNotFoundException;
+
+}
@@ -0,0 +1,891 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.store;
+
+import com.jensfendler.ninjaquartz.job.DetachedTask;
+import com.jensfendler.ninjaquartz.job.NinjaQuartzTask;
+
+import org.quartz.Calendar;
+import org.quartz.JobDataMap;
+import org.quartz.JobDetail;
+import org.quartz.JobKey;
+import org.quartz.JobPersistenceException;
+import org.quartz.ObjectAlreadyExistsException;
+import org.quartz.Scheduler;
+import org.quartz.SchedulerConfigException;
+import org.quartz.SimpleScheduleBuilder;
+import org.quartz.Trigger.TriggerState;
+import org.quartz.TriggerBuilder;
+import org.quartz.TriggerKey;
+import org.quartz.impl.matchers.GroupMatcher;
+import org.quartz.spi.ClassLoadHelper;
+import org.quartz.spi.OperableTrigger;
+import org.quartz.spi.SchedulerSignaler;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A persistent {@link ConcurrentRAMJobStore} for single-node deployments,
+ * which keeps jobs, triggers, job data and calendars across restarts without a
+ * database.
+ * <p>
+ * All reads are served from memory. Every change is appended to a
+ * memory-mapped log file (see {@link AppendLog}), which is replayed on start.
+ * The log is compacted (i.e. replaced by a snapshot of the current state) on
+ * start, on shutdown, and whenever it has grown beyond the compaction
+ * threshold and twice its size after the last compaction. Executions of jobs
+ * requesting recovery are logged as well, and jobs whose execution was
+ * interrupted by a crash are fired again on start, like with Quartz' JDBC job
+ * stores.
+ * <p>
+ * Changes which cannot be written to the log fail with a
+ * {@link JobPersistenceException}. Only the changes made while firing and
+ * completing jobs, which the scheduler cannot undo, are logged instead.
+ * <p>
+ * Scheduled methods and runnables cannot be persisted, so only the name and
+ * error handling of their tasks are stored (see {@link DetachedTask}). They are
+ * attached again when the tasks are scheduled again on start.
+ * <p>
+ * Configuration, e.g. in application.conf:
+ *
+ * <pre>
+ * quartz.org.quartz.jobStore.class=com.jensfendler.ninjaquartz.store.MappedFileJobStore
+ * quartz.org.quartz.jobStore.directory=/var/lib/myapp/quartz
+ * # optional: force every change to disk (default: false, i.e. survive
+ * # crashes of the JVM, but not of the machine)
+ * quartz.org.quartz.jobStore.syncWrites=true
+ * # optional: the log size (in bytes) above which it is compacted
+ * quartz.org.quartz.jobStore.compactionThreshold=16777216
+ * </pre>
+ *
+ * or <code>quartz.scheduler.&lt;name&gt;.jobStore=file</code> (with
+ * <code>org.quartz.jobStore.directory</code>) for a named scheduler.
+ *
+ * @author Jens Fendler
+ */
+public class MappedFileJobStore extends ConcurrentRAMJobStore
+{
+
+	public static final int DEFAULT_COMPACTION_THRESHOLD = 16 * 1024 * 1024;
+
+	private static final int INITIAL_LOG_SIZE = 1024 * 1024;
+
+	private static final byte RECORD_JOB = 1;
+
+	private static final byte RECORD_REMOVE_JOB = 2;
+
+	private static final byte RECORD_TRIGGER = 3;
+
+	private static final byte RECORD_REMOVE_TRIGGER = 4;
+
+	private static final byte RECORD_CALENDAR = 5;
+
+	private static final byte RECORD_REMOVE_CALENDAR = 6;
+
+	private static final byte RECORD_PAUSED_GROUPS = 7;
+
+	private static final byte RECORD_FIRED = 8;
+
+	private static final byte RECORD_COMPLETED = 9;
+
+	private static final byte RECORD_CLEAR = 10;
+
+	private String directory;
+
+	private boolean syncWrites;
+
+	private int compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+
+	private String instanceName = "NinjaQuartz";
+
+	private ClassLoadHelper classLoadHelper;
+
+	private Path file;
+
+	/**
+	 * Guards the log. Taken after the stripes.
+	 */
+	private final Object logLock = new Object();
+
+	/**
+	 * The log, or null while recovering.
+	 */
+	private AppendLog log;
+
+	private int compactedSize;
+
+	/**
+	 * The fired records of all executions of jobs requesting recovery, by fire
+	 * instance id, to be carried over when compacting.
+	 */
+	private final Map<String, byte[]> executing = new ConcurrentHashMap<>();
+
+	/**
+	 * The record of the job or trigger being stored by the current thread,
+	 * serialized by {@link #storeJob(JobDetail, boolean)} or
+	 * {@link #storeTrigger(OperableTrigger, boolean)} before storing it, and
+	 * appended to the log once the store has accepted it.
+	 */
+	private final ThreadLocal<PendingRecord> pending = new ThreadLocal<>();
+
+	/**
+	 * The directory of the log file. Set through
+	 * <code>org.quartz.jobStore.directory</code>.
+	 */
+	public void setDirectory(String directory)
+	{
+		this.directory = directory;
+	}
+
+	/**
+	 * Whether every change is forced to the storage device. Set through
+	 * <code>org.quartz.jobStore.syncWrites</code>.
+	 */
+	public void setSyncWrites(boolean syncWrites)
+	{
+		this.syncWrites = syncWrites;
+	}
+
+	/**
+	 * The log size (in bytes) above which the log is compacted. Set through
+	 * <code>org.quartz.jobStore.compactionThreshold</code>.
+	 */
+	public void setCompactionThreshold(int compactionThreshold)
+	{
+		this.compactionThreshold = compactionThreshold;
+	}
+
+	/**
+	 * @see com.jensfendler.ninjaquartz.store.ConcurrentRAMJobStore#setInstanceName(java.lang.String)
+	 */
+	@Override
+	public void setInstanceName(String schedName)
+	{
+		this.instanceName = schedName;
+	}
+
+	/**
+	 * @return the log file
+	 */
+	public Path getFile()
+	{
+		return file;
+	}
+
+	/**
+	 * Recover the state from the log file, and compact it.
+	 *
+	 * @see com.jensfendler.ninjaquartz.store.ConcurrentRAMJobStore#initialize(org.quartz.spi.ClassLoadHelper,
+	 *      org.quartz.spi.SchedulerSignaler)
+	 */
+	@Override
+	public void initialize(ClassLoadHelper loadHelper, SchedulerSignaler signaler) throws SchedulerConfigException
+	{
+		super.initialize(loadHelper, signaler);
+		this.classLoadHelper = loadHelper;
+		if (directory == null)
+		{
+			throw new SchedulerConfigException("No directory set for the job store (org.quartz.jobStore.directory).");
+		}
+
+		try
+		{
+			Path dir = Paths.get(directory);
+			Files.createDirectories(dir);
+			file = dir.resolve(instanceName.replaceAll("[^A-Za-z0-9._-]", "_") + ".qlog");
+			recover();
+			compact();
+		}
+		catch (IOException | JobPersistenceException | ClassNotFoundException e)
+		{
+			throw new SchedulerConfigException("Failed to recover the job store from " + file, e);
+		}
+	}
+
+	/**
+	 * Replay the log file into memory.
+	 */
+	private void recover() throws IOException, JobPersistenceException, ClassNotFoundException
+	{
+		if (!Files.exists(file))
+		{
+			logger.info("Created new job store in {}.", file);
+			return;
+		}
+
+		Map<String, Calendar> calendars = new LinkedHashMap<>();
+		Map<JobKey, JobDetail> jobs = new LinkedHashMap<>();
+		Map<TriggerKey, OperableTrigger> triggers = new LinkedHashMap<>();
+		Set<TriggerKey> pausedTriggers = new HashSet<>();
+		Set<String> pausedTriggerGroups = new HashSet<>();
+		Set<String> pausedJobGroups = new HashSet<>();
+		Map<String, Object[]> interrupted = new LinkedHashMap<>();
+
+		int records;
+		try (AppendLog recovered = new AppendLog(file, 0, false))
+		{
+			records = recovered.replay((type, payload) -> {
+				try (ObjectInputStream in = new StoreInputStream(new ByteArrayInputStream(payload)))
+				{
+					switch (type)
+					{
+					case RECORD_JOB:
+						JobDetail job = (JobDetail) in.readObject();
+						jobs.put(job.getKey(), job);
+						break;
+					case RECORD_REMOVE_JOB:
+						jobs.remove(in.readObject());
+						break;
+					case RECORD_TRIGGER:
+						OperableTrigger trigger = (OperableTrigger) in.readObject();
+						triggers.put(trigger.getKey(), trigger);
+						if (in.readBoolean())
+						{
+							pausedTriggers.add(trigger.getKey());
+						}
+						else
+						{
+							pausedTriggers.remove(trigger.getKey());
+						}
+						break;
+					case RECORD_REMOVE_TRIGGER:
+						Object triggerKey = in.readObject();
+						triggers.remove(triggerKey);
+						pausedTriggers.remove(triggerKey);
+						break;
+					case RECORD_CALENDAR:
+						calendars.put(in.readUTF(), (Calendar) in.readObject());
+						break;
+					case RECORD_REMOVE_CALENDAR:
+						calendars.remove(in.readUTF());
+						break;
+					case RECORD_PAUSED_GROUPS:
+						pausedTriggerGroups.clear();
+						pausedTriggerGroups.addAll(readStrings(in));
+						pausedJobGroups.clear();
+						pausedJobGroups.addAll(readStrings(in));
+						break;
+					case RECORD_FIRED:
+						Object[] fired = new Object[] { in.readUTF(), in.readObject(), in.readObject(), in.readLong(),
+								in.readLong(), in.readInt() };
+						interrupted.put((String) fired[0], fired);
+						break;
+					case RECORD_COMPLETED:
+						interrupted.remove(in.readUTF());
+						break;
+					case RECORD_CLEAR:
+						calendars.clear();
+						jobs.clear();
+						triggers.clear();
+						pausedTriggers.clear();
+						pausedTriggerGroups.clear();
+						pausedJobGroups.clear();
+						break;
+					default:
+						throw new IOException("Unknown record type " + type);
+					}
+				}
+				catch (ClassNotFoundException e)
+				{
+					throw new IOException(e);
+				}
+			});
+		}
+
+		for (Map.Entry<String, Calendar> calendar : calendars.entrySet())
+		{
+			storeCalendar(calendar.getKey(), calendar.getValue(), true, false);
+		}
+		for (JobDetail job : jobs.values())
+		{
+			super.storeJob(job, true);
+		}
+		for (OperableTrigger trigger : triggers.values())
+		{
+			if (!jobs.containsKey(trigger.getJobKey()))
+			{
+				logger.warn("Dropping recovered trigger {}, its job {} does not exist.", trigger.getKey(),
+						trigger.getJobKey());
+				continue;
+			}
+			super.storeTrigger(trigger, true);
+			if (pausedTriggers.contains(trigger.getKey()))
+			{
+				pauseTrigger(trigger.getKey());
+			}
+		}
+		for (String group : pausedTriggerGroups)
+		{
+			pauseTriggers(GroupMatcher.triggerGroupEquals(group));
+		}
+		for (String group : pausedJobGroups)
+		{
+			pauseJobs(GroupMatcher.jobGroupEquals(group));
+		}
+
+		int recoveryTriggers = 0;
+		for (Object[] fired : interrupted.values())
+		{
+			JobKey jobKey = (JobKey) fired[2];
+			if (!jobs.containsKey(jobKey))
+			{
+				logger.warn("Failed job {} no longer exists, cannot schedule recovery.", jobKey);
+				continue;
+			}
+			super.storeTrigger(createRecoveryTrigger((String) fired[0], (TriggerKey) fired[1], jobKey,
+					(Long) fired[3], (Long) fired[4], (Integer) fired[5], triggers.get(fired[1])), false);
+			recoveryTriggers++;
+		}
+
+		logger.info("Recovered {} jobs and {} triggers from {} records in {}, and scheduled {} recovery triggers.",
+				jobs.size(), triggers.size(), records, file, recoveryTriggers);
+	}
+
+	/**
+	 * Create a trigger firing a job again, whose execution was interrupted. The
+	 * trigger has the same job data as Quartz' recovery triggers.
+	 */
+	private static OperableTrigger createRecoveryTrigger(String fireInstanceId, TriggerKey originalTriggerKey,
+			JobKey jobKey, long fireTime, long scheduledFireTime, int priority, OperableTrigger originalTrigger)
+	{
+		JobDataMap jobData = originalTrigger == null ? new JobDataMap()
+				: (JobDataMap) originalTrigger.getJobDataMap().clone();
+		jobData.put(Scheduler.FAILED_JOB_ORIGINAL_TRIGGER_NAME, originalTriggerKey.getName());
+		jobData.put(Scheduler.FAILED_JOB_ORIGINAL_TRIGGER_GROUP, originalTriggerKey.getGroup());
+		jobData.put(Scheduler.FAILED_JOB_ORIGINAL_TRIGGER_FIRETIME_IN_MILLISECONDS, String.valueOf(fireTime));
+		jobData.put(Scheduler.FAILED_JOB_ORIGINAL_TRIGGER_SCHEDULED_FIRETIME_IN_MILLISECONDS,
+				String.valueOf(scheduledFireTime));
+
+		OperableTrigger trigger = (OperableTrigger) TriggerBuilder.newTrigger()
+				.withIdentity("recover_" + fireInstanceId, Scheduler.DEFAULT_RECOVERY_GROUP).forJob(jobKey)
+				.startAt(new Date(scheduledFireTime)).withPriority(priority).usingJobData(jobData)
+				.withSchedule(SimpleScheduleBuilder.simpleSchedule().withMisfireHandlingInstructionIgnoreMisfires())
+				.build();
+		trigger.computeFirstFireTime(null);
+		return trigger;
+	}
+
+	/**
+	 * Replace the log file by a snapshot of the current state. All stripes are
+	 * locked while the snapshot is written.
+	 */
+	private void compact() throws IOException
+	{
+		Path snapshotFile = file.resolveSibling(file.getFileName() + ".compact");
+		Files.deleteIfExists(snapshotFile);
+
+		lockAll();
+		try
+		{
+			synchronized (logLock)
+			{
+				try (AppendLog snapshot = new AppendLog(snapshotFile, INITIAL_LOG_SIZE, false))
+				{
+					writeSnapshot(snapshot);
+				}
+				if (log != null)
+				{
+					log.close();
+					log = null;
+				}
+				Files.move(snapshotFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+				AppendLog compacted = new AppendLog(file, INITIAL_LOG_SIZE, syncWrites);
+				compacted.replay(null);
+				compactedSize = compacted.size();
+				log = compacted;
+			}
+		}
+		finally
+		{
+			unlockAll();
+		}
+		logger.debug("Compacted job store {} to {} bytes.", file, compactedSize);
+	}
+
+	private void writeSnapshot(AppendLog snapshot) throws IOException
+	{
+		for (String name : getCalendarNames())
+		{
+			snapshot.append(RECORD_CALENDAR, serialize(out -> {
+				out.writeUTF(name);
+				out.writeObject(retrieveCalendar(name));
+			}));
+		}
+		for (String group : getJobGroupNames())
+		{
+			for (JobKey jobKey : getJobKeys(GroupMatcher.jobGroupEquals(group)))
+			{
+				JobDetail job = retrieveJob(jobKey);
+				snapshot.append(RECORD_JOB, serialize(out -> out.writeObject(job)));
+			}
+		}
+		for (String group : getTriggerGroupNames())
+		{
+			for (TriggerKey triggerKey : getTriggerKeys(GroupMatcher.triggerGroupEquals(group)))
+			{
+				OperableTrigger trigger = retrieveTrigger(triggerKey);
+				boolean paused = getTriggerState(triggerKey) == TriggerState.PAUSED;
+				snapshot.append(RECORD_TRIGGER, serialize(out -> {
+					out.writeObject(trigger);
+					out.writeBoolean(paused);
+				}));
+			}
+		}
+		snapshot.append(RECORD_PAUSED_GROUPS, serializePausedGroups());
+		for (byte[] fired : executing.values())
+		{
+			snapshot.append(RECORD_FIRED, fired);
+		}
+	}
+
+	/**
+	 * Append a record to the log.
+	 *
+	 * @throws JobPersistenceException if the record cannot be written
+	 */
+	private void append(byte type, byte[] payload) throws JobPersistenceException
+	{
+		synchronized (logLock)
+		{
+			if (log == null)
+			{
+				// recovering
+				return;
+			}
+			try
+			{
+				log.append(type, payload);
+			}
+			catch (IOException e)
+			{
+				throw new JobPersistenceException("Failed to write to job store " + file + ": " + e, e);
+			}
+		}
+	}
+
+	private interface Writer
+	{
+		void write(ObjectOutputStream out) throws IOException;
+	}
+
+	/**
+	 * Serialize the payload of a record, replacing all {@link NinjaQuartzTask}s
+	 * by {@link DetachedTask}s.
+	 */
+	private static byte[] serialize(Writer writer) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+		try (ObjectOutputStream out = new StoreOutputStream(bytes))
+		{
+			writer.write(out);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Serialize the payload of a record.
+	 *
+	 * @throws JobPersistenceException if the payload cannot be serialized
+	 */
+	private byte[] serializeRecord(Object subject, Writer writer) throws JobPersistenceException
+	{
+		try
+		{
+			return serialize(writer);
+		}
+		catch (IOException e)
+		{
+			throw new JobPersistenceException(subject + " cannot be persisted: " + e, e);
+		}
+	}
+
+	/**
+	 * Finish the record of a job or trigger serialized before storing it, or
+	 * serialize the record if it has been stored in another way (e.g. when
+	 * replacing a job, or storing many jobs at once).
+	 *
+	 * @param key    the key of the job or trigger
+	 * @param writer writes the job or trigger
+	 * @param tail   writes the rest of the record
+	 * @return the payload
+	 * @throws JobPersistenceException if the record cannot be serialized
+	 */
+	private byte[] finishOrSerialize(Object key, Writer writer, Writer tail) throws JobPersistenceException
+	{
+		PendingRecord record = pending.get();
+		if (record == null || !record.key.equals(key))
+		{
+			return serializeRecord(key, out -> {
+				writer.write(out);
+				tail.write(out);
+			});
+		}
+		pending.remove();
+		try
+		{
+			return record.finish(tail);
+		}
+		catch (IOException e)
+		{
+			throw new JobPersistenceException(key + " cannot be persisted: " + e, e);
+		}
+	}
+
+	private byte[] serializePausedGroups() throws IOException
+	{
+		Set<String> triggerGroups = getPausedTriggerGroups();
+		Set<String> jobGroups = getPausedJobGroups();
+		return serialize(out -> {
+			writeStrings(out, triggerGroups);
+			writeStrings(out, jobGroups);
+		});
+	}
+
+	private static void writeStrings(ObjectOutputStream out, Set<String> strings) throws IOException
+	{
+		out.writeInt(strings.size());
+		for (String string : strings)
+		{
+			out.writeUTF(string);
+		}
+	}
+
+	private static List<String> readStrings(ObjectInputStream in) throws IOException
+	{
+		int count = in.readInt();
+		List<String> strings = new ArrayList<>(count);
+		for (int i = 0; i < count; i++)
+		{
+			strings.add(in.readUTF());
+		}
+		return strings;
+	}
+
+	/**
+	 * Check that a job can be persisted before storing it. The record written
+	 * for the check is appended to the log once the job has been stored.
+	 *
+	 * @see com.jensfendler.ninjaquartz.store.ConcurrentRAMJobStore#storeJob(org.quartz.JobDetail,
+	 *      boolean)
+	 */
+	@Override
+	public void storeJob(JobDetail newJob, boolean replaceExisting) throws JobPersistenceException
+	{
+		try
+		{
+			pending.set(new PendingRecord(newJob.getKey(), out -> out.writeObject(newJob)));
+		}
+		catch (IOException e)
+		{
+			throw new JobPersistenceException("Job " + newJob.getKey() + " cannot be persisted: " + e, e);
+		}
+		try
+		{
+			super.storeJob(newJob, replaceExisting);
+		}
+		finally
+		{
+			pending.remove();
+		}
+	}
+
+	/**
+	 * Check that a trigger can be persisted before storing it. The record
+	 * written for the check is appended to the log once the trigger has been
+	 * stored.
+	 *
+	 * @see com.jensfendler.ninjaquartz.store.ConcurrentRAMJobStore#storeTrigger(org.quartz.spi.OperableTrigger,
+	 *      boolean)
+	 */
+	@Override
+	public void storeTrigger(OperableTrigger newTrigger, boolean replaceExisting) throws JobPersistenceException
+	{
+		try
+		{
+			pending.set(new PendingRecord(newTrigger.getKey(), out -> out.writeObject(newTrigger)));
+		}
+		catch (IOException e)
+		{
+			throw new JobPersistenceException("Trigger " + newTrigger.getKey() + " cannot be persisted: " + e, e);
+		}
+		try
+		{
+			super.storeTrigger(newTrigger, replaceExisting);
+		}
+		finally
+		{
+			pending.remove();
+		}
+	}
+
+	@Override
+	public void storeCalendar(String name, Calendar calendar, boolean replaceExisting, boolean updateTriggers)
+			throws ObjectAlreadyExistsException, JobPersistenceException
+	{
+		// check that the calendar can be persisted before storing it
+		byte[] record = serializeRecord("calendar " + name, out -> {
+			out.writeUTF(name);
+			out.writeObject(calendar);
+		});
+		super.storeCalendar(name, calendar, replaceExisting, updateTriggers);
+		append(RECORD_CALENDAR, record);
+	}
+
+	@Override
+	public boolean removeCalendar(String calName) throws JobPersistenceException
+	{
+		boolean removed = super.removeCalendar(calName);
+		if (removed)
+		{
+			append(RECORD_REMOVE_CALENDAR, serializeRecord("calendar " + calName, out -> out.writeUTF(calName)));
+		}
+		return removed;
+	}
+
+	@Override
+	public void clearAllSchedulingData() throws JobPersistenceException
+	{
+		super.clearAllSchedulingData();
+		append(RECORD_CLEAR, new byte[] { 0 });
+	}
+
+	@Override
+	protected void jobStored(JobDetail jobDetail) throws JobPersistenceException
+	{
+		append(RECORD_JOB, finishOrSerialize(jobDetail.getKey(), out -> out.writeObject(jobDetail), out -> {
+		}));
+	}
+
+	@Override
+	protected void jobRemoved(JobKey jobKey) throws JobPersistenceException
+	{
+		append(RECORD_REMOVE_JOB, serializeRecord(jobKey, out -> out.writeObject(jobKey)));
+	}
+
+	@Override
+	protected void triggerStored(OperableTrigger trigger, boolean paused) throws JobPersistenceException
+	{
+		append(RECORD_TRIGGER, finishOrSerialize(trigger.getKey(), out -> out.writeObject(trigger),
+				out -> out.writeBoolean(paused)));
+	}
+
+	@Override
+	protected void triggerRemoved(TriggerKey triggerKey) throws JobPersistenceException
+	{
+		append(RECORD_REMOVE_TRIGGER, serializeRecord(triggerKey, out -> out.writeObject(triggerKey)));
+	}
+
+	@Override
+	protected void pausedGroupsChanged() throws JobPersistenceException
+	{
+		try
+		{
+			append(RECORD_PAUSED_GROUPS, serializePausedGroups());
+		}
+		catch (IOException e)
+		{
+			throw new JobPersistenceException("The paused groups cannot be persisted: " + e, e);
+		}
+	}
+
+	@Override
+	protected void jobFired(OperableTrigger trigger, JobDetail job) throws JobPersistenceException
+	{
+		if (!job.requestsRecovery())
+		{
+			return;
+		}
+		byte[] fired = serializeRecord(job.getKey(), out -> {
+			out.writeUTF(trigger.getFireInstanceId());
+			out.writeObject(trigger.getKey());
+			out.writeObject(job.getKey());
+			out.writeLong(System.currentTimeMillis());
+			out.writeLong(trigger.getPreviousFireTime().getTime());
+			out.writeInt(trigger.getPriority());
+		});
+		executing.put(trigger.getFireInstanceId(), fired);
+		append(RECORD_FIRED, fired);
+	}
+
+	@Override
+	protected void jobCompleted(OperableTrigger trigger, JobDetail job) throws JobPersistenceException
+	{
+		if (executing.remove(trigger.getFireInstanceId()) != null)
+		{
+			append(RECORD_COMPLETED, serializeRecord(job.getKey(), out -> out.writeUTF(trigger.getFireInstanceId())));
+		}
+	}
+
+	/**
+	 * Compact the log if necessary, before acquiring triggers.
+	 *
+	 * @see com.jensfendler.ninjaquartz.store.ConcurrentRAMJobStore#acquireNextTriggers(long,
+	 *      int, long)
+	 */
+	@Override
+	public List<OperableTrigger> acquireNextTriggers(long noLaterThan, int maxCount, long timeWindow)
+	{
+		int size;
+		synchronized (logLock)
+		{
+			size = log == null ? 0 : log.size();
+		}
+		if (size > compactionThreshold && size > 2 * compactedSize)
+		{
+			try
+			{
+				compact();
+			}
+			catch (IOException e)
+			{
+				logger.error("Failed to compact job store {}.", file, e);
+			}
+		}
+		return super.acquireNextTriggers(noLaterThan, maxCount, timeWindow);
+	}
+
+	@Override
+	public boolean supportsPersistence()
+	{
+		return true;
+	}
+
+	/**
+	 * Compact and close the log.
+	 *
+	 * @see com.jensfendler.ninjaquartz.store.ConcurrentRAMJobStore#shutdown()
+	 */
+	@Override
+	public void shutdown()
+	{
+		try
+		{
+			compact();
+		}
+		catch (IOException e)
+		{
+			logger.error("Failed to compact job store {}.", file, e);
+		}
+		synchronized (logLock)
+		{
+			if (log != null)
+			{
+				try
+				{
+					log.close();
+				}
+				catch (IOException e)
+				{
+					logger.error("Failed to close job store {}.", file, e);
+				}
+				log = null;
+			}
+		}
+	}
+
+	/**
+	 * A record serialized up to its tail, which is only known once the job or
+	 * trigger has been stored.
+	 */
+	private static class PendingRecord
+	{
+		private final Object key;
+
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+
+		private final ObjectOutputStream out;
+
+		PendingRecord(Object key, Writer writer) throws IOException
+		{
+			this.key = key;
+			this.out = new StoreOutputStream(bytes);
+			writer.write(out);
+		}
+
+		byte[] finish(Writer tail) throws IOException
+		{
+			tail.write(out);
+			out.close();
+			return bytes.toByteArray();
+		}
+	}
+
+	/**
+	 * Writes {@link DetachedTask}s instead of {@link NinjaQuartzTask}s.
+	 */
+	private static class StoreOutputStream extends ObjectOutputStream
+	{
+		StoreOutputStream(OutputStream out) throws IOException
+		{
+			super(out);
+			enableReplaceObject(true);
+		}
+
+		@Override
+		protected Object replaceObject(Object obj)
+		{
+			if (obj instanceof NinjaQuartzTask && !(obj instanceof DetachedTask))
+			{
+				return new DetachedTask((NinjaQuartzTask) obj);
+			}
+			return obj;
+		}
+	}
+
+	/**
+	 * Loads classes through Quartz' class load helper.
+	 */
+	private class StoreInputStream extends ObjectInputStream
+	{
+		StoreInputStream(InputStream in) throws IOException
+		{
+			super(in);
+		}
+
+		@Override
+		protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException
+		{
+			try
+			{
+				return classLoadHelper.loadClass(desc.getName());
+			}
+			catch (ClassNotFoundException e)
+			{
+				return super.resolveClass(desc);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.store;
+
+import org.quartz.JobDataMap;
+import org.quartz.impl.jdbcjobstore.NoSuchDelegateException;
+import org.quartz.impl.jdbcjobstore.StdJDBCDelegate;
+import org.quartz.spi.ClassLoadHelper;
+import org.slf4j.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.sql.Blob;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A JDBC delegate writing the {@link JobDataMap}s of jobs and triggers with a
+ * {@link JobDataMapCodec} instead of Java serialization. Job data written by
+ * Quartz' {@link StdJDBCDelegate} (i.e. with Java serialization) can still be
+ * read, and is rewritten with the codec on its next update.
+ * <p>
+ * Configuration, e.g. in application.conf:
+ *
+ * <pre>
+ * quartz.org.quartz.jobStore.driverDelegateClass=com.jensfendler.ninjaquartz.store.NinjaQuartzJDBCDelegate
+ * # optional, default: CompactJobDataMapCodec
+ * quartz.org.quartz.jobStore.driverDelegateInitString=jobDataCodec=com.example.MyCodec
+ * </pre>
+ *
+ * Named schedulers with <code>jobStore=jdbc</code> use this delegate with
+ * <code>compactJobData=true</code>.
+ * With <code>org.quartz.jobStore.useProperties=true</code>, the job data is
+ * written as properties, like with Quartz' delegate.
+ *
+ * @author Jens Fendler
+ */
+public class NinjaQuartzJDBCDelegate extends StdJDBCDelegate
+{
+
+	/**
+	 * The setting of the delegate's init string naming the
+	 * {@link JobDataMapCodec} class.
+	 */
+	public static final String SETTING_JOB_DATA_CODEC = "jobDataCodec";
+
+	/**
+	 * Precedes job data written with a codec. (Java serialization streams
+	 * start with 0xACED.)
+	 */
+	private static final byte[] MAGIC = { 'N', 'Q', 'J', 'D' };
+
+	private JobDataMapCodec codec = new CompactJobDataMapCodec();
+
+	/**
+	 * @see org.quartz.impl.jdbcjobstore.StdJDBCDelegate#initialize(org.slf4j.Logger,
+	 *      java.lang.String, java.lang.String, java.lang.String,
+	 *      org.quartz.spi.ClassLoadHelper, boolean, java.lang.String)
+	 */
+	@Override
+	public void initialize(Logger logger, String tablePrefix, String schedName, String instanceId,
+			ClassLoadHelper classLoadHelper, boolean useProperties, String initString) throws NoSuchDelegateException
+	{
+		// take our settings out of the init string, pass on all others
+		List<String> settings = new ArrayList<>();
+		if (initString != null)
+		{
+			for (String setting : initString.split("\\|"))
+			{
+				String[] parts = setting.split("=", 2);
+				if (SETTING_JOB_DATA_CODEC.equals(parts[0]) && parts.length == 2 && !parts[1].isEmpty())
+				{
+					try
+					{
+						codec = (JobDataMapCodec) classLoadHelper.loadClass(parts[1].trim()).newInstance();
+					}
+					catch (ReflectiveOperationException | ClassCastException e)
+					{
+						throw new NoSuchDelegateException("Error instantiating JobDataMapCodec of type: " + parts[1],
+								e);
+					}
+				}
+				else
+				{
+					settings.add(setting);
+				}
+			}
+		}
+		super.initialize(logger, tablePrefix, schedName, instanceId, classLoadHelper, useProperties,
+				settings.isEmpty() ? null : String.join("|", settings));
+	}
+
+	/**
+	 * @return the codec of the job data
+	 */
+	public JobDataMapCodec getCodec()
+	{
+		return codec;
+	}
+
+	/**
+	 * Encode the job data with the codec.
+	 *
+	 * @see org.quartz.impl.jdbcjobstore.StdJDBCDelegate#serializeJobData(org.quartz.JobDataMap)
+	 */
+	@Override
+	protected ByteArrayOutputStream serializeJobData(JobDataMap data) throws IOException
+	{
+		if (canUseProperties() || data == null)
+		{
+			return super.serializeJobData(data);
+		}
+		byte[] encoded = codec.encode(data);
+		ByteArrayOutputStream out = new ByteArrayOutputStream(MAGIC.length + encoded.length);
+		out.write(MAGIC);
+		out.write(encoded);
+		return out;
+	}
+
+	/**
+	 * Decode job data written with the codec, and deserialize everything else.
+	 *
+	 * @see org.quartz.impl.jdbcjobstore.StdJDBCDelegate#getObjectFromBlob(java.sql.ResultSet,
+	 *      java.lang.String)
+	 */
+	@Override
+	protected Object getObjectFromBlob(ResultSet rs, String colName)
+			throws ClassNotFoundException, IOException, SQLException
+	{
+		byte[] bytes = getBytesFromBlob(rs, colName);
+		if (bytes == null || bytes.length == 0)
+		{
+			return null;
+		}
+		if (bytes.length >= MAGIC.length && Arrays.equals(MAGIC, Arrays.copyOf(bytes, MAGIC.length)))
+		{
+			return codec.decode(Arrays.copyOfRange(bytes, MAGIC.length, bytes.length), classLoadHelper);
+		}
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes)))
+		{
+			return in.readObject();
+		}
+	}
+
+	/**
+	 * Read the content of a BLOB column. Override for databases needing
+	 * special handling of BLOBs.
+	 *
+	 * @param rs      the result set, already queued to the correct row
+	 * @param colName the column name for the BLOB
+	 * @return the content of the BLOB, or null
+	 */
+	protected byte[] getBytesFromBlob(ResultSet rs, String colName) throws SQLException
+	{
+		Blob blob = rs.getBlob(colName);
+		if (blob == null || blob.length() == 0)
+		{
+			return null;
+		}
+		return blob.getBytes(1, (int) blob.length());
+	}
+
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.value;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A value published by a scheduled method (see
+ * {@link com.jensfendler.ninjaquartz.annotations.QuartzSchedule#publishAs()}),
+ * e.g. an in-memory view rebuilt periodically. Every successful execution
+ * returning a non-null value replaces the published value atomically, so
+ * readers always see a complete value, with a single volatile read and
+ * without locking.
+ * <p>
+ * Readers running before the first value has been published wait for it
+ * (see {@link #get()}), or check for it (see {@link #getNow()}).
+ *
+ * @param <T> the type of the value
+ * @author Jens Fendler
+ */
+public final class ScheduledValue<T>
+{
+
+	private final String name;
+
+	private final CountDownLatch firstPublished = new CountDownLatch(1);
+
+	private volatile Published<T> published;
+
+	ScheduledValue(String name)
+	{
+		this.name = name;
+	}
+
+	/**
+	 * Publish a new value.
+	 *
+	 * @param value the value
+	 */
+	public void publish(T value)
+	{
+		if (value == null)
+		{
+			throw new NullPointerException("Null values cannot be published as " + name);
+		}
+		published = new Published<>(value, System.currentTimeMillis());
+		firstPublished.countDown();
+	}
+
+	/**
+	 * Get the latest value, waiting for the first value if necessary.
+	 *
+	 * @return the latest value
+	 * @throws IllegalStateException if the thread is interrupted while waiting
+	 *                               for the first value
+	 */
+	public T get()
+	{
+		Published<T> p = published;
+		if (p != null)
+		{
+			return p.value;
+		}
+		try
+		{
+			firstPublished.await();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for the first value of " + name, e);
+		}
+		return published.value;
+	}
+
+	/**
+	 * Get the latest value, waiting up to the given time for the first value.
+	 *
+	 * @param timeout the maximum time to wait
+	 * @param unit    the time unit of the timeout
+	 * @return the latest value
+	 * @throws TimeoutException     if no value has been published in time
+	 * @throws InterruptedException if the thread is interrupted while waiting
+	 */
+	public T get(long timeout, TimeUnit unit) throws TimeoutException, InterruptedException
+	{
+		Published<T> p = published;
+		if (p != null)
+		{
+			return p.value;
+		}
+		if (!firstPublished.await(timeout, unit))
+		{
+			throw new TimeoutException("No value has been published as " + name + " yet");
+		}
+		return published.value;
+	}
+
+	/**
+	 * @return the latest value, or null if no value has been published yet
+	 */
+	public T getNow()
+	{
+		Published<T> p = published;
+		return p == null ? null : p.value;
+	}
+
+	/**
+	 * @return true if a value has been published
+	 */
+	public boolean isPresent()
+	{
+		return published != null;
+	}
+
+	/**
+	 * @return the time (in milliseconds since the epoch) the latest value has
+	 * been published, or 0
+	 */
+	public long getPublishedAt()
+	{
+		Published<T> p = published;
+		return p == null ? 0 : p.publishedAt;
+	}
+
+	/**
+	 * @param unit the time unit of the age
+	 * @return the time since the latest value has been published, or -1 if no
+	 * value has been published yet
+	 */
+	public long getAge(TimeUnit unit)
+	{
+		Published<T> p = published;
+		return p == null ? -1 : unit.convert(System.currentTimeMillis() - p.publishedAt, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @param maxAge the maximum age of a fresh value
+	 * @param unit   the time unit of the maximum age
+	 * @return true if no value has been published yet, or the latest value is
+	 * older than the given age
+	 */
+	public boolean isStale(long maxAge, TimeUnit unit)
+	{
+		Published<T> p = published;
+		return p == null || System.currentTimeMillis() - p.publishedAt > unit.toMillis(maxAge);
+	}
+
+	/**
+	 * @return the name the value is published as
+	 */
+	public String getName()
+	{
+		return name;
+	}
+
+	/**
+	 * A value, and the time it has been published. Both are replaced
+	 * together.
+	 */
+	private static final class Published<T>
+	{
+		final T value;
+
+		final long publishedAt;
+
+		Published(T value, long publishedAt)
+		{
+			this.value = value;
+			this.publishedAt = publishedAt;
+		}
+	}
+
+}
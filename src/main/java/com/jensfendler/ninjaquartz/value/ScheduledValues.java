@@ -0,0 +1,59 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.value;
+
+import com.google.inject.Singleton;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The values published by scheduled methods (see
+ * {@link com.jensfendler.ninjaquartz.annotations.QuartzSchedule#publishAs()}),
+ * by name. Readers inject this class, and keep the {@link ScheduledValue}:
+ *
+ * <code>
+ * &#64;Inject
+ * public PriceController(ScheduledValues values) {
+ * this.prices = values.get("prices");
+ * }
+ * ...
+ * PriceTable table = prices.get();
+ * </code>
+ *
+ * @author Jens Fendler
+ */
+@Singleton
+public class ScheduledValues
+{
+
+	private final ConcurrentMap<String, ScheduledValue<?>> values = new ConcurrentHashMap<>();
+
+	/**
+	 * Get a value by name. A value whose scheduled method has not been
+	 * scheduled yet is created.
+	 *
+	 * @param name the name the value is published as
+	 * @param <T>  the type of the value
+	 * @return the value
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> ScheduledValue<T> get(String name)
+	{
+		return (ScheduledValue<T>) values.computeIfAbsent(name, ScheduledValue::new);
+	}
+
+}
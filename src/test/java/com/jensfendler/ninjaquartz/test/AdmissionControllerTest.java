@@ -0,0 +1,143 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.test;
+
+import com.jensfendler.ninjaquartz.admission.AdmissionController;
+import com.jensfendler.ninjaquartz.admission.LatencyHistogram;
+import com.jensfendler.ninjaquartz.job.NinjaQuartzJobStatus;
+import com.jensfendler.ninjaquartz.job.NonConcurrentNinjaQuartzJob;
+
+import org.junit.jupiter.api.Test;
+import org.quartz.JobBuilder;
+import org.quartz.JobDetail;
+import org.quartz.JobExecutionContext;
+import org.quartz.Scheduler;
+import org.quartz.Trigger;
+import org.quartz.TriggerBuilder;
+import org.quartz.impl.JobExecutionContextImpl;
+import org.quartz.spi.OperableTrigger;
+import org.quartz.spi.TriggerFiredBundle;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import ninja.utils.NinjaMode;
+import ninja.utils.NinjaPropertiesImpl;
+
+/**
+ * Tests holding back jobs of low priority while requests are slow, with a
+ * scheduler recording the triggers of deferred fires.
+ */
+public class AdmissionControllerTest
+{
+
+	private final FakeScheduler fakeScheduler = new FakeScheduler();
+
+	private final Scheduler scheduler = fakeScheduler.get();
+
+	private final List<Trigger> deferred = fakeScheduler.scheduledTriggers;
+
+	@Test
+	public void percentiles()
+	{
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.percentileAndReset(99));
+		for (int i = 1; i <= 100; i++)
+		{
+			histogram.record(i < 100 ? 5 : 1000);
+		}
+		assertEquals(5, histogram.percentileAndReset(99));
+		for (int i = 1; i <= 100; i++)
+		{
+			histogram.record(i < 90 ? 5 : 1000);
+		}
+		long p99 = histogram.percentileAndReset(99);
+		assertTrue(p99 >= 1000 && p99 < 1250, "Wrong bucket for 1000ms: " + p99);
+		assertEquals(0, histogram.percentileAndReset(99), "Histogram not reset");
+	}
+
+	@Test
+	public void holdsBackLowPriorityJobs() throws Exception
+	{
+		NinjaPropertiesImpl properties = new NinjaPropertiesImpl(NinjaMode.test);
+		properties.setProperty(AdmissionController.CONF_ENABLED, "true");
+		properties.setProperty(AdmissionController.CONF_SAMPLE_INTERVAL, "0");
+		properties.setProperty(AdmissionController.CONF_LATENCY_THRESHOLD, "100");
+		properties.setProperty(AdmissionController.CONF_CPU_THRESHOLD, "0");
+		properties.setProperty(AdmissionController.CONF_RESUME, "50");
+		properties.setProperty(AdmissionController.CONF_ACTION, AdmissionController.ACTION_DEFER);
+		AdmissionController controller = new AdmissionController(properties);
+		NinjaQuartzJobStatus status = new NinjaQuartzJobStatus();
+		JobExecutionContext low = context(1);
+		JobExecutionContext high = context(Trigger.DEFAULT_PRIORITY);
+
+		requests(controller, 10);
+		assertTrue(controller.admit(low, status), "Low-priority job held back without load");
+
+		requests(controller, 200);
+		assertFalse(controller.admit(low, status), "Low-priority job admitted under load");
+		assertTrue(controller.isUnderPressure());
+		assertEquals(1, deferred.size(), "Fire not deferred");
+		assertTrue(deferred.get(0).getJobDataMap().containsKey(AdmissionController.DEFERRED_KEY));
+
+		requests(controller, 200);
+		assertTrue(controller.admit(high, status), "High-priority job held back");
+		requests(controller, 200);
+		assertFalse(controller.admit(low, status));
+		assertEquals(1, deferred.size(), "Fire deferred while a deferred fire is pending");
+
+		// below the threshold, but not low enough to resume
+		requests(controller, 80);
+		assertFalse(controller.admit(low, status), "Low-priority job admitted above the resume threshold");
+
+		requests(controller, 10);
+		assertTrue(controller.admit(low, status), "Low-priority job held back after the load dropped");
+		assertFalse(controller.isUnderPressure());
+
+		assertEquals(3, controller.getAdmittedCount());
+		assertEquals(1, controller.getDeferredCount());
+		assertEquals(2, controller.getSkippedCount());
+		assertEquals(1, controller.getPressureCount());
+		assertEquals(1, status.getAdmissionDeferCount());
+		assertEquals(2, status.getAdmissionSkipCount());
+	}
+
+	private static void requests(AdmissionController controller, long millis)
+	{
+		for (int i = 0; i < 100; i++)
+		{
+			controller.recordLatency(TimeUnit.MILLISECONDS.toNanos(millis));
+		}
+	}
+
+	private JobExecutionContext context(int priority)
+	{
+		JobDetail jobDetail = JobBuilder.newJob(NonConcurrentNinjaQuartzJob.class).withIdentity("report" + priority)
+				.build();
+		OperableTrigger trigger = (OperableTrigger) TriggerBuilder.newTrigger().forJob(jobDetail)
+				.withPriority(priority).build();
+		Date now = new Date();
+		return new JobExecutionContextImpl(scheduler,
+				new TriggerFiredBundle(jobDetail, trigger, null, false, now, now, null, null),
+				new NonConcurrentNinjaQuartzJob());
+	}
+
+}
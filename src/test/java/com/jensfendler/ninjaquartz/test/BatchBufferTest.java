@@ -0,0 +1,107 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.test;
+
+import com.jensfendler.ninjaquartz.annotations.QuartzBatch;
+import com.jensfendler.ninjaquartz.batch.BatchBuffer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the overflow policies and size-triggered flushes of batch buffers.
+ */
+public class BatchBufferTest
+{
+
+	@QuartzBatch(name = "dropOldest", maxBatchSize = 2, capacity = 3, overflow = QuartzBatch.OVERFLOW_DROP_OLDEST)
+	public void dropOldest()
+	{
+	}
+
+	@QuartzBatch(name = "reject", maxBatchSize = 2, capacity = 3, overflow = QuartzBatch.OVERFLOW_REJECT)
+	public void reject()
+	{
+	}
+
+	@QuartzBatch(name = "block", maxBatchSize = 2, capacity = 3, offerTimeout = 50)
+	public void block()
+	{
+	}
+
+	@Test
+	public void dropsOldest() throws Exception
+	{
+		BatchBuffer<Integer> buffer = buffer("dropOldest");
+		for (int i = 0; i < 5; i++)
+		{
+			assertTrue(buffer.offer(i));
+		}
+		assertEquals(2, buffer.getDroppedCount());
+		assertEquals(Arrays.asList(2, 3), buffer.drain());
+		assertEquals(Arrays.asList(4), buffer.drain());
+		assertEquals(0, buffer.getSize());
+	}
+
+	@Test
+	public void rejectsAndBlocks() throws Exception
+	{
+		for (String name : new String[] { "reject", "block" })
+		{
+			BatchBuffer<Integer> buffer = buffer(name);
+			for (int i = 0; i < 3; i++)
+			{
+				assertTrue(buffer.offer(i));
+			}
+			long start = System.nanoTime();
+			assertFalse(buffer.offer(3), name + " accepted an item beyond its capacity");
+			assertEquals(name.equals("block"), System.nanoTime() - start >= 50_000_000L, name + " timeout");
+			assertEquals(1, buffer.getRejectedCount());
+			assertEquals(3, buffer.getSize());
+		}
+	}
+
+	@Test
+	public void flushesFullBatches() throws Exception
+	{
+		AtomicInteger flushes = new AtomicInteger();
+		BatchBuffer<Integer> buffer = buffer("dropOldest");
+		buffer.setFlusher(flushes::incrementAndGet);
+		buffer.offer(0);
+		assertEquals(0, flushes.get());
+		buffer.offer(1);
+		buffer.offer(2);
+		assertEquals(1, flushes.get(), "Flushed again before the consumer ran");
+		buffer.flushed();
+		buffer.drain();
+		buffer.offer(3);
+		assertEquals(2, flushes.get());
+	}
+
+	private BatchBuffer<Integer> buffer(String name) throws Exception
+	{
+		BatchBuffer<Integer> buffer = new BatchBuffer<>(name);
+		buffer.configure(getClass().getMethod(name).getAnnotation(QuartzBatch.class));
+		return buffer;
+	}
+
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.test;
+
+import com.jensfendler.ninjaquartz.delay.CoalescingTriggers;
+import com.jensfendler.ninjaquartz.delay.NinjaQuartzDelays;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.quartz.JobKey;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import ninja.utils.NinjaMode;
+import ninja.utils.NinjaPropertiesImpl;
+
+/**
+ * Tests debounced and throttled fires, with a scheduler recording the keys
+ * its job is fired for.
+ */
+public class CoalescingTriggersTest
+{
+
+	private static final JobKey JOB = JobKey.jobKey("recompute");
+
+	private final FakeScheduler scheduler = new FakeScheduler();
+
+	private final NinjaQuartzDelays delays = new NinjaQuartzDelays(new NinjaPropertiesImpl(NinjaMode.test));
+
+	private final CoalescingTriggers triggers = new CoalescingTriggers(delays, scheduler::factory);
+
+	@AfterEach
+	public void after()
+	{
+		delays.shutdown();
+	}
+
+	@Test
+	public void debounce() throws Exception
+	{
+		for (int i = 0; i < 10; i++)
+		{
+			for (int key = 0; key < 1000; key++)
+			{
+				triggers.debounce(JOB, "k" + key, 500, TimeUnit.MILLISECONDS);
+			}
+			Thread.sleep(20);
+		}
+		assertEquals(0, scheduler.firedJobs.size(), "Fired within the quiet period");
+
+		Thread.sleep(1500);
+		assertEquals(1000, scheduler.firedJobs.size(), "Not every key fired once");
+		assertEquals(1000, scheduler.firedData.stream().map(data -> data.getString(CoalescingTriggers.DATA_KEY))
+				.distinct().count());
+		assertEquals(0, triggers.getDebouncedCount());
+	}
+
+	@Test
+	public void throttle() throws Exception
+	{
+		for (int i = 0; i < 30; i++)
+		{
+			triggers.throttle(JOB, "k", 100, TimeUnit.MILLISECONDS);
+			Thread.sleep(10);
+		}
+		Thread.sleep(400);
+		// leading fire, then at most one fire per window
+		int fires = scheduler.firedJobs.size();
+		assertTrue(fires >= 3 && fires <= 5, fires + " fires in 300ms with 100ms windows");
+		assertEquals(0, triggers.getThrottledCount());
+	}
+
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.test;
+
+import com.jensfendler.ninjaquartz.job.ConcurrentNinjaQuartzJob;
+import com.jensfendler.ninjaquartz.store.ConcurrentRAMJobStore;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.quartz.JobDetail;
+import org.quartz.SimpleScheduleBuilder;
+import org.quartz.Trigger.CompletedExecutionInstruction;
+import org.quartz.TriggerBuilder;
+import org.quartz.simpl.CascadingClassLoadHelper;
+import org.quartz.simpl.RAMJobStore;
+import org.quartz.spi.JobStore;
+import org.quartz.spi.OperableTrigger;
+import org.quartz.spi.TriggerFiredResult;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares the fire rate of the {@link ConcurrentRAMJobStore} with the
+ * {@link RAMJobStore} for 1 to 32 worker threads. This benchmark is not part
+ * of the build; run it with
+ *
+ * <pre>
+ * mvn test -Dbenchmark=true -Dtest=ConcurrentRAMJobStoreBenchmarkTest
+ * </pre>
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class ConcurrentRAMJobStoreBenchmarkTest
+{
+
+	/**
+	 * Fires the same number of triggers through both stores, with the
+	 * scheduler thread acquiring and firing triggers, and 1 to 32 worker
+	 * threads completing the jobs. Prints the fire rates, and checks that
+	 * every fire is completed exactly once.
+	 */
+	@Test
+	public void fireRateScaling() throws Exception
+	{
+		for (int workers : new int[] { 1, 4, 32 })
+		{
+			RAMJobStore ramJobStore = new RAMJobStore();
+			ramJobStore.setMisfireThreshold(TimeUnit.HOURS.toMillis(2));
+			ramJobStore.initialize(new CascadingClassLoadHelper(), ConcurrentRAMJobStoreTest.SIGNALER);
+			ConcurrentRAMJobStore concurrentStore = new ConcurrentRAMJobStore();
+			concurrentStore.setMisfireThreshold(TimeUnit.HOURS.toMillis(2));
+			concurrentStore.initialize(new CascadingClassLoadHelper(), ConcurrentRAMJobStoreTest.SIGNALER);
+
+			long ram = fire(ramJobStore, workers);
+			long concurrent = fire(concurrentStore, workers);
+			System.out.println(String.format("%2d workers: RAMJobStore %,9d fires/s, ConcurrentRAMJobStore %,9d fires/s",
+					workers, ram, concurrent));
+		}
+	}
+
+	private static long fire(JobStore store, int workers) throws Exception
+	{
+		int jobs = 256;
+		int fires = 100_000;
+		long start = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1);
+		for (int i = 0; i < jobs; i++)
+		{
+			JobDetail job = ConcurrentRAMJobStoreTest.job("job-" + i, ConcurrentNinjaQuartzJob.class);
+			OperableTrigger trigger = (OperableTrigger) TriggerBuilder.newTrigger().withIdentity("trigger-" + i)
+					.forJob(job).startAt(new Date(start + i))
+					.withSchedule(SimpleScheduleBuilder.repeatMinutelyForever().withIntervalInMilliseconds(1)).build();
+			trigger.computeFirstFireTime(null);
+			store.storeJobAndTrigger(job, trigger);
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(workers);
+		AtomicLong completed = new AtomicLong();
+		long begin = System.nanoTime();
+		int submitted = 0;
+		while (submitted < fires)
+		{
+			List<OperableTrigger> acquired = store.acquireNextTriggers(Long.MAX_VALUE, 64, 0);
+			for (TriggerFiredResult result : store.triggersFired(acquired))
+			{
+				OperableTrigger trigger = result.getTriggerFiredBundle().getTrigger();
+				JobDetail jobDetail = result.getTriggerFiredBundle().getJobDetail();
+				pool.execute(() -> {
+					store.triggeredJobComplete(trigger, jobDetail, CompletedExecutionInstruction.NOOP);
+					completed.incrementAndGet();
+				});
+				submitted++;
+			}
+		}
+		pool.shutdown();
+		assertTrue(pool.awaitTermination(1, TimeUnit.MINUTES), "Workers did not finish");
+		long nanos = System.nanoTime() - begin;
+
+		assertEquals(submitted, completed.get());
+		assertEquals(jobs, store.getNumberOfTriggers());
+		return TimeUnit.SECONDS.toNanos(submitted) / nanos;
+	}
+
+}
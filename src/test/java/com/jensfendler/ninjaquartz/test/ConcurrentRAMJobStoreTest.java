@@ -0,0 +1,396 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.test;
+
+import com.jensfendler.ninjaquartz.job.ConcurrentNinjaQuartzJob;
+import com.jensfendler.ninjaquartz.job.NonConcurrentNinjaQuartzJob;
+import com.jensfendler.ninjaquartz.store.ConcurrentRAMJobStore;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.quartz.JobBuilder;
+import org.quartz.JobDetail;
+import org.quartz.JobKey;
+import org.quartz.JobPersistenceException;
+import org.quartz.ObjectAlreadyExistsException;
+import org.quartz.SchedulerException;
+import org.quartz.SimpleScheduleBuilder;
+import org.quartz.Trigger;
+import org.quartz.Trigger.CompletedExecutionInstruction;
+import org.quartz.Trigger.TriggerState;
+import org.quartz.TriggerBuilder;
+import org.quartz.impl.calendar.BaseCalendar;
+import org.quartz.impl.matchers.GroupMatcher;
+import org.quartz.simpl.CascadingClassLoadHelper;
+import org.quartz.simpl.RAMJobStore;
+import org.quartz.spi.JobStore;
+import org.quartz.spi.OperableTrigger;
+import org.quartz.spi.SchedulerSignaler;
+import org.quartz.spi.TriggerFiredResult;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the job store semantics of the {@link ConcurrentRAMJobStore}. The
+ * same tests run against Quartz's {@link RAMJobStore} in
+ * {@link RAMJobStoreReferenceTest}, so both stores are known to behave alike.
+ */
+public class ConcurrentRAMJobStoreTest
+{
+	static final SchedulerSignaler SIGNALER = new SchedulerSignaler()
+	{
+		public void notifyTriggerListenersMisfired(Trigger trigger)
+		{
+		}
+
+		public void notifySchedulerListenersFinalized(Trigger trigger)
+		{
+		}
+
+		public void notifySchedulerListenersJobDeleted(JobKey jobKey)
+		{
+		}
+
+		public void signalSchedulingChange(long candidateNewNextFireTime)
+		{
+		}
+
+		public void notifySchedulerListenersError(String string, SchedulerException jpe)
+		{
+		}
+	};
+
+	private JobStore store;
+
+	@BeforeEach
+	public void before() throws Exception
+	{
+		store = createStore();
+		store.initialize(new CascadingClassLoadHelper(), SIGNALER);
+	}
+
+	/**
+	 * @return the job store to test
+	 */
+	protected JobStore createStore()
+	{
+		return new ConcurrentRAMJobStore();
+	}
+
+	/**
+	 * @return true if the store acquires a repeating trigger again after its
+	 *         job has set it to the error state
+	 */
+	protected boolean acquiresErrorTriggers()
+	{
+		return false;
+	}
+
+	@Test
+	public void acquireInFireTimeOrder() throws Exception
+	{
+		long now = System.currentTimeMillis();
+		JobDetail job = job("job", ConcurrentNinjaQuartzJob.class);
+		store.storeJob(job, false);
+		store.storeTrigger(trigger("late", job, now + 300), false);
+		store.storeTrigger(trigger("early", job, now + 100), false);
+		store.storeTrigger(trigger("middle", job, now + 200), false);
+
+		List<OperableTrigger> acquired = store.acquireNextTriggers(now + 1000, 10, 1000);
+		assertEquals(3, acquired.size());
+		assertEquals("early", acquired.get(0).getKey().getName());
+		assertEquals("middle", acquired.get(1).getKey().getName());
+		assertEquals("late", acquired.get(2).getKey().getName());
+
+		// acquired triggers are not acquired again until released
+		assertTrue(store.acquireNextTriggers(now + 1000, 10, 1000).isEmpty());
+		store.releaseAcquiredTrigger(acquired.get(0));
+		assertEquals(1, store.acquireNextTriggers(now + 1000, 10, 1000).size());
+	}
+
+	@Test
+	public void storeAndRemove() throws Exception
+	{
+		JobDetail job = job("job", ConcurrentNinjaQuartzJob.class);
+		OperableTrigger trigger = trigger("trigger", job, System.currentTimeMillis() + 1000);
+		store.storeJobAndTrigger(job, trigger);
+
+		assertThrows(SchedulerException.class, () -> store.storeTrigger(trigger, false));
+		assertThrows(SchedulerException.class,
+				() -> store.storeTrigger(trigger("orphan", job("missing", ConcurrentNinjaQuartzJob.class), 0), false));
+		assertEquals(Collections.singleton(job.getKey()), store.getJobKeys(GroupMatcher.anyJobGroup()));
+		assertEquals(1, store.getTriggersForJob(job.getKey()).size());
+
+		// removing the only trigger of a non-durable job removes the job
+		assertTrue(store.removeTrigger(trigger.getKey()));
+		assertFalse(store.checkExists(job.getKey()));
+		assertTrue(store.getJobGroupNames().isEmpty());
+		assertTrue(store.getTriggerGroupNames().isEmpty());
+		assertTrue(store.acquireNextTriggers(Long.MAX_VALUE, 10, 0).isEmpty());
+	}
+
+	@Test
+	public void pauseAndResume() throws Exception
+	{
+		long now = System.currentTimeMillis();
+		JobDetail job = job("job", ConcurrentNinjaQuartzJob.class);
+		OperableTrigger trigger = trigger("trigger", job, now + 100);
+		store.storeJobAndTrigger(job, trigger);
+
+		store.pauseTriggers(GroupMatcher.triggerGroupEquals(trigger.getKey().getGroup()));
+		assertEquals(TriggerState.PAUSED, store.getTriggerState(trigger.getKey()));
+		assertTrue(store.acquireNextTriggers(now + 1000, 10, 0).isEmpty());
+
+		// triggers added to a paused group are paused
+		OperableTrigger another = trigger("another", job, now + 100);
+		store.storeTrigger(another, false);
+		assertEquals(TriggerState.PAUSED, store.getTriggerState(another.getKey()));
+
+		store.resumeAll();
+		assertEquals(TriggerState.NORMAL, store.getTriggerState(trigger.getKey()));
+		assertEquals(2, store.acquireNextTriggers(now + 1000, 10, 0).size());
+	}
+
+	@Test
+	public void blockNonConcurrentJobs() throws Exception
+	{
+		long now = System.currentTimeMillis();
+		JobDetail job = job("job", NonConcurrentNinjaQuartzJob.class);
+		OperableTrigger first = trigger("first", job, now - 10);
+		OperableTrigger second = trigger("second", job, now - 5);
+		store.storeJob(job, false);
+		store.storeTrigger(first, false);
+		store.storeTrigger(second, false);
+
+		// only one trigger of the job is acquired at once
+		List<OperableTrigger> acquired = store.acquireNextTriggers(now + 1000, 10, 1000);
+		assertEquals(1, acquired.size());
+		List<TriggerFiredResult> fired = store.triggersFired(acquired);
+		assertEquals(1, fired.size());
+		assertEquals(TriggerState.BLOCKED, store.getTriggerState(second.getKey()));
+		assertTrue(store.acquireNextTriggers(now + 1000, 10, 1000).isEmpty());
+
+		store.triggeredJobComplete(acquired.get(0), fired.get(0).getTriggerFiredBundle().getJobDetail(),
+				CompletedExecutionInstruction.NOOP);
+		assertEquals(TriggerState.NORMAL, store.getTriggerState(second.getKey()));
+		acquired = store.acquireNextTriggers(now + 1000, 10, 1000);
+		assertEquals(1, acquired.size());
+		assertEquals("second", acquired.get(0).getKey().getName());
+	}
+
+	@Test
+	public void completeTriggers() throws Exception
+	{
+		JobDetail job = job("job", ConcurrentNinjaQuartzJob.class);
+		OperableTrigger trigger = repeatingTrigger(job);
+		store.storeJobAndTrigger(job, trigger);
+
+		List<OperableTrigger> acquired = store.acquireNextTriggers(Long.MAX_VALUE, 1, 0);
+		List<TriggerFiredResult> fired = store.triggersFired(acquired);
+		store.triggeredJobComplete(acquired.get(0), fired.get(0).getTriggerFiredBundle().getJobDetail(),
+				CompletedExecutionInstruction.SET_TRIGGER_ERROR);
+		assertEquals(TriggerState.ERROR, store.getTriggerState(trigger.getKey()));
+
+		store.resetTriggerFromErrorState(trigger.getKey());
+		acquired = store.acquireNextTriggers(Long.MAX_VALUE, 1, 0);
+		fired = store.triggersFired(acquired);
+		store.triggeredJobComplete(acquired.get(0), fired.get(0).getTriggerFiredBundle().getJobDetail(),
+				CompletedExecutionInstruction.DELETE_TRIGGER);
+		assertNull(store.retrieveTrigger(trigger.getKey()));
+		assertFalse(store.checkExists(job.getKey()));
+	}
+
+	@Test
+	public void skipErrorTriggers() throws Exception
+	{
+		JobDetail job = job("job", ConcurrentNinjaQuartzJob.class);
+		OperableTrigger trigger = repeatingTrigger(job);
+		store.storeJobAndTrigger(job, trigger);
+
+		List<OperableTrigger> acquired = store.acquireNextTriggers(Long.MAX_VALUE, 1, 0);
+		List<TriggerFiredResult> fired = store.triggersFired(acquired);
+		store.triggeredJobComplete(acquired.get(0), fired.get(0).getTriggerFiredBundle().getJobDetail(),
+				CompletedExecutionInstruction.SET_TRIGGER_ERROR);
+		assertEquals(TriggerState.ERROR, store.getTriggerState(trigger.getKey()));
+		assertEquals(acquiresErrorTriggers() ? 1 : 0, store.acquireNextTriggers(Long.MAX_VALUE, 1, 0).size());
+	}
+
+	@Test
+	public void misfiredTriggers() throws Exception
+	{
+		long now = System.currentTimeMillis();
+		long startAt = now - 120000L;
+		JobDetail job = job("job", ConcurrentNinjaQuartzJob.class);
+		OperableTrigger trigger = (OperableTrigger) TriggerBuilder.newTrigger().withIdentity("hourly").forJob(job)
+				.startAt(new Date(startAt)).withSchedule(SimpleScheduleBuilder.repeatHourlyForever()
+						.withMisfireHandlingInstructionNextWithRemainingCount())
+				.build();
+		trigger.computeFirstFireTime(null);
+		store.storeJobAndTrigger(job, trigger);
+
+		// a fire missed by more than the misfire threshold is skipped
+		assertTrue(store.acquireNextTriggers(now + 1000, 1, 0).isEmpty());
+		assertEquals(startAt + 3600000L, store.retrieveTrigger(trigger.getKey()).getNextFireTime().getTime());
+
+		// a fire missed by less is acquired
+		OperableTrigger late = trigger("late", job, now - 1000);
+		store.storeTrigger(late, false);
+		List<OperableTrigger> acquired = store.acquireNextTriggers(now + 1000, 1, 0);
+		assertEquals(1, acquired.size());
+		assertEquals(late.getKey(), acquired.get(0).getKey());
+	}
+
+	@Test
+	public void calendars() throws Exception
+	{
+		long startAt = System.currentTimeMillis() + 60000L;
+		store.storeCalendar("cal", new ExcludedUntil(0), false, false);
+		assertThrows(ObjectAlreadyExistsException.class,
+				() -> store.storeCalendar("cal", new ExcludedUntil(0), false, false));
+		assertEquals(Collections.singletonList("cal"), store.getCalendarNames());
+
+		JobDetail job = job("job", ConcurrentNinjaQuartzJob.class);
+		OperableTrigger trigger = (OperableTrigger) TriggerBuilder.newTrigger().withIdentity("hourly").forJob(job)
+				.startAt(new Date(startAt)).withSchedule(SimpleScheduleBuilder.repeatHourlyForever())
+				.modifiedByCalendar("cal").build();
+		trigger.computeFirstFireTime(store.retrieveCalendar("cal"));
+		store.storeJobAndTrigger(job, trigger);
+		assertThrows(JobPersistenceException.class, () -> store.removeCalendar("cal"));
+
+		// replacing the calendar moves the fire times of its triggers
+		store.storeCalendar("cal", new ExcludedUntil(startAt + 1800000L), true, true);
+		assertEquals(startAt + 3600000L, store.retrieveTrigger(trigger.getKey()).getNextFireTime().getTime());
+		assertEquals(startAt + 1800000L, ((ExcludedUntil) store.retrieveCalendar("cal")).until);
+
+		store.removeTrigger(trigger.getKey());
+		assertTrue(store.removeCalendar("cal"));
+		assertNull(store.retrieveCalendar("cal"));
+		assertEquals(0, store.getNumberOfCalendars());
+	}
+
+	@Test
+	public void pauseAndResumeJobs() throws Exception
+	{
+		long now = System.currentTimeMillis();
+		JobDetail a = JobBuilder.newJob(ConcurrentNinjaQuartzJob.class).withIdentity("job", "a").build();
+		JobDetail b = JobBuilder.newJob(ConcurrentNinjaQuartzJob.class).withIdentity("job", "b").build();
+		OperableTrigger triggerA = trigger("a", a, now + 100);
+		OperableTrigger triggerB = trigger("b", b, now + 100);
+		store.storeJobAndTrigger(a, triggerA);
+		store.storeJobAndTrigger(b, triggerB);
+
+		assertEquals(Collections.singletonList("a"), store.pauseJobs(GroupMatcher.jobGroupEquals("a")));
+		assertEquals(TriggerState.PAUSED, store.getTriggerState(triggerA.getKey()));
+		assertEquals(TriggerState.NORMAL, store.getTriggerState(triggerB.getKey()));
+		List<OperableTrigger> acquired = store.acquireNextTriggers(now + 1000, 10, 0);
+		assertEquals(1, acquired.size());
+		assertEquals(triggerB.getKey(), acquired.get(0).getKey());
+		store.releaseAcquiredTrigger(acquired.get(0));
+
+		// jobs added to a paused group are paused
+		JobDetail another = JobBuilder.newJob(ConcurrentNinjaQuartzJob.class).withIdentity("another", "a").build();
+		OperableTrigger anotherTrigger = trigger("another", another, now + 100);
+		store.storeJobAndTrigger(another, anotherTrigger);
+		assertEquals(TriggerState.PAUSED, store.getTriggerState(anotherTrigger.getKey()));
+
+		assertTrue(store.resumeJobs(GroupMatcher.jobGroupStartsWith("a")).contains("a"));
+		assertEquals(TriggerState.NORMAL, store.getTriggerState(triggerA.getKey()));
+		assertEquals(TriggerState.NORMAL, store.getTriggerState(anotherTrigger.getKey()));
+		assertEquals(3, store.acquireNextTriggers(now + 1000, 10, 0).size());
+	}
+
+	@Test
+	public void replaceTrigger() throws Exception
+	{
+		long now = System.currentTimeMillis();
+		JobDetail job = job("job", ConcurrentNinjaQuartzJob.class);
+		OperableTrigger trigger = trigger("trigger", job, now + 100);
+		store.storeJobAndTrigger(job, trigger);
+
+		OperableTrigger replacement = trigger("replacement", job, now + 200);
+		assertTrue(store.replaceTrigger(trigger.getKey(), replacement));
+		assertFalse(store.checkExists(trigger.getKey()));
+		assertTrue(store.checkExists(job.getKey()));
+		assertEquals(replacement.getKey(), store.getTriggersForJob(job.getKey()).get(0).getKey());
+		List<OperableTrigger> acquired = store.acquireNextTriggers(now + 1000, 10, 0);
+		assertEquals(1, acquired.size());
+		assertEquals(replacement.getKey(), acquired.get(0).getKey());
+		store.releaseAcquiredTrigger(acquired.get(0));
+
+		assertFalse(store.replaceTrigger(trigger.getKey(), trigger("unused", job, now + 100)));
+		JobDetail other = job("other", ConcurrentNinjaQuartzJob.class);
+		store.storeJob(other, false);
+		assertThrows(JobPersistenceException.class,
+				() -> store.replaceTrigger(replacement.getKey(), trigger("other", other, now + 100)));
+	}
+
+	static JobDetail job(String name, Class<? extends org.quartz.Job> jobClass)
+	{
+		return JobBuilder.newJob(jobClass).withIdentity(name).build();
+	}
+
+	private static OperableTrigger repeatingTrigger(JobDetail job)
+	{
+		OperableTrigger trigger = (OperableTrigger) TriggerBuilder.newTrigger().withIdentity("trigger").forJob(job)
+				.startAt(new Date(System.currentTimeMillis() - 10))
+				.withSchedule(SimpleScheduleBuilder.repeatSecondlyForever()).build();
+		trigger.computeFirstFireTime(null);
+		return trigger;
+	}
+
+	private static OperableTrigger trigger(String name, JobDetail job, long startAt)
+	{
+		OperableTrigger trigger = (OperableTrigger) TriggerBuilder.newTrigger().withIdentity(name).forJob(job)
+				.startAt(new Date(startAt)).build();
+		trigger.computeFirstFireTime(null);
+		return trigger;
+	}
+
+	/**
+	 * A calendar excluding all times before a given time.
+	 */
+	static class ExcludedUntil extends BaseCalendar
+	{
+		private static final long serialVersionUID = 1L;
+
+		final long until;
+
+		ExcludedUntil(long until)
+		{
+			this.until = until;
+		}
+
+		@Override
+		public boolean isTimeIncluded(long timeStamp)
+		{
+			return timeStamp >= until && super.isTimeIncluded(timeStamp);
+		}
+
+		@Override
+		public long getNextIncludedTime(long timeStamp)
+		{
+			return super.getNextIncludedTime(Math.max(timeStamp, until));
+		}
+	}
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.test;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Properties;
+
+import ninja.utils.NinjaProperties;
+
+/**
+ * {@link NinjaProperties} for unit tests, with the given application.conf
+ * properties, and the defaults passed to the <code>*WithDefault</code>
+ * methods for all others. The Ninja mode is <code>test</code>.
+ *
+ * @author Jens Fendler
+ *
+ */
+final class FakeNinjaProperties
+{
+
+	private FakeNinjaProperties()
+	{
+	}
+
+	/**
+	 * @return properties falling back to the defaults for all keys
+	 */
+	static NinjaProperties defaults()
+	{
+		return of(new Properties());
+	}
+
+	/**
+	 * @param conf the application.conf properties
+	 * @return the properties
+	 */
+	static NinjaProperties of(Properties conf)
+	{
+		return (NinjaProperties) Proxy.newProxyInstance(FakeNinjaProperties.class.getClassLoader(),
+				new Class<?>[] { NinjaProperties.class }, (proxy, method, args) -> get(conf, method, args));
+	}
+
+	private static Object get(Properties conf, Method method, Object[] args)
+	{
+		switch (method.getName())
+		{
+		case "getAllCurrentNinjaProperties":
+			return conf;
+		case "isTest":
+			return Boolean.TRUE;
+		case "isDev":
+		case "isProd":
+			return Boolean.FALSE;
+		default:
+			break;
+		}
+
+		String value = args != null && args[0] instanceof String ? conf.getProperty((String) args[0]) : null;
+		if (value == null)
+		{
+			return method.getName().endsWith("WithDefault") ? args[args.length - 1] : null;
+		}
+		Class<?> type = method.getReturnType();
+		if (type == Integer.class || type == int.class)
+		{
+			return Integer.valueOf(value);
+		}
+		if (type == Boolean.class || type == boolean.class)
+		{
+			return Boolean.valueOf(value);
+		}
+		if (type == String[].class)
+		{
+			return value.split(",");
+		}
+		return value;
+	}
+
+}
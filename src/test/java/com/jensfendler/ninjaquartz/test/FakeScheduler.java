@@ -0,0 +1,117 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.test;
+
+import org.quartz.JobDataMap;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobKey;
+import org.quartz.Scheduler;
+import org.quartz.SchedulerContext;
+import org.quartz.SchedulerFactory;
+import org.quartz.Trigger;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A {@link Scheduler} for unit tests, which records the jobs fired through
+ * {@link Scheduler#triggerJob(JobKey, JobDataMap)} and the triggers stored
+ * through {@link Scheduler#scheduleJob(Trigger)} instead of running them. All
+ * jobs and triggers exist, and all other methods do nothing.
+ *
+ * @author Jens Fendler
+ *
+ */
+class FakeScheduler
+{
+
+	/**
+	 * The keys of the fired jobs
+	 */
+	final List<JobKey> firedJobs = new CopyOnWriteArrayList<>();
+
+	/**
+	 * The job data of the fired jobs, in the order of {@link #firedJobs}
+	 */
+	final List<JobDataMap> firedData = new CopyOnWriteArrayList<>();
+
+	/**
+	 * The triggers of scheduled fires
+	 */
+	final List<Trigger> scheduledTriggers = new CopyOnWriteArrayList<>();
+
+	/**
+	 * The context of the scheduler
+	 */
+	final SchedulerContext context = new SchedulerContext();
+
+	private final Scheduler scheduler = (Scheduler) Proxy.newProxyInstance(FakeScheduler.class.getClassLoader(),
+			new Class<?>[] { Scheduler.class }, (proxy, method, args) -> invoke(method, args));
+
+	/**
+	 * @return the scheduler
+	 */
+	Scheduler get()
+	{
+		return scheduler;
+	}
+
+	/**
+	 * @return a factory with this scheduler as its only scheduler
+	 */
+	SchedulerFactory factory()
+	{
+		return (SchedulerFactory) Proxy.newProxyInstance(FakeScheduler.class.getClassLoader(),
+				new Class<?>[] { SchedulerFactory.class }, (proxy, method, args) -> method.getName()
+						.equals("getAllSchedulers") ? Collections.singletonList(scheduler) : scheduler);
+	}
+
+	/**
+	 * @return an execution context of a job in this scheduler, which provides
+	 *         nothing but the scheduler
+	 */
+	JobExecutionContext executionContext()
+	{
+		return (JobExecutionContext) Proxy.newProxyInstance(FakeScheduler.class.getClassLoader(),
+				new Class<?>[] { JobExecutionContext.class },
+				(proxy, method, args) -> method.getName().equals("getScheduler") ? scheduler : null);
+	}
+
+	private Object invoke(Method method, Object[] args)
+	{
+		switch (method.getName())
+		{
+		case "triggerJob":
+			firedJobs.add((JobKey) args[0]);
+			firedData.add(args.length > 1 && args[1] != null ? (JobDataMap) args[1] : new JobDataMap());
+			return null;
+		case "scheduleJob":
+			scheduledTriggers.add((Trigger) args[args.length - 1]);
+			return new Date();
+		case "getContext":
+			return context;
+		case "checkExists":
+			return Boolean.TRUE;
+		default:
+			return method.getReturnType() == boolean.class ? Boolean.FALSE : null;
+		}
+	}
+
+}
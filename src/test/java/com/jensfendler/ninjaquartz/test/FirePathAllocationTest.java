@@ -0,0 +1,144 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.test;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Singleton;
+import com.jensfendler.ninjaquartz.job.AbstractNinjaQuartzJob;
+import com.jensfendler.ninjaquartz.job.NinjaQuartzTask;
+import com.jensfendler.ninjaquartz.job.NonConcurrentNinjaQuartzJob;
+import com.jensfendler.ninjaquartz.job.ScheduledMethodTask;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.quartz.CronScheduleBuilder;
+import org.quartz.JobBuilder;
+import org.quartz.JobDetail;
+import org.quartz.JobExecutionContext;
+import org.quartz.TriggerBuilder;
+import org.quartz.impl.JobExecutionContextImpl;
+import org.quartz.spi.OperableTrigger;
+import org.quartz.spi.TriggerFiredBundle;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.util.Date;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Guards the steady-state fire path of {@link AbstractNinjaQuartzJob} against
+ * allocations, by measuring the bytes allocated by the current thread while
+ * firing a job repeatedly.
+ */
+public class FirePathAllocationTest
+{
+	private static final int WARMUP_FIRES = 50_000;
+
+	private static final int MEASURED_FIRES = 100_000;
+
+	/**
+	 * Allowed average number of bytes allocated per fire, to tolerate
+	 * measurement noise.
+	 */
+	private static final double MAX_BYTES_PER_FIRE = 1.0;
+
+	private static com.sun.management.ThreadMXBean threadMXBean;
+
+	@BeforeAll
+	static public void beforeClass()
+	{
+		// the fire path must be allocation-free with debug logging disabled
+		((Logger) LoggerFactory.getLogger(NinjaQuartzTask.class)).setLevel(Level.INFO);
+		threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+	}
+
+	@Test
+	public void noArguments() throws Exception
+	{
+		Target target = new Target();
+		assertAllocationFree(target, Target.class.getMethod("tick"));
+		assertEquals(WARMUP_FIRES + MEASURED_FIRES, target.ticks);
+	}
+
+	@Test
+	public void injectedArguments() throws Exception
+	{
+		Target target = new Target();
+		assertAllocationFree(target, Target.class.getMethod("tick", JobExecutionContext.class, Counter.class));
+		assertEquals(WARMUP_FIRES + MEASURED_FIRES, target.ticks);
+	}
+
+	private void assertAllocationFree(Target target, java.lang.reflect.Method method) throws Exception
+	{
+		Injector injector = Guice.createInjector();
+		NinjaQuartzTask task = new ScheduledMethodTask("test", target, method, injector, false, false);
+		JobDetail jobDetail = JobBuilder.newJob(NonConcurrentNinjaQuartzJob.class).withIdentity("test").build();
+		jobDetail.getJobDataMap().put(AbstractNinjaQuartzJob.JOB_TASK_KEY, task);
+		OperableTrigger trigger = (OperableTrigger) TriggerBuilder.newTrigger().forJob(jobDetail)
+				.withSchedule(CronScheduleBuilder.cronSchedule("0/2 * * * * ?")).build();
+		Date fireTime = trigger.computeFirstFireTime(null);
+		AbstractNinjaQuartzJob job = new NonConcurrentNinjaQuartzJob();
+		JobExecutionContext context = new JobExecutionContextImpl(null,
+				new TriggerFiredBundle(jobDetail, trigger, null, false, fireTime, fireTime, null,
+						trigger.getFireTimeAfter(fireTime)), job);
+
+		for (int i = 0; i < WARMUP_FIRES; i++)
+		{
+			job.execute(context);
+		}
+
+		long threadId = Thread.currentThread().getId();
+		long before = threadMXBean.getThreadAllocatedBytes(threadId);
+		for (int i = 0; i < MEASURED_FIRES; i++)
+		{
+			job.execute(context);
+		}
+		long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - before;
+
+		double bytesPerFire = (double) allocated / MEASURED_FIRES;
+		assertTrue(bytesPerFire <= MAX_BYTES_PER_FIRE,
+				"Fire path allocated " + bytesPerFire + " bytes per fire (" + allocated + " bytes in total)");
+		assertEquals(WARMUP_FIRES + MEASURED_FIRES, task.getStatus().getSuccessCount());
+	}
+
+	@Singleton
+	public static class Counter
+	{
+		long count;
+	}
+
+	public static class Target
+	{
+		long ticks;
+
+		public void tick()
+		{
+			ticks++;
+		}
+
+		public void tick(JobExecutionContext context, Counter counter)
+		{
+			ticks++;
+			counter.count++;
+		}
+	}
+}
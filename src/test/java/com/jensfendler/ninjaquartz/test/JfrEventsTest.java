@@ -0,0 +1,130 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.test;
+
+import com.jensfendler.ninjaquartz.jfr.NinjaQuartzEventRecorder;
+import com.jensfendler.ninjaquartz.job.ConcurrentNinjaQuartzJob;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.quartz.JobBuilder;
+import org.quartz.JobDetail;
+import org.quartz.JobKey;
+import org.quartz.TriggerBuilder;
+import org.quartz.impl.JobExecutionContextImpl;
+import org.quartz.spi.OperableTrigger;
+import org.quartz.spi.TriggerFiredBundle;
+
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Tests the JDK Flight Recorder events of the {@link NinjaQuartzEventRecorder}.
+ * The tests are skipped in JVMs without JFR.
+ *
+ * @author Jens Fendler
+ *
+ */
+public class JfrEventsTest
+{
+
+	private static final NinjaQuartzEventRecorder RECORDER = NinjaQuartzEventRecorder.INSTANCE;
+
+	@BeforeEach
+	public void requireJfr()
+	{
+		assumeTrue(RECORDER.isAvailable(), "JDK Flight Recorder is not available");
+	}
+
+	@Test
+	public void recordEvents(@TempDir Path dir) throws Exception
+	{
+		long scheduledFireTime = System.currentTimeMillis() - 1000;
+		JobDetail job = JobBuilder.newJob(ConcurrentNinjaQuartzJob.class).withIdentity("job", "group").build();
+		OperableTrigger trigger = (OperableTrigger) TriggerBuilder.newTrigger().withIdentity("trigger", "group")
+				.forJob(job).startAt(new Date(scheduledFireTime)).build();
+		trigger.computeFirstFireTime(null);
+		TriggerFiredBundle bundle = new TriggerFiredBundle(job, trigger, null, false, new Date(),
+				new Date(scheduledFireTime), null, null);
+
+		Path file = dir.resolve("events.jfr");
+		try (Recording recording = new Recording())
+		{
+			recording.enable("ninjaquartz.JobExecution");
+			recording.enable("ninjaquartz.JobMisfire");
+			recording.enable("ninjaquartz.JobRemoved");
+			recording.start();
+
+			Object handle = RECORDER.executionStarted();
+			RECORDER.executionFinished(handle, new JobExecutionContextImpl(null, bundle, null), "task",
+					new IllegalStateException());
+			RECORDER.triggerMisfired(trigger);
+			RECORDER.jobRemoved(job.getKey(), "task");
+
+			recording.stop();
+			recording.dump(file);
+		}
+
+		Map<String, RecordedEvent> events = new HashMap<>();
+		for (RecordedEvent event : RecordingFile.readAllEvents(file))
+		{
+			events.put(event.getEventType().getName(), event);
+		}
+		assertEquals(3, events.size(), events.keySet().toString());
+
+		RecordedEvent execution = events.get("ninjaquartz.JobExecution");
+		assertJob(job.getKey(), execution);
+		assertEquals("task", execution.getString("taskName"));
+		assertEquals("FAILURE", execution.getString("outcome"));
+		assertEquals(IllegalStateException.class.getName(), execution.getClass("exception").getName());
+		assertEquals(scheduledFireTime, execution.getInstant("scheduledFireTime").toEpochMilli());
+
+		RecordedEvent misfire = events.get("ninjaquartz.JobMisfire");
+		assertJob(job.getKey(), misfire);
+		assertEquals("trigger", misfire.getString("triggerName"));
+		assertEquals(scheduledFireTime, misfire.getInstant("scheduledFireTime").toEpochMilli());
+
+		RecordedEvent removed = events.get("ninjaquartz.JobRemoved");
+		assertJob(job.getKey(), removed);
+		assertEquals("task", removed.getString("taskName"));
+	}
+
+	@Test
+	public void nothingRecordedWhenDisabled()
+	{
+		// no recording enables the events
+		assertNull(RECORDER.executionStarted());
+	}
+
+	private static void assertJob(JobKey jobKey, RecordedEvent event)
+	{
+		assertEquals(jobKey.getName(), event.getString("jobName"));
+		assertEquals(jobKey.getGroup(), event.getString("jobGroup"));
+	}
+
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.test;
+
+import com.google.inject.util.Providers;
+import com.jensfendler.ninjaquartz.job.AbstractNinjaQuartzJob;
+import com.jensfendler.ninjaquartz.job.AttachedTasks;
+import com.jensfendler.ninjaquartz.job.DetachedTask;
+import com.jensfendler.ninjaquartz.job.NinjaQuartzTask;
+import com.jensfendler.ninjaquartz.job.RunnableTask;
+import com.jensfendler.ninjaquartz.store.CompactJobDataMapCodec;
+import com.jensfendler.ninjaquartz.store.JobDataMapCodec;
+import com.jensfendler.ninjaquartz.store.NinjaQuartzJDBCDelegate;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.quartz.JobDataMap;
+import org.quartz.JobExecutionContext;
+import org.quartz.impl.jdbcjobstore.StdJDBCDelegate;
+import org.quartz.simpl.CascadingClassLoadHelper;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.rowset.serial.SerialBlob;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the {@link CompactJobDataMapCodec} and the
+ * {@link NinjaQuartzJDBCDelegate}, and compares the size and encoding speed of
+ * the codec with Java serialization. The speed comparison is not part of the
+ * build; run it with
+ *
+ * <pre>
+ * mvn test -Dbenchmark=true -Dtest=JobDataMapCodecTest
+ * </pre>
+ */
+public class JobDataMapCodecTest
+{
+
+	private final JobDataMapCodec codec = new CompactJobDataMapCodec();
+
+	@Test
+	public void roundTrip() throws Exception
+	{
+		JobDataMap jobData = new JobDataMap();
+		jobData.put("string", "värde");
+		jobData.put("int", -42);
+		jobData.put("long", Long.MIN_VALUE);
+		jobData.put("boolean", true);
+		jobData.put("double", Math.PI);
+		jobData.put("float", 1.5f);
+		jobData.put("short", (short) 7);
+		jobData.put("byte", (byte) -1);
+		jobData.put("char", 'x');
+		jobData.put("bytes", new byte[] { 1, 2, 3 });
+		jobData.put("date", new Date(1234567890123L));
+		jobData.put("null", (Object) null);
+		jobData.put("serialized", TimeUnit.SECONDS);
+
+		JobDataMap decoded = codec.decode(codec.encode(jobData), null);
+		assertEquals(jobData.size(), decoded.size());
+		for (String key : jobData.keySet())
+		{
+			if (!"bytes".equals(key))
+			{
+				assertEquals(jobData.get(key), decoded.get(key), key);
+			}
+		}
+		assertArrayEquals((byte[]) jobData.get("bytes"), (byte[]) decoded.get("bytes"));
+	}
+
+	@Test
+	public void tasksAreWrittenByName() throws Exception
+	{
+		NinjaQuartzTask task = new RunnableTask("codecTest", Providers.of(() -> {
+		}), true, false);
+		AttachedTasks attached = new AttachedTasks();
+		attached.attach(task);
+		JobDataMap jobData = new JobDataMap();
+		jobData.put(AbstractNinjaQuartzJob.JOB_TASK_KEY, task);
+
+		DetachedTask decoded = (DetachedTask) codec.decode(codec.encode(jobData), null)
+				.get(AbstractNinjaQuartzJob.JOB_TASK_KEY);
+		assertEquals("codecTest", decoded.getTaskName());
+		assertTrue(decoded.isRemoveOnError());
+		// resolves to the task scheduled since the start, in its scheduler only
+		assertSame(task, decoded.resolve(executionContext(attached)));
+		assertSame(decoded, decoded.resolve(executionContext(new AttachedTasks())));
+	}
+
+	/**
+	 * @return the context of an execution in a scheduler with the given tasks
+	 */
+	private static JobExecutionContext executionContext(AttachedTasks attached)
+	{
+		FakeScheduler scheduler = new FakeScheduler();
+		scheduler.context.put(AttachedTasks.SCHEDULER_CONTEXT_KEY, attached);
+		return scheduler.executionContext();
+	}
+
+	@Test
+	public void delegateReadsJavaSerialization() throws Exception
+	{
+		TestDelegate delegate = new TestDelegate();
+		CascadingClassLoadHelper loadHelper = new CascadingClassLoadHelper();
+		loadHelper.initialize();
+		delegate.initialize(LoggerFactory.getLogger(getClass()), "QRTZ_", "test", "test", loadHelper, false, null);
+
+		JobDataMap jobData = typicalJobData();
+		JobDataMap written = (JobDataMap) delegate.read(delegate.serializeJobData(jobData).toByteArray());
+		assertEquals(jobData.getInt("count"), written.getInt("count"));
+
+		// job data written by Quartz' delegate
+		JobDataMap legacy = (JobDataMap) delegate.read(javaSerialize(jobData));
+		assertEquals(jobData.getString("tenant"), legacy.getString("tenant"));
+	}
+
+	/**
+	 * Compares the size of typical job data with Java serialization.
+	 */
+	@Test
+	public void compareWithJavaSerialization() throws Exception
+	{
+		JobDataMap jobData = typicalJobData();
+		byte[] compact = codec.encode(jobData);
+		byte[] serialized = javaSerialize(jobData);
+
+		assertTrue(compact.length < serialized.length / 4, "Compact job data is not compact");
+	}
+
+	/**
+	 * Compares the encoding and decoding time of typical job data with Java
+	 * serialization, and prints the results.
+	 */
+	@Test
+	@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+	public void roundTripTime() throws Exception
+	{
+		JobDataMap jobData = typicalJobData();
+		int iterations = 20_000;
+		long compactNanos = 0;
+		long serializedNanos = 0;
+		for (int round = 0; round < 2; round++)
+		{
+			// the first round warms up
+			long start = System.nanoTime();
+			for (int i = 0; i < iterations; i++)
+			{
+				codec.decode(codec.encode(jobData), null);
+			}
+			compactNanos = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for (int i = 0; i < iterations; i++)
+			{
+				try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(javaSerialize(jobData))))
+				{
+					in.readObject();
+				}
+			}
+			serializedNanos = System.nanoTime() - start;
+		}
+
+		System.out.println(String.format(
+				"Job data: CompactJobDataMapCodec %,d ns/round trip; Java serialization %,d ns/round trip",
+				compactNanos / iterations, serializedNanos / iterations));
+	}
+
+	private static JobDataMap typicalJobData()
+	{
+		JobDataMap jobData = new JobDataMap();
+		jobData.put(AbstractNinjaQuartzJob.JOB_TASK_KEY, new DetachedTask("ninja.app.Jobs.countTicks", false, true));
+		jobData.put(AbstractNinjaQuartzJob.JOB_REMOVE_ON_RUNTIME_ERROR, false);
+		jobData.put(AbstractNinjaQuartzJob.JOB_FORCE_KEEP, true);
+		jobData.put("count", 123456);
+		jobData.put("lastRun", new Date());
+		jobData.put("tenant", "acme");
+		return jobData;
+	}
+
+	private static byte[] javaSerialize(Object object) throws Exception
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes))
+		{
+			out.writeObject(object);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Exposes the BLOB handling of the delegate.
+	 */
+	private static class TestDelegate extends NinjaQuartzJDBCDelegate
+	{
+		@Override
+		public ByteArrayOutputStream serializeJobData(JobDataMap data) throws java.io.IOException
+		{
+			return super.serializeJobData(data);
+		}
+
+		Object read(byte[] blob) throws Exception
+		{
+			ResultSet rs = (ResultSet) Proxy.newProxyInstance(getClass().getClassLoader(),
+					new Class<?>[] { ResultSet.class }, (proxy, method, args) -> {
+						if ("getBlob".equals(method.getName())
+								&& StdJDBCDelegate.COL_JOB_DATAMAP.equals(args[0]))
+						{
+							return new SerialBlob(blob);
+						}
+						throw new UnsupportedOperationException(method.getName());
+					});
+			return getObjectFromBlob(rs, StdJDBCDelegate.COL_JOB_DATAMAP);
+		}
+	}
+}
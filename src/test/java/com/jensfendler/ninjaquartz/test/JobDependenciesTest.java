@@ -0,0 +1,199 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.test;
+
+import com.jensfendler.ninjaquartz.dependency.JobDependencies;
+import com.jensfendler.ninjaquartz.dependency.UpstreamResults;
+import com.jensfendler.ninjaquartz.job.AbstractNinjaQuartzJob;
+import com.jensfendler.ninjaquartz.job.AbstractNinjaQuartzTaskImpl;
+import com.jensfendler.ninjaquartz.job.ConcurrentNinjaQuartzJob;
+import com.jensfendler.ninjaquartz.lock.LockProvider;
+import com.jensfendler.ninjaquartz.lock.RunOnceLocks;
+
+import org.junit.jupiter.api.Test;
+import org.quartz.JobBuilder;
+import org.quartz.JobDetail;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+import org.quartz.JobKey;
+import org.quartz.Scheduler;
+import org.quartz.SchedulerException;
+import org.quartz.impl.StdSchedulerFactory;
+import org.quartz.impl.matchers.KeyMatcher;
+import org.quartz.listeners.JobListenerSupport;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the dependency graph of jobs, with a scheduler recording the jobs
+ * fired by their upstream jobs.
+ */
+public class JobDependenciesTest
+{
+
+	private static final JobKey A = JobKey.jobKey("a");
+
+	private static final JobKey B = JobKey.jobKey("b");
+
+	private static final JobKey C = JobKey.jobKey("c");
+
+	private final FakeScheduler fakeScheduler = new FakeScheduler();
+
+	private final Scheduler scheduler = fakeScheduler.get();
+
+	private final List<JobKey> fired = fakeScheduler.firedJobs;
+
+	@Test
+	public void rejectsCycles() throws Exception
+	{
+		JobDependencies dependencies = new JobDependencies();
+		dependencies.register(scheduler, B, Collections.singleton(A));
+		dependencies.register(scheduler, C, Collections.singleton(B));
+
+		assertThrows(SchedulerException.class, () -> dependencies.register(scheduler, A, Collections.singleton(C)));
+		assertThrows(SchedulerException.class, () -> dependencies.register(scheduler, A, Collections.singleton(A)));
+		assertTrue(dependencies.getUpstream(A).isEmpty(), "Cyclic dependency registered");
+	}
+
+	@Test
+	public void firesAfterAllUpstreamJobs() throws Exception
+	{
+		JobDependencies dependencies = new JobDependencies();
+		dependencies.register(scheduler, C, Arrays.asList(A, B));
+
+		dependencies.completed(A, "a1");
+		dependencies.completed(A, "a2");
+		assertTrue(fired.isEmpty(), "Fired before all upstream jobs completed");
+
+		dependencies.completed(B, "b1");
+		assertEquals(Collections.singletonList(C), fired);
+		UpstreamResults results = dependencies.take(C);
+		assertEquals("a2", results.get(A));
+		assertEquals("b1", results.get("b"));
+		assertTrue(dependencies.take(C).isEmpty(), "Results taken twice");
+
+		// the next fire waits for both upstream jobs again
+		dependencies.completed(B, "b2");
+		assertEquals(1, fired.size());
+	}
+
+	@Test
+	public void requeuesResultsOfDelayedFires() throws Exception
+	{
+		JobDependencies dependencies = new JobDependencies();
+		dependencies.register(scheduler, C, Collections.singleton(A));
+		dependencies.completed(A, "a1");
+		dependencies.completed(A, "a2");
+
+		UpstreamResults first = dependencies.take(C);
+		dependencies.requeue(C, first);
+		assertSame(first, dependencies.take(C), "Requeued results not served first");
+		assertEquals("a2", dependencies.take(C).get(A));
+	}
+
+	/**
+	 * Fires refused by a gate (here: a lock held by another node) must not
+	 * leave their upstream results behind for later fires.
+	 */
+	@Test
+	public void heldBackFiresTakeTheirResults() throws Exception
+	{
+		int fires = 3;
+		Properties properties = new Properties();
+		properties.setProperty(StdSchedulerFactory.PROP_SCHED_INSTANCE_NAME, "dependencies");
+		properties.setProperty("org.quartz.threadPool.threadCount", "1");
+		properties.setProperty(StdSchedulerFactory.PROP_JOB_STORE_CLASS, "org.quartz.simpl.RAMJobStore");
+		Scheduler quartz = new StdSchedulerFactory(properties).getScheduler();
+		try
+		{
+			JobDependencies dependencies = new JobDependencies();
+			quartz.getContext().put(JobDependencies.SCHEDULER_CONTEXT_KEY, dependencies);
+			quartz.getContext().put(RunOnceLocks.SCHEDULER_CONTEXT_KEY, new RunOnceLocks(new LockProvider()
+			{
+				@Override
+				public boolean tryLock(String name, String owner, long leasedUntil)
+				{
+					return false;
+				}
+
+				@Override
+				public void unlock(String name, String owner, long leasedUntil)
+				{
+				}
+			}, 60000, "node"));
+			CountDownLatch refused = new CountDownLatch(fires);
+			quartz.getListenerManager().addJobListener(new JobListenerSupport()
+			{
+				@Override
+				public String getName()
+				{
+					return "refused";
+				}
+
+				@Override
+				public void jobWasExecuted(JobExecutionContext context, JobExecutionException jobException)
+				{
+					refused.countDown();
+				}
+			}, KeyMatcher.keyEquals(C));
+
+			quartz.addJob(job(A, false), true);
+			quartz.addJob(job(C, true), true);
+			dependencies.register(quartz, C, Collections.singleton(A));
+			quartz.start();
+			for (int i = 0; i < fires; i++)
+			{
+				quartz.triggerJob(A);
+			}
+
+			assertTrue(refused.await(10, TimeUnit.SECONDS), "Dependent job not fired");
+			assertSame(UpstreamResults.NONE, dependencies.take(C), "Results of refused fires left behind");
+		}
+		finally
+		{
+			quartz.shutdown(true);
+		}
+	}
+
+	private static JobDetail job(JobKey key, boolean runOnce)
+	{
+		AbstractNinjaQuartzTaskImpl task = new AbstractNinjaQuartzTaskImpl(key.getName())
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public void execute(JobExecutionContext context)
+			{
+				context.setResult(key.getName());
+			}
+		};
+		JobDetail job = JobBuilder.newJob(ConcurrentNinjaQuartzJob.class).withIdentity(key).storeDurably().build();
+		job.getJobDataMap().put(AbstractNinjaQuartzJob.JOB_TASK_KEY, task);
+		job.getJobDataMap().put(AbstractNinjaQuartzJob.JOB_RUN_ONCE, runOnce);
+		return job;
+	}
+
+}
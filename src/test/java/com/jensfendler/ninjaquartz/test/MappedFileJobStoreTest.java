@@ -0,0 +1,248 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.test;
+
+import com.google.inject.util.Providers;
+import com.jensfendler.ninjaquartz.job.ConcurrentNinjaQuartzJob;
+import com.jensfendler.ninjaquartz.job.ConcurrentStatefulNinjaQuartzJob;
+import com.jensfendler.ninjaquartz.job.DetachedTask;
+import com.jensfendler.ninjaquartz.job.RunnableTask;
+import com.jensfendler.ninjaquartz.store.MappedFileJobStore;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.quartz.JobBuilder;
+import org.quartz.JobDataMap;
+import org.quartz.JobDetail;
+import org.quartz.JobKey;
+import org.quartz.JobPersistenceException;
+import org.quartz.Scheduler;
+import org.quartz.SchedulerException;
+import org.quartz.Trigger;
+import org.quartz.Trigger.CompletedExecutionInstruction;
+import org.quartz.Trigger.TriggerState;
+import org.quartz.TriggerBuilder;
+import org.quartz.TriggerKey;
+import org.quartz.impl.calendar.BaseCalendar;
+import org.quartz.impl.matchers.GroupMatcher;
+import org.quartz.simpl.CascadingClassLoadHelper;
+import org.quartz.spi.OperableTrigger;
+import org.quartz.spi.SchedulerSignaler;
+import org.quartz.spi.TriggerFiredResult;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the recovery of the {@link MappedFileJobStore} after simulated
+ * crashes, i.e. from stores which were abandoned without being shut down.
+ */
+public class MappedFileJobStoreTest
+{
+	private static final SchedulerSignaler SIGNALER = new SchedulerSignaler()
+	{
+		public void notifyTriggerListenersMisfired(Trigger trigger)
+		{
+		}
+
+		public void notifySchedulerListenersFinalized(Trigger trigger)
+		{
+		}
+
+		public void notifySchedulerListenersJobDeleted(JobKey jobKey)
+		{
+		}
+
+		public void signalSchedulingChange(long candidateNewNextFireTime)
+		{
+		}
+
+		public void notifySchedulerListenersError(String string, SchedulerException jpe)
+		{
+		}
+	};
+
+	@TempDir
+	Path directory;
+
+	@Test
+	public void recoverAfterCrash() throws Exception
+	{
+		MappedFileJobStore store = open();
+		long now = System.currentTimeMillis();
+		JobDataMap jobData = new JobDataMap();
+		jobData.put("task", new RunnableTask("task", Providers.of(() -> {
+		}), false, true));
+		JobDetail job = JobBuilder.newJob(ConcurrentNinjaQuartzJob.class).withIdentity("job", "group")
+				.usingJobData(jobData).build();
+		store.storeJobAndTrigger(job, trigger("first", job, now + 60000));
+		store.storeTrigger(trigger("second", job, now + 120000), false);
+		store.storeTrigger(trigger("removed", job, now + 180000), false);
+		store.pauseTrigger(TriggerKey.triggerKey("second"));
+		store.removeTrigger(TriggerKey.triggerKey("removed"));
+
+		// crash
+		MappedFileJobStore recovered = open();
+		assertEquals(1, recovered.getNumberOfJobs());
+		assertEquals(2, recovered.getNumberOfTriggers());
+		assertEquals(now + 60000, recovered.retrieveTrigger(TriggerKey.triggerKey("first")).getNextFireTime().getTime());
+		assertEquals(TriggerState.NORMAL, recovered.getTriggerState(TriggerKey.triggerKey("first")));
+		assertEquals(TriggerState.PAUSED, recovered.getTriggerState(TriggerKey.triggerKey("second")));
+
+		// tasks cannot be persisted, and are replaced by detached tasks
+		Object task = recovered.retrieveJob(job.getKey()).getJobDataMap().get("task");
+		assertTrue(task instanceof DetachedTask);
+		assertEquals("task", ((DetachedTask) task).getTaskName());
+	}
+
+	@Test
+	public void recoverStatefulJobData() throws Exception
+	{
+		MappedFileJobStore store = open();
+		JobDetail job = JobBuilder.newJob(ConcurrentStatefulNinjaQuartzJob.class).withIdentity("stateful")
+				.usingJobData("count", 0).build();
+		store.storeJobAndTrigger(job, trigger("trigger", job, System.currentTimeMillis() - 1000));
+
+		for (int i = 1; i <= 3; i++)
+		{
+			List<OperableTrigger> acquired = store.acquireNextTriggers(Long.MAX_VALUE, 1, 0);
+			TriggerFiredResult result = store.triggersFired(acquired).get(0);
+			JobDetail fired = result.getTriggerFiredBundle().getJobDetail();
+			fired.getJobDataMap().put("count", i);
+			store.triggeredJobComplete(acquired.get(0), fired, CompletedExecutionInstruction.NOOP);
+			// fire again
+			store.storeTrigger(trigger("trigger", job, System.currentTimeMillis() - 1000), true);
+		}
+
+		// crash
+		MappedFileJobStore recovered = open();
+		assertEquals(3, recovered.retrieveJob(job.getKey()).getJobDataMap().getInt("count"));
+	}
+
+	@Test
+	public void recoverInterruptedExecution() throws Exception
+	{
+		MappedFileJobStore store = open();
+		JobDetail job = JobBuilder.newJob(ConcurrentNinjaQuartzJob.class).withIdentity("recoverable")
+				.requestRecovery().storeDurably().build();
+		store.storeJobAndTrigger(job, trigger("trigger", job, System.currentTimeMillis() - 1000));
+		store.triggersFired(store.acquireNextTriggers(Long.MAX_VALUE, 1, 0));
+
+		// crash while the job is executing
+		MappedFileJobStore recovered = open();
+		Set<TriggerKey> recoveryTriggers = recovered
+				.getTriggerKeys(GroupMatcher.triggerGroupEquals(Scheduler.DEFAULT_RECOVERY_GROUP));
+		assertEquals(1, recoveryTriggers.size());
+		OperableTrigger recoveryTrigger = recovered.retrieveTrigger(recoveryTriggers.iterator().next());
+		assertEquals(job.getKey(), recoveryTrigger.getJobKey());
+		assertEquals("trigger", recoveryTrigger.getJobDataMap().getString(Scheduler.FAILED_JOB_ORIGINAL_TRIGGER_NAME));
+
+		// the recovery trigger fires once, and is removed afterwards
+		List<OperableTrigger> acquired = recovered.acquireNextTriggers(Long.MAX_VALUE, 1, 0);
+		assertEquals(recoveryTrigger.getKey(), acquired.get(0).getKey());
+		TriggerFiredResult result = recovered.triggersFired(acquired).get(0);
+		assertTrue(result.getTriggerFiredBundle().isRecovering());
+		recovered.triggeredJobComplete(acquired.get(0), result.getTriggerFiredBundle().getJobDetail(),
+				CompletedExecutionInstruction.DELETE_TRIGGER);
+		recovered.shutdown();
+
+		MappedFileJobStore restarted = open();
+		assertTrue(restarted.getTriggerKeys(GroupMatcher.triggerGroupEquals(Scheduler.DEFAULT_RECOVERY_GROUP))
+				.isEmpty());
+		restarted.shutdown();
+	}
+
+	@Test
+	public void recoverValidPrefixOfTornLog() throws Exception
+	{
+		MappedFileJobStore store = open();
+		JobDetail job = JobBuilder.newJob(ConcurrentNinjaQuartzJob.class).withIdentity("job").storeDurably().build();
+		store.storeJobAndTrigger(job, trigger("trigger", job, System.currentTimeMillis() + 60000));
+		store.removeTrigger(TriggerKey.triggerKey("trigger"));
+
+		// crash while writing the last record (i.e. the removal of the trigger)
+		try (RandomAccessFile file = new RandomAccessFile(store.getFile().toFile(), "rw"))
+		{
+			long last = 0;
+			long position = 0;
+			int length;
+			while ((length = readInt(file, position)) > 0)
+			{
+				last = position;
+				position += 9 + length;
+			}
+			file.seek(last + 4);
+			file.writeInt(file.readInt() ^ 1);
+		}
+
+		MappedFileJobStore recovered = open();
+		assertEquals(1, recovered.getNumberOfJobs());
+		assertNotNull(recovered.retrieveTrigger(TriggerKey.triggerKey("trigger")));
+	}
+
+	@Test
+	public void failToPersistChanges() throws Exception
+	{
+		MappedFileJobStore store = open();
+		BaseCalendar calendar = new BaseCalendar()
+		{
+			private static final long serialVersionUID = 1L;
+
+			// not serializable
+			private final Object state = new Object();
+		};
+		assertThrows(JobPersistenceException.class, () -> store.storeCalendar("calendar", calendar, false, false));
+		assertEquals(0, store.getNumberOfCalendars(), "Calendar stored without being persisted");
+		store.shutdown();
+	}
+
+	private MappedFileJobStore open() throws Exception
+	{
+		MappedFileJobStore store = new MappedFileJobStore();
+		store.setDirectory(directory.toString());
+		store.setInstanceName("test");
+		CascadingClassLoadHelper loadHelper = new CascadingClassLoadHelper();
+		loadHelper.initialize();
+		store.initialize(loadHelper, SIGNALER);
+		return store;
+	}
+
+	private static int readInt(RandomAccessFile file, long position) throws Exception
+	{
+		if (position + 4 > file.length())
+		{
+			return 0;
+		}
+		file.seek(position);
+		return file.readInt();
+	}
+
+	private static OperableTrigger trigger(String name, JobDetail job, long startAt)
+	{
+		OperableTrigger trigger = (OperableTrigger) TriggerBuilder.newTrigger().withIdentity(name).forJob(job)
+				.startAt(new Date(startAt)).build();
+		trigger.computeFirstFireTime(null);
+		return trigger;
+	}
+}
@@ -16,15 +16,31 @@
 package com.jensfendler.ninjaquartz.test;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jensfendler.ninjaquartz.NinjaQuartzReadiness;
+import com.jensfendler.ninjaquartz.jmx.NinjaQuartzJmx;
+import com.jensfendler.ninjaquartz.job.WriteBehindJobDataListener;
+import com.jensfendler.ninjaquartz.value.ScheduledValue;
+import com.jensfendler.ninjaquartz.value.ScheduledValues;
 
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
+import org.quartz.JobDetail;
+import org.quartz.JobKey;
+import org.quartz.Scheduler;
+import org.quartz.SchedulerFactory;
+import org.quartz.impl.SchedulerRepository;
+
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.util.concurrent.TimeUnit;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
 import ninja.app.controllers.Application;
+import ninja.app.modules.TestJob;
 import ninja.app.modules.TestSchedules;
 import ninja.app.modules.TimedCounter;
 import ninja.standalone.Standalone;
@@ -41,7 +57,9 @@ import static ninja.app.modules.TestSchedules.SCHEDULE_TESTS;
 import static ninja.app.modules.TestSchedules.SCHEDULE_TEST_1;
 import static ninja.app.modules.TestSchedules.SCHEDULE_TEST_5;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
@@ -57,6 +75,15 @@ public class NinjaQuartzIntegrationTest
 
 	private static final ObjectMapper mapper = new ObjectMapper();
 
+	/**
+	 * The time to give the scheduler to run the test methods
+	 */
+	private static final long RUN_MILLIS = 8000;
+
+	private static long startedAt;
+
+	private static Application.TicksDto ticksDto;
+
 	@SuppressWarnings("rawtypes")
 	@BeforeAll
 	static public void beforeClass() throws Exception
@@ -67,6 +94,7 @@ public class NinjaQuartzIntegrationTest
 		Class<? extends Standalone> standaloneClass = StandaloneHelper.resolveStandaloneClass();
 		standalone = StandaloneHelper.create(standaloneClass).port(randomPort);
 		standalone.ninjaMode(NinjaMode.test).configure().start();
+		startedAt = System.currentTimeMillis();
 
 		// prepare http client
 		Application.LOG.info("Initializing OKHttpClient...");
@@ -94,16 +122,7 @@ public class NinjaQuartzIntegrationTest
 	@Test
 	public void schedulers() throws Exception
 	{
-		Application.LOG.info("Pausing for Quartz to run scheduled methods...");
-		// give the scheduler some time to run the test methods
-		Thread.sleep(8000);
-		Application.LOG.info("Done pausing.");
-
-		Response response = requestGet("/schedules");
-		assertTrue(response.isSuccessful(), "Schedules page failed with code " + response.code());
-
-		String jsonStr = response.body().string();
-		Application.TicksDto replyDto = mapper.readValue(jsonStr, Application.TicksDto.class);
+		Application.TicksDto replyDto = ticks();
 
 		// Make sure the first scheduler did not run before ninja has been fully started
 		long ninjaStartup = replyDto.ticks.get(NINJA_START).timestamps.get(0);
@@ -132,6 +151,125 @@ public class NinjaQuartzIntegrationTest
 		assertEquals(4, TimeUnit.NANOSECONDS.toSeconds(delta), 1, "Startup delay not working");
 	}
 
+	@Test
+	public void jobClasses() throws Exception
+	{
+		// Job classes declared in the module are created by Guice
+		TimedCounter.Ticks jobTicks = ticks().ticks.get(TestJob.TEST_JOB);
+		assertNotNull(jobTicks, "TestJob did not run");
+		assertTrue(jobTicks.timestamps.size() > 1, "TestJob did not run twice");
+		// ...and run in their named scheduler
+		Scheduler fast = SchedulerRepository.getInstance().lookup("fast");
+		assertNotNull(fast, "Named scheduler not created");
+		assertTrue(fast.checkExists(JobKey.jobKey("nqJ-" + TestJob.class.getSimpleName(),
+				"nqJG-" + TestJob.class.getName())), "TestJob not in named scheduler");
+	}
+
+	@Test
+	public void writeBehind() throws Exception
+	{
+		// The job data of write-behind jobs is kept between executions, and
+		// written to the job store when flushed
+		TimedCounter.Ticks writeBehindTicks = ticks().ticks.get(TestSchedules.WRITE_BEHIND_TEST);
+		assertNotNull(writeBehindTicks, "Write-behind job did not run");
+		standalone.getInjector().getInstance(WriteBehindJobDataListener.class).flush();
+		JobDetail writeBehindJob = standalone.getInjector().getInstance(SchedulerFactory.class).getScheduler()
+				.getJobDetail(JobKey.jobKey("writeBehind", "nqJG-" + TestSchedules.class.getName()));
+		assertTrue(writeBehindJob.getJobDataMap().getInt("count") >= writeBehindTicks.timestamps.size(),
+				"Write-behind job data not kept");
+	}
+
+	@Test
+	public void partitions() throws Exception
+	{
+		// Partitioned jobs run every partition
+		Application.TicksDto replyDto = ticks();
+		for (int i = 0; i < 3; i++)
+		{
+			assertNotNull(replyDto.ticks.get(TestSchedules.PARTITION_TEST + i + "/3"), "Partition " + i + " did not run");
+		}
+	}
+
+	@Test
+	public void dependencies() throws Exception
+	{
+		// Downstream jobs run after their upstream jobs, with their results
+		assertNotNull(ticks().ticks.get(TestSchedules.DEPENDENCY_TEST + "upstreamResult"),
+				"Downstream job did not run with the upstream result");
+	}
+
+	@Test
+	public void batches() throws Exception
+	{
+		// Full batches fire their consumer
+		Application.TicksDto replyDto = ticks();
+		TimedCounter.Ticks batchTicks = replyDto.ticks.get(TestSchedules.BATCH_TEST);
+		assertNotNull(batchTicks, "Batch consumer did not run");
+		assertEquals(TestSchedules.BATCH_ITEMS, batchTicks.timestamps.size(), "Batch items lost");
+		assertNull(replyDto.ticks.get(TestSchedules.BATCH_TEST + "-oversized"), "Batch too large");
+	}
+
+	@Test
+	public void publishedValues() throws Exception
+	{
+		ticks();
+		// Return values are published
+		ScheduledValue<Integer> published = standalone.getInjector().getInstance(ScheduledValues.class)
+				.get(TestSchedules.PUBLISHED_VALUE);
+		assertTrue(published.get(1, TimeUnit.SECONDS) >= 1, "No value published");
+		assertFalse(published.isStale(5, TimeUnit.SECONDS), "Published value is stale");
+	}
+
+	@Test
+	public void warmup() throws Exception
+	{
+		// Warm-up jobs run on start, and the application is ready afterwards
+		assertNotNull(ticks().ticks.get(TestSchedules.WARMUP_TEST), "Warm-up job did not run on start");
+		assertTrue(standalone.getInjector().getInstance(NinjaQuartzReadiness.class).isReady(),
+				"Application not ready after warm-up");
+	}
+
+	@Test
+	public void mbeans() throws Exception
+	{
+		MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = NinjaQuartzJmx.objectName(JobKey.jobKey("test1", "nqJG-" + TestSchedules.class.getName()));
+		assertTrue(mBeanServer.isRegistered(name), "No MBean registered for test1");
+		assertEquals("0/2 * * * * ?", mBeanServer.getAttribute(name, "CronSchedule"));
+		assertEquals("NORMAL", mBeanServer.getAttribute(name, "State"));
+		assertNotNull(mBeanServer.getAttribute(name, "NextFireTime"));
+
+		// jobs fired by the jobs they depend on only have no trigger
+		ObjectName downstream = NinjaQuartzJmx
+				.objectName(JobKey.jobKey("downstream", "nqJG-" + TestSchedules.class.getName()));
+		assertTrue(mBeanServer.isRegistered(downstream), "No MBean registered for downstream");
+		assertNull(mBeanServer.getAttribute(downstream, "TriggerName"));
+	}
+
+	/**
+	 * Get the ticks of the scheduled jobs, once the scheduler has had some
+	 * time to run the test methods. The ticks are only requested once, for all
+	 * tests.
+	 */
+	private Application.TicksDto ticks() throws Exception
+	{
+		if (ticksDto == null)
+		{
+			long pause = startedAt + RUN_MILLIS - System.currentTimeMillis();
+			if (pause > 0)
+			{
+				Application.LOG.info("Pausing for Quartz to run scheduled methods...");
+				Thread.sleep(pause);
+				Application.LOG.info("Done pausing.");
+			}
+
+			Response response = requestGet("/schedules");
+			assertTrue(response.isSuccessful(), "Schedules page failed with code " + response.code());
+			ticksDto = mapper.readValue(response.body().string(), Application.TicksDto.class);
+		}
+		return ticksDto;
+	}
+
 	/**
 	 * Checks if the given ticks are roughly the given number of seconds apart
 	 *
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.test;
+
+import com.jensfendler.ninjaquartz.job.AbstractNinjaQuartzJob;
+import com.jensfendler.ninjaquartz.job.AbstractNinjaQuartzTaskImpl;
+import com.jensfendler.ninjaquartz.job.ConcurrentNinjaQuartzJob;
+import com.jensfendler.ninjaquartz.job.Partition;
+import com.jensfendler.ninjaquartz.job.PartitionedTask;
+
+import org.junit.jupiter.api.Test;
+import org.quartz.JobBuilder;
+import org.quartz.JobDetail;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+import org.quartz.Scheduler;
+import org.quartz.TriggerBuilder;
+import org.quartz.impl.StdSchedulerFactory;
+import org.quartz.impl.matchers.GroupMatcher;
+import org.quartz.listeners.JobListenerSupport;
+
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests partitioned jobs run by the worker threads of a scheduler.
+ */
+public class PartitionedTaskTest
+{
+
+	private static final int JOBS = 3;
+
+	private static final int PARTITIONS = 3;
+
+	/**
+	 * Fires more partitioned jobs at once than the scheduler has worker
+	 * threads, so all workers wait for partitions.
+	 */
+	@Test
+	public void concurrentFiresOnSmallPool() throws Exception
+	{
+		Map<String, AtomicInteger> runs = new ConcurrentHashMap<>();
+		AbstractNinjaQuartzTaskImpl task = new AbstractNinjaQuartzTaskImpl("partitioned")
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public void execute(JobExecutionContext context)
+			{
+				// partitions run by partition jobs, or by the partitioned job
+				String group = context.getJobDetail().getKey().getGroup();
+				String job = group.startsWith(PartitionedTask.PARTITION_GROUP_PREFIX)
+						? group.substring(PartitionedTask.PARTITION_GROUP_PREFIX.length())
+						: context.getJobDetail().getKey().toString();
+				runs.computeIfAbsent(job + "/" + Partition.current().getIndex(), k -> new AtomicInteger())
+						.incrementAndGet();
+				try
+				{
+					Thread.sleep(50);
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+				}
+			}
+		};
+
+		Properties properties = new Properties();
+		properties.setProperty(StdSchedulerFactory.PROP_SCHED_INSTANCE_NAME, "partitions");
+		properties.setProperty("org.quartz.threadPool.threadCount", "2");
+		properties.setProperty(StdSchedulerFactory.PROP_JOB_STORE_CLASS, "org.quartz.simpl.RAMJobStore");
+		Scheduler scheduler = new StdSchedulerFactory(properties).getScheduler();
+		CountDownLatch finished = new CountDownLatch(JOBS);
+		AtomicInteger failed = new AtomicInteger();
+		scheduler.getListenerManager().addJobListener(new JobListenerSupport()
+		{
+			@Override
+			public String getName()
+			{
+				return "finished";
+			}
+
+			@Override
+			public void jobWasExecuted(JobExecutionContext context, JobExecutionException jobException)
+			{
+				if (jobException != null)
+				{
+					failed.incrementAndGet();
+				}
+				finished.countDown();
+			}
+		}, GroupMatcher.jobGroupEquals("partitioned"));
+		try
+		{
+			for (int i = 0; i < JOBS; i++)
+			{
+				JobDetail job = JobBuilder.newJob(ConcurrentNinjaQuartzJob.class).withIdentity("job-" + i, "partitioned")
+						.build();
+				job.getJobDataMap().put(AbstractNinjaQuartzJob.JOB_TASK_KEY,
+						new PartitionedTask(task, PARTITIONS, false));
+				scheduler.scheduleJob(job, TriggerBuilder.newTrigger().startNow().build());
+			}
+			scheduler.start();
+
+			assertTrue(finished.await(20, TimeUnit.SECONDS), "Partitioned jobs did not finish");
+		}
+		finally
+		{
+			// do not wait for jobs which are stuck
+			scheduler.shutdown(finished.getCount() == 0);
+		}
+
+		assertEquals(0, failed.get(), "Partitioned jobs failed");
+		assertEquals(JOBS * PARTITIONS, runs.size(), "Partitions missing: " + runs.keySet());
+		for (Map.Entry<String, AtomicInteger> run : runs.entrySet())
+		{
+			assertEquals(1, run.getValue().get(), "Partition " + run.getKey() + " ran more than once");
+		}
+	}
+
+}
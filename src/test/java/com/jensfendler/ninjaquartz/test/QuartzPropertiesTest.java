@@ -0,0 +1,123 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.test;
+
+import com.jensfendler.ninjaquartz.provider.NinjaQuartzSchedulers;
+import com.jensfendler.ninjaquartz.provider.QuartzSchedulerFactoryProvider;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.quartz.SchedulerException;
+import org.quartz.impl.StdSchedulerFactory;
+import org.quartz.simpl.RAMJobStore;
+
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+import ninja.utils.NinjaProperties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests the precedence of the Quartz properties of the default scheduler and
+ * of named schedulers: application.conf over the <code>quartz.properties</code>
+ * file over the NinjaQuartz defaults.
+ *
+ * @author Jens Fendler
+ *
+ */
+public class QuartzPropertiesTest
+{
+
+	private static final String THREAD_COUNT = StdSchedulerFactory.PROP_THREAD_POOL_PREFIX + ".threadCount";
+
+	private static final String MISFIRE_THRESHOLD = StdSchedulerFactory.PROP_JOB_STORE_PREFIX + ".misfireThreshold";
+
+	private Properties conf;
+
+	@BeforeEach
+	public void before(@TempDir Path dir) throws Exception
+	{
+		Properties file = new Properties();
+		file.setProperty(StdSchedulerFactory.PROP_SCHED_INSTANCE_NAME, "FromFile");
+		file.setProperty(THREAD_COUNT, "7");
+		file.setProperty(MISFIRE_THRESHOLD, "1000");
+		file.setProperty(StdSchedulerFactory.PROP_SCHED_IDLE_WAIT_TIME, "20000");
+		Path path = dir.resolve("quartz.properties");
+		try (Writer writer = Files.newBufferedWriter(path))
+		{
+			file.store(writer, null);
+		}
+
+		conf = new Properties();
+		conf.setProperty(QuartzSchedulerFactoryProvider.CONF_KEY_QUARTZ_PROPERTIES, path.toString());
+		conf.setProperty("quartz." + THREAD_COUNT, "3");
+		conf.setProperty("quartz." + StdSchedulerFactory.PROP_SCHED_MAKE_SCHEDULER_THREAD_DAEMON, "true");
+	}
+
+	@Test
+	public void defaultScheduler()
+	{
+		Properties properties = new QuartzSchedulerFactoryProvider(FakeNinjaProperties.of(conf)).getQuartzProperties();
+		assertEquals("3", properties.getProperty(THREAD_COUNT));
+		assertEquals("true", properties.getProperty(StdSchedulerFactory.PROP_SCHED_MAKE_SCHEDULER_THREAD_DAEMON));
+		assertEquals("1000", properties.getProperty(MISFIRE_THRESHOLD));
+		assertEquals("FromFile", properties.getProperty(StdSchedulerFactory.PROP_SCHED_INSTANCE_NAME));
+		assertEquals(RAMJobStore.class.getName(), properties.getProperty(StdSchedulerFactory.PROP_JOB_STORE_CLASS));
+	}
+
+	@Test
+	public void namedScheduler() throws Exception
+	{
+		conf.setProperty("quartz.scheduler.named.threadCount", "2");
+		conf.setProperty("quartz.scheduler.named.org.quartz.scheduler.idleWaitTime", "5000");
+		Properties properties = new Schedulers(FakeNinjaProperties.of(conf)).getProperties("named");
+
+		// the scheduler's own settings
+		assertEquals("named", properties.getProperty(StdSchedulerFactory.PROP_SCHED_INSTANCE_NAME));
+		assertEquals("2", properties.getProperty(THREAD_COUNT));
+		assertEquals("5000", properties.getProperty(StdSchedulerFactory.PROP_SCHED_IDLE_WAIT_TIME));
+		assertEquals(RAMJobStore.class.getName(), properties.getProperty(StdSchedulerFactory.PROP_JOB_STORE_CLASS));
+
+		// inherited from the default scheduler, except for its job store
+		assertEquals("true", properties.getProperty(StdSchedulerFactory.PROP_SCHED_MAKE_SCHEDULER_THREAD_DAEMON));
+		assertNull(properties.getProperty(MISFIRE_THRESHOLD));
+
+		assertThrows(SchedulerException.class, () -> new Schedulers(FakeNinjaProperties.of(conf)).getProperties("missing"));
+	}
+
+	/**
+	 * Gives access to the properties of named schedulers.
+	 */
+	private static class Schedulers extends NinjaQuartzSchedulers
+	{
+		Schedulers(NinjaProperties ninjaProperties)
+		{
+			super(new QuartzSchedulerFactoryProvider(ninjaProperties), ninjaProperties);
+		}
+
+		Properties getProperties(String schedulerName) throws SchedulerException
+		{
+			return getSchedulerProperties(schedulerName);
+		}
+	}
+
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.test;
+
+import org.quartz.simpl.RAMJobStore;
+import org.quartz.spi.JobStore;
+
+/**
+ * Runs the tests of the {@link ConcurrentRAMJobStoreTest} against Quartz's
+ * {@link RAMJobStore}, to make sure they test the semantics of a Quartz job
+ * store, and not just those of the ConcurrentRAMJobStore.
+ */
+public class RAMJobStoreReferenceTest extends ConcurrentRAMJobStoreTest
+{
+
+	@Override
+	protected JobStore createStore()
+	{
+		return new RAMJobStore();
+	}
+
+	/**
+	 * The RAMJobStore puts a repeating trigger back into its queue when it is
+	 * fired, and does not take it out again when the job sets the trigger to
+	 * the error state, so the trigger is acquired once more. The
+	 * ConcurrentRAMJobStore skips it, like the JDBC job stores.
+	 */
+	@Override
+	protected boolean acquiresErrorTriggers()
+	{
+		return true;
+	}
+
+}
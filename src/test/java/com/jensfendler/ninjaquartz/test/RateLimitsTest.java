@@ -0,0 +1,159 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.test;
+
+import com.jensfendler.ninjaquartz.admission.RateLimiter;
+import com.jensfendler.ninjaquartz.admission.RateLimits;
+import com.jensfendler.ninjaquartz.annotations.QuartzSchedule;
+import com.jensfendler.ninjaquartz.job.NinjaQuartzJobStatus;
+import com.jensfendler.ninjaquartz.job.NonConcurrentNinjaQuartzJob;
+
+import org.junit.jupiter.api.Test;
+import org.quartz.JobBuilder;
+import org.quartz.JobDataMap;
+import org.quartz.JobDetail;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobKey;
+import org.quartz.Scheduler;
+import org.quartz.SchedulerException;
+import org.quartz.Trigger;
+import org.quartz.TriggerBuilder;
+import org.quartz.impl.JobExecutionContextImpl;
+import org.quartz.spi.OperableTrigger;
+import org.quartz.spi.TriggerFiredBundle;
+
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import ninja.utils.NinjaMode;
+import ninja.utils.NinjaPropertiesImpl;
+
+/**
+ * Tests rate limits of jobs and groups, with a scheduler recording the
+ * triggers of delayed fires.
+ */
+public class RateLimitsTest
+{
+
+	private final FakeScheduler fakeScheduler = new FakeScheduler();
+
+	private final Scheduler scheduler = fakeScheduler.get();
+
+	private final List<Trigger> delayed = fakeScheduler.scheduledTriggers;
+
+	private final NinjaPropertiesImpl properties = new NinjaPropertiesImpl(NinjaMode.test);
+
+	private final NinjaQuartzJobStatus status = new NinjaQuartzJobStatus();
+
+	@Test
+	public void tokenBucket() throws Exception
+	{
+		RateLimiter limiter = new RateLimiter(20, 3);
+		for (int i = 0; i < 3; i++)
+		{
+			assertTrue(limiter.tryAcquire(), "Burst not available");
+		}
+		assertFalse(limiter.tryAcquire(), "Permit beyond the burst");
+		limiter.refund();
+		assertTrue(limiter.tryAcquire(), "Refunded permit not available");
+		Thread.sleep(60);
+		assertTrue(limiter.tryAcquire(), "Permit not refilled");
+		assertTrue(limiter.reserve() > 0, "Reserved permit available at once");
+	}
+
+	@Test
+	public void skip() throws Exception
+	{
+		RateLimits rateLimits = new RateLimits(properties);
+		JobExecutionContext context = context("skip", new JobDataMap());
+		rateLimits.register(context.getJobDetail().getKey(), 1, 2, null, QuartzSchedule.RATE_LIMIT_SKIP);
+
+		assertTrue(rateLimits.admit(context, status));
+		assertTrue(rateLimits.admit(context, status));
+		assertFalse(rateLimits.admit(context, status), "Fire beyond the rate limit");
+		assertEquals(1, status.getRateLimitSkipCount());
+		assertTrue(delayed.isEmpty());
+
+		// an admitted fire which did not run returns its permit
+		rateLimits.refund(context);
+		assertTrue(rateLimits.admit(context, status), "Refunded permit not available");
+	}
+
+	@Test
+	public void delayAndCoalesce() throws Exception
+	{
+		RateLimits rateLimits = new RateLimits(properties);
+		JobExecutionContext delay = context("delay", new JobDataMap());
+		rateLimits.register(delay.getJobDetail().getKey(), 1, 1, null, QuartzSchedule.RATE_LIMIT_DELAY);
+		assertTrue(rateLimits.admit(delay, status));
+		assertFalse(rateLimits.admit(delay, status));
+		assertFalse(rateLimits.admit(delay, status));
+		assertEquals(2, delayed.size(), "Fires not delayed");
+		assertTrue(delayed.get(1).getStartTime().after(delayed.get(0).getStartTime()), "Delayed fires not spaced");
+
+		delayed.clear();
+		JobExecutionContext coalesce = context("coalesce", new JobDataMap());
+		rateLimits.register(coalesce.getJobDetail().getKey(), 1, 1, null, QuartzSchedule.RATE_LIMIT_COALESCE);
+		assertTrue(rateLimits.admit(coalesce, status));
+		assertFalse(rateLimits.admit(coalesce, status));
+		assertFalse(rateLimits.admit(coalesce, status));
+		assertEquals(1, delayed.size(), "Fires not coalesced");
+		assertEquals(3, status.getRateLimitDelayCount());
+		assertEquals(1, status.getRateLimitSkipCount());
+
+		// the delayed fire runs with its reserved permit
+		JobDataMap reserved = new JobDataMap();
+		reserved.put(RateLimits.RESERVED_KEY, true);
+		assertTrue(rateLimits.admit(context("coalesce", reserved), status), "Delayed fire held back");
+	}
+
+	@Test
+	public void groups() throws Exception
+	{
+		properties.setProperty(RateLimits.CONF_PREFIX + "partnerApi" + RateLimits.CONF_PERMITS_PER_SECOND, "1");
+		properties.setProperty(RateLimits.CONF_PREFIX + "partnerApi" + RateLimits.CONF_BURST, "2");
+		RateLimits rateLimits = new RateLimits(properties);
+		JobExecutionContext first = context("first", new JobDataMap());
+		JobExecutionContext second = context("second", new JobDataMap());
+		rateLimits.register(first.getJobDetail().getKey(), 0, 1, "partnerApi", QuartzSchedule.RATE_LIMIT_SKIP);
+		rateLimits.register(second.getJobDetail().getKey(), 0, 1, "partnerApi", QuartzSchedule.RATE_LIMIT_SKIP);
+
+		assertTrue(rateLimits.admit(first, status));
+		assertTrue(rateLimits.admit(second, status));
+		assertFalse(rateLimits.admit(first, status), "Group limit not shared");
+		assertFalse(rateLimits.admit(second, status), "Group limit not shared");
+
+		assertThrows(SchedulerException.class,
+				() -> rateLimits.register(JobKey.jobKey("unknown"), 0, 1, "unknown", QuartzSchedule.RATE_LIMIT_SKIP));
+	}
+
+	private JobExecutionContext context(String name, JobDataMap triggerData)
+	{
+		JobDetail jobDetail = JobBuilder.newJob(NonConcurrentNinjaQuartzJob.class).withIdentity(name).build();
+		OperableTrigger trigger = (OperableTrigger) TriggerBuilder.newTrigger().forJob(jobDetail)
+				.usingJobData(triggerData).build();
+		Date now = new Date();
+		return new JobExecutionContextImpl(scheduler,
+				new TriggerFiredBundle(jobDetail, trigger, null, false, now, now, null, null),
+				new NonConcurrentNinjaQuartzJob());
+	}
+
+}
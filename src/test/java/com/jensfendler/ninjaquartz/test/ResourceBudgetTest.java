@@ -0,0 +1,104 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.test;
+
+import com.jensfendler.ninjaquartz.admission.ResourceBudget;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests starting weighted jobs within a resource budget.
+ */
+public class ResourceBudgetTest
+{
+
+	@Test
+	public void waitingJobsStartByPriority() throws Exception
+	{
+		ResourceBudget budget = new ResourceBudget(4, 1000, 0);
+		assertTrue(budget.acquire(3, 800, 5));
+		assertEquals(3, budget.getCpuUsed());
+		assertEquals(800, budget.getMemoryUsed());
+
+		List<String> started = new CopyOnWriteArrayList<>();
+		Thread low = waiter(budget, "low", 1, started);
+		awaitWaiting(budget, 1);
+		Thread high = waiter(budget, "high", 9, started);
+		awaitWaiting(budget, 2);
+		assertTrue(started.isEmpty(), "Jobs started beyond the budget");
+
+		budget.release(3, 800);
+		low.join(5000);
+		high.join(5000);
+		assertEquals(2, started.size(), "Waiting jobs did not start");
+		assertEquals("high", started.get(0), "Waiting jobs not started by priority");
+		assertEquals(0, budget.getCpuUsed());
+		assertEquals(0, budget.getMemoryUsed());
+		assertEquals(2, budget.getWaitedCount());
+		assertEquals(3, budget.getAcquiredCount());
+	}
+
+	@Test
+	public void timeoutAndCapping()
+	{
+		ResourceBudget budget = new ResourceBudget(4, 0, 100);
+		// weights above the budget are capped, so the job can run on its own
+		assertTrue(budget.acquire(10, 5000, 5));
+		assertEquals(4, budget.getCpuUsed());
+		assertEquals(0, budget.getMemoryUsed(), "Memory counted without a memory budget");
+		assertTrue(budget.acquire(0, 5000, 5), "Job limited by a resource without a budget");
+
+		long start = System.currentTimeMillis();
+		assertFalse(budget.acquire(1, 0, 5), "Job started beyond the budget");
+		assertTrue(System.currentTimeMillis() - start >= 90, "Job did not wait");
+		assertEquals(1, budget.getTimedOutCount());
+		assertEquals(0, budget.getWaitingCount());
+
+		budget.release(10, 5000);
+		assertTrue(budget.acquire(1, 0, 5));
+	}
+
+	private static Thread waiter(ResourceBudget budget, String name, int priority, List<String> started)
+	{
+		Thread thread = new Thread(() -> {
+			// only one of the waiting jobs fits at a time
+			if (budget.acquire(3, 500, priority))
+			{
+				started.add(name);
+				budget.release(3, 500);
+			}
+		});
+		thread.start();
+		return thread;
+	}
+
+	private static void awaitWaiting(ResourceBudget budget, int count) throws InterruptedException
+	{
+		for (int i = 0; i < 500 && budget.getWaitingCount() < count; i++)
+		{
+			Thread.sleep(10);
+		}
+		assertEquals(count, budget.getWaitingCount());
+	}
+
+}
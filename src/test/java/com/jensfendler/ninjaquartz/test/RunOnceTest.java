@@ -0,0 +1,313 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.test;
+
+import com.jensfendler.ninjaquartz.NinjaQuartzReadiness;
+import com.jensfendler.ninjaquartz.job.AbstractNinjaQuartzJob;
+import com.jensfendler.ninjaquartz.job.AbstractNinjaQuartzTaskImpl;
+import com.jensfendler.ninjaquartz.job.ConcurrentNinjaQuartzJob;
+import com.jensfendler.ninjaquartz.lock.FileLockProvider;
+import com.jensfendler.ninjaquartz.lock.JdbcLockProvider;
+import com.jensfendler.ninjaquartz.lock.LockProvider;
+import com.jensfendler.ninjaquartz.lock.RunOnceLocks;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.quartz.CronScheduleBuilder;
+import org.quartz.JobBuilder;
+import org.quartz.JobDetail;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+import org.quartz.JobKey;
+import org.quartz.Scheduler;
+import org.quartz.SimpleScheduleBuilder;
+import org.quartz.Trigger;
+import org.quartz.TriggerBuilder;
+import org.quartz.impl.StdSchedulerFactory;
+import org.quartz.listeners.JobListenerSupport;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+import ninja.utils.NinjaProperties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests jobs running once on several nodes, simulated by several schedulers
+ * with RAM job stores in the same JVM, sharing their locks.
+ */
+public class RunOnceTest
+{
+
+	private static final int NODES = 3;
+
+	private static final int FIRES = 4;
+
+	@Test
+	public void jdbcLocks() throws Exception
+	{
+		String url = "jdbc:h2:mem:runOnce;DB_CLOSE_DELAY=-1";
+		List<LockProvider> providers = new ArrayList<>();
+		try
+		{
+			assertLeases(new JdbcLockProvider(url, "sa", "", JdbcLockProvider.DEFAULT_TABLE));
+			assertRunsOnce(node -> {
+				LockProvider provider = new JdbcLockProvider(url, "sa", "", JdbcLockProvider.DEFAULT_TABLE);
+				providers.add(provider);
+				return provider;
+			});
+		}
+		finally
+		{
+			providers.forEach(LockProvider::shutdown);
+		}
+	}
+
+	@Test
+	public void fileLocks(@TempDir Path directory) throws Exception
+	{
+		assertLeases(new FileLockProvider(directory));
+		assertRunsOnce(node -> new FileLockProvider(directory));
+	}
+
+	/**
+	 * A warm-up fire skipped because another node holds the lock must still
+	 * count as finished for the readiness of the application.
+	 */
+	@Test
+	public void refusedStartupFireFinishes(@TempDir Path directory) throws Exception
+	{
+		LockProvider provider = new FileLockProvider(directory);
+		JobKey jobKey = JobKey.jobKey("warmup");
+		assertTrue(provider.tryLock(jobKey.toString(), "node-1", System.currentTimeMillis() + 60000));
+
+		AtomicInteger runs = new AtomicInteger();
+		AbstractNinjaQuartzTaskImpl task = new AbstractNinjaQuartzTaskImpl("warmup")
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public void execute(JobExecutionContext context)
+			{
+				runs.incrementAndGet();
+			}
+		};
+		NinjaProperties ninjaProperties = FakeNinjaProperties.defaults();
+		CountDownLatch finished = new CountDownLatch(1);
+		NinjaQuartzReadiness readiness = new NinjaQuartzReadiness(ninjaProperties)
+		{
+			@Override
+			public synchronized void finished(JobKey key)
+			{
+				super.finished(key);
+				if (jobKey.equals(key))
+				{
+					finished.countDown();
+				}
+			}
+		};
+
+		Properties properties = new Properties();
+		properties.setProperty(StdSchedulerFactory.PROP_SCHED_INSTANCE_NAME, "warmup");
+		properties.setProperty("org.quartz.threadPool.threadCount", "1");
+		properties.setProperty(StdSchedulerFactory.PROP_JOB_STORE_CLASS, "org.quartz.simpl.RAMJobStore");
+		Scheduler scheduler = new StdSchedulerFactory(properties).getScheduler();
+		try
+		{
+			scheduler.getContext().put(RunOnceLocks.SCHEDULER_CONTEXT_KEY, new RunOnceLocks(provider, 60000, "node-0"));
+			scheduler.getContext().put(NinjaQuartzReadiness.SCHEDULER_CONTEXT_KEY, readiness);
+			JobDetail job = JobBuilder.newJob(ConcurrentNinjaQuartzJob.class).withIdentity(jobKey).build();
+			job.getJobDataMap().put(AbstractNinjaQuartzJob.JOB_TASK_KEY, task);
+			job.getJobDataMap().put(AbstractNinjaQuartzJob.JOB_RUN_ONCE, true);
+			Trigger trigger = TriggerBuilder.newTrigger().forJob(job).startNow()
+					.usingJobData(AbstractNinjaQuartzJob.FIRE_ON_START_KEY, true).build();
+			scheduler.scheduleJob(job, trigger);
+			scheduler.start();
+
+			assertTrue(finished.await(10, TimeUnit.SECONDS), "Refused startup fire not reported as finished");
+			assertEquals(0, runs.get(), "Startup fire ran without the lock");
+		}
+		finally
+		{
+			scheduler.shutdown(true);
+		}
+	}
+
+	/**
+	 * The lock of a one-shot fire (with no next fire time) must not hold back
+	 * the next fire of the job's cron trigger.
+	 */
+	@Test
+	public void oneShotFireReleasesLock(@TempDir Path directory) throws Exception
+	{
+		AtomicInteger runs = new AtomicInteger();
+		AbstractNinjaQuartzTaskImpl task = new AbstractNinjaQuartzTaskImpl("oneShot")
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public void execute(JobExecutionContext context)
+			{
+				runs.incrementAndGet();
+			}
+		};
+
+		Properties properties = new Properties();
+		properties.setProperty(StdSchedulerFactory.PROP_SCHED_INSTANCE_NAME, "oneShot");
+		properties.setProperty("org.quartz.threadPool.threadCount", "1");
+		properties.setProperty(StdSchedulerFactory.PROP_JOB_STORE_CLASS, "org.quartz.simpl.RAMJobStore");
+		Scheduler scheduler = new StdSchedulerFactory(properties).getScheduler();
+		try
+		{
+			scheduler.getContext().put(RunOnceLocks.SCHEDULER_CONTEXT_KEY,
+					new RunOnceLocks(new FileLockProvider(directory), 60000, "node-0"));
+			CountDownLatch oneShot = new CountDownLatch(1);
+			CountDownLatch cron = new CountDownLatch(1);
+			scheduler.getListenerManager().addJobListener(new JobListenerSupport()
+			{
+				@Override
+				public String getName()
+				{
+					return "runs";
+				}
+
+				@Override
+				public void jobWasExecuted(JobExecutionContext context, JobExecutionException jobException)
+				{
+					if (context.getNextFireTime() == null)
+					{
+						oneShot.countDown();
+					}
+					else if (runs.get() > 1)
+					{
+						cron.countDown();
+					}
+				}
+			});
+			JobDetail job = JobBuilder.newJob(ConcurrentNinjaQuartzJob.class).withIdentity("oneShot")
+					.storeDurably().build();
+			job.getJobDataMap().put(AbstractNinjaQuartzJob.JOB_TASK_KEY, task);
+			job.getJobDataMap().put(AbstractNinjaQuartzJob.JOB_RUN_ONCE, true);
+			scheduler.addJob(job, true);
+			scheduler.start();
+
+			scheduler.triggerJob(job.getKey());
+			assertTrue(oneShot.await(10, TimeUnit.SECONDS), "One-shot fire not run");
+			assertEquals(1, runs.get(), "One-shot fire skipped");
+			scheduler.scheduleJob(TriggerBuilder.newTrigger().forJob(job)
+					.withSchedule(CronScheduleBuilder.cronSchedule("* * * * * ?")).build());
+			assertTrue(cron.await(10, TimeUnit.SECONDS), "Cron fire held back by the lock of the one-shot fire");
+		}
+		finally
+		{
+			scheduler.shutdown(true);
+		}
+	}
+
+	private static void assertLeases(LockProvider provider) throws Exception
+	{
+		long now = System.currentTimeMillis();
+		assertTrue(provider.tryLock("lease", "a", now + 60000), "New lock not taken");
+		assertFalse(provider.tryLock("lease", "b", now + 60000), "Leased lock taken");
+		assertFalse(provider.tryLock("lease", "a", now + 60000), "Leased lock taken by its owner");
+		provider.unlock("lease", "b", 0);
+		assertFalse(provider.tryLock("lease", "b", now + 60000), "Lock released by another owner");
+		provider.unlock("lease", "a", 0);
+		assertTrue(provider.tryLock("lease", "b", System.currentTimeMillis() + 100), "Released lock not taken");
+		Thread.sleep(150);
+		assertTrue(provider.tryLock("lease", "a", System.currentTimeMillis() + 100), "Expired lock not taken");
+	}
+
+	/**
+	 * Fire the same job on all nodes, and check that every fire ran once.
+	 */
+	private static void assertRunsOnce(IntFunction<LockProvider> providers) throws Exception
+	{
+		Map<Long, AtomicInteger> runs = new ConcurrentHashMap<>();
+		AbstractNinjaQuartzTaskImpl task = new AbstractNinjaQuartzTaskImpl("runOnce")
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public void execute(JobExecutionContext context)
+			{
+				runs.computeIfAbsent(context.getScheduledFireTime().getTime(), t -> new AtomicInteger())
+						.incrementAndGet();
+				try
+				{
+					Thread.sleep(50);
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+				}
+			}
+		};
+
+		Date startAt = new Date((System.currentTimeMillis() / 1000 + 1) * 1000);
+		List<Scheduler> schedulers = new ArrayList<>();
+		try
+		{
+			for (int node = 0; node < NODES; node++)
+			{
+				Properties properties = new Properties();
+				properties.setProperty(StdSchedulerFactory.PROP_SCHED_INSTANCE_NAME, "runOnce-" + node);
+				properties.setProperty("org.quartz.threadPool.threadCount", "2");
+				properties.setProperty(StdSchedulerFactory.PROP_JOB_STORE_CLASS, "org.quartz.simpl.RAMJobStore");
+				Scheduler scheduler = new StdSchedulerFactory(properties).getScheduler();
+				schedulers.add(scheduler);
+				scheduler.getContext().put(RunOnceLocks.SCHEDULER_CONTEXT_KEY,
+						new RunOnceLocks(providers.apply(node), 60000, "node-" + node));
+
+				JobDetail job = JobBuilder.newJob(ConcurrentNinjaQuartzJob.class).withIdentity("runOnce").build();
+				job.getJobDataMap().put(AbstractNinjaQuartzJob.JOB_TASK_KEY, task);
+				job.getJobDataMap().put(AbstractNinjaQuartzJob.JOB_RUN_ONCE, true);
+				Trigger trigger = TriggerBuilder.newTrigger().startAt(startAt).withSchedule(
+						SimpleScheduleBuilder.repeatSecondlyForTotalCount(FIRES)).build();
+				scheduler.scheduleJob(job, trigger);
+				scheduler.start();
+			}
+
+			Thread.sleep(startAt.getTime() - System.currentTimeMillis() + FIRES * 1000);
+		}
+		finally
+		{
+			for (Scheduler scheduler : schedulers)
+			{
+				scheduler.shutdown(true);
+			}
+		}
+
+		assertTrue(runs.size() >= FIRES - 1, "Fires missing: " + runs.keySet());
+		for (Map.Entry<Long, AtomicInteger> run : runs.entrySet())
+		{
+			assertEquals(1, run.getValue().get(), "Fire at " + new Date(run.getKey()) + " ran more than once");
+		}
+	}
+
+}
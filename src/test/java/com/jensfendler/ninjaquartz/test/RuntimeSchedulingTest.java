@@ -0,0 +1,223 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.test;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.jensfendler.ninjaquartz.NinjaQuartzModule;
+import com.jensfendler.ninjaquartz.NinjaQuartzSchedulerRegistration;
+import com.jensfendler.ninjaquartz.NinjaQuartzStartup;
+import com.jensfendler.ninjaquartz.ScheduleOptions;
+import com.jensfendler.ninjaquartz.dependency.JobDependencies;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.quartz.CronTrigger;
+import org.quartz.Job;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobKey;
+import org.quartz.Scheduler;
+import org.quartz.SchedulerException;
+import org.quartz.SchedulerFactory;
+import org.quartz.Trigger.TriggerState;
+import org.quartz.TriggerKey;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import ninja.utils.NinjaProperties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests scheduling jobs at run time through the
+ * {@link NinjaQuartzSchedulerRegistration}, with the module installed in an
+ * injector of its own (outside of a Ninja application).
+ *
+ * @author Jens Fendler
+ *
+ */
+public class RuntimeSchedulingTest
+{
+
+	private static final String GROUP = "nqJG-runtime";
+
+	private static Injector injector;
+
+	private static NinjaQuartzSchedulerRegistration registration;
+
+	private static Scheduler scheduler;
+
+	@BeforeAll
+	public static void start() throws Exception
+	{
+		Properties conf = new Properties();
+		conf.setProperty("quartz.org.quartz.scheduler.instanceName", RuntimeSchedulingTest.class.getSimpleName());
+		conf.setProperty("schedule.reload", "0 0 3 * * ?");
+		injector = Guice.createInjector(new NinjaQuartzModule(),
+				binder -> binder.bind(NinjaProperties.class).toInstance(FakeNinjaProperties.of(conf)));
+		registration = injector.getInstance(NinjaQuartzSchedulerRegistration.class);
+		injector.getInstance(NinjaQuartzStartup.class).buildSchedulers();
+		scheduler = injector.getInstance(SchedulerFactory.class).getScheduler();
+	}
+
+	@AfterAll
+	public static void stop() throws Exception
+	{
+		NinjaQuartzStartup startup = injector.getInstance(NinjaQuartzStartup.class);
+		startup.stopDelays();
+		startup.shutdownSchedulers();
+		scheduler.shutdown(true);
+	}
+
+	@Test
+	public void scheduleRunnable() throws Exception
+	{
+		CountDownLatch ran = new CountDownLatch(1);
+		JobKey jobKey = registration.scheduleRunnable(ran::countDown, ScheduleOptions.cron("* * * * * ?"));
+		assertEquals(GROUP, jobKey.getGroup());
+		assertTrue(scheduler.checkExists(jobKey));
+		assertTrue(ran.await(5, TimeUnit.SECONDS), "runnable did not run");
+		scheduler.deleteJob(jobKey);
+	}
+
+	@Test
+	public void scheduleRunnables() throws Exception
+	{
+		CountDownLatch ran = new CountDownLatch(4);
+		Map<String, Runnable> upstream = new LinkedHashMap<>();
+		upstream.put("batch-a", ran::countDown);
+		upstream.put("batch-b", ran::countDown);
+		List<JobKey> upstreamKeys = registration.scheduleRunnables(upstream, ScheduleOptions.cron("* * * * * ?"));
+		assertEquals(2, upstreamKeys.size());
+
+		// jobs without a trigger are stored in the same call
+		Map<String, Runnable> downstream = new LinkedHashMap<>();
+		downstream.put("batch-c", ran::countDown);
+		downstream.put("batch-d", ran::countDown);
+		List<JobKey> downstreamKeys = registration.scheduleRunnables(downstream, ScheduleOptions.after("batch-a"));
+		for (JobKey jobKey : downstreamKeys)
+		{
+			assertTrue(scheduler.checkExists(jobKey));
+			assertTrue(scheduler.getJobDetail(jobKey).isDurable());
+			assertTrue(scheduler.getTriggersOfJob(jobKey).isEmpty());
+			assertEquals(Collections.singleton(JobKey.jobKey("batch-a", GROUP)),
+					jobDependencies().getUpstream(jobKey));
+		}
+
+		assertTrue(ran.await(5, TimeUnit.SECONDS), "not all runnables ran");
+		scheduler.deleteJobs(downstreamKeys);
+		scheduler.deleteJobs(upstreamKeys);
+	}
+
+	@Test
+	public void failedScheduleRegistersNothing() throws Exception
+	{
+		// x runs after y, so y cannot run after x
+		JobKey x = registration.scheduleRunnable(() -> {
+		}, ScheduleOptions.after("cycle-y").jobName("cycle-x"));
+
+		Map<String, Runnable> runnables = new LinkedHashMap<>();
+		runnables.put("cycle-z", () -> {
+		});
+		runnables.put("cycle-y", () -> {
+		});
+		assertThrows(SchedulerException.class, () -> registration.scheduleRunnables(runnables,
+				ScheduleOptions.after("cycle-x")));
+		assertFalse(scheduler.checkExists(JobKey.jobKey("cycle-z", GROUP)));
+		assertFalse(scheduler.checkExists(JobKey.jobKey("cycle-y", GROUP)));
+		assertTrue(jobDependencies().getUpstream(JobKey.jobKey("cycle-z", GROUP)).isEmpty());
+		assertFalse(jobDependencies().hasDownstream(x));
+
+		// a rate limit group which is not configured
+		assertThrows(SchedulerException.class, () -> registration.scheduleRunnables(runnables,
+				ScheduleOptions.cron("* * * * * ?").rateLimitGroup("unconfigured")));
+		assertFalse(scheduler.checkExists(JobKey.jobKey("cycle-z", GROUP)));
+		scheduler.deleteJob(x);
+	}
+
+	@Test
+	public void reloadSchedules() throws Exception
+	{
+		JobKey jobKey = registration.scheduleRunnable(() -> {
+		}, ScheduleOptions.cron("schedule.reload").jobName("reload"));
+		TriggerKey triggerKey = scheduler.getTriggersOfJob(jobKey).get(0).getKey();
+		assertEquals("0 0 3 * * ?", cronExpression(triggerKey));
+
+		// a changed schedule replaces the trigger, a paused job stays paused
+		scheduler.pauseJob(jobKey);
+		Properties conf = new Properties();
+		conf.setProperty("schedule.reload", "0 0 4 * * ?");
+		assertEquals(1, registration.reloadSchedules(FakeNinjaProperties.of(conf)));
+		assertEquals("0 0 4 * * ?", cronExpression(triggerKey));
+		assertEquals(TriggerState.PAUSED, scheduler.getTriggerState(triggerKey));
+
+		// unchanged, invalid and removed schedules keep the trigger
+		assertEquals(0, registration.reloadSchedules(FakeNinjaProperties.of(conf)));
+		conf.setProperty("schedule.reload", "not a cron expression");
+		assertEquals(0, registration.reloadSchedules(FakeNinjaProperties.of(conf)));
+		conf.remove("schedule.reload");
+		assertEquals(0, registration.reloadSchedules(FakeNinjaProperties.of(conf)));
+		assertEquals("0 0 4 * * ?", cronExpression(triggerKey));
+
+		// a new schedule for a job which no longer exists is not applied
+		scheduler.deleteJob(jobKey);
+		conf.setProperty("schedule.reload", "0 0 5 * * ?");
+		assertEquals(0, registration.reloadSchedules(FakeNinjaProperties.of(conf)));
+		assertFalse(scheduler.checkExists(triggerKey));
+	}
+
+	@Test
+	public void jobClassesRejectWrapperOptions() throws Exception
+	{
+		SchedulerException e = assertThrows(SchedulerException.class, () -> registration
+				.scheduleJobClass(NoopJob.class, ScheduleOptions.cron("0 0 3 * * ?").runOnce(true).publishAs("noop")));
+		assertTrue(e.getMessage().contains("[runOnce, publishAs]"), e.getMessage());
+	}
+
+	private static String cronExpression(TriggerKey triggerKey) throws SchedulerException
+	{
+		return ((CronTrigger) scheduler.getTrigger(triggerKey)).getCronExpression();
+	}
+
+	private static JobDependencies jobDependencies() throws SchedulerException
+	{
+		return (JobDependencies) scheduler.getContext().get(JobDependencies.SCHEDULER_CONTEXT_KEY);
+	}
+
+	/**
+	 * A plain Quartz job.
+	 */
+	public static class NoopJob implements Job
+	{
+
+		@Override
+		public void execute(JobExecutionContext context)
+		{
+		}
+
+	}
+
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.test;
+
+import com.jensfendler.ninjaquartz.delay.Timeout;
+import com.jensfendler.ninjaquartz.delay.TimingWheel;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the ordering, cancellation and capacity of the {@link TimingWheel}.
+ */
+public class TimingWheelTest
+{
+	private TimingWheel wheel;
+
+	@BeforeEach
+	public void before()
+	{
+		// a small wheel, so that delays span several levels
+		wheel = new TimingWheel(1, TimeUnit.MILLISECONDS, 8, Runnable::run);
+	}
+
+	@AfterEach
+	public void after()
+	{
+		wheel.stop();
+	}
+
+	@Test
+	public void ordering() throws Exception
+	{
+		List<Integer> order = new CopyOnWriteArrayList<>();
+		CountDownLatch done = new CountDownLatch(5);
+		for (int delay : new int[] { 300, 20, 150, 70, 500 })
+		{
+			wheel.schedule(() -> {
+				order.add(delay);
+				done.countDown();
+			}, delay, TimeUnit.MILLISECONDS);
+		}
+
+		assertTrue(done.await(5, TimeUnit.SECONDS), "Not all tasks ran");
+		assertArrayEquals(new Integer[] { 20, 70, 150, 300, 500 }, order.toArray(new Integer[0]));
+		assertEquals(0, wheel.getPendingCount());
+	}
+
+	@Test
+	public void neverEarly() throws Exception
+	{
+		int tasks = 200;
+		AtomicInteger early = new AtomicInteger();
+		CountDownLatch done = new CountDownLatch(tasks);
+		for (int i = 0; i < tasks; i++)
+		{
+			long delayMillis = i * 3;
+			long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+			wheel.schedule(() -> {
+				if (System.nanoTime() < deadline)
+				{
+					early.incrementAndGet();
+				}
+				done.countDown();
+			}, delayMillis, TimeUnit.MILLISECONDS);
+		}
+
+		assertTrue(done.await(10, TimeUnit.SECONDS), "Not all tasks ran");
+		assertEquals(0, early.get(), "Tasks ran before their delay");
+	}
+
+	@Test
+	public void cancel() throws Exception
+	{
+		AtomicInteger runs = new AtomicInteger();
+		Timeout cancelled = wheel.schedule(runs::incrementAndGet, 50, TimeUnit.MILLISECONDS);
+		CountDownLatch done = new CountDownLatch(1);
+		Timeout kept = wheel.schedule(done::countDown, 100, TimeUnit.MILLISECONDS);
+
+		assertTrue(cancelled.cancel());
+		assertFalse(cancelled.cancel(), "Cancelled twice");
+		assertTrue(done.await(5, TimeUnit.SECONDS), "Task did not run");
+		assertEquals(0, runs.get(), "Cancelled task ran");
+		assertTrue(cancelled.isCancelled());
+		assertTrue(kept.isExpired());
+		assertFalse(kept.cancel(), "Expired task cancelled");
+	}
+
+	@Test
+	public void millionPendingTasks() throws Exception
+	{
+		int tasks = 1_000_000;
+		Runnable task = () -> {
+			throw new AssertionError("Task should have been cancelled");
+		};
+		Timeout[] timeouts = new Timeout[tasks];
+		for (int i = 0; i < tasks; i++)
+		{
+			timeouts[i] = wheel.schedule(task, 60 + i % 3600, TimeUnit.SECONDS);
+		}
+		assertEquals(tasks, wheel.getPendingCount());
+
+		for (Timeout timeout : timeouts)
+		{
+			assertTrue(timeout.cancel());
+		}
+		assertEquals(0, wheel.getPendingCount());
+	}
+}
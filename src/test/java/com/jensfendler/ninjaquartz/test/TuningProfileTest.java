@@ -0,0 +1,106 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jensfendler.ninjaquartz.test;
+
+import com.jensfendler.ninjaquartz.provider.QuartzSchedulerFactoryProvider;
+
+import org.junit.jupiter.api.Test;
+import org.quartz.impl.StdSchedulerFactory;
+
+import java.util.Properties;
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Tests the Quartz properties of the tuning profiles selected through
+ * <code>quartz.profile</code>.
+ *
+ * @author Jens Fendler
+ *
+ */
+public class TuningProfileTest
+{
+
+	private static final String THREAD_COUNT = StdSchedulerFactory.PROP_THREAD_POOL_PREFIX + ".threadCount";
+
+	private static final int CORES = Runtime.getRuntime().availableProcessors();
+
+	@Test
+	public void throughput()
+	{
+		Properties properties = quartzProperties("throughput", 1);
+		assertEquals(String.valueOf(CORES * 2), properties.getProperty(THREAD_COUNT));
+		assertEquals(String.valueOf(CORES * 2), properties.getProperty(StdSchedulerFactory.PROP_SCHED_MAX_BATCH_SIZE));
+		assertEquals("1000", properties.getProperty(StdSchedulerFactory.PROP_SCHED_BATCH_TIME_WINDOW));
+		assertEquals("10000", properties.getProperty(StdSchedulerFactory.PROP_SCHED_IDLE_WAIT_TIME));
+
+		// grows with the number of jobs, up to 8 threads per processor
+		assertEquals(String.valueOf(CORES * 3), quartzProperties("throughput", CORES * 3).getProperty(THREAD_COUNT));
+		assertEquals(String.valueOf(CORES * 8), quartzProperties("throughput", CORES * 100).getProperty(THREAD_COUNT));
+	}
+
+	@Test
+	public void latency()
+	{
+		Properties properties = quartzProperties("latency", 1);
+		assertEquals(String.valueOf(CORES), properties.getProperty(THREAD_COUNT));
+		assertEquals("1", properties.getProperty(StdSchedulerFactory.PROP_SCHED_MAX_BATCH_SIZE));
+		assertEquals("0", properties.getProperty(StdSchedulerFactory.PROP_SCHED_BATCH_TIME_WINDOW));
+		assertEquals("1000", properties.getProperty(StdSchedulerFactory.PROP_SCHED_IDLE_WAIT_TIME));
+
+		// grows with the number of jobs, up to 4 threads per processor
+		assertEquals(String.valueOf(CORES * 2), quartzProperties("latency", CORES * 2).getProperty(THREAD_COUNT));
+		assertEquals(String.valueOf(CORES * 4), quartzProperties("latency", CORES * 100).getProperty(THREAD_COUNT));
+	}
+
+	@Test
+	public void unknownProfileUsesDefaults()
+	{
+		Properties defaults = quartzProperties("default", 100);
+		assertEquals(String.valueOf(QuartzSchedulerFactoryProvider.DEFAULT_THREAD_COUNT),
+				defaults.getProperty(THREAD_COUNT));
+		assertNull(defaults.getProperty(StdSchedulerFactory.PROP_SCHED_MAX_BATCH_SIZE));
+		assertEquals(defaults, quartzProperties("fastest", 100));
+	}
+
+	@Test
+	public void explicitPropertiesOverrideProfile()
+	{
+		Properties conf = new Properties();
+		conf.setProperty(QuartzSchedulerFactoryProvider.CONF_KEY_PROFILE, "throughput");
+		conf.setProperty("quartz.org.quartz.threadPool.threadCount", "3");
+		QuartzSchedulerFactoryProvider provider = new QuartzSchedulerFactoryProvider(FakeNinjaProperties.of(conf));
+		Properties properties = provider.getQuartzProperties();
+		assertEquals("3", properties.getProperty(THREAD_COUNT));
+		assertEquals("1000", properties.getProperty(StdSchedulerFactory.PROP_SCHED_BATCH_TIME_WINDOW));
+	}
+
+	/**
+	 * @return the Quartz properties of the default scheduler with the given
+	 *         profile and number of jobs
+	 */
+	private static Properties quartzProperties(String profile, int jobCount)
+	{
+		Properties conf = new Properties();
+		conf.setProperty(QuartzSchedulerFactoryProvider.CONF_KEY_PROFILE, profile);
+		QuartzSchedulerFactoryProvider provider = new QuartzSchedulerFactoryProvider(FakeNinjaProperties.of(conf));
+		provider.setExpectedJobCount(jobCount);
+		return provider.getQuartzProperties();
+	}
+
+}
@@ -17,8 +17,10 @@ package ninja.app.conf;
 
 import com.google.inject.Singleton;
 import com.jensfendler.ninjaquartz.NinjaQuartzModule;
+import com.jensfendler.ninjaquartz.ScheduleOptions;
 
 import ninja.app.controllers.Application;
+import ninja.app.modules.TestJob;
 import ninja.app.modules.TestSchedules;
 import ninja.conf.FrameworkModule;
 import ninja.conf.NinjaClassicModule;
@@ -45,7 +47,9 @@ public class Module extends FrameworkModule
 				.scheduler(false)
 		);
 
-		install(new NinjaQuartzModule());
+		install(new NinjaQuartzModule()
+				.job(TestJob.class, ScheduleOptions.cron("0/2 * * * * ?").schedulerDelay(1).scheduler("fast"))
+		);
 		Application.LOG.info("NinjaQuartzModule() has been installed.");
 
 		bind(TestSchedules.class);
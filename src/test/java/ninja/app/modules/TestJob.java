@@ -0,0 +1,44 @@
+/*
+ * Copyright 2016 Fendler Consulting cc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ninja.app.modules;
+
+import com.google.inject.Inject;
+
+import org.quartz.DisallowConcurrentExecution;
+import org.quartz.Job;
+import org.quartz.JobExecutionContext;
+
+import ninja.app.controllers.Application;
+
+/**
+ * A plain Quartz job declared in the NinjaQuartzModule, with an injected
+ * dependency.
+ */
+@DisallowConcurrentExecution
+public class TestJob implements Job
+{
+	public static final String TEST_JOB = "testJob";
+
+	@Inject
+	protected TimedCounter counter;
+
+	@Override
+	public void execute(JobExecutionContext context)
+	{
+		TimedCounter.Ticks ticks = counter.increment(TEST_JOB);
+		Application.LOG.info("TestJob updated value to {}", ticks);
+	}
+}
@@ -17,10 +17,17 @@ package ninja.app.modules;
 
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import com.jensfendler.ninjaquartz.annotations.QuartzBatch;
 import com.jensfendler.ninjaquartz.annotations.QuartzSchedule;
+import com.jensfendler.ninjaquartz.batch.BatchBuffers;
+import com.jensfendler.ninjaquartz.dependency.UpstreamResults;
+import com.jensfendler.ninjaquartz.job.Partition;
 
+import org.quartz.JobDataMap;
 import org.quartz.JobExecutionContext;
 
+import java.util.List;
+
 import ninja.app.controllers.Application;
 import ninja.lifecycle.Start;
 import ninja.utils.NinjaProperties;
@@ -35,15 +42,37 @@ public class TestSchedules
 	public static final String SCHEDULE_TEST_5 = "scheduleTest5";
 	public static final String[] SCHEDULE_TESTS = new String[]{SCHEDULE_TEST_1, SCHEDULE_TEST_2, SCHEDULE_TEST_3, SCHEDULE_TEST_4, SCHEDULE_TEST_5};
 
+	public static final String WRITE_BEHIND_TEST = "writeBehindTest";
+
+	public static final String PARTITION_TEST = "partitionTest-";
+
+	public static final String DEPENDENCY_TEST = "dependencyTest-";
+
+	public static final String BATCH_TEST = "batchTest";
+
+	public static final String PUBLISHED_VALUE = "publishedValue";
+
+	public static final String WARMUP_TEST = "warmupTest";
+
+	public static final int BATCH_ITEMS = 10;
+
 	public static final String NINJA_START = "start";
 
 	@Inject
 	protected TimedCounter counter;
 
+	@Inject
+	protected BatchBuffers batchBuffers;
+
 	@Start(order = 90)
 	public void start()
 	{
 		counter.increment(NINJA_START);
+		// Fill the batch buffer before the consumer is scheduled
+		for (int i = 0; i < BATCH_ITEMS; i++)
+		{
+			batchBuffers.<Integer>get(BATCH_TEST).offer(i);
+		}
 		// Simulate a slow startup
 		try
 		{
@@ -109,4 +138,74 @@ public class TestSchedules
 				"testSchedule5() updated value to {}. Context: {}, Available ninjaProperties: {}", ticks,
 				context.hashCode(), ninjaProperties.getAllCurrentNinjaProperties().size());
 	}
+
+	/**
+	 * Counts its executions in its job data, which is kept in memory
+	 */
+	@QuartzSchedule(cronSchedule = "0/2 * * * * ?", jobName = "writeBehind", persistent = true, writeBehind = true)
+	public void scheduleWriteBehind(JobExecutionContext context)
+	{
+		JobDataMap jobData = context.getJobDetail().getJobDataMap();
+		int count = jobData.containsKey("count") ? jobData.getInt("count") : 0;
+		jobData.put("count", count + 1);
+		counter.increment(WRITE_BEHIND_TEST);
+	}
+
+	/**
+	 * Runs 3 partitions every 2 seconds
+	 */
+	@QuartzSchedule(cronSchedule = "0/2 * * * * ?", jobName = "partitioned", partitions = 3)
+	public void schedulePartitioned(Partition partition)
+	{
+		counter.increment(PARTITION_TEST + partition.getIndex() + "/" + partition.getCount());
+	}
+
+	/**
+	 * Runs every 2 seconds, and returns the result for the downstream job
+	 */
+	@QuartzSchedule(cronSchedule = "0/2 * * * * ?", jobName = "upstream")
+	public String scheduleUpstream()
+	{
+		return "upstreamResult";
+	}
+
+	/**
+	 * Runs after the upstream job has completed
+	 */
+	@QuartzSchedule(jobName = "downstream", dependsOn = "upstream")
+	public void scheduleDownstream(UpstreamResults results)
+	{
+		counter.increment(DEPENDENCY_TEST + results.get("upstream"));
+	}
+
+	/**
+	 * Runs once a day, or when 5 items are waiting
+	 */
+	@QuartzSchedule(cronSchedule = "0 0 0 * * ?", jobName = "batch")
+	@QuartzBatch(name = BATCH_TEST, maxBatchSize = 5)
+	public void scheduleBatch(List<Integer> items)
+	{
+		for (Integer item : items)
+		{
+			counter.increment(items.size() <= 5 ? BATCH_TEST : BATCH_TEST + "-oversized");
+		}
+	}
+
+	/**
+	 * Publishes the number of its executions every 2 seconds
+	 */
+	@QuartzSchedule(cronSchedule = "0/2 * * * * ?", jobName = "published", publishAs = PUBLISHED_VALUE)
+	public Integer schedulePublished()
+	{
+		return counter.increment(PUBLISHED_VALUE).timestamps.size();
+	}
+
+	/**
+	 * Runs once a day, and once on start (before the application is ready)
+	 */
+	@QuartzSchedule(cronSchedule = "0 0 0 * * ?", jobName = "warmup", warmup = true)
+	public void scheduleWarmup()
+	{
+		counter.increment(WARMUP_TEST);
+	}
 }